@@ -44,6 +44,8 @@ module net.brlns.gdownloader {
     exports net.brlns.gdownloader.event.impl;
     exports net.brlns.gdownloader.downloader;
     exports net.brlns.gdownloader.downloader.enums;
+    exports net.brlns.gdownloader.downloader.http;
+    exports net.brlns.gdownloader.downloader.scheduling;
     exports net.brlns.gdownloader.downloader.structs;
     exports net.brlns.gdownloader.settings;
     exports net.brlns.gdownloader.settings.enums;
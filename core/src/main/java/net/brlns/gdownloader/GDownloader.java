@@ -172,6 +172,12 @@ public final class GDownloader {
     @Getter(AccessLevel.PRIVATE)
     private final ScheduledExecutorService mainTicker;
 
+    /**
+     * Direct buffers for in-flight download data, shared by every downloader and updater.
+     */
+    @Getter
+    private final DirectBufferPool bufferPool;
+
     private final AtomicBoolean restartRequested = new AtomicBoolean(false);
 
     public GDownloader() {
@@ -224,6 +230,10 @@ public final class GDownloader {
 
         mainTicker = Executors.newScheduledThreadPool(1);
 
+        bufferPool = new DirectBufferPool(
+            () -> getConfig().getDirectHttpBufferSize().getBytes(),
+            () -> getConfig().getDirectHttpMemoryBudget().getBytes());
+
         Language.initLanguage(config);
         updateConfig();
 
@@ -281,11 +291,10 @@ public final class GDownloader {
 
             updateStartupStatus();
 
-            mainTicker.scheduleAtFixedRate(() -> {
-                clipboardManager.tickClipboard();
+            mainTicker.scheduleAtFixedRate(clipboardManager::tickClipboard, 0, 50, TimeUnit.MILLISECONDS);
 
-                downloadManager.processQueue();
-            }, 0, 50, TimeUnit.MILLISECONDS);
+            // The queue is processed as things happen, this only guards against a missed wakeup.
+            mainTicker.scheduleAtFixedRate(downloadManager::requestDispatch, 1, 1, TimeUnit.SECONDS);
 
             // Java doesn't natively support detecting a click outside of the program window,
             // Which we would need for our custom context menus
@@ -671,6 +680,11 @@ public final class GDownloader {
             }
 
             LoggerUtils.setDebugLogLevel(configIn.isDebugMode());
+
+            if (downloadManager != null) {
+                // The number of simultaneous downloads may have gone up.
+                downloadManager.requestDispatch();
+            }
         } catch (IOException e) {
             handleException(e);
         }
@@ -20,6 +20,9 @@ import java.io.File;
 import java.util.List;
 import java.util.Map;
 import java.util.Optional;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
 import lombok.extern.slf4j.Slf4j;
 import net.brlns.gdownloader.GDownloader;
 import net.brlns.gdownloader.downloader.enums.DownloaderIdEnum;
@@ -70,4 +73,29 @@ public abstract class AbstractDownloader {
     }
 
     public abstract void close();
+
+    /**
+     * Waits for every worker to return, whatever the outcome. Workers are told to stop through the abort hook
+     * rather than interrupted, so that none of them is left writing into a channel that is about to be closed.
+     */
+    protected static void awaitWorkers(List<Future<?>> futures) {
+        boolean interrupted = false;
+
+        for (Future<?> future : futures) {
+            while (true) {
+                try {
+                    future.get();
+                    break;
+                } catch (InterruptedException e) {
+                    interrupted = true;
+                } catch (ExecutionException | CancellationException e) {
+                    break;
+                }
+            }
+        }
+
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+    }
 }
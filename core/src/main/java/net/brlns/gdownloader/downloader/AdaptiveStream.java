@@ -0,0 +1,251 @@
+/*
+ * Copyright (C) 2024 hstr0100
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package net.brlns.gdownloader.downloader;
+
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Locale;
+import java.util.Objects;
+import lombok.Builder;
+import lombok.Getter;
+import lombok.Setter;
+import net.brlns.gdownloader.settings.QualitySettings;
+import net.brlns.gdownloader.settings.enums.QualitySelectorEnum;
+import net.brlns.gdownloader.util.Nullable;
+
+/**
+ * The renditions offered by an HLS master playlist or a DASH manifest.
+ *
+ * @author Gabriel / hstr0100 / vertx010
+ */
+@Getter
+public class AdaptiveStream {
+
+    /**
+     * Renditions carrying video, possibly with muxed-in audio.
+     */
+    private final List<Rendition> renditions;
+
+    /**
+     * Audio-only renditions, meant to be muxed with one of the video renditions.
+     */
+    private final List<Rendition> audioRenditions;
+
+    public AdaptiveStream(List<Rendition> renditionsIn, List<Rendition> audioRenditionsIn) {
+        renditions = Collections.unmodifiableList(renditionsIn);
+        audioRenditions = Collections.unmodifiableList(audioRenditionsIn);
+    }
+
+    /**
+     * Picks the video rendition that best matches the given quality settings. Renditions outside of the
+     * configured resolution and frame rate are only considered when nothing else is available.
+     */
+    @Nullable
+    public Rendition selectVideo(QualitySettings quality) {
+        int minHeight = quality.getMinHeight().getValue();
+        int maxHeight = quality.getMaxHeight().getValue();
+        int maxFps = quality.getFps().getValue();
+
+        List<Rendition> candidates = new ArrayList<>();
+        for (Rendition rendition : renditions) {
+            // Unknown dimensions are given the benefit of the doubt.
+            boolean heightMatches = rendition.getHeight() <= 0
+                || rendition.getHeight() >= minHeight && rendition.getHeight() <= maxHeight;
+            boolean fpsMatches = rendition.getFrameRate() <= 0
+                || rendition.getFrameRate() <= maxFps + 0.5;
+
+            if (heightMatches && fpsMatches) {
+                candidates.add(rendition);
+            }
+        }
+
+        if (candidates.isEmpty()) {
+            candidates = renditions;
+        }
+
+        Comparator<Rendition> order = Comparator.comparingInt(Rendition::getHeight)
+            .thenComparingLong(Rendition::getBandwidth);
+
+        return pick(candidates, order, quality.getSelector());
+    }
+
+    /**
+     * Picks the audio rendition to go along with the given video rendition, or returns null if its audio is muxed in.
+     */
+    @Nullable
+    public Rendition selectAudio(QualitySettings quality, @Nullable Rendition video) {
+        List<Rendition> candidates = new ArrayList<>();
+        for (Rendition rendition : audioRenditions) {
+            // HLS variants name the group of audio renditions they were mastered with, or none if theirs is muxed in.
+            if (video == null || Objects.equals(video.getAudioGroup(), rendition.getAudioGroup())) {
+                candidates.add(rendition);
+            }
+        }
+
+        if (candidates.stream().anyMatch(Rendition::isPreferred)) {
+            candidates.removeIf(rendition -> !rendition.isPreferred());
+        }
+
+        return pick(candidates, Comparator.comparingLong(Rendition::getBandwidth), quality.getSelector());
+    }
+
+    @Nullable
+    private static Rendition pick(List<Rendition> candidates, Comparator<Rendition> order, QualitySelectorEnum selector) {
+        if (candidates.isEmpty()) {
+            return null;
+        }
+
+        if (selector == QualitySelectorEnum.WORST) {
+            return Collections.min(candidates, order);
+        }
+
+        return Collections.max(candidates, order);
+    }
+
+    public enum TrackType {
+        VIDEO,
+        AUDIO
+    }
+
+    @Getter
+    @Builder
+    public static class Rendition {
+
+        private final String id;
+        private final TrackType type;
+
+        private final long bandwidth;
+        private final int width;
+        private final int height;
+        private final double frameRate;
+
+        @Nullable
+        private final String codecs;
+
+        /**
+         * Set on renditions the publisher marked as the default choice.
+         */
+        private final boolean preferred;
+
+        /**
+         * The HLS group this audio rendition belongs to, or the group a video rendition expects its audio from.
+         */
+        @Nullable
+        private final String audioGroup;
+
+        /**
+         * The HLS media playlist listing the segments, which is only fetched once this rendition is selected.
+         * Null if the segments are already known.
+         */
+        @Nullable
+        private final URL playlistUrl;
+
+        @Setter
+        @Nullable
+        private Segment initSegment;
+
+        @Setter
+        @Builder.Default
+        private List<Segment> segments = new ArrayList<>();
+
+        /**
+         * Returns the initialization segment, if any, followed by the media segments, in the order they are written out.
+         */
+        public List<Segment> getAllSegments() {
+            List<Segment> all = new ArrayList<>();
+            if (initSegment != null) {
+                all.add(initSegment);
+            }
+
+            all.addAll(segments);
+            return all;
+        }
+
+        /**
+         * Guesses the extension of the file the segments add up to.
+         */
+        public String getExtension() {
+            List<Segment> all = getAllSegments();
+            if (all.isEmpty()) {
+                return "bin";
+            }
+
+            String path = all.get(all.size() - 1).getUrl().getPath().toLowerCase(Locale.ROOT);
+            if (path.endsWith(".ts")) {
+                return "ts";
+            }
+
+            if (path.endsWith(".aac")) {
+                return "aac";
+            }
+
+            if (path.endsWith(".webm")) {
+                return "webm";
+            }
+
+            return type == TrackType.AUDIO ? "m4a" : "mp4";
+        }
+    }
+
+    @Getter
+    public static class Segment {
+
+        private final URL url;
+
+        /**
+         * The first byte of the segment within the resource, or -1 if the segment is the whole resource.
+         */
+        private final long offset;
+        private final long length;
+
+        @Nullable
+        private final SegmentKey key;
+
+        public Segment(URL urlIn) {
+            this(urlIn, -1, -1, null);
+        }
+
+        public Segment(URL urlIn, long offsetIn, long lengthIn, @Nullable SegmentKey keyIn) {
+            url = urlIn;
+            offset = offsetIn;
+            length = lengthIn;
+            key = keyIn;
+        }
+
+        public boolean isRanged() {
+            return offset >= 0 && length > 0;
+        }
+    }
+
+    /**
+     * An HLS AES-128 key, applied to a whole segment with CBC and PKCS7 padding.
+     */
+    @Getter
+    public static class SegmentKey {
+
+        private final URL keyUrl;
+        private final byte[] iv;
+
+        public SegmentKey(URL keyUrlIn, byte[] ivIn) {
+            keyUrl = keyUrlIn;
+            iv = ivIn;
+        }
+    }
+}
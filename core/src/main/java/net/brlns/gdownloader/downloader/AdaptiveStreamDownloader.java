@@ -0,0 +1,1029 @@
+/*
+ * Copyright (C) 2024 hstr0100
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package net.brlns.gdownloader.downloader;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.net.HttpURLConnection;
+import java.net.URI;
+import java.net.URL;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.security.GeneralSecurityException;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BooleanSupplier;
+import javax.crypto.Cipher;
+import javax.crypto.CipherInputStream;
+import javax.crypto.spec.IvParameterSpec;
+import javax.crypto.spec.SecretKeySpec;
+import lombok.Getter;
+import lombok.Setter;
+import lombok.extern.slf4j.Slf4j;
+import net.brlns.gdownloader.GDownloader;
+import net.brlns.gdownloader.downloader.AdaptiveStream.Rendition;
+import net.brlns.gdownloader.downloader.AdaptiveStream.Segment;
+import net.brlns.gdownloader.downloader.AdaptiveStream.SegmentKey;
+import net.brlns.gdownloader.downloader.AdaptiveStream.TrackType;
+import net.brlns.gdownloader.downloader.enums.DownloadStatusEnum;
+import net.brlns.gdownloader.downloader.enums.DownloaderIdEnum;
+import net.brlns.gdownloader.downloader.http.HttpStatusException;
+import net.brlns.gdownloader.downloader.http.HttpTransport;
+import net.brlns.gdownloader.downloader.http.HttpTransportResponse;
+import net.brlns.gdownloader.downloader.structs.DownloadResult;
+import net.brlns.gdownloader.downloader.structs.SegmentManifest;
+import net.brlns.gdownloader.settings.QualitySettings;
+import net.brlns.gdownloader.settings.enums.DownloadTypeEnum;
+import net.brlns.gdownloader.ui.menu.IMenuEntry;
+import net.brlns.gdownloader.ui.menu.RunnableMenuEntry;
+import net.brlns.gdownloader.util.DirectoryUtils;
+import net.brlns.gdownloader.util.Nullable;
+import net.brlns.gdownloader.util.StringUtils;
+import net.brlns.gdownloader.util.URLUtils;
+
+import static net.brlns.gdownloader.downloader.enums.DownloadFlagsEnum.*;
+import static net.brlns.gdownloader.lang.Language.l10n;
+import static net.brlns.gdownloader.settings.enums.DownloadTypeEnum.VIDEO;
+
+/**
+ * Downloads HLS and DASH streams without going through yt-dlp.
+ *
+ * The playlist or manifest is parsed, and the renditions matching the quality settings of the URL filter are picked.
+ * Their segments are fetched in parallel through the shared per-host connection caps, then appended in order to one
+ * file per track. A sidecar manifest records which segments are done, so that an interrupted download resumes where
+ * it stopped. Once every track is complete, ffmpeg is run once to mux them into the final container.
+ *
+ * Live, protected and otherwise unsupported streams are left to the next downloader in line.
+ *
+ * @author Gabriel / hstr0100 / vertx010
+ */
+@Slf4j
+public class AdaptiveStreamDownloader extends AbstractDownloader {
+
+    private static final String PREFIX = "[hls/dash] ";
+
+    private static final int MAX_PLAYLIST_BYTES = 16 * 1024 * 1024;
+    private static final int AES_KEY_BYTES = 16;
+
+    private static final int MAX_SEGMENT_RETRIES = 5;
+    private static final long SEGMENT_RETRY_BASE_MILLIS = 500;
+    private static final long SEGMENT_RETRY_MAX_MILLIS = TimeUnit.SECONDS.toMillis(30);
+    private static final long POLL_INTERVAL_MILLIS = 250;
+
+    private static final String WORK_DIRECTORY_NAME = ".segments";
+    private static final String MANIFEST_FILE_NAME = "segments.manifest.json";
+
+    /**
+     * Containers that can take the streams as they are, without transcoding.
+     */
+    private static final Set<String> COPYABLE_CONTAINERS = Set.of("mp4", "mkv", "mov");
+    private static final String FALLBACK_CONTAINER = "mkv";
+
+    private final ExecutorService segmentThreadPool = Executors.newVirtualThreadPerTaskExecutor();
+
+    @Getter
+    @Setter
+    private Optional<File> executablePath = Optional.empty();
+
+    @Getter
+    @Setter
+    private Optional<File> ffmpegPath = Optional.empty();
+
+    public AdaptiveStreamDownloader(DownloadManager managerIn) {
+        super(managerIn);
+    }
+
+    @Override
+    public boolean isEnabled() {
+        return main.getConfig().isDirectHttpEnabled() && main.getConfig().isDirectHttpAdaptiveStreams();
+    }
+
+    @Override
+    public DownloaderIdEnum getDownloaderId() {
+        return DownloaderIdEnum.ADAPTIVE_STREAM;
+    }
+
+    @Override
+    public boolean isMainDownloader() {
+        return false;
+    }
+
+    @Override
+    public List<DownloadTypeEnum> getArchivableTypes() {
+        return Collections.emptyList();
+    }
+
+    @Override
+    protected boolean canConsumeUrl(String inputUrl) {
+        if (!isEnabled() || inputUrl == null) {
+            return false;
+        }
+
+        try {
+            URL url = new URI(inputUrl).toURL();
+            return HlsPlaylist.isPlaylist(url, null) || DashManifest.isManifest(url, null);
+        } catch (Exception e) {
+            return false;
+        }
+    }
+
+    @Override
+    protected boolean tryQueryVideo(QueueEntry queueEntry) {
+        try {
+            manager.getHttpTransport().prewarm(new URI(queueEntry.getUrl()).toURL());
+        } catch (Exception e) {
+            log.debug("Cannot pre-warm {}", queueEntry.getUrl(), e);
+        }
+
+        return false;
+    }
+
+    @Override
+    protected DownloadResult tryDownload(QueueEntry entry) throws Exception {
+        if (!isEnabled()) {
+            return new DownloadResult(FLAG_DOWNLOADER_DISABLED);
+        }
+
+        File finalPath = main.getOrCreateDownloadsDirectory();
+
+        File tmpPath = DirectoryUtils.getOrCreate(finalPath, GDownloader.CACHE_DIRETORY_NAME, String.valueOf(entry.getDownloadId()));
+        entry.setTmpDirectory(tmpPath);
+
+        entry.getMediaCard().setPlaceholderIcon(VIDEO);
+
+        boolean success;
+        String lastOutput;
+
+        try {
+            success = downloadStream(entry);
+            lastOutput = PREFIX + "Download complete";
+        } catch (UnsupportedStreamException e) {
+            lastOutput = PREFIX + e.getMessage();
+            log.info("Leaving {} to the next downloader: {}", entry.getUrl(), e.getMessage());
+
+            return new DownloadResult(FLAG_UNSUPPORTED, lastOutput);
+        } catch (Exception e) {
+            lastOutput = PREFIX + e.getMessage();
+            log.error("Stream download failed: {}", entry.getUrl(), e);
+
+            success = false;
+        } finally {
+            entry.getDownloadStarted().set(false);
+        }
+
+        log.info(lastOutput);
+
+        if (!isAlive(entry)) {
+            return new DownloadResult(FLAG_STOPPED);
+        }
+
+        if (!success) {
+            return new DownloadResult(FLAG_MAIN_CATEGORY_FAILED, lastOutput);
+        }
+
+        return new DownloadResult(FLAG_SUCCESS, lastOutput);
+    }
+
+    @Override
+    protected Map<String, IMenuEntry> processMediaFiles(QueueEntry entry) {
+        File finalPath = new File(main.getOrCreateDownloadsDirectory(), "HTTP");
+        if (!finalPath.exists()) {
+            finalPath.mkdirs();
+        }
+
+        Map<String, IMenuEntry> rightClickOptions = new TreeMap<>();
+
+        File[] files = entry.getTmpDirectory().listFiles(File::isFile);
+        if (files == null) {
+            return rightClickOptions;
+        }
+
+        for (File file : files) {
+            Path targetPath = finalPath.toPath().resolve(file.getName());
+
+            try {
+                Files.move(file.toPath(), targetPath, StandardCopyOption.REPLACE_EXISTING);
+                entry.getFinalMediaFiles().add(targetPath.toFile());
+                log.info("Moved file: {}", targetPath);
+            } catch (IOException e) {
+                log.error("Failed to move file: {}", file.getName(), e);
+            }
+        }
+
+        rightClickOptions.put(
+            l10n("gui.open_downloaded_directory"),
+            new RunnableMenuEntry(() -> main.open(finalPath)));
+
+        return rightClickOptions;
+    }
+
+    private boolean isAlive(QueueEntry entry) {
+        return manager.isRunning() && !entry.getCancellationToken().isCancelled();
+    }
+
+    private boolean downloadStream(QueueEntry entry) throws Exception {
+        URL streamUrl = new URI(entry.getUrl()).toURL();
+        HttpTransport transport = manager.getHttpTransport();
+
+        BooleanSupplier alive = () -> isAlive(entry);
+
+        entry.updateStatus(DownloadStatusEnum.DOWNLOADING, PREFIX + "Reading playlist");
+
+        String document = fetchText(transport, streamUrl, alive);
+        if (document == null) {
+            return false;
+        }
+
+        AdaptiveStream stream;
+        // Manifests are told apart by their content, as the URL does not always carry an extension.
+        if (document.stripLeading().startsWith("<")) {
+            stream = DashManifest.parse(streamUrl, document);
+        } else if (HlsPlaylist.isMasterPlaylist(document)) {
+            stream = HlsPlaylist.parseMaster(streamUrl, document);
+        } else {
+            Rendition single = Rendition.builder()
+                .id("main")
+                .type(TrackType.VIDEO)
+                .build();
+
+            HlsPlaylist.parseMedia(streamUrl, document, single);
+            stream = new AdaptiveStream(List.of(single), List.of());
+        }
+
+        QualitySettings quality = entry.getFilter().getQualitySettings();
+
+        List<Rendition> selected = new ArrayList<>();
+
+        Rendition video = stream.selectVideo(quality);
+        if (video != null) {
+            selected.add(video);
+        }
+
+        Rendition audio = stream.selectAudio(quality, video);
+        if (audio != null) {
+            selected.add(audio);
+        }
+
+        if (selected.isEmpty()) {
+            throw new UnsupportedStreamException("No rendition to download");
+        }
+
+        for (Rendition rendition : selected) {
+            if (rendition.getPlaylistUrl() != null) {
+                String playlist = fetchText(transport, rendition.getPlaylistUrl(), alive);
+                if (playlist == null) {
+                    return false;
+                }
+
+                HlsPlaylist.parseMedia(rendition.getPlaylistUrl(), playlist, rendition);
+            }
+
+            log.info("Selected {} rendition {}: {}x{} at {} b/s, {} segments", rendition.getType(), rendition.getId(),
+                rendition.getWidth(), rendition.getHeight(), rendition.getBandwidth(), rendition.getAllSegments().size());
+        }
+
+        File workDirectory = new File(entry.getTmpDirectory(), WORK_DIRECTORY_NAME);
+        File manifestFile = new File(workDirectory, MANIFEST_FILE_NAME);
+
+        SegmentManifest manifest = loadManifest(manifestFile, workDirectory, entry.getUrl(), selected);
+
+        List<TrackWriter> writers = new ArrayList<>();
+        try {
+            for (int i = 0; i < selected.size(); i++) {
+                Rendition rendition = selected.get(i);
+
+                writers.add(new TrackWriter(i, rendition, manifest, manifestFile,
+                    new File(workDirectory, "track" + i + "." + rendition.getExtension())));
+            }
+
+            saveManifest(manifestFile, manifest);
+
+            if (!fetchSegments(entry, transport, writers, alive)) {
+                return false;
+            }
+
+            entry.updateStatus(DownloadStatusEnum.DOWNLOADING, PREFIX + "Muxing");
+        } finally {
+            for (TrackWriter writer : writers) {
+                writer.close();
+            }
+        }
+
+        String title = getTitle(streamUrl);
+        if (!muxTracks(entry, writers, title, quality)) {
+            return false;
+        }
+
+        DirectoryUtils.deleteRecursively(workDirectory.toPath());
+        return true;
+    }
+
+    /**
+     * Fetches every missing segment, each track in order of its segments, with the tracks interleaved
+     * so that they progress together.
+     */
+    private boolean fetchSegments(QueueEntry entry, HttpTransport transport,
+        List<TrackWriter> writers, BooleanSupplier alive) throws Exception {
+        Queue<SegmentTask> tasks = new ConcurrentLinkedQueue<>();
+
+        int totalSegments = 0;
+        int maxSegments = 0;
+        AtomicInteger completedSegments = new AtomicInteger();
+        long initialBytes = 0;
+
+        for (TrackWriter writer : writers) {
+            totalSegments += writer.getSegments().size();
+            maxSegments = Math.max(maxSegments, writer.getSegments().size());
+            completedSegments.addAndGet(writer.getCompletedCount());
+            initialBytes += writer.getAppendedBytes();
+        }
+
+        for (int index = 0; index < maxSegments; index++) {
+            for (TrackWriter writer : writers) {
+                if (index < writer.getSegments().size() && !writer.isCompleted(index)) {
+                    tasks.add(new SegmentTask(writer, index));
+                }
+            }
+        }
+
+        if (tasks.isEmpty()) {
+            return true;
+        }
+
+        AtomicInteger activeConnections = new AtomicInteger();
+        TransferProgress progress = createProgress(entry, completedSegments, totalSegments);
+
+        manager.getProgressTicker().register(progress);
+        progress.start(-1, initialBytes, activeConnections::get);
+
+        AtomicBoolean abortHook = new AtomicBoolean();
+        BooleanSupplier running = () -> alive.getAsBoolean() && !abortHook.get();
+
+        Map<URL, byte[]> keys = new ConcurrentHashMap<>();
+        BandwidthLimiter.Lease bandwidthLease = manager.getBandwidthLimiter().getLease(entry);
+
+        int workerCount = Math.min(tasks.size(), Math.max(1, main.getConfig().getDirectHttpMaxDownloadChunks()));
+
+        List<Future<?>> workers = new ArrayList<>();
+        try {
+            for (int i = 0; i < workerCount; i++) {
+                workers.add(segmentThreadPool.submit(() -> {
+                    SegmentTask task;
+                    while (running.getAsBoolean() && (task = tasks.poll()) != null) {
+                        try {
+                            if (!fetchSegment(transport, task, keys, bandwidthLease, progress,
+                                activeConnections, entry.getCancellationToken(), running)) {
+                                return null;
+                            }
+
+                            completedSegments.incrementAndGet();
+                        } catch (Exception e) {
+                            abortHook.set(true);
+                            throw e;
+                        }
+                    }
+
+                    return null;
+                }));
+            }
+
+            for (Future<?> worker : workers) {
+                try {
+                    worker.get();
+                } catch (ExecutionException e) {
+                    if (e.getCause() instanceof Exception cause) {
+                        throw cause;
+                    }
+
+                    throw e;
+                }
+            }
+        } finally {
+            abortHook.set(true);
+
+            // The track files are closed as soon as this returns, no worker can be left writing to them.
+            awaitWorkers(workers);
+
+            manager.getProgressTicker().unregister(progress);
+        }
+
+        if (!alive.getAsBoolean()) {
+            return false;
+        }
+
+        for (TrackWriter writer : writers) {
+            if (!writer.isFinished()) {
+                throw new IOException("Track " + writer.getTrackIndex() + " is incomplete");
+            }
+        }
+
+        return true;
+    }
+
+    private TransferProgress createProgress(QueueEntry entry, AtomicInteger completedSegments, int totalSegments) {
+        return new TransferProgress((percent, downloaded, total, speed, remainingTime, chunkCount) -> {
+            int completed = completedSegments.get();
+
+            // The size of the stream is unknown up front, so progress is measured in segments.
+            double segmentPercent = completed * 100.0 / totalSegments;
+            segmentPercent = Math.round(segmentPercent * 10) / 10.0;
+
+            double lastPercentage = entry.getMediaCard().getPercentage();
+            if (segmentPercent > lastPercentage || Math.abs(segmentPercent - lastPercentage) > 10) {
+                entry.getMediaCard().setPercentage(segmentPercent);
+            }
+
+            long remainingMillis = 0;
+            if (completed > 0 && speed > 0) {
+                long remainingBytes = downloaded / completed * (totalSegments - completed);
+                remainingMillis = remainingBytes * 1000 / speed;
+            }
+
+            entry.updateStatus(DownloadStatusEnum.DOWNLOADING,
+                String.format("%s%% (%d/%d segments, %s) at %s/s ETA: %s chks %d",
+                    StringUtils.formatPercent(segmentPercent), completed, totalSegments,
+                    StringUtils.getHumanReadableFileSize(downloaded),
+                    StringUtils.getHumanReadableFileSize(speed),
+                    StringUtils.convertTime(remainingMillis), chunkCount), false);
+        });
+    }
+
+    /**
+     * Fetches a single segment into its part file, retrying with backoff.
+     *
+     * @return false if the download stopped in the meantime.
+     */
+    private boolean fetchSegment(HttpTransport transport, SegmentTask task, Map<URL, byte[]> keys,
+        BandwidthLimiter.Lease bandwidthLease, TransferProgress progress, AtomicInteger activeConnections,
+        CancellationToken cancellationToken, BooleanSupplier alive) throws IOException {
+        TrackWriter writer = task.getWriter();
+        Segment segment = writer.getSegments().get(task.getIndex());
+
+        int attempt = 0;
+        while (alive.getAsBoolean()) {
+            long transferred = 0;
+
+            try {
+                // Taken before the permit of the segment, as the key may well be served by the same host.
+                byte[] key = null;
+                if (segment.getKey() != null) {
+                    key = getKey(transport, segment.getKey(), keys, alive);
+                    if (key == null) {
+                        return false;
+                    }
+                }
+
+                try (HostConnectionLimiter.Permit permit = manager.getConnectionLimiter().acquire(segment.getUrl().toString(), alive)) {
+                    if (permit == null) {
+                        return false;
+                    }
+
+                    activeConnections.incrementAndGet();
+                    try (HttpTransportResponse response = transport.send("GET", segment.getUrl(), getRangeHeaders(segment));
+                         CancellationToken.Registration cancelRegistration = cancellationToken.onCancel(response::close)) {
+                        int responseCode = response.getStatusCode();
+
+                        if (responseCode == HttpURLConnection.HTTP_OK && segment.isRanged()) {
+                            throw new IOException("Byte range refused by server: " + segment.getUrl());
+                        }
+
+                        if (responseCode != HttpURLConnection.HTTP_OK && responseCode != HttpURLConnection.HTTP_PARTIAL) {
+                            throw new HttpStatusException(responseCode,
+                                RetryScheduler.parseRetryAfter(response.getHeader("Retry-After"), System.currentTimeMillis()));
+                        }
+
+                        InputStream body = response.getBody();
+                        if (key != null) {
+                            body = new CipherInputStream(body, createCipher(key, segment.getKey().getIv()));
+                        }
+
+                        File partFile = writer.getPartFile(task.getIndex());
+
+                        try (InputStream input = body;
+                             ReadableByteChannel source = Channels.newChannel(input);
+                             FileChannel target = FileChannel.open(partFile.toPath(), StandardOpenOption.CREATE,
+                                 StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+                            ByteBuffer buffer = main.getBufferPool().acquire(alive);
+                            if (buffer == null) {
+                                return false;
+                            }
+
+                            try {
+                                while (alive.getAsBoolean()) {
+                                    buffer.clear();
+
+                                    int bytesRead = source.read(buffer);
+                                    if (bytesRead == -1) {
+                                        break;
+                                    }
+
+                                    if (!bandwidthLease.acquire(bytesRead, alive)) {
+                                        break;
+                                    }
+
+                                    buffer.flip();
+                                    while (buffer.hasRemaining()) {
+                                        target.write(buffer);
+                                    }
+
+                                    transferred += bytesRead;
+                                    progress.add(bytesRead);
+                                }
+                            } finally {
+                                main.getBufferPool().release(buffer);
+                            }
+                        }
+
+                        if (!alive.getAsBoolean()) {
+                            return false;
+                        }
+
+                        // Decryption strips the padding, so only plain bodies can be held against their declared length.
+                        long expected = segment.isRanged() ? segment.getLength() : key == null ? response.getContentLength() : -1;
+                        if (expected > 0 && transferred != expected) {
+                            throw new IOException("Segment ended after " + transferred + " of " + expected + " bytes");
+                        }
+                    } finally {
+                        activeConnections.decrementAndGet();
+                    }
+
+                    writer.complete(task.getIndex());
+                    return true;
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return false;
+            } catch (UnsupportedStreamException e) {
+                throw e;
+            } catch (IOException e) {
+                progress.add(-transferred);
+
+                if (!alive.getAsBoolean()) {
+                    return false;
+                }
+
+                attempt++;
+                log.error("Segment {} of track {} failed on attempt {}: {}",
+                    task.getIndex(), writer.getTrackIndex(), attempt, e.getMessage());
+
+                if (attempt >= MAX_SEGMENT_RETRIES) {
+                    throw new IOException("Failed to download segment " + task.getIndex()
+                        + " after " + MAX_SEGMENT_RETRIES + " attempts: " + e.getMessage(), e);
+                }
+
+                long retryAfterMillis = e instanceof HttpStatusException statusException
+                    ? statusException.getRetryAfterMillis() : -1;
+                long delayMillis = RetryScheduler.getBackoffMillis(attempt,
+                    SEGMENT_RETRY_BASE_MILLIS, SEGMENT_RETRY_MAX_MILLIS, retryAfterMillis);
+
+                if (!sleep(delayMillis, alive)) {
+                    return false;
+                }
+            }
+        }
+
+        return false;
+    }
+
+    private static Map<String, String> getRangeHeaders(Segment segment) {
+        if (!segment.isRanged()) {
+            return Collections.emptyMap();
+        }
+
+        return Map.of("Range", "bytes=" + segment.getOffset() + "-" + (segment.getOffset() + segment.getLength() - 1));
+    }
+
+    /**
+     * Returns the key of an encrypted segment, fetching it on first use.
+     *
+     * @return null if the download stopped while waiting for a connection.
+     */
+    @Nullable
+    private byte[] getKey(HttpTransport transport, SegmentKey segmentKey,
+        Map<URL, byte[]> keys, BooleanSupplier alive) throws IOException, InterruptedException {
+        byte[] key = keys.get(segmentKey.getKeyUrl());
+        if (key != null) {
+            return key;
+        }
+
+        try (HostConnectionLimiter.Permit permit = manager.getConnectionLimiter().acquire(segmentKey.getKeyUrl().toString(), alive)) {
+            if (permit == null) {
+                return null;
+            }
+
+            try (HttpTransportResponse response = transport.send("GET", segmentKey.getKeyUrl(), Collections.emptyMap())) {
+                if (response.getStatusCode() != HttpURLConnection.HTTP_OK) {
+                    throw new HttpStatusException(response.getStatusCode(),
+                        RetryScheduler.parseRetryAfter(response.getHeader("Retry-After"), System.currentTimeMillis()));
+                }
+
+                key = response.getBody().readNBytes(AES_KEY_BYTES + 1);
+            }
+        }
+
+        if (key.length != AES_KEY_BYTES) {
+            throw new UnsupportedStreamException("Unexpected key length: " + key.length);
+        }
+
+        keys.put(segmentKey.getKeyUrl(), key);
+        return key;
+    }
+
+    private static Cipher createCipher(byte[] key, byte[] iv) throws IOException {
+        try {
+            Cipher cipher = Cipher.getInstance("AES/CBC/PKCS5Padding");
+            cipher.init(Cipher.DECRYPT_MODE, new SecretKeySpec(key, "AES"), new IvParameterSpec(iv));
+            return cipher;
+        } catch (GeneralSecurityException e) {
+            throw new IOException("Cannot set up segment decryption", e);
+        }
+    }
+
+    @Nullable
+    private String fetchText(HttpTransport transport, URL url, BooleanSupplier alive) throws IOException, InterruptedException {
+        try (HostConnectionLimiter.Permit permit = manager.getConnectionLimiter().acquire(url.toString(), alive)) {
+            if (permit == null) {
+                return null;
+            }
+
+            try (HttpTransportResponse response = transport.send("GET", url, Collections.emptyMap())) {
+                if (response.getStatusCode() != HttpURLConnection.HTTP_OK) {
+                    throw new HttpStatusException(response.getStatusCode(),
+                        RetryScheduler.parseRetryAfter(response.getHeader("Retry-After"), System.currentTimeMillis()));
+                }
+
+                byte[] content = response.getBody().readNBytes(MAX_PLAYLIST_BYTES);
+                return new String(content, StandardCharsets.UTF_8);
+            }
+        }
+    }
+
+    /**
+     * Runs ffmpeg over the finished tracks. Without ffmpeg, the tracks are kept as they are.
+     *
+     * @return false if the download stopped in the meantime.
+     */
+    private boolean muxTracks(QueueEntry entry, List<TrackWriter> writers,
+        String title, QualitySettings quality) throws IOException, InterruptedException {
+        String container = quality.getVideoContainer().getValue();
+        if (!COPYABLE_CONTAINERS.contains(container)) {
+            container = FALLBACK_CONTAINER;
+        }
+
+        File outputFile = new File(entry.getTmpDirectory(), title + "." + container);
+
+        List<String> command = new ArrayList<>(List.of(getFfmpegCommand(), "-hide_banner", "-nostdin", "-y"));
+        for (TrackWriter writer : writers) {
+            command.addAll(List.of("-i", writer.getFile().getAbsolutePath()));
+        }
+
+        for (int i = 0; i < writers.size(); i++) {
+            command.addAll(List.of("-map", String.valueOf(i)));
+        }
+
+        command.addAll(List.of("-c", "copy"));
+
+        if (!container.equals(FALLBACK_CONTAINER)) {
+            // Transport streams carry AAC with ADTS headers, which MP4 does not accept.
+            command.addAll(List.of("-bsf:a", "aac_adtstoasc"));
+        }
+
+        command.add(outputFile.getAbsolutePath());
+
+        Process process;
+        try {
+            ProcessBuilder processBuilder = new ProcessBuilder(command);
+            processBuilder.redirectErrorStream(true);
+            process = processBuilder.start();
+        } catch (IOException e) {
+            log.warn("Cannot run ffmpeg, keeping the tracks unmuxed: {}", e.getMessage());
+
+            for (TrackWriter writer : writers) {
+                String suffix = writers.size() > 1 ? "." + writer.getRendition().getType().name().toLowerCase(Locale.ROOT) : "";
+                File trackFile = new File(entry.getTmpDirectory(), title + suffix + "." + writer.getRendition().getExtension());
+
+                Files.move(writer.getFile().toPath(), trackFile.toPath(), StandardCopyOption.REPLACE_EXISTING);
+            }
+
+            return true;
+        }
+
+        InputStream processOutput = manager.getProcessSupervisor().supervise(entry, process);
+
+        String lastOutput = "";
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(processOutput))) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                if (!line.isBlank()) {
+                    lastOutput = line;
+                }
+            }
+        }
+
+        int exitCode = process.waitFor();
+
+        if (!isAlive(entry)) {
+            return false;
+        }
+
+        if (exitCode != 0) {
+            Files.deleteIfExists(outputFile.toPath());
+            throw new IOException("ffmpeg exited with code " + exitCode + ": " + lastOutput);
+        }
+
+        return true;
+    }
+
+    private String getFfmpegCommand() {
+        if (ffmpegPath.isPresent()) {
+            File path = ffmpegPath.get();
+            if (path.isDirectory()) {
+                File executable = new File(path, GDownloader.isWindows() ? "ffmpeg.exe" : "ffmpeg");
+                if (executable.exists()) {
+                    return executable.getAbsolutePath();
+                }
+            } else if (path.exists()) {
+                return path.getAbsolutePath();
+            }
+        }
+
+        return "ffmpeg";
+    }
+
+    private static String getTitle(URL streamUrl) {
+        String fileName = URLUtils.getFileName(streamUrl);
+        if (fileName == null) {
+            return "stream";
+        }
+
+        int extension = fileName.lastIndexOf('.');
+        if (extension > 0) {
+            fileName = fileName.substring(0, extension);
+        }
+
+        fileName = fileName.replaceAll("[\\\\/:*?\"<>|]", "_").trim();
+        return fileName.isEmpty() ? "stream" : fileName;
+    }
+
+    /**
+     * Loads the manifest left by an earlier attempt, if it still describes the same renditions.
+     * Otherwise, whatever that attempt left behind is discarded.
+     */
+    private SegmentManifest loadManifest(File manifestFile, File workDirectory,
+        String url, List<Rendition> renditions) throws IOException {
+        if (manifestFile.exists()) {
+            try {
+                SegmentManifest manifest = GDownloader.OBJECT_MAPPER.readValue(manifestFile, SegmentManifest.class);
+
+                if (url.equals(manifest.getUrl()) && matches(manifest, renditions)) {
+                    log.info("Resuming segmented download from manifest {}", manifestFile);
+                    return manifest;
+                }
+
+                log.info("Manifest {} no longer matches the stream, starting over", manifestFile);
+            } catch (IOException e) {
+                log.error("Failed to read segment manifest {}", manifestFile, e);
+            }
+        }
+
+        if (workDirectory.exists()) {
+            DirectoryUtils.deleteRecursively(workDirectory.toPath());
+        }
+
+        Files.createDirectories(workDirectory.toPath());
+
+        SegmentManifest manifest = new SegmentManifest();
+        manifest.setUrl(url);
+
+        for (Rendition rendition : renditions) {
+            manifest.getTracks().add(new SegmentManifest.Track(rendition.getId(), rendition.getAllSegments().size()));
+        }
+
+        return manifest;
+    }
+
+    private static boolean matches(SegmentManifest manifest, List<Rendition> renditions) {
+        if (manifest.getTracks().size() != renditions.size()) {
+            return false;
+        }
+
+        for (int i = 0; i < renditions.size(); i++) {
+            SegmentManifest.Track track = manifest.getTracks().get(i);
+            Rendition rendition = renditions.get(i);
+
+            if (!rendition.getId().equals(track.getRenditionId())
+                || rendition.getAllSegments().size() != track.getSegmentCount()) {
+                return false;
+            }
+        }
+
+        return true;
+    }
+
+    private void saveManifest(File manifestFile, SegmentManifest manifest) {
+        synchronized (manifest) {
+            Path tmpPath = manifestFile.toPath().resolveSibling(manifestFile.getName() + ".tmp");
+
+            try {
+                GDownloader.OBJECT_MAPPER.writeValue(tmpPath.toFile(), manifest);
+
+                Files.move(tmpPath, manifestFile.toPath(),
+                    StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            } catch (IOException e) {
+                log.error("Failed to save segment manifest {}", manifestFile, e);
+            }
+        }
+    }
+
+    private static boolean sleep(long delayMillis, BooleanSupplier alive) {
+        long wakeAt = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(delayMillis);
+
+        try {
+            while (alive.getAsBoolean() && wakeAt - System.nanoTime() > 0) {
+                Thread.sleep(Math.min(POLL_INTERVAL_MILLIS,
+                    TimeUnit.NANOSECONDS.toMillis(wakeAt - System.nanoTime()) + 1));
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+
+        return alive.getAsBoolean();
+    }
+
+    @Override
+    public void close() {
+        segmentThreadPool.shutdownNow();
+    }
+
+    @Getter
+    private static class SegmentTask {
+
+        private final TrackWriter writer;
+        private final int index;
+
+        private SegmentTask(TrackWriter writerIn, int indexIn) {
+            writer = writerIn;
+            index = indexIn;
+        }
+    }
+
+    /**
+     * Appends the segments of a track to its file in order, as they complete. Segments that complete early
+     * wait in their own part files until every segment before them is in.
+     */
+    private class TrackWriter {
+
+        @Getter
+        private final int trackIndex;
+        @Getter
+        private final Rendition rendition;
+        @Getter
+        private final List<Segment> segments;
+        @Getter
+        private final File file;
+
+        private final SegmentManifest manifest;
+        private final SegmentManifest.Track track;
+        private final File manifestFile;
+
+        private final BitSet completed;
+        private final FileChannel output;
+
+        private TrackWriter(int trackIndexIn, Rendition renditionIn, SegmentManifest manifestIn,
+            File manifestFileIn, File fileIn) throws IOException {
+            trackIndex = trackIndexIn;
+            rendition = renditionIn;
+            segments = renditionIn.getAllSegments();
+            file = fileIn;
+
+            manifest = manifestIn;
+            track = manifestIn.getTracks().get(trackIndexIn);
+            manifestFile = manifestFileIn;
+
+            output = FileChannel.open(file.toPath(), StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+
+            if (output.size() < track.getAppendedBytes()) {
+                log.warn("Track file {} is shorter than its manifest claims, starting the track over", file);
+
+                track.setAppendedSegments(0);
+                track.setAppendedBytes(0);
+                track.setCompletedSet(new BitSet());
+            }
+
+            // Anything past the last appended segment is from an append that was cut short.
+            output.truncate(track.getAppendedBytes());
+            output.position(track.getAppendedBytes());
+
+            completed = track.getCompletedSet();
+            completed.set(0, track.getAppendedSegments());
+
+            for (int i = completed.nextSetBit(track.getAppendedSegments()); i >= 0; i = completed.nextSetBit(i + 1)) {
+                if (!getPartFile(i).exists()) {
+                    completed.clear(i);
+                }
+            }
+
+            track.setCompletedSet(completed);
+        }
+
+        private File getPartFile(int index) {
+            return new File(file.getParentFile(), "track" + trackIndex + "-" + index + ".part");
+        }
+
+        private boolean isCompleted(int index) {
+            synchronized (manifest) {
+                return completed.get(index);
+            }
+        }
+
+        private int getCompletedCount() {
+            synchronized (manifest) {
+                return completed.cardinality();
+            }
+        }
+
+        private long getAppendedBytes() {
+            synchronized (manifest) {
+                return track.getAppendedBytes();
+            }
+        }
+
+        private boolean isFinished() {
+            synchronized (manifest) {
+                return track.getAppendedSegments() >= segments.size();
+            }
+        }
+
+        /**
+         * Marks a segment as fetched, and appends it along with any segments that were waiting on it.
+         */
+        private void complete(int index) throws IOException {
+            synchronized (manifest) {
+                completed.set(index);
+
+                while (track.getAppendedSegments() < segments.size() && completed.get(track.getAppendedSegments())) {
+                    File partFile = getPartFile(track.getAppendedSegments());
+
+                    long size;
+                    try (FileChannel input = FileChannel.open(partFile.toPath(), StandardOpenOption.READ)) {
+                        size = input.size();
+
+                        long position = 0;
+                        while (position < size) {
+                            position += input.transferTo(position, size - position, output);
+                        }
+                    }
+
+                    Files.delete(partFile.toPath());
+
+                    track.setAppendedBytes(track.getAppendedBytes() + size);
+                    track.setAppendedSegments(track.getAppendedSegments() + 1);
+                }
+
+                track.setCompletedSet(completed);
+                saveManifest(manifestFile, manifest);
+            }
+        }
+
+        private void close() {
+            try {
+                output.close();
+            } catch (IOException e) {
+                log.error("Failed to close track file {}", file, e);
+            }
+        }
+    }
+}
@@ -0,0 +1,180 @@
+/*
+ * Copyright (C) 2024 hstr0100
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package net.brlns.gdownloader.downloader;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BooleanSupplier;
+import net.brlns.gdownloader.GDownloader;
+import net.brlns.gdownloader.settings.Settings;
+import net.brlns.gdownloader.util.TokenBucket;
+import net.brlns.gdownloader.util.URLUtils;
+
+/**
+ * Shapes download bandwidth at three levels: a global cap shared by every download,
+ * a cap shared by all downloads from the same host and a cap for each individual download.
+ *
+ * Limits are read from the live configuration, so changes apply to running transfers.
+ *
+ * @author Gabriel / hstr0100 / vertx010
+ */
+public class BandwidthLimiter {
+
+    private final GDownloader main;
+
+    private final TokenBucket globalBucket;
+
+    private final Map<String, HostBucket> hostBuckets = new ConcurrentHashMap<>();
+    private final Map<Integer, Lease> leases = new ConcurrentHashMap<>();
+
+    public BandwidthLimiter(GDownloader mainIn) {
+        main = mainIn;
+
+        globalBucket = new TokenBucket(() -> getConfig().getGlobalRateLimit().getBytesPerSecond());
+    }
+
+    /**
+     * Must be paired with a call to {@link #unregister(QueueEntry)} once the download stops.
+     */
+    public Lease register(QueueEntry entry) {
+        String host = URLUtils.getHost(entry.getUrl());
+
+        HostBucket hostBucket = hostBuckets.compute(host, (key, existing) -> {
+            HostBucket bucket = existing != null ? existing
+                : new HostBucket(new TokenBucket(() -> getConfig().getPerHostRateLimit().getBytesPerSecond()));
+
+            bucket.leaseCount.incrementAndGet();
+            return bucket;
+        });
+
+        Lease lease = new Lease(host, hostBucket,
+            new TokenBucket(() -> getConfig().getPerDownloadRateLimit().getBytesPerSecond()));
+
+        Lease previous = leases.put(entry.getDownloadId(), lease);
+        if (previous != null) {
+            releaseHost(previous);
+        }
+
+        return lease;
+    }
+
+    public void unregister(QueueEntry entry) {
+        Lease lease = leases.remove(entry.getDownloadId());
+        if (lease != null) {
+            releaseHost(lease);
+        }
+    }
+
+    /**
+     * Returns the lease of a registered download. Unregistered downloads get a detached lease
+     * that is still subject to every limit but is not counted towards the host or global shares.
+     */
+    public Lease getLease(QueueEntry entry) {
+        Lease lease = leases.get(entry.getDownloadId());
+        if (lease == null) {
+            String host = URLUtils.getHost(entry.getUrl());
+            HostBucket hostBucket = hostBuckets.getOrDefault(host,
+                new HostBucket(new TokenBucket(() -> getConfig().getPerHostRateLimit().getBytesPerSecond())));
+
+            return new Lease(host, hostBucket,
+                new TokenBucket(() -> getConfig().getPerDownloadRateLimit().getBytesPerSecond()));
+        }
+
+        return lease;
+    }
+
+    /**
+     * Returns the bandwidth, in bytes per second, that a download can expect to get
+     * at this moment, or zero if it is not limited at all.
+     *
+     * This is meant for external downloaders that can only be given a fixed rate when they start.
+     */
+    public long getRateShare(QueueEntry entry) {
+        Settings config = getConfig();
+
+        long share = Long.MAX_VALUE;
+
+        long perDownload = config.getPerDownloadRateLimit().getBytesPerSecond();
+        if (perDownload > 0) {
+            share = perDownload;
+        }
+
+        long perHost = config.getPerHostRateLimit().getBytesPerSecond();
+        if (perHost > 0) {
+            HostBucket hostBucket = hostBuckets.get(URLUtils.getHost(entry.getUrl()));
+            int hostLeases = hostBucket != null ? Math.max(1, hostBucket.leaseCount.get()) : 1;
+
+            share = Math.min(share, perHost / hostLeases);
+        }
+
+        long global = config.getGlobalRateLimit().getBytesPerSecond();
+        if (global > 0) {
+            share = Math.min(share, global / Math.max(1, leases.size()));
+        }
+
+        return share == Long.MAX_VALUE ? 0 : Math.max(1, share);
+    }
+
+    private void releaseHost(Lease lease) {
+        hostBuckets.computeIfPresent(lease.host, (key, bucket) -> {
+            if (bucket != lease.hostBucket) {
+                return bucket;
+            }
+
+            return bucket.leaseCount.decrementAndGet() <= 0 ? null : bucket;
+        });
+    }
+
+    private Settings getConfig() {
+        return main.getConfig();
+    }
+
+    private static class HostBucket {
+
+        private final TokenBucket bucket;
+        private final AtomicInteger leaseCount = new AtomicInteger();
+
+        private HostBucket(TokenBucket bucketIn) {
+            bucket = bucketIn;
+        }
+    }
+
+    public class Lease {
+
+        private final String host;
+        private final HostBucket hostBucket;
+        private final TokenBucket downloadBucket;
+
+        private Lease(String hostIn, HostBucket hostBucketIn, TokenBucket downloadBucketIn) {
+            host = hostIn;
+            hostBucket = hostBucketIn;
+            downloadBucket = downloadBucketIn;
+        }
+
+        /**
+         * Blocks until the given amount of bytes may be transferred under every applicable limit.
+         *
+         * @return false if the caller stopped being alive while waiting, in which case the bytes should not be used.
+         */
+        public boolean acquire(long bytes, BooleanSupplier alive) throws InterruptedException {
+            return downloadBucket.acquire(bytes, alive)
+                && hostBucket.bucket.acquire(bytes, alive)
+                && globalBucket.acquire(bytes, alive);
+        }
+    }
+}
@@ -0,0 +1,98 @@
+/*
+ * Copyright (C) 2024 hstr0100
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package net.brlns.gdownloader.downloader;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicBoolean;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Signals that a download should stop, and runs whatever was registered to make that happen promptly,
+ * such as closing a connection a read is blocked on or stopping a process tree.
+ *
+ * @author Gabriel / hstr0100 / vertx010
+ */
+@Slf4j
+public class CancellationToken {
+
+    private final AtomicBoolean cancelled = new AtomicBoolean();
+
+    private final List<Runnable> callbacks = new CopyOnWriteArrayList<>();
+
+    public boolean isCancelled() {
+        return cancelled.get();
+    }
+
+    /**
+     * Cancels the token and runs the registered callbacks on the calling thread.
+     *
+     * @return false if the token was already cancelled.
+     */
+    public boolean cancel() {
+        if (!cancelled.compareAndSet(false, true)) {
+            return false;
+        }
+
+        for (Runnable callback : callbacks) {
+            // Whoever registers a callback also unregisters it, which could happen while we are iterating.
+            if (callbacks.remove(callback)) {
+                run(callback);
+            }
+        }
+
+        return true;
+    }
+
+    /**
+     * Registers a callback to be run once the token is cancelled, or right away if it already is.
+     * The callback must be unregistered by closing the returned registration once it no longer applies.
+     */
+    public Registration onCancel(Runnable callback) {
+        callbacks.add(callback);
+
+        // A cancel that came in before we were added did not see us.
+        if (cancelled.get() && callbacks.remove(callback)) {
+            run(callback);
+        }
+
+        return () -> callbacks.remove(callback);
+    }
+
+    /**
+     * Makes the token usable again, for a download that is being restarted.
+     */
+    public void reset() {
+        callbacks.clear();
+        cancelled.set(false);
+    }
+
+    private static void run(Runnable callback) {
+        try {
+            callback.run();
+        } catch (Exception e) {
+            log.error("Cancellation callback failed", e);
+        }
+    }
+
+    @FunctionalInterface
+    public interface Registration extends AutoCloseable {
+
+        @Override
+        void close();
+    }
+}
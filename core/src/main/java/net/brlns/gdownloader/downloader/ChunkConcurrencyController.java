@@ -0,0 +1,173 @@
+/*
+ * Copyright (C) 2024 hstr0100
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package net.brlns.gdownloader.downloader;
+
+import java.util.concurrent.TimeUnit;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Decides how many connections a ranged direct download should use, based on measured throughput.
+ *
+ * Connections are added one at a time for as long as each addition raises the aggregate throughput
+ * noticeably (additive increase). Once an addition stops paying off, it is undone and the count is held
+ * for a while before probing again. Errors and sharp slowdowns halve the count (multiplicative decrease),
+ * which is what servers that throttle or reject excess connections need.
+ *
+ * Times are passed in by the caller, in nanoseconds.
+ *
+ * @author Gabriel / hstr0100 / vertx010
+ */
+@Slf4j
+public class ChunkConcurrencyController {
+
+    public static final long SAMPLE_INTERVAL_NANOS = TimeUnit.SECONDS.toNanos(2);
+
+    /**
+     * An added connection has to raise throughput by at least this factor to be kept.
+     */
+    private static final double GAIN_THRESHOLD = 1.05;
+
+    /**
+     * Throughput falling below this fraction of the previous sample counts as a slowdown.
+     */
+    private static final double SLOWDOWN_THRESHOLD = 0.6;
+
+    private static final double DECREASE_FACTOR = 0.5;
+
+    /**
+     * Number of samples to hold a converged count before probing for more again.
+     */
+    private static final int HOLD_SAMPLES = 5;
+
+    private final int maxConcurrency;
+
+    private int target;
+    private int previousTarget;
+    private double previousThroughput = -1;
+    private int holdSamples;
+
+    private long windowStartNanos = -1;
+    private long windowStartBytes;
+    private boolean decreased;
+    private long lastDecreaseNanos;
+
+    public ChunkConcurrencyController(int initialConcurrency, int maxConcurrencyIn) {
+        maxConcurrency = Math.max(1, maxConcurrencyIn);
+        target = Math.clamp(initialConcurrency, 1, maxConcurrency);
+        previousTarget = target;
+    }
+
+    public synchronized int getTarget() {
+        return target;
+    }
+
+    /**
+     * Feeds the total amount of bytes transferred so far.
+     *
+     * @param activeConnections how many connections are transferring right now. Samples taken while
+     * fewer connections than the target are active, such as near the end of a download, say nothing
+     * about the right count and are ignored.
+     */
+    public synchronized void sample(long totalBytes, int activeConnections, long nowNanos) {
+        if (windowStartNanos < 0) {
+            resetWindow(totalBytes, nowNanos);
+            return;
+        }
+
+        long elapsedNanos = nowNanos - windowStartNanos;
+        if (elapsedNanos < SAMPLE_INTERVAL_NANOS) {
+            return;
+        }
+
+        double throughput = (totalBytes - windowStartBytes) * 1e9 / elapsedNanos;
+        resetWindow(totalBytes, nowNanos);
+
+        if (activeConnections < target) {
+            return;
+        }
+
+        int sampledTarget = target;
+
+        if (previousThroughput < 0) {
+            // Nothing to compare against yet.
+            if (holdSamples > 0) {
+                holdSamples--;
+            } else {
+                increase();
+            }
+        } else if (target > previousTarget) {
+            // The last sample added a connection, see whether it paid off.
+            if (throughput >= previousThroughput * GAIN_THRESHOLD) {
+                increase();
+            } else {
+                target = previousTarget;
+                holdSamples = HOLD_SAMPLES;
+
+                log.debug("Converged at {} connections, {} B/s", target, (long)throughput);
+            }
+        } else if (throughput < previousThroughput * SLOWDOWN_THRESHOLD) {
+            decrease(nowNanos, "slowdown");
+        } else if (holdSamples > 0) {
+            holdSamples--;
+        } else {
+            increase();
+        }
+
+        previousTarget = sampledTarget;
+        previousThroughput = throughput;
+    }
+
+    /**
+     * Reports a failed request or a connection that broke mid-transfer.
+     */
+    public synchronized void onError(long nowNanos) {
+        // Connections tend to fail together, count them as a single event.
+        if (decreased && nowNanos - lastDecreaseNanos < SAMPLE_INTERVAL_NANOS) {
+            return;
+        }
+
+        decrease(nowNanos, "error");
+
+        // Throughput measured so far is no longer comparable.
+        previousTarget = target;
+        previousThroughput = -1;
+    }
+
+    private void increase() {
+        if (target < maxConcurrency) {
+            target++;
+        }
+    }
+
+    private void decrease(long nowNanos, String reason) {
+        int reduced = Math.max(1, (int)(target * DECREASE_FACTOR));
+
+        if (reduced < target) {
+            log.debug("Reducing connections from {} to {} due to {}", target, reduced, reason);
+            target = reduced;
+        }
+
+        holdSamples = HOLD_SAMPLES;
+        decreased = true;
+        lastDecreaseNanos = nowNanos;
+    }
+
+    private void resetWindow(long totalBytes, long nowNanos) {
+        windowStartNanos = nowNanos;
+        windowStartBytes = totalBytes;
+    }
+}
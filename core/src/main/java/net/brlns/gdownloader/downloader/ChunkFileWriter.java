@@ -0,0 +1,218 @@
+/*
+ * Copyright (C) 2024 hstr0100
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package net.brlns.gdownloader.downloader;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.TreeMap;
+import net.brlns.gdownloader.util.DirectBufferPool;
+import net.brlns.gdownloader.util.Nullable;
+
+import static java.nio.file.StandardOpenOption.*;
+
+/**
+ * Shared writer for the target file of a direct download.
+ *
+ * Every chunk writes through the same {@link FileChannel} using positional writes, so there is
+ * no shared file pointer to seek and no file handle to reopen on every retry.
+ *
+ * In sequential mode, writes are held in memory and written out in file order once enough of them
+ * have accumulated, turning the scattered writes of concurrent chunks into long sequential runs.
+ * This is meant for spinning disks, where seeking between chunks costs far more than the copy.
+ * Buffered data is not on disk until {@link #flush()} is called.
+ *
+ * When given a {@link DirectBufferPool}, held data is kept in held buffers taken from it, so it counts
+ * against the shared memory budget. Taking them never blocks, since the caller is sitting on a read buffer
+ * of its own; instead the writer is flushed early whenever a reader is waiting on the budget, or whenever
+ * the held buffers of every writer together reach half of it.
+ *
+ * @author Gabriel / hstr0100 / vertx010
+ */
+public class ChunkFileWriter implements Closeable {
+
+    private static final long MAX_PENDING_BYTES = 32 * 1024 * 1024;
+
+    private final FileChannel channel;
+    private final boolean sequential;
+
+    @Nullable
+    private final DirectBufferPool bufferPool;
+    @Nullable
+    private final DirectBufferPool.Reclaimer reclaimer;
+
+    private final TreeMap<Long, ByteBuffer> pendingWrites = new TreeMap<>();
+    private long pendingBytes;
+
+    public ChunkFileWriter(File file, boolean sequentialIn) throws IOException {
+        this(file, sequentialIn, null);
+    }
+
+    @SuppressWarnings("this-escape")
+    public ChunkFileWriter(File file, boolean sequentialIn, @Nullable DirectBufferPool bufferPoolIn) throws IOException {
+        channel = FileChannel.open(file.toPath(), CREATE, READ, WRITE);
+        sequential = sequentialIn;
+        bufferPool = bufferPoolIn;
+
+        if (sequential && bufferPool != null) {
+            reclaimer = this::flush;
+            bufferPool.registerReclaimer(reclaimer);
+        } else {
+            reclaimer = null;
+        }
+    }
+
+    /**
+     * Extends the file to its final size up front, so that chunks writing far ahead
+     * of each other do not keep growing it.
+     */
+    public void preallocate(long size) throws IOException {
+        if (channel.size() < size) {
+            channel.write(ByteBuffer.allocate(1), size - 1);
+        }
+    }
+
+    /**
+     * Writes the remaining bytes of the buffer at the given file position.
+     * The buffer is fully consumed and may be reused as soon as this returns.
+     */
+    public void write(ByteBuffer src, long position) throws IOException {
+        if (!sequential) {
+            writeFully(src, position);
+            return;
+        }
+
+        if (bufferPool == null) {
+            ByteBuffer copy = ByteBuffer.allocate(src.remaining());
+            copy.put(src).flip();
+
+            hold(copy, position);
+            return;
+        }
+
+        while (src.hasRemaining()) {
+            ByteBuffer copy = bufferPool.acquireHeld();
+
+            int length = Math.min(copy.capacity(), src.remaining());
+
+            ByteBuffer part = src.duplicate();
+            part.limit(part.position() + length);
+            copy.put(part).flip();
+
+            src.position(src.position() + length);
+
+            hold(copy, position);
+            position += length;
+        }
+    }
+
+    private synchronized void hold(ByteBuffer copy, long position) throws IOException {
+        ByteBuffer previous = pendingWrites.put(position, copy);
+        if (previous != null) {
+            // Both halves of a split range may briefly overlap, the bytes are identical.
+            pendingBytes -= previous.remaining();
+            recycle(previous);
+        }
+
+        pendingBytes += copy.remaining();
+
+        if (pendingBytes >= MAX_PENDING_BYTES) {
+            flushPending();
+        }
+    }
+
+    /**
+     * Reads from the given file position. In sequential mode, pending writes that could
+     * overlap the requested bytes are written out first.
+     */
+    public int read(ByteBuffer dst, long position) throws IOException {
+        if (sequential) {
+            synchronized (this) {
+                if (!pendingWrites.isEmpty() && pendingWrites.firstKey() < position + dst.remaining()) {
+                    flushPending();
+                }
+            }
+        }
+
+        return channel.read(dst, position);
+    }
+
+    /**
+     * Returns the lowest file position that is still held in memory, below which every written byte
+     * is already in the file, or {@link Long#MAX_VALUE} if nothing is held.
+     */
+    public synchronized long getFirstPendingPosition() {
+        return pendingWrites.isEmpty() ? Long.MAX_VALUE : pendingWrites.firstKey();
+    }
+
+    /**
+     * Writes out everything that is still being held in memory.
+     */
+    public synchronized void flush() throws IOException {
+        flushPending();
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        if (reclaimer != null) {
+            bufferPool.unregisterReclaimer(reclaimer);
+        }
+
+        try {
+            flushPending();
+        } finally {
+            for (ByteBuffer buffer : pendingWrites.values()) {
+                recycle(buffer);
+            }
+
+            pendingWrites.clear();
+            pendingBytes = 0;
+
+            channel.close();
+        }
+    }
+
+    private void flushPending() throws IOException {
+        Iterator<Map.Entry<Long, ByteBuffer>> iterator = pendingWrites.entrySet().iterator();
+        while (iterator.hasNext()) {
+            Map.Entry<Long, ByteBuffer> entry = iterator.next();
+
+            ByteBuffer buffer = entry.getValue();
+            writeFully(buffer, entry.getKey());
+
+            iterator.remove();
+            pendingBytes -= buffer.limit();
+            recycle(buffer);
+        }
+    }
+
+    private void recycle(ByteBuffer buffer) {
+        if (bufferPool != null) {
+            bufferPool.releaseHeld(buffer);
+        }
+    }
+
+    private void writeFully(ByteBuffer src, long position) throws IOException {
+        while (src.hasRemaining()) {
+            position += channel.write(src, position);
+        }
+    }
+}
@@ -0,0 +1,288 @@
+/*
+ * Copyright (C) 2024 hstr0100
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package net.brlns.gdownloader.downloader;
+
+import java.util.IdentityHashMap;
+import java.util.Map;
+import lombok.extern.slf4j.Slf4j;
+import net.brlns.gdownloader.downloader.structs.ChunkManifest;
+import net.brlns.gdownloader.util.Nullable;
+
+/**
+ * Hands out the ranges of a {@link ChunkManifest} to download workers.
+ *
+ * Unassigned ranges are handed out first. Once none are left, an idle worker steals
+ * the second half of the remaining bytes of the in-flight range that is expected to finish last,
+ * so that every connection stays busy until the last byte instead of idling behind a straggler.
+ *
+ * The victim notices its shrunken end on its next read. Should it overrun the split point
+ * anyway, both workers write identical bytes to the same offsets, which is harmless.
+ *
+ * A range whose transfer failed can be deferred, in which case it is not handed out again until its backoff expires.
+ *
+ * In sequential mode, the lowest missing range is always handed out first, so that the file fills up from its start
+ * and can be played while it downloads. Ranges at the very end come right after the first one, as some containers
+ * keep the index a player needs to open them there. Idle workers then steal from the in-flight range closest to
+ * the first missing byte, which is where playback would stall, rather than from the one expected to finish last.
+ *
+ * @author Gabriel / hstr0100 / vertx010
+ */
+@Slf4j
+public class ChunkScheduler {
+
+    /**
+     * Neither half of a split range may be smaller than this.
+     */
+    public static final long MIN_STEAL_BYTES = 1024 * 1024;
+
+    private final ChunkManifest manifest;
+
+    private final boolean sequential;
+    /**
+     * In sequential mode, ranges starting this close to the end of the file are handed out right after the first one.
+     */
+    private final long tailBytes;
+
+    private final Map<ChunkManifest.Chunk, InFlight> inFlight = new IdentityHashMap<>();
+    private final Map<ChunkManifest.Chunk, Long> deferredUntil = new IdentityHashMap<>();
+    private final Map<ChunkManifest.Chunk, Integer> failures = new IdentityHashMap<>();
+
+    public ChunkScheduler(ChunkManifest manifestIn) {
+        this(manifestIn, false, 0);
+    }
+
+    public ChunkScheduler(ChunkManifest manifestIn, boolean sequentialIn, long tailBytesIn) {
+        manifest = manifestIn;
+        sequential = sequentialIn;
+        tailBytes = tailBytesIn;
+    }
+
+    /**
+     * Returns the next range to download, or null if there is nothing left worth taking.
+     */
+    @Nullable
+    public ChunkManifest.Chunk next() {
+        synchronized (manifest) {
+            long now = System.nanoTime();
+
+            ChunkManifest.Chunk selected = null;
+            for (ChunkManifest.Chunk chunk : manifest.getChunks()) {
+                if (!isAssignable(chunk, now)) {
+                    continue;
+                }
+
+                if (!sequential) {
+                    selected = chunk;
+                    break;
+                }
+
+                if (selected == null || comparePriority(chunk, selected) < 0) {
+                    selected = chunk;
+                }
+            }
+
+            if (selected != null) {
+                deferredUntil.remove(selected);
+                inFlight.put(selected, new InFlight(selected.getCommittedBytes()));
+                return selected;
+            }
+
+            return steal();
+        }
+    }
+
+    /**
+     * Must be called by the worker once it stops working on a range, whether it completed or not.
+     */
+    public void release(ChunkManifest.Chunk chunk) {
+        synchronized (manifest) {
+            inFlight.remove(chunk);
+        }
+    }
+
+    /**
+     * Checks whether a call to {@link #next()} would currently return a range.
+     */
+    public boolean hasAssignableWork() {
+        synchronized (manifest) {
+            long now = System.nanoTime();
+
+            for (ChunkManifest.Chunk chunk : manifest.getChunks()) {
+                if (isAssignable(chunk, now)) {
+                    return true;
+                }
+            }
+
+            return findVictim(now) != null;
+        }
+    }
+
+    /**
+     * Checks whether any range is waiting out a backoff.
+     */
+    public boolean hasDeferredWork() {
+        synchronized (manifest) {
+            long now = System.nanoTime();
+
+            for (Map.Entry<ChunkManifest.Chunk, Long> entry : deferredUntil.entrySet()) {
+                if (!entry.getKey().isComplete() && entry.getValue() - now > 0) {
+                    return true;
+                }
+            }
+
+            return false;
+        }
+    }
+
+    /**
+     * Keeps a range from being handed out for the given delay, after a failed transfer.
+     * Returns the number of times the range has failed so far.
+     */
+    public int defer(ChunkManifest.Chunk chunk, long delayNanos) {
+        synchronized (manifest) {
+            deferredUntil.put(chunk, System.nanoTime() + delayNanos);
+            return failures.merge(chunk, 1, Integer::sum);
+        }
+    }
+
+    public int getFailureCount(ChunkManifest.Chunk chunk) {
+        synchronized (manifest) {
+            return failures.getOrDefault(chunk, 0);
+        }
+    }
+
+    public int getInFlightCount() {
+        synchronized (manifest) {
+            return inFlight.size();
+        }
+    }
+
+    private boolean isAssignable(ChunkManifest.Chunk chunk, long now) {
+        if (chunk.isComplete() || inFlight.containsKey(chunk)) {
+            return false;
+        }
+
+        Long until = deferredUntil.get(chunk);
+        return until == null || until - now <= 0;
+    }
+
+    private int comparePriority(ChunkManifest.Chunk a, ChunkManifest.Chunk b) {
+        int rankA = getRank(a);
+        int rankB = getRank(b);
+
+        if (rankA != rankB) {
+            return Integer.compare(rankA, rankB);
+        }
+
+        return Long.compare(a.getStartByte(), b.getStartByte());
+    }
+
+    private int getRank(ChunkManifest.Chunk chunk) {
+        if (chunk.getStartByte() == 0) {
+            return 0;
+        }
+
+        if (tailBytes > 0 && chunk.getStartByte() >= manifest.getTotalBytes() - tailBytes) {
+            return 1;
+        }
+
+        return 2;
+    }
+
+    @Nullable
+    private ChunkManifest.Chunk steal() {
+        long now = System.nanoTime();
+
+        ChunkManifest.Chunk victim = findVictim(now);
+        if (victim == null) {
+            return null;
+        }
+
+        long remaining = victim.getLength() - victim.getCommittedBytes();
+        long splitByte = victim.getStartByte() + victim.getCommittedBytes() + remaining / 2;
+
+        ChunkManifest.Chunk stolen = new ChunkManifest.Chunk(splitByte, victim.getEndByte());
+        victim.setEndByte(splitByte - 1);
+
+        manifest.getChunks().add(stolen);
+        inFlight.put(stolen, new InFlight(0));
+
+        if (log.isDebugEnabled()) {
+            log.debug("Split range {}-{} at {}", victim.getStartByte(), stolen.getEndByte(), splitByte);
+        }
+
+        return stolen;
+    }
+
+    /**
+     * Returns the in-flight range to split, among those large enough to be split. That is the one expected
+     * to finish last, or in sequential mode the one writing closest to the first missing byte.
+     */
+    @Nullable
+    private ChunkManifest.Chunk findVictim(long now) {
+        long firstMissingByte = sequential ? manifest.getContiguousBytes() : 0;
+
+        ChunkManifest.Chunk victim = null;
+        double victimPriority = 0;
+
+        for (Map.Entry<ChunkManifest.Chunk, InFlight> entry : inFlight.entrySet()) {
+            ChunkManifest.Chunk chunk = entry.getKey();
+
+            long remaining = chunk.getLength() - chunk.getCommittedBytes();
+            if (remaining < MIN_STEAL_BYTES * 2) {
+                continue;
+            }
+
+            double priority;
+            if (sequential) {
+                long position = chunk.getStartByte() + chunk.getCommittedBytes();
+                priority = -Math.abs(position - firstMissingByte);
+            } else {
+                priority = entry.getValue().estimateSecondsLeft(chunk, remaining, now);
+            }
+
+            if (victim == null || priority > victimPriority) {
+                victim = chunk;
+                victimPriority = priority;
+            }
+        }
+
+        return victim;
+    }
+
+    private static class InFlight {
+
+        private final long assignedAt = System.nanoTime();
+        private final long committedAtAssignment;
+
+        private InFlight(long committedAtAssignmentIn) {
+            committedAtAssignment = committedAtAssignmentIn;
+        }
+
+        private double estimateSecondsLeft(ChunkManifest.Chunk chunk, long remaining, long now) {
+            double elapsedSeconds = (now - assignedAt) / 1e9;
+            long transferred = chunk.getCommittedBytes() - committedAtAssignment;
+
+            if (elapsedSeconds <= 0 || transferred <= 0) {
+                // Nothing received yet, this is as slow as it gets.
+                return Double.MAX_VALUE;
+            }
+
+            return remaining / (transferred / elapsedSeconds);
+        }
+    }
+}
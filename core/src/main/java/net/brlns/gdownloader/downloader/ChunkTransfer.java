@@ -0,0 +1,389 @@
+/*
+ * Copyright (C) 2024 hstr0100
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package net.brlns.gdownloader.downloader;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.ReadableByteChannel;
+import java.security.MessageDigest;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.BooleanSupplier;
+import lombok.Builder;
+import lombok.extern.slf4j.Slf4j;
+import net.brlns.gdownloader.downloader.http.HttpStatusException;
+import net.brlns.gdownloader.downloader.http.HttpTransport;
+import net.brlns.gdownloader.downloader.http.HttpTransportResponse;
+import net.brlns.gdownloader.downloader.http.RemoteFileChangedException;
+import net.brlns.gdownloader.downloader.structs.ChunkManifest;
+import net.brlns.gdownloader.util.DirectBufferPool;
+import net.brlns.gdownloader.util.Nullable;
+
+/**
+ * Moves one range of a file from the network to its {@link ChunkFileWriter}.
+ *
+ * This is the transfer loop of the direct HTTP engine, kept apart from the downloader
+ * so that it can also be driven on its own, such as by benchmarks.
+ *
+ * @author Gabriel / hstr0100 / vertx010
+ */
+@Slf4j
+@Builder
+public class ChunkTransfer {
+
+    public static final int MAX_CHUNK_RETRIES = 5;
+
+    private static final long CHUNK_RETRY_BASE_MILLIS = 500;
+    private static final long CHUNK_RETRY_MAX_MILLIS = TimeUnit.SECONDS.toMillis(30);
+
+    private static final long RETRY_POLL_MILLIS = 250;
+
+    private final int chunkId;
+    private final AtomicBoolean abortHook;
+    private final boolean chunked;
+    private final URL fileUrl;
+    private final HttpTransport transport;
+    private final ChunkFileWriter fileWriter;
+    private final ChunkManifest.Chunk chunk;
+    private final long totalBytes;
+    private final TransferProgress progress;
+    private final DirectBufferPool bufferPool;
+    /**
+     * Whether a range is checked against a digest its response carries.
+     */
+    private final boolean verifyRanges;
+    /**
+     * Checked between reads, the transfer stops once it turns false.
+     */
+    private final BooleanSupplier alive;
+
+    @Nullable
+    private final CancellationToken cancellationToken;
+    @Nullable
+    private final BandwidthLimiter.Lease bandwidthLease;
+    @Nullable
+    private final ChunkConcurrencyController concurrencyController;
+    @Nullable
+    private final TailHasher tailHasher;
+    @Nullable
+    private final ChunkScheduler scheduler;
+    @Nullable
+    private final PieceBitmap pieces;
+    @Nullable
+    private final MirrorSet mirrors;
+    @Nullable
+    private final MirrorSet.Mirror mirror;
+    @Nullable
+    private final LocalAddressSet localAddresses;
+    @Nullable
+    private final LocalAddressSet.LocalAddress localAddress;
+
+    @Nullable
+    private final String ifRange;
+    @Nullable
+    private final AtomicBoolean remoteChanged;
+
+    @Nullable
+    private final ChunkManifest manifest;
+    /**
+     * Called after each write, once the committed bytes of the range have been updated.
+     */
+    @Nullable
+    private final Runnable onCommit;
+
+    /**
+     * Transfers the range, retrying it on failure. Ranged transfers hand a failed range back to the scheduler
+     * with a backoff instead of retrying it themselves.
+     *
+     * @return true once the range is complete, false if it was stopped, handed back or its source gave up.
+     * @throws IOException if the range failed too many times, or if the remote file changed.
+     */
+    public boolean transfer() throws IOException {
+        // Ranged transfers keep their failure count in the scheduler, as each attempt may be made by another worker.
+        int attempt = scheduler != null ? scheduler.getFailureCount(chunk) : 0;
+        boolean success = false;
+
+        while (attempt < MAX_CHUNK_RETRIES && !success && alive.getAsBoolean()) {
+            HttpTransportResponse response = null;
+            CancellationToken.Registration cancelRegistration = null;
+            try {
+                long startOffset = chunk.getStartByte() + chunk.getCommittedBytes();
+                if (startOffset > chunk.getEndByte()) {
+                    // Our tail was handed to another worker and we already have everything up to the new end.
+                    return true;
+                }
+
+                long requestedEnd = totalBytes - 1;
+
+                Map<String, String> headers = new HashMap<>();
+                if (chunked || startOffset > 0) {
+                    requestedEnd = chunk.getEndByte();
+                    headers.put("Range", "bytes=" + startOffset + "-" + requestedEnd);
+
+                    if (ifRange != null) {
+                        headers.put("If-Range", ifRange);
+                    }
+                }
+
+                response = transport.send("GET", fileUrl, headers,
+                    localAddress != null ? localAddress.getAddress() : null);
+
+                if (cancellationToken != null) {
+                    // Closing the connection is what gets a read blocked on a stalled server to return.
+                    cancelRegistration = cancellationToken.onCancel(response::close);
+                }
+
+                int responseCode = response.getStatusCode();
+
+                if (responseCode == HttpURLConnection.HTTP_PARTIAL
+                    || responseCode == HttpURLConnection.HTTP_OK) {
+                    try (InputStream inputStream = response.getBody();
+                         ReadableByteChannel source = Channels.newChannel(inputStream)) {
+                        if (responseCode == HttpURLConnection.HTTP_OK && chunked
+                            && ifRange != null) {
+                            // The validator no longer matches, every range fetched so far belongs to an older version.
+                            log.info("Remote file has changed, abandoning ranged download: {}", fileUrl);
+                            if (remoteChanged != null) {
+                                remoteChanged.set(true);
+                            }
+
+                            abortHook.set(true);
+                            return false;
+                        }
+
+                        if (responseCode == HttpURLConnection.HTTP_PARTIAL) {
+                            log.debug("Partial download accepted, resuming from {} <- offset {}", chunk.getStartByte(), startOffset);
+                        } else if (startOffset > 0) {
+                            if (chunk.getStartByte() != 0) {
+                                throw new IOException("Partial download refused by server");
+                            } else {
+                                // The server is sending the whole body, start over from the beginning of the file.
+                                long contentLength = response.getContentLength();
+                                if (contentLength > 0 && contentLength != totalBytes) {
+                                    throw new RemoteFileChangedException(fileUrl);
+                                }
+
+                                log.debug("Partial download refused, resetting progress");
+
+                                if (manifest != null) {
+                                    // A mismatching If-Range, the body is the current version of the file.
+                                    manifest.setEntityTag(response.getHeader("ETag"));
+                                    manifest.setLastModified(response.getHeader("Last-Modified"));
+                                }
+
+                                progress.add(-chunk.getCommittedBytes());
+                                chunk.setCommittedBytes(0);
+                                startOffset = 0;
+
+                                if (tailHasher != null) {
+                                    tailHasher.reset();
+                                }
+                            }
+                        }
+
+                        // Set when the server describes this very response, so that a corrupt range can be fetched again on its own.
+                        IntegrityDigest rangeDigest = verifyRanges
+                            ? IntegrityDigest.fromContentHeaders(response::getHeader) : null;
+                        MessageDigest rangeHasher = rangeDigest != null ? rangeDigest.newMessageDigest() : null;
+
+                        long responseStart = startOffset;
+                        long position = startOffset;
+
+                        // Blocks while the shared memory budget is spent, which holds off reading from the network.
+                        ByteBuffer buffer = bufferPool.acquire(alive);
+                        if (buffer == null) {
+                            return false;
+                        }
+
+                        try {
+                            while (alive.getAsBoolean()) {
+                                long rangeLeft = chunk.getEndByte() - position + 1;
+                                if (rangeLeft <= 0) {
+                                    break;
+                                }
+
+                                buffer.clear();
+                                buffer.limit((int)Math.min(buffer.capacity(), rangeLeft));
+
+                                int bytesRead = source.read(buffer);
+                                if (bytesRead == -1) {
+                                    break;
+                                }
+
+                                // The end of the range may have moved while we were reading.
+                                int writable = (int)Math.min(bytesRead, chunk.getEndByte() - position + 1);
+                                if (writable <= 0) {
+                                    break;
+                                }
+
+                                if (bandwidthLease != null && !bandwidthLease.acquire(writable, alive)) {
+                                    break;
+                                }
+
+                                buffer.flip();
+                                buffer.limit(writable);
+
+                                if (rangeHasher != null) {
+                                    rangeHasher.update(buffer.duplicate());
+                                } else if (tailHasher != null) {
+                                    tailHasher.update(buffer, position);
+                                }
+
+                                fileWriter.write(buffer, position);
+                                position += writable;
+
+                                if (mirror != null) {
+                                    mirror.addBytes(writable);
+                                }
+
+                                if (localAddress != null) {
+                                    localAddress.addBytes(writable);
+                                }
+
+                                chunk.setCommittedBytes(position - chunk.getStartByte());
+
+                                if (pieces != null) {
+                                    pieces.markCommitted(chunk.getStartByte(), position);
+                                }
+
+                                // Progress is only counted here, the shared ticker takes care of reporting it.
+                                progress.add(writable);
+
+                                if (onCommit != null) {
+                                    onCommit.run();
+                                }
+
+                                if (writable < bytesRead) {
+                                    break;
+                                }
+                            }
+                        } finally {
+                            bufferPool.release(buffer);
+                        }
+
+                        // A range cut short by a split no longer matches what the digest was computed over.
+                        if (rangeHasher != null && position == requestedEnd + 1
+                            && !rangeDigest.matches(rangeHasher.digest())) {
+                            chunk.setCommittedBytes(responseStart - chunk.getStartByte());
+                            progress.add(-(position - responseStart));
+
+                            throw new IOException("Range " + responseStart + "-" + requestedEnd
+                                + " does not match its " + rangeDigest.getSource());
+                        }
+                    }
+
+                    if (alive.getAsBoolean() && !chunk.isComplete()) {
+                        throw new IOException("Connection closed before the end of the range");
+                    }
+
+                    log.debug("Chunk {} has quit", chunkId);
+                    success = alive.getAsBoolean();
+
+                    if (success && mirror != null) {
+                        mirrors.onSuccess(mirror);
+                    }
+
+                    if (success && localAddress != null) {
+                        localAddresses.onSuccess(localAddress);
+                    }
+                } else {
+                    throw new HttpStatusException(responseCode,
+                        RetryScheduler.parseRetryAfter(response.getHeader("Retry-After"), System.currentTimeMillis()));
+                }
+            } catch (Exception e) {
+                if (e instanceof InterruptedException) {
+                    Thread.currentThread().interrupt();
+                    return false;
+                }
+
+                if (e instanceof RemoteFileChangedException changed) {
+                    // Retrying the same range cannot help, the whole transfer has to start over.
+                    throw changed;
+                }
+
+                if (!alive.getAsBoolean()) {
+                    // Most likely our own connection being closed by a cancel, which says nothing about the source.
+                    return false;
+                }
+
+                attempt++;
+                log.error("Error on attempt {}: {}", attempt, e.getMessage());
+
+                if (concurrencyController != null) {
+                    concurrencyController.onError(System.nanoTime());
+                }
+
+                // A status code means the uplink got through, only failed connections and reads count against it.
+                if (localAddress != null && !(e instanceof HttpStatusException)) {
+                    localAddresses.onFailure(localAddress, System.nanoTime());
+                }
+
+                if (mirror != null && mirrors.onFailure(mirror)) {
+                    // That source is gone, whatever is left of the range goes to another one.
+                    return false;
+                }
+
+                if (attempt >= MAX_CHUNK_RETRIES) {
+                    abortHook.set(true);
+                    throw new IOException("Failed to download file after " + MAX_CHUNK_RETRIES + " attempts: " + e.getMessage(), e);
+                }
+
+                long retryAfterMillis = e instanceof HttpStatusException statusException
+                    ? statusException.getRetryAfterMillis() : -1;
+                long delayMillis = RetryScheduler.getBackoffMillis(attempt,
+                    CHUNK_RETRY_BASE_MILLIS, CHUNK_RETRY_MAX_MILLIS, retryAfterMillis);
+
+                if (scheduler != null) {
+                    // Hand the range back rather than sleeping on it, so that the connection slot
+                    // goes to a range that can make progress in the meantime.
+                    scheduler.defer(chunk, TimeUnit.MILLISECONDS.toNanos(delayMillis));
+                    return false;
+                }
+
+                log.debug("Retrying in {}ms", delayMillis);
+
+                long retryAt = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(delayMillis);
+                try {
+                    while (alive.getAsBoolean() && retryAt - System.nanoTime() > 0) {
+                        Thread.sleep(Math.min(RETRY_POLL_MILLIS,
+                            TimeUnit.NANOSECONDS.toMillis(retryAt - System.nanoTime()) + 1));
+                    }
+                } catch (InterruptedException ie) {
+                    Thread.currentThread().interrupt();
+                    return false;
+                }
+            } finally {
+                if (cancelRegistration != null) {
+                    cancelRegistration.close();
+                }
+
+                if (response != null) {
+                    response.close();
+                }
+            }
+        }
+
+        return success;
+    }
+
+}
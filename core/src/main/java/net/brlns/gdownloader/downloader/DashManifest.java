@@ -0,0 +1,430 @@
+/*
+ * Copyright (C) 2024 hstr0100
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package net.brlns.gdownloader.downloader;
+
+import java.net.URL;
+import java.time.Duration;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import net.brlns.gdownloader.downloader.AdaptiveStream.Rendition;
+import net.brlns.gdownloader.downloader.AdaptiveStream.Segment;
+import net.brlns.gdownloader.downloader.AdaptiveStream.TrackType;
+import net.brlns.gdownloader.util.Nullable;
+import org.jsoup.Jsoup;
+import org.jsoup.nodes.Document;
+import org.jsoup.nodes.Element;
+import org.jsoup.parser.Parser;
+
+/**
+ * Parses MPEG-DASH manifests. Only static, single-period and unprotected presentations are supported,
+ * addressed through a segment template, a segment list, or a single file per representation.
+ *
+ * @author Gabriel / hstr0100 / vertx010
+ */
+public class DashManifest {
+
+    private static final Pattern TEMPLATE_PATTERN = Pattern.compile("\\$(RepresentationID|Number|Bandwidth|Time)(?:%0(\\d+)d)?\\$");
+
+    /**
+     * Guards against manifests that would expand into an absurd number of segments.
+     */
+    private static final int MAX_SEGMENTS = 200000;
+
+    public static boolean isManifest(URL url, @Nullable String contentType) {
+        if (contentType != null && contentType.toLowerCase(Locale.ROOT).contains("dash+xml")) {
+            return true;
+        }
+
+        return url.getPath().toLowerCase(Locale.ROOT).endsWith(".mpd");
+    }
+
+    public static AdaptiveStream parse(URL manifestUrl, String xml) throws UnsupportedStreamException {
+        Document document = Jsoup.parse(xml, "", Parser.xmlParser());
+
+        Element mpd = document.selectFirst("MPD");
+        if (mpd == null) {
+            throw new UnsupportedStreamException("Not a DASH manifest");
+        }
+
+        if ("dynamic".equals(mpd.attr("type"))) {
+            throw new UnsupportedStreamException("Live presentations are not supported");
+        }
+
+        if (!mpd.select("ContentProtection").isEmpty()) {
+            throw new UnsupportedStreamException("Protected presentations are not supported");
+        }
+
+        List<Element> periods = getChildren(mpd, "Period");
+        if (periods.size() != 1) {
+            throw new UnsupportedStreamException("Presentations with " + periods.size() + " periods are not supported");
+        }
+
+        Element period = periods.get(0);
+
+        double periodSeconds = parseDuration(period.attr("duration"));
+        if (periodSeconds <= 0) {
+            periodSeconds = parseDuration(mpd.attr("mediaPresentationDuration"));
+        }
+
+        URL periodBase = resolveBase(resolveBase(manifestUrl, mpd), period);
+
+        List<Rendition> renditions = new ArrayList<>();
+        List<Rendition> audioRenditions = new ArrayList<>();
+
+        for (Element adaptationSet : getChildren(period, "AdaptationSet")) {
+            URL setBase = resolveBase(periodBase, adaptationSet);
+
+            for (Element representation : getChildren(adaptationSet, "Representation")) {
+                TrackType type = getTrackType(adaptationSet, representation);
+                if (type == null) {
+                    // Subtitles and the like.
+                    continue;
+                }
+
+                String id = representation.attr("id");
+                long bandwidth = parseLong(representation.attr("bandwidth"));
+
+                Rendition rendition = Rendition.builder()
+                    .id(id)
+                    .type(type)
+                    .bandwidth(bandwidth)
+                    .width((int)parseLong(getAttribute("width", representation, adaptationSet)))
+                    .height((int)parseLong(getAttribute("height", representation, adaptationSet)))
+                    .frameRate(parseFrameRate(getAttribute("frameRate", representation, adaptationSet)))
+                    .codecs(getAttribute("codecs", representation, adaptationSet))
+                    .build();
+
+                addSegments(rendition, resolveBase(setBase, representation), periodSeconds,
+                    representation, adaptationSet, period);
+
+                if (type == TrackType.AUDIO) {
+                    audioRenditions.add(rendition);
+                } else {
+                    renditions.add(rendition);
+                }
+            }
+        }
+
+        if (renditions.isEmpty() && audioRenditions.isEmpty()) {
+            throw new UnsupportedStreamException("Manifest lists no usable representations");
+        }
+
+        return new AdaptiveStream(renditions, audioRenditions);
+    }
+
+    /**
+     * @param levels The representation, followed by the elements enclosing it, whose segment information it inherits.
+     */
+    private static void addSegments(Rendition rendition, URL base, double periodSeconds, Element... levels)
+        throws UnsupportedStreamException {
+        Element template = findFirst("SegmentTemplate", levels);
+        Element segmentList = findFirst("SegmentList", levels);
+
+        if (template != null) {
+            addTemplateSegments(rendition, base, periodSeconds, levels);
+        } else if (segmentList != null) {
+            Element initialization = getFirstChild(segmentList, "Initialization");
+            if (initialization != null && initialization.hasAttr("sourceURL")) {
+                rendition.setInitSegment(createSegment(base, initialization.attr("sourceURL"), initialization.attr("range")));
+            }
+
+            List<Segment> segments = new ArrayList<>();
+            for (Element segmentUrl : getChildren(segmentList, "SegmentURL")) {
+                String media = segmentUrl.hasAttr("media") ? segmentUrl.attr("media") : "";
+                segments.add(createSegment(base, media, segmentUrl.attr("mediaRange")));
+            }
+
+            rendition.setSegments(segments);
+        } else {
+            // The whole representation sits in a single file.
+            rendition.setSegments(new ArrayList<>(List.of(new Segment(base))));
+        }
+
+        if (rendition.getSegments().isEmpty()) {
+            throw new UnsupportedStreamException("Representation " + rendition.getId() + " lists no segments");
+        }
+    }
+
+    private static void addTemplateSegments(Rendition rendition, URL base, double periodSeconds, Element... levels)
+        throws UnsupportedStreamException {
+        List<Element> templates = new ArrayList<>();
+        for (Element level : levels) {
+            Element template = getFirstChild(level, "SegmentTemplate");
+            if (template != null) {
+                templates.add(template);
+            }
+        }
+
+        Element[] chain = templates.toArray(Element[]::new);
+
+        String media = getAttribute("media", chain);
+        if (media == null) {
+            throw new UnsupportedStreamException("Segment template without media");
+        }
+
+        String initialization = getAttribute("initialization", chain);
+        if (initialization != null) {
+            rendition.setInitSegment(new Segment(HlsPlaylist.resolve(base,
+                expandTemplate(initialization, rendition, 0, 0))));
+        }
+
+        long timescale = Math.max(1, parseLong(getAttribute("timescale", chain), 1));
+        long startNumber = parseLong(getAttribute("startNumber", chain), 1);
+
+        List<Segment> segments = new ArrayList<>();
+
+        Element timeline = findFirst("SegmentTimeline", chain);
+        if (timeline != null) {
+            long periodEnd = periodSeconds > 0 ? (long)Math.ceil(periodSeconds * timescale) : -1;
+
+            long number = startNumber;
+            long time = 0;
+            for (Element entry : getChildren(timeline, "S")) {
+                if (entry.hasAttr("t")) {
+                    time = parseLong(entry.attr("t"));
+                }
+
+                long duration = parseLong(entry.attr("d"));
+                if (duration <= 0) {
+                    throw new UnsupportedStreamException("Segment timeline entry without a duration");
+                }
+
+                long repeat = parseLong(entry.attr("r"));
+                if (repeat < 0) {
+                    // Repeats until the end of the period.
+                    if (periodEnd < 0) {
+                        throw new UnsupportedStreamException("Open-ended segment timeline without a period duration");
+                    }
+
+                    repeat = Math.max(0, (periodEnd - time + duration - 1) / duration - 1);
+                }
+
+                for (long i = 0; i <= repeat; i++) {
+                    addTemplateSegment(segments, base, media, rendition, number++, time);
+                    time += duration;
+                }
+            }
+        } else {
+            long duration = parseLong(getAttribute("duration", chain));
+            if (duration <= 0 || periodSeconds <= 0) {
+                throw new UnsupportedStreamException("Segment template without a usable duration");
+            }
+
+            long count = (long)Math.ceil(periodSeconds * timescale / duration);
+            for (long i = 0; i < count; i++) {
+                addTemplateSegment(segments, base, media, rendition, startNumber + i, i * duration);
+            }
+        }
+
+        rendition.setSegments(segments);
+    }
+
+    private static void addTemplateSegment(List<Segment> segments, URL base, String media,
+        Rendition rendition, long number, long time) throws UnsupportedStreamException {
+        if (segments.size() >= MAX_SEGMENTS) {
+            throw new UnsupportedStreamException("Too many segments");
+        }
+
+        segments.add(new Segment(HlsPlaylist.resolve(base, expandTemplate(media, rendition, number, time))));
+    }
+
+    static String expandTemplate(String template, Rendition rendition, long number, long time) {
+        StringBuilder result = new StringBuilder();
+
+        // Escaped dollar signs are set aside, so that they are not mistaken for identifiers.
+        String[] parts = template.split("\\$\\$", -1);
+        for (int i = 0; i < parts.length; i++) {
+            if (i > 0) {
+                result.append('$');
+            }
+
+            Matcher matcher = TEMPLATE_PATTERN.matcher(parts[i]);
+            StringBuilder expanded = new StringBuilder();
+            while (matcher.find()) {
+                String value;
+                switch (matcher.group(1)) {
+                    case "RepresentationID" -> value = rendition.getId();
+                    case "Number" -> value = String.valueOf(number);
+                    case "Bandwidth" -> value = String.valueOf(rendition.getBandwidth());
+                    default -> value = String.valueOf(time);
+                }
+
+                if (matcher.group(2) != null) {
+                    int width = Integer.parseInt(matcher.group(2));
+                    value = "0".repeat(Math.max(0, width - value.length())) + value;
+                }
+
+                matcher.appendReplacement(expanded, Matcher.quoteReplacement(value));
+            }
+
+            matcher.appendTail(expanded);
+            result.append(expanded);
+        }
+
+        return result.toString();
+    }
+
+    private static Segment createSegment(URL base, String reference, @Nullable String range)
+        throws UnsupportedStreamException {
+        URL url = reference.isBlank() ? base : HlsPlaylist.resolve(base, reference);
+
+        if (range != null && !range.isBlank()) {
+            String[] bounds = range.trim().split("-");
+            if (bounds.length == 2) {
+                long first = parseLong(bounds[0]);
+                long last = parseLong(bounds[1]);
+
+                if (last >= first) {
+                    return new Segment(url, first, last - first + 1, null);
+                }
+            }
+        }
+
+        return new Segment(url);
+    }
+
+    @Nullable
+    private static TrackType getTrackType(Element adaptationSet, Element representation) {
+        String contentType = adaptationSet.attr("contentType");
+        if (contentType.isEmpty()) {
+            contentType = getAttribute("mimeType", representation, adaptationSet);
+        }
+
+        if (contentType == null) {
+            return null;
+        }
+
+        if (contentType.startsWith("video")) {
+            return TrackType.VIDEO;
+        }
+
+        if (contentType.startsWith("audio")) {
+            return TrackType.AUDIO;
+        }
+
+        return null;
+    }
+
+    private static URL resolveBase(URL base, Element element) throws UnsupportedStreamException {
+        Element baseUrl = getFirstChild(element, "BaseURL");
+        if (baseUrl == null || baseUrl.text().isBlank()) {
+            return base;
+        }
+
+        return HlsPlaylist.resolve(base, baseUrl.text());
+    }
+
+    /**
+     * Returns the value of the attribute on the first of the given elements that has it.
+     */
+    @Nullable
+    private static String getAttribute(String name, Element... elements) {
+        for (Element element : elements) {
+            if (element.hasAttr(name)) {
+                return element.attr(name);
+            }
+        }
+
+        return null;
+    }
+
+    /**
+     * Returns the first direct child with the given name, looking through the given elements in order.
+     */
+    @Nullable
+    private static Element findFirst(String name, Element... elements) {
+        for (Element element : elements) {
+            Element child = getFirstChild(element, name);
+            if (child != null) {
+                return child;
+            }
+        }
+
+        return null;
+    }
+
+    @Nullable
+    private static Element getFirstChild(Element element, String name) {
+        for (Element child : element.children()) {
+            if (child.tagName().equalsIgnoreCase(name)) {
+                return child;
+            }
+        }
+
+        return null;
+    }
+
+    private static List<Element> getChildren(Element element, String name) {
+        List<Element> children = new ArrayList<>();
+        for (Element child : element.children()) {
+            if (child.tagName().equalsIgnoreCase(name)) {
+                children.add(child);
+            }
+        }
+
+        return children;
+    }
+
+    private static double parseDuration(@Nullable String value) {
+        if (value == null || value.isBlank()) {
+            return 0;
+        }
+
+        try {
+            return Duration.parse(value.trim()).toNanos() / 1e9;
+        } catch (DateTimeParseException | ArithmeticException e) {
+            return 0;
+        }
+    }
+
+    private static double parseFrameRate(@Nullable String value) {
+        if (value == null || value.isBlank()) {
+            return 0;
+        }
+
+        try {
+            String[] parts = value.trim().split("/");
+            if (parts.length == 2) {
+                return Double.parseDouble(parts[0]) / Double.parseDouble(parts[1]);
+            }
+
+            return Double.parseDouble(parts[0]);
+        } catch (NumberFormatException e) {
+            return 0;
+        }
+    }
+
+    private static long parseLong(@Nullable String value) {
+        return parseLong(value, 0);
+    }
+
+    private static long parseLong(@Nullable String value, long defaultValue) {
+        if (value == null || value.isBlank()) {
+            return defaultValue;
+        }
+
+        try {
+            return Long.parseLong(value.trim());
+        } catch (NumberFormatException e) {
+            return defaultValue;
+        }
+    }
+}
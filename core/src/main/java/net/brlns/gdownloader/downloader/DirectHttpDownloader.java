@@ -19,53 +19,59 @@ package net.brlns.gdownloader.downloader;
 import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
-import java.io.RandomAccessFile;
 import java.net.HttpURLConnection;
-import java.net.Proxy;
 import java.net.URI;
 import java.net.URL;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.FileAlreadyExistsException;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.nio.file.StandardCopyOption;
 import java.util.*;
+import java.util.concurrent.ExecutionException;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.atomic.AtomicLong;
 import java.util.concurrent.atomic.AtomicReference;
-import java.util.function.Supplier;
-import lombok.Builder;
-import lombok.Data;
+import java.util.function.BooleanSupplier;
 import lombok.Getter;
 import lombok.Setter;
 import lombok.extern.slf4j.Slf4j;
 import net.brlns.gdownloader.GDownloader;
 import net.brlns.gdownloader.downloader.enums.DownloadStatusEnum;
 import net.brlns.gdownloader.downloader.enums.DownloaderIdEnum;
+import net.brlns.gdownloader.downloader.http.ContentDecoding;
+import net.brlns.gdownloader.downloader.http.HttpStatusException;
+import net.brlns.gdownloader.downloader.http.HttpTransport;
+import net.brlns.gdownloader.downloader.http.HttpTransportResponse;
+import net.brlns.gdownloader.downloader.http.RemoteFileChangedException;
+import net.brlns.gdownloader.downloader.structs.ChunkManifest;
 import net.brlns.gdownloader.downloader.structs.DownloadResult;
 import net.brlns.gdownloader.settings.enums.DownloadTypeEnum;
 import net.brlns.gdownloader.ui.menu.IMenuEntry;
 import net.brlns.gdownloader.ui.menu.RunnableMenuEntry;
 import net.brlns.gdownloader.util.DirectoryUtils;
 import net.brlns.gdownloader.util.Nullable;
-import net.brlns.gdownloader.util.Pair;
 import net.brlns.gdownloader.util.StringUtils;
 import net.brlns.gdownloader.util.URLUtils;
+import net.brlns.gdownloader.util.collection.LRUCache;
 
 import static net.brlns.gdownloader.downloader.enums.DownloadFlagsEnum.*;
 import static net.brlns.gdownloader.lang.Language.l10n;
 import static net.brlns.gdownloader.settings.enums.DownloadTypeEnum.DIRECT;
 
-// TODO: Resume chunked
 // TODO: Add proxy settings to UI as a floating window that validates fields.
 // TODO: Do not consume unsupported urls
 // TODO: Clipboard: deep scan current webpage for valid download urls. Add settings to configure scan depth and external links
 // TODO: ftp
-// TODO: Throttling, chunked downloads are easily saturating all available downlink bandwidth
 /**
  * @author Gabriel / hstr0100 / vertx010
  */
@@ -74,11 +80,45 @@ public class DirectHttpDownloader extends AbstractDownloader {
 
     private static final String PREFIX = "[direct-http] ";
 
-    private static final int BUFFER_SIZE = 8192;
-    private static final int MAX_CHUNK_RETRIES = 5;
+    private static final String MANIFEST_SUFFIX = ".manifest.json";
+    private static final long MANIFEST_SAVE_INTERVAL_NANOS = TimeUnit.SECONDS.toNanos(1);
+
+    private static final long SUPERVISOR_INTERVAL_MILLIS = 250;
+    private static final int INITIAL_CONCURRENCY = 2;
+
+    private static final long HASH_STEP_BYTES = 16 * 1024 * 1024;
+
+    private static final long PIECE_BYTES = 4 * 1024 * 1024;
+    private static final int MAX_PIECES = 1024;
+
+    /**
+     * How much of the end of a file is fetched early in sequential mode, for containers that keep their index there.
+     */
+    private static final long TAIL_PRIORITY_BYTES = 8 * 1024 * 1024;
+    private static final Set<String> TAIL_INDEXED_EXTENSIONS = Set.of("mp4", "m4v", "m4a", "mov", "3gp");
+    private static final int MAX_SIDECAR_BYTES = 4096;
+
+    private static final int MAX_METALINK_BYTES = 1024 * 1024;
+    private static final int MAX_MIRRORS = 8;
 
     private final ExecutorService chunkThreadPool = Executors.newVirtualThreadPerTaskExecutor();
 
+    /**
+     * The connection count each host last converged to, used as the starting point for its next download.
+     */
+    private final LRUCache<String, Integer> learnedConcurrency = new LRUCache<>(256);
+
+    private final ProbeCache probeCache = new ProbeCache();
+
+    private final TransferCoalescer transferCoalescer = new TransferCoalescer();
+
+    /**
+     * Kept across downloads, as what it learns describes the uplinks rather than any one server.
+     */
+    private LocalAddressSet localAddresses;
+    private List<String> localAddressEntries;
+    private boolean localAddressWarningShown;
+
     @Getter
     @Setter
     private Optional<File> executablePath = Optional.empty();
@@ -121,6 +161,15 @@ public class DirectHttpDownloader extends AbstractDownloader {
 
     @Override
     protected boolean tryQueryVideo(QueueEntry queueEntry) {
+        if (isEnabled()) {
+            // Get the handshakes out of the way while the entry waits in the queue.
+            try {
+                manager.getHttpTransport().prewarm(new URI(queueEntry.getUrl()).toURL());
+            } catch (Exception e) {
+                log.debug("Cannot pre-warm {}", queueEntry.getUrl(), e);
+            }
+        }
+
         // TODO
         return false;
     }
@@ -149,25 +198,45 @@ public class DirectHttpDownloader extends AbstractDownloader {
 
             entry.getMediaCard().setPlaceholderIcon(type);
 
-            try {
-                success = downloadFile(entry, (percent, total, speed, remainingTime, chunkCount) -> {
-                    String fmPercent = StringUtils.formatPercent(percent);
-                    percent = Math.round(percent * 10) / 10.0;// Strip out unecessary precision
+            TransferProgress progress = new TransferProgress((percent, downloaded, total, speed, remainingTime, chunkCount) -> {
+                String fmSpeed = StringUtils.getHumanReadableFileSize(speed);
 
-                    double lastPercentage = entry.getMediaCard().getPercentage();
+                if (total <= 0) {
+                    // Streamed until the server closes the connection, there is nothing to measure progress against.
+                    entry.updateStatus(DownloadStatusEnum.DOWNLOADING,
+                        String.format("%s at %s/s chks %d",
+                            StringUtils.getHumanReadableFileSize(downloaded), fmSpeed, chunkCount), false);
+                    return;
+                }
 
-                    if (percent > lastPercentage || percent < 5 || Math.abs(percent - lastPercentage) > 10) {
-                        entry.getMediaCard().setPercentage(percent);
-                    }
+                String fmPercent = StringUtils.formatPercent(percent);
+                percent = Math.round(percent * 10) / 10.0;// Strip out unecessary precision
 
-                    String fmTotal = StringUtils.getHumanReadableFileSize(total);
-                    String fmSpeed = StringUtils.getHumanReadableFileSize(speed);
-                    String fmRemaingTime = StringUtils.convertTime(remainingTime);
+                double lastPercentage = entry.getMediaCard().getPercentage();
 
-                    entry.updateStatus(DownloadStatusEnum.DOWNLOADING,
-                        String.format("%s%% of %s at %s/s ETA: %s chks %d",
-                            fmPercent, fmTotal, fmSpeed, fmRemaingTime, chunkCount), false);
-                });
+                if (percent > lastPercentage || percent < 5 || Math.abs(percent - lastPercentage) > 10) {
+                    entry.getMediaCard().setPercentage(percent);
+                }
+
+                String fmTotal = StringUtils.getHumanReadableFileSize(total);
+                String fmRemaingTime = StringUtils.convertTime(remainingTime);
+
+                entry.updateStatus(DownloadStatusEnum.DOWNLOADING,
+                    String.format("%s%% of %s at %s/s ETA: %s chks %d",
+                        fmPercent, fmTotal, fmSpeed, fmRemaingTime, chunkCount), false);
+            });
+
+            manager.getProgressTicker().register(progress);
+
+            try {
+                try {
+                    success = downloadFile(entry, progress);
+                } catch (RemoteFileChangedException e) {
+                    // A fresh probe picks up the new version, and with it discards the partial data of the old one.
+                    log.info(e.getMessage());
+                    probeCache.invalidate(e.getFileUrl());
+                    success = downloadFile(entry, progress);
+                }
 
                 lastOutput = PREFIX + "Download complete";
                 entry.updateStatus(DownloadStatusEnum.DOWNLOADING, lastOutput);
@@ -176,6 +245,7 @@ public class DirectHttpDownloader extends AbstractDownloader {
 
                 success = false;
             } finally {
+                manager.getProgressTicker().unregister(progress);
                 entry.getDownloadStarted().set(false);
             }
 
@@ -255,304 +325,1211 @@ public class DirectHttpDownloader extends AbstractDownloader {
     }
 
     private boolean isAlive(QueueEntry entry) {
-        return manager.isRunning() && !entry.getCancelHook().get();
+        return manager.isRunning() && !entry.getCancellationToken().isCancelled();
     }
 
+    /**
+     * Sends a request to learn about the remote file. The response is closed before returning,
+     * only its headers are of interest.
+     */
     @Nullable
-    private Pair<HttpURLConnection, Integer> openConnection(URL fileUrl, String requestType) {
-        HttpURLConnection connection = null;
-
-        try {
-            connection = (HttpURLConnection)fileUrl.openConnection();
-            connection.setRequestMethod(requestType);
-            int responseCode = connection.getResponseCode();
+    private HttpTransportResponse probe(HttpTransport transport, URL fileUrl, String requestType) {
+        try (HttpTransportResponse response = transport.send(requestType, fileUrl, Collections.emptyMap())) {
+            int responseCode = response.getStatusCode();
 
             if (responseCode != HttpURLConnection.HTTP_OK) {
                 throw new IOException("Server returned HTTP error code: " + responseCode);
             }
 
-            return new Pair<>(connection, responseCode);
+            return response;
         } catch (Exception e) {
             log.error("Request {} failed for {}", requestType, fileUrl);
             return null;
+        }
+    }
+
+    /**
+     * Probes a source while holding a connection slot for its host. Recent results are served from the cache.
+     * Returns null if the source did not answer or the download was stopped while waiting for a slot.
+     */
+    @Nullable
+    private HttpTransportResponse probeSource(QueueEntry queueEntry, HttpTransport transport,
+        URL url) throws InterruptedException {
+        HttpTransportResponse cached = probeCache.get(url);
+        if (cached != null) {
+            return cached;
+        }
+
+        try (HostConnectionLimiter.Permit permit = manager.getConnectionLimiter().acquire(
+            url.toString(), () -> isAlive(queueEntry))) {
+            if (permit == null) {
+                return null;
+            }
+
+            HttpTransportResponse response = probe(transport, url, "HEAD");
+
+            if (response == null) {
+                response = probe(transport, url, "GET");
+            }
+
+            if (response != null) {
+                probeCache.put(url, response);
+            }
+
+            return response;
+        }
+    }
+
+    /**
+     * Fetches a file that is expected to be small with a single request, letting the headers of the response decide
+     * everything a probe would have. Small files are not resumed, fetching them again costs less than the bookkeeping.
+     *
+     * Identical downloads in flight are coalesced and the file is verified against any known digest,
+     * just as on the regular path.
+     *
+     * Returns null once the file is on disk, or if the download was stopped. If the file turns out not to be small
+     * after all, the body is dropped and the response is returned, for the regular path to use as its probe.
+     */
+    @Nullable
+    private HttpTransportResponse fetchSmallFile(QueueEntry queueEntry, HttpTransport transport,
+        URL fileUrl, TransferProgress progress) throws Exception {
+        while (isAlive(queueEntry)) {
+            HttpTransportResponse response;
+            File targetFile;
+            long totalBytes;
+
+            TransferCoalescer.Handle transfer = null;
+            boolean success = false;
+
+            try {
+                try (HostConnectionLimiter.Permit permit = manager.getConnectionLimiter().acquire(
+                    fileUrl.toString(), () -> isAlive(queueEntry))) {
+                    if (permit == null) {
+                        return null;
+                    }
+
+                    // Headers remain readable once the body is closed.
+                    try (HttpTransportResponse smallResponse = transport.send("GET", fileUrl, Collections.emptyMap())) {
+                        response = smallResponse;
+
+                        int responseCode = response.getStatusCode();
+                        if (responseCode != HttpURLConnection.HTTP_OK) {
+                            throw new HttpStatusException(responseCode,
+                                RetryScheduler.parseRetryAfter(response.getHeader("Retry-After"), System.currentTimeMillis()));
+                        }
+
+                        totalBytes = response.getContentLength();
+                        String mimeType = response.getContentType();
+                        String detectedFileName = getFileNameFromHeaders(response);
+
+                        if (totalBytes <= 0 || totalBytes > ProbeCache.SMALL_FILE_BYTES
+                            || mimeType != null && (mimeType.contains("text/html") || mimeType.contains("text/plain"))
+                            || Metalink.isMetalink(fileUrl, mimeType)
+                            || detectedFileName == null || detectedFileName.isEmpty()) {
+                            log.debug("Not a small file, falling back to a regular download: {}", fileUrl);
+                            probeCache.put(fileUrl, response);
+                            return response;
+                        }
+
+                        targetFile = resolveTargetFile(queueEntry, fileUrl, detectedFileName);
+
+                        transfer = transferCoalescer.join(TransferCoalescer.getKey(response), targetFile);
+                        if (transfer.isLeader() && !writeSmallFile(queueEntry, response, fileUrl, totalBytes, targetFile, progress)) {
+                            return null;
+                        }
+                    }
+                }
+
+                if (!transfer.isLeader()) {
+                    // The body we were sent is dropped, the permit is of more use to others while we wait.
+                    queueEntry.updateStatus(DownloadStatusEnum.DOWNLOADING, PREFIX + "Waiting for an identical download in progress");
+
+                    if (transfer.await(() -> isAlive(queueEntry))) {
+                        log.info("Received {} from an identical download", targetFile);
+                        return null;
+                    }
+
+                    log.info("Identical download failed, fetching {} independently", fileUrl);
+                    continue;
+                }
+
+                // Looked for once the permit is released, as the checksum file may well be served by the same host.
+                IntegrityDigest expectedDigest = main.getConfig().isDirectHttpVerifyIntegrity()
+                    ? findExpectedDigest(queueEntry, transport, fileUrl, response) : null;
+
+                if (expectedDigest != null) {
+                    TailHasher tailHasher = new TailHasher(expectedDigest);
+                    try (ChunkFileWriter fileReader = new ChunkFileWriter(targetFile, false)) {
+                        tailHasher.catchUp(fileReader, totalBytes);
+                    }
+
+                    verifyIntegrity(tailHasher, fileUrl, targetFile, getManifestFile(targetFile));
+                }
+
+                probeCache.recordFileSize(fileUrl, totalBytes);
+
+                log.info("Download complete: " + targetFile.getAbsolutePath());
+                success = true;
+                return null;
+            } finally {
+                if (transfer != null && transfer.isLeader()) {
+                    transfer.finish(success);
+                }
+            }
+        }
+
+        return null;
+    }
+
+    /**
+     * Writes the body of a small file to disk. Returns false if the download was stopped meanwhile.
+     */
+    private boolean writeSmallFile(QueueEntry queueEntry, HttpTransportResponse response, URL fileUrl,
+        long totalBytes, File targetFile, TransferProgress progress) throws Exception {
+        BandwidthLimiter.Lease bandwidthLease = manager.getBandwidthLimiter().getLease(queueEntry);
+
+        progress.start(totalBytes, 0, () -> 1);
+
+        long position = 0;
+        boolean complete = false;
+
+        Files.deleteIfExists(getManifestFile(targetFile).toPath());
+        Files.deleteIfExists(targetFile.toPath());
+
+        ByteBuffer buffer = main.getBufferPool().acquire(() -> isAlive(queueEntry));
+        if (buffer == null) {
+            return false;
+        }
+
+        try (ReadableByteChannel source = Channels.newChannel(response.getBody());
+             ChunkFileWriter fileWriter = new ChunkFileWriter(targetFile, false)) {
+            while (isAlive(queueEntry)) {
+                buffer.clear();
+
+                int bytesRead = source.read(buffer);
+                if (bytesRead == -1) {
+                    break;
+                }
+
+                if (!bandwidthLease.acquire(bytesRead, () -> isAlive(queueEntry))) {
+                    break;
+                }
+
+                buffer.flip();
+                fileWriter.write(buffer, position);
+                position += bytesRead;
+
+                progress.add(bytesRead);
+            }
+
+            complete = position == totalBytes;
         } finally {
-            if (connection != null) {
-                connection.disconnect();
+            main.getBufferPool().release(buffer);
+
+            if (!complete) {
+                Files.deleteIfExists(targetFile.toPath());
             }
         }
+
+        if (!complete) {
+            if (!isAlive(queueEntry)) {
+                return false;
+            }
+
+            throw new IOException("Connection closed before the end of the file: " + fileUrl);
+        }
+
+        return true;
     }
 
-    private boolean downloadFile(QueueEntry queueEntry, ProgressUpdater progressCallback) throws Exception {
+    @Nullable
+    private Metalink fetchMetalink(QueueEntry queueEntry, HttpTransport transport,
+        URL metalinkUrl) throws InterruptedException {
+        try (HostConnectionLimiter.Permit permit = manager.getConnectionLimiter().acquire(
+            metalinkUrl.toString(), () -> isAlive(queueEntry))) {
+            if (permit == null) {
+                return null;
+            }
+
+            try (HttpTransportResponse response = transport.send("GET", metalinkUrl, Collections.emptyMap())) {
+                if (response.getStatusCode() != HttpURLConnection.HTTP_OK) {
+                    throw new IOException("Server returned HTTP error code: " + response.getStatusCode());
+                }
+
+                byte[] content = response.getBody().readNBytes(MAX_METALINK_BYTES);
+
+                Metalink metalink = Metalink.parse(new String(content, StandardCharsets.UTF_8));
+                if (metalink != null) {
+                    log.info("Metalink lists {} sources for {}", metalink.getUrls().size(), metalinkUrl);
+                }
+
+                return metalink;
+            } catch (IOException e) {
+                log.error("Cannot read metalink {}: {}", metalinkUrl, e.getMessage());
+                return null;
+            }
+        }
+    }
+
+    /**
+     * Probes the candidate mirrors in parallel, keeping those that serve a file of the same size with
+     * support for ranges. Digests are compared when both sides advertise one; entity tags are not,
+     * as each server derives its own.
+     */
+    private MirrorSet createMirrorSet(QueueEntry queueEntry, HttpTransport transport, URL fileUrl,
+        HttpTransportResponse response, List<URL> candidates) throws InterruptedException {
+        List<URL> accepted = new ArrayList<>();
+        accepted.add(fileUrl);
+
+        Set<String> seen = new HashSet<>();
+        seen.add(fileUrl.toString());
+
+        IntegrityDigest primaryDigest = IntegrityDigest.fromRepresentationHeaders(response::getHeader);
+
+        List<Future<URL>> probes = new ArrayList<>();
+        for (URL candidate : candidates) {
+            if (probes.size() >= MAX_MIRRORS || !seen.add(candidate.toString())) {
+                continue;
+            }
+
+            probes.add(chunkThreadPool.submit(() -> {
+                HttpTransportResponse mirrorResponse = probeSource(queueEntry, transport, candidate);
+                if (mirrorResponse == null) {
+                    return null;
+                }
+
+                if (mirrorResponse.getContentLength() != response.getContentLength()
+                    || !"bytes".equalsIgnoreCase(mirrorResponse.getHeader("Accept-Ranges"))) {
+                    log.info("Ignoring mirror {}, size or range support differs", candidate);
+                    return null;
+                }
+
+                IntegrityDigest mirrorDigest = IntegrityDigest.fromRepresentationHeaders(mirrorResponse::getHeader);
+                if (primaryDigest != null && mirrorDigest != null
+                    && primaryDigest.getAlgorithm().equals(mirrorDigest.getAlgorithm())
+                    && !Arrays.equals(primaryDigest.getExpected(), mirrorDigest.getExpected())) {
+                    log.info("Ignoring mirror {}, digest differs", candidate);
+                    return null;
+                }
+
+                return candidate;
+            }));
+        }
+
+        for (Future<URL> probe : probes) {
+            try {
+                URL mirrorUrl = probe.get();
+                if (mirrorUrl != null) {
+                    accepted.add(mirrorUrl);
+                }
+            } catch (ExecutionException e) {
+                log.debug("Mirror probe failed: {}", e.getMessage());
+            }
+        }
+
+        if (accepted.size() > 1) {
+            log.info("Downloading from {} sources: {}", accepted.size(), accepted);
+        }
+
+        return new MirrorSet(accepted);
+    }
+
+    /**
+     * Looks for a whole-file digest in the probe headers, then in a {@code .sha256} file published next to the download.
+     */
+    @Nullable
+    private IntegrityDigest findExpectedDigest(QueueEntry queueEntry, HttpTransport transport,
+        URL fileUrl, HttpTransportResponse probeResponse) {
+        IntegrityDigest digest = IntegrityDigest.fromRepresentationHeaders(probeResponse::getHeader);
+
+        if (digest == null) {
+            String url = fileUrl.toString();
+            int end = url.length();
+            for (char c : new char[] {'?', '#'}) {
+                int index = url.indexOf(c);
+                if (index != -1) {
+                    end = Math.min(end, index);
+                }
+            }
+
+            try {
+                URL sidecarUrl = new URI(url.substring(0, end) + ".sha256").toURL();
+
+                try (HostConnectionLimiter.Permit permit = manager.getConnectionLimiter().acquire(
+                    sidecarUrl.toString(), () -> isAlive(queueEntry))) {
+                    if (permit != null) {
+                        try (HttpTransportResponse response = transport.send("GET", sidecarUrl, Collections.emptyMap())) {
+                            if (response.getStatusCode() == HttpURLConnection.HTTP_OK) {
+                                byte[] content = response.getBody().readNBytes(MAX_SIDECAR_BYTES);
+                                digest = IntegrityDigest.parseSha256Sidecar(new String(content, StandardCharsets.US_ASCII));
+                            }
+                        }
+                    }
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } catch (Exception e) {
+                log.debug("No checksum file found for {}: {}", fileUrl, e.getMessage());
+            }
+        }
+
+        if (digest != null) {
+            log.info("Verifying download against {}", digest);
+        }
+
+        return digest;
+    }
+
+    /**
+     * A digest covers the whole file, so a mismatch cannot be narrowed down to a single range.
+     * The partial state is thrown away, leaving the retry to start over.
+     */
+    private void verifyIntegrity(TailHasher tailHasher, URL fileUrl,
+        File targetFile, File manifestFile) throws IOException {
+        if (tailHasher.verify()) {
+            log.info("Integrity verified: {}", fileUrl);
+            return;
+        }
+
+        Files.deleteIfExists(targetFile.toPath());
+        Files.deleteIfExists(manifestFile.toPath());
+
+        throw new IOException("Integrity check failed ("
+            + tailHasher.getExpectedDigest().getSource() + "): " + fileUrl);
+    }
+
+    private boolean downloadFile(QueueEntry queueEntry, TransferProgress progress) throws Exception {
         URL fileUrl = new URI(queueEntry.getUrl()).toURL();
-        Pair<HttpURLConnection, Integer> connectionPair = openConnection(fileUrl, "HEAD");
+        HttpTransport transport = manager.getHttpTransport();
 
-        if (connectionPair == null) {
-            connectionPair = openConnection(fileUrl, "GET");
+        HttpTransportResponse response = null;
+        if (probeCache.isSmallFile(fileUrl)) {
+            response = fetchSmallFile(queueEntry, transport, fileUrl, progress);
+            if (response == null) {
+                return isAlive(queueEntry);
+            }
         }
 
-        if (connectionPair == null) {
+        if (response == null) {
+            response = probeSource(queueEntry, transport, fileUrl);
+        }
+
+        if (response == null) {
+            if (!isAlive(queueEntry)) {
+                return false;
+            }
+
             throw new IOException("Connection failed: " + fileUrl);
         }
 
-        if (connectionPair.getValue() != HttpURLConnection.HTTP_OK) {
-            throw new IOException("Server returned HTTP error code: " + connectionPair.getValue());
+        Metalink metalink = null;
+        if (main.getConfig().isDirectHttpUseMirrors() && Metalink.isMetalink(fileUrl, response.getContentType())) {
+            metalink = fetchMetalink(queueEntry, transport, fileUrl);
+        }
+
+        List<URL> mirrorUrls = new ArrayList<>();
+        if (metalink != null) {
+            // The document only describes the file, the first of its sources that answers becomes the primary one.
+            response = null;
+
+            for (URL sourceUrl : metalink.getUrls()) {
+                if (response != null) {
+                    mirrorUrls.add(sourceUrl);
+                    continue;
+                }
+
+                HttpTransportResponse sourceResponse = probeSource(queueEntry, transport, sourceUrl);
+                if (sourceResponse != null && (metalink.getSize() <= 0
+                    || sourceResponse.getContentLength() == metalink.getSize())) {
+                    fileUrl = sourceUrl;
+                    response = sourceResponse;
+                }
+            }
+
+            if (response == null) {
+                if (!isAlive(queueEntry)) {
+                    return false;
+                }
+
+                throw new IOException("None of the sources listed by the metalink are available: " + fileUrl);
+            }
         }
 
-        HttpURLConnection connection = connectionPair.getKey();
+        IntegrityDigest expectedDigest = null;
+        if (main.getConfig().isDirectHttpVerifyIntegrity()) {
+            expectedDigest = metalink != null && metalink.getDigest() != null
+                ? metalink.getDigest() : findExpectedDigest(queueEntry, transport, fileUrl, response);
+        }
 
-        String mimeType = connection.getContentType();
+        String mimeType = response.getContentType();
         log.info("MIME Type: " + mimeType);
-        if (mimeType.contains("text/html") || mimeType.contains("text/plain")) {
+        if (mimeType != null && (mimeType.contains("text/html") || mimeType.contains("text/plain"))) {
             throw new IOException("Unsupported URL: " + fileUrl);
         }
 
-        long totalBytes = connection.getContentLengthLong();
-        log.info("Total file size: {}", StringUtils.getHumanReadableFileSize(totalBytes));
-        if (totalBytes <= 0) {
-            throw new IOException("Cannot determine content length: " + fileUrl);
-        }
+        long totalBytes = response.getContentLength();
+        log.info("Total file size: {}", totalBytes > 0 ? StringUtils.getHumanReadableFileSize(totalBytes) : "unknown");
 
-        String detectedFileName = getFileNameFromHeaders(connection);
+        String detectedFileName = metalink != null && metalink.getFileName() != null
+            ? metalink.getFileName() : getFileNameFromHeaders(response);
         log.info("Detected filename: " + detectedFileName);
         if (detectedFileName == null || detectedFileName.isEmpty()) {
             throw new IOException("Cannot determine filename: " + fileUrl);
         }
 
-        String suggestedUrlPath = URLUtils.getDirectoryPath(fileUrl.toString());
+        File targetFile = resolveTargetFile(queueEntry, fileUrl, detectedFileName);
 
-        Path basePath = queueEntry.getTmpDirectory().toPath();
-        Path urlPath = Paths.get(suggestedUrlPath != null ? suggestedUrlPath : "");
-        Path targetPath = basePath.resolve(urlPath);
+        String transferKey = TransferCoalescer.getKey(response);
 
-        int pathLength = targetPath.resolve(detectedFileName).toString().length();
+        TransferCoalescer.Handle transfer;
+        while (true) {
+            transfer = transferCoalescer.join(transferKey, targetFile);
+            if (transfer.isLeader()) {
+                break;
+            }
 
-        if (pathLength > 260 && GDownloader.isWindows()) { // Microsoft shenanigans
-            log.info("Long path detected, trimming {}", targetPath);
-            targetPath = DirectoryUtils.trimPathToFit(basePath, urlPath, detectedFileName, 260);
-            log.info("Trimmed to {}", targetPath);
+            queueEntry.updateStatus(DownloadStatusEnum.DOWNLOADING, PREFIX + "Waiting for an identical download in progress");
+
+            if (transfer.await(() -> isAlive(queueEntry))) {
+                log.info("Received {} from an identical download", targetFile);
+                return true;
+            }
+
+            if (!isAlive(queueEntry)) {
+                return false;
+            }
+
+            log.info("Identical download failed, fetching {} independently", fileUrl);
         }
 
-        Files.createDirectories(targetPath);
+        boolean success = false;
+        try {
+            success = transferFile(queueEntry, transport, fileUrl, response,
+                mirrorUrls, expectedDigest, totalBytes, targetFile, progress);
+
+            return success;
+        } finally {
+            transfer.finish(success);
+        }
+    }
 
-        File targetFile = new File(targetPath.toFile(), detectedFileName);
+    private boolean transferFile(QueueEntry queueEntry, HttpTransport transport, URL fileUrl,
+        HttpTransportResponse response, List<URL> mirrorUrls, @Nullable IntegrityDigest expectedDigest,
+        long totalBytes, File targetFile, TransferProgress progress) throws Exception {
+        if (totalBytes <= 0) {
+            log.info("Content length is unknown, streaming {}", fileUrl);
+            return streamFile(queueEntry, transport, fileUrl, expectedDigest, targetFile, progress);
+        }
 
-        long downloadedBytesSoFar = targetFile.exists() ? targetFile.length() : 0;
+        boolean rangesSupported = "bytes".equalsIgnoreCase(response.getHeader("Accept-Ranges"));
+        // Splitting a small file costs more round trips than it saves.
+        boolean chunked = rangesSupported && totalBytes > ProbeCache.SMALL_FILE_BYTES;
+
+        String entityTag = response.getHeader("ETag");
+        String lastModified = response.getHeader("Last-Modified");
+
+        // Partial data is only ever continued if it is known to come from the same version of the remote file.
+        File manifestFile = getManifestFile(targetFile);
+        ChunkManifest manifest = loadManifest(manifestFile, targetFile, totalBytes, entityTag, lastModified);
+
+        long downloadedBytesSoFar;
+        if (manifest != null) {
+            // A single stream can only continue from the first gap left by a ranged attempt.
+            downloadedBytesSoFar = chunked ? manifest.getCommittedBytes() : manifest.getContiguousBytes();
+            log.info("Resuming download from manifest, {} of {} already committed",
+                StringUtils.getHumanReadableFileSize(downloadedBytesSoFar),
+                StringUtils.getHumanReadableFileSize(totalBytes));
+        } else if (targetFile.exists() && targetFile.length() == totalBytes) {
+            // Manifests are dropped once a download completes, so this is what a finished one leaves behind.
+            downloadedBytesSoFar = totalBytes;
+        } else {
+            downloadedBytesSoFar = 0;
+        }
 
         long remainingBytes = totalBytes - downloadedBytesSoFar;
         if (remainingBytes <= 0) {
             log.debug("Download already complete.");
+            Files.deleteIfExists(manifestFile.toPath());
             return true;
         }
 
-        AtomicLong downloadedBytes = new AtomicLong(downloadedBytesSoFar);
         AtomicInteger activeChunkCount = new AtomicInteger(0);
+        progress.start(totalBytes, downloadedBytesSoFar, activeChunkCount::get);
+
         AtomicBoolean abortHook = new AtomicBoolean();
 
-        if (!"bytes".equalsIgnoreCase(connection.getHeaderField("Accept-Ranges"))) {
-            log.info("Server does not support multi-threading, downloading single-threaded.");
+        BandwidthLimiter.Lease bandwidthLease = manager.getBandwidthLimiter().getLease(queueEntry);
+
+        TailHasher tailHasher = expectedDigest != null ? new TailHasher(expectedDigest) : null;
+
+        // Sent along with every range, so that a server holding a newer version answers with all of it instead.
+        String ifRange = getIfRangeValidator(entityTag, lastModified);
+        AtomicBoolean remoteChanged = new AtomicBoolean();
+
+        if (!chunked) {
+            if (!rangesSupported) {
+                log.info("Server does not support multi-threading, downloading single-threaded.");
+            }
+
             log.debug("Start offset: {} remaining: {}", downloadedBytesSoFar, remainingBytes);
 
+            if (manifest == null) {
+                // Whatever is on disk was not tracked by a manifest, so it cannot be trusted.
+                Files.deleteIfExists(targetFile.toPath());
+            }
+
+            ChunkManifest streamManifest = createManifest(fileUrl, totalBytes, entityTag, lastModified, 1);
+            ChunkManifest.Chunk chunk = streamManifest.getChunks().get(0);
+            chunk.setCommittedBytes(downloadedBytesSoFar);
+
+            saveManifest(manifestFile, streamManifest, null);
+
+            HostConnectionLimiter.Permit permit = manager.getConnectionLimiter().acquire(fileUrl.toString(),
+                () -> isAlive(queueEntry) && !abortHook.get());
+            if (permit == null) {
+                return false;
+            }
+
+            boolean success;
+
             activeChunkCount.incrementAndGet();
-            try {
-                ChunkData chunkData = ChunkData.builder()
+            try (permit; ChunkFileWriter fileWriter = new ChunkFileWriter(targetFile, false)) {
+                if (tailHasher != null) {
+                    // Whatever a previous session left on disk has to be hashed before new bytes can be.
+                    tailHasher.catchUp(fileWriter, downloadedBytesSoFar);
+                }
+
+                AtomicLong lastManifestSave = new AtomicLong(System.nanoTime());
+
+                ChunkTransfer chunkTransfer = ChunkTransfer.builder()
                     .chunkId(0)
                     .abortHook(abortHook)
-                    .chunked(downloadedBytesSoFar > 0)
-                    .queueEntry(queueEntry)
+                    .chunked(false)
                     .fileUrl(fileUrl)
-                    .filePath(targetFile)
-                    .startByte(downloadedBytesSoFar)
-                    .endByte(totalBytes - 1)
+                    .transport(transport)
+                    .fileWriter(fileWriter)
+                    .chunk(chunk)
                     .totalBytes(totalBytes)
-                    .downloadedBytes(downloadedBytes)
-                    .activeChunkCount(activeChunkCount)
-                    .progressCallback(progressCallback)
+                    .progress(progress)
+                    .bufferPool(main.getBufferPool())
+                    .verifyRanges(main.getConfig().isDirectHttpVerifyIntegrity())
+                    .alive(() -> isAlive(queueEntry) && !abortHook.get())
+                    .cancellationToken(queueEntry.getCancellationToken())
+                    .bandwidthLease(bandwidthLease)
+                    .tailHasher(tailHasher)
+                    .ifRange(ifRange)
+                    .remoteChanged(remoteChanged)
+                    .manifest(streamManifest)
+                    .onCommit(() -> trySaveManifest(manifestFile, streamManifest, fileWriter, lastManifestSave))
                     .build();
 
-                return downloadChunk(chunkData);
+                success = chunkTransfer.transfer();
+
+                if (success && tailHasher != null) {
+                    tailHasher.catchUp(fileWriter, totalBytes);
+                }
             } finally {
                 activeChunkCount.decrementAndGet();
+
+                // The writer is closed by now, so the manifest cannot claim bytes that are not on disk.
+                saveManifest(manifestFile, streamManifest, null);
+            }
+
+            if (success && tailHasher != null) {
+                verifyIntegrity(tailHasher, fileUrl, targetFile, manifestFile);
+            }
+
+            if (success) {
+                Files.deleteIfExists(manifestFile.toPath());
+                probeCache.recordFileSize(fileUrl, totalBytes);
             }
+
+            return success;
+        }
+
+        if (main.getConfig().isDirectHttpUseMirrors()) {
+            mirrorUrls.addAll(MirrorSet.parseDuplicateLinks(response.getHeaderValues("Link"), fileUrl));
+            mirrorUrls.addAll(MirrorSet.fromPrefixes(fileUrl.toString(), main.getConfig().getDirectHttpMirrors()));
         }
 
-        // No support for cold-start resume of chunked downloads yet
-        downloadedBytes.set(0);
+        MirrorSet mirrors = createMirrorSet(queueEntry, transport, fileUrl, response, mirrorUrls);
 
-        int maxDownloadChunks = Math.clamp(manager.getMain()
+        if (manifest == null) {
+            // Whatever is on disk was not tracked by a manifest, so it cannot be trusted.
+            Files.deleteIfExists(targetFile.toPath());
+
+            if (main.getConfig().isDirectHttpPlayWhileDownloading()) {
+                // Small pieces, so that the start of the file is complete early on.
+                int pieceCount = (int)((totalBytes + getPieceSize(totalBytes) - 1) / getPieceSize(totalBytes));
+                manifest = createManifest(fileUrl, totalBytes, entityTag, lastModified, pieceCount);
+            } else {
+                manifest = createManifest(fileUrl, totalBytes, entityTag, lastModified);
+            }
+        }
+
+        ChunkManifest chunkManifest = manifest;
+        saveManifest(manifestFile, chunkManifest, null);
+
+        ChunkFileWriter fileWriter = new ChunkFileWriter(targetFile,
+            main.getConfig().isDirectHttpSequentialWrites(), main.getBufferPool());
+
+        try {
+            fileWriter.preallocate(totalBytes);
+        } catch (IOException e) {
+            fileWriter.close();
+            throw e;
+        }
+
+        AtomicLong lastManifestSave = new AtomicLong(System.nanoTime());
+
+        ChunkScheduler scheduler;
+        if (main.getConfig().isDirectHttpPlayWhileDownloading()) {
+            String fileName = targetFile.getName().toLowerCase();
+            String extension = fileName.substring(fileName.lastIndexOf('.') + 1);
+
+            scheduler = new ChunkScheduler(chunkManifest, true,
+                TAIL_INDEXED_EXTENSIONS.contains(extension) ? TAIL_PRIORITY_BYTES : 0);
+        } else {
+            scheduler = new ChunkScheduler(chunkManifest);
+        }
+
+        PieceBitmap pieces = PieceBitmap.fromManifest(chunkManifest, getPieceSize(totalBytes));
+
+        // Lets a player open the file while it downloads, reading no further than the gap-free prefix.
+        queueEntry.getPartialFile().set(targetFile);
+        queueEntry.getPreviewableBytes().set(pieces.getContiguousBytes());
+        AtomicInteger chunkCounter = new AtomicInteger();
+
+        String host = URLUtils.getHost(queueEntry.getUrl());
+
+        int maxConcurrency = Math.clamp(manager.getMain()
             .getConfig().getDirectHttpMaxDownloadChunks(), 1, 20);
 
-        long chunkSize = totalBytes / maxDownloadChunks;
+        ChunkConcurrencyController concurrencyController = new ChunkConcurrencyController(
+            getLearnedConcurrency(host), maxConcurrency);
 
-        List<Future<?>> futures = new ArrayList<>();
+        LocalAddressSet localAddresses = getLocalAddresses(transport);
 
-        for (int i = 0; i < maxDownloadChunks; i++) {
-            int chunkId = i;
-            long startByte = i * chunkSize;
-            long endByte = (i == maxDownloadChunks - 1) ? totalBytes - 1 : (startByte + chunkSize - 1);
+        AtomicInteger liveWorkers = new AtomicInteger();
+        String primarySource = fileUrl.toString();
+        BooleanSupplier alive = () -> isAlive(queueEntry) && !abortHook.get();
 
-            log.error("Chunk {} start/end {}/{}", i, startByte, endByte);
-            activeChunkCount.incrementAndGet();
+        Runnable worker = () -> {
+            boolean retired = false;
 
-            futures.add(chunkThreadPool.submit(() -> {
-                try {
-                    ChunkData chunkData = ChunkData.builder()
-                        .chunkId(chunkId)
-                        .abortHook(abortHook)
-                        .chunked(true)
-                        .queueEntry(queueEntry)
-                        .fileUrl(fileUrl)
-                        .filePath(targetFile)
-                        .startByte(startByte)
-                        .endByte(endByte)
-                        .totalBytes(totalBytes)
-                        .downloadedBytes(downloadedBytes)
-                        .activeChunkCount(activeChunkCount)
-                        .progressCallback(progressCallback)
-                        .build();
-
-                    downloadChunk(chunkData);
-                } catch (Exception e) {
-                    log.error("Error downloading chunk: " + e.getMessage());
-                    throw new RuntimeException(e);
-                } finally {
-                    activeChunkCount.decrementAndGet();
+            try {
+                while (alive.getAsBoolean()) {
+                    int live = liveWorkers.get();
+                    if (live > concurrencyController.getTarget()) {
+                        if (liveWorkers.compareAndSet(live, live - 1)) {
+                            retired = true;
+                            return;
+                        }
+
+                        continue;
+                    }
+
+                    MirrorSet.Mirror mirror = mirrors.pick();
+                    try {
+                        // Take a connection slot before taking a range, so that a worker waiting
+                        // in line is never picked as a straggler by the chunk scheduler.
+                        HostConnectionLimiter.Permit permit;
+                        try {
+                            permit = manager.getConnectionLimiter().acquire(mirror.getUrl().toString(), alive);
+                        } catch (InterruptedException e) {
+                            Thread.currentThread().interrupt();
+                            return;
+                        }
+
+                        if (permit == null) {
+                            return;
+                        }
+
+                        try (permit) {
+                            ChunkManifest.Chunk chunk = scheduler.next();
+                            if (chunk == null) {
+                                return;
+                            }
+
+                            int chunkId = chunkCounter.getAndIncrement();
+
+                            log.debug("Chunk {} start/end {}/{} committed {}", chunkId,
+                                chunk.getStartByte(), chunk.getEndByte(), chunk.getCommittedBytes());
+
+                            LocalAddressSet.LocalAddress localAddress = localAddresses != null
+                                ? localAddresses.pick(System.nanoTime()) : null;
+
+                            activeChunkCount.incrementAndGet();
+                            try {
+                                ChunkTransfer chunkTransfer = ChunkTransfer.builder()
+                                    .chunkId(chunkId)
+                                    .abortHook(abortHook)
+                                    .chunked(true)
+                                    .fileUrl(mirror.getUrl())
+                                    .transport(transport)
+                                    .fileWriter(fileWriter)
+                                    .chunk(chunk)
+                                    .totalBytes(totalBytes)
+                                    .progress(progress)
+                                    .bufferPool(main.getBufferPool())
+                                    .verifyRanges(main.getConfig().isDirectHttpVerifyIntegrity())
+                                    .alive(() -> isAlive(queueEntry) && !abortHook.get())
+                                    .cancellationToken(queueEntry.getCancellationToken())
+                                    .bandwidthLease(bandwidthLease)
+                                    .concurrencyController(concurrencyController)
+                                    .mirrors(mirrors)
+                                    .mirror(mirror)
+                                    .localAddresses(localAddresses)
+                                    .localAddress(localAddress)
+                                    // Validators only hold for the source they were read from.
+                                    .ifRange(mirror.getUrl().toString().equals(primarySource) ? ifRange : null)
+                                    .remoteChanged(remoteChanged)
+                                    .scheduler(scheduler)
+                                    .pieces(pieces)
+                                    .tailHasher(tailHasher)
+                                    .manifest(chunkManifest)
+                                    .onCommit(() -> trySaveManifest(manifestFile, chunkManifest, fileWriter, lastManifestSave))
+                                    .build();
+
+                                chunkTransfer.transfer();
+                            } catch (Exception e) {
+                                log.error("Error downloading chunk: " + e.getMessage());
+                                throw new RuntimeException(e);
+                            } finally {
+                                activeChunkCount.decrementAndGet();
+                                scheduler.release(chunk);
+
+                                if (localAddress != null) {
+                                    localAddresses.release(localAddress);
+                                }
+                            }
+                        }
+                    } finally {
+                        mirrors.release(mirror);
+                    }
                 }
-            }));
-        }
+            } finally {
+                if (!retired) {
+                    liveWorkers.decrementAndGet();
+                }
+            }
+        };
+
+        List<Future<?>> futures = new ArrayList<>();
 
         try {
-            for (Future<?> future : futures) {
-                future.get();
+            // Keep as many workers around as the controller asks for, until there is nothing left to hand out.
+            while (true) {
+                Iterator<Future<?>> iterator = futures.iterator();
+                while (iterator.hasNext()) {
+                    Future<?> future = iterator.next();
+                    if (future.isDone()) {
+                        iterator.remove();
+                        future.get();
+                    }
+                }
+
+                boolean workLeft = alive.getAsBoolean() && scheduler.hasAssignableWork();
+
+                if (workLeft) {
+                    concurrencyController.sample(progress.getBytes(), activeChunkCount.get(), System.nanoTime());
+                    mirrors.sample(System.nanoTime());
+
+                    if (localAddresses != null) {
+                        localAddresses.sample(System.nanoTime());
+                    }
+
+                    while (liveWorkers.get() < concurrencyController.getTarget()) {
+                        liveWorkers.incrementAndGet();
+                        futures.add(chunkThreadPool.submit(worker));
+                    }
+                } else if (futures.isEmpty() && !(alive.getAsBoolean() && scheduler.hasDeferredWork())) {
+                    break;
+                }
+
+                long contiguousBytes = pieces.getContiguousBytes();
+
+                // Bytes still held by a sequential writer are not in the file yet.
+                queueEntry.getPreviewableBytes().set(Math.min(contiguousBytes, fileWriter.getFirstPendingPosition()));
+
+                if (tailHasher != null && contiguousBytes - tailHasher.getHashedBytes() >= HASH_STEP_BYTES) {
+                    // Ranges that completed ahead of the hash frontier are read back while still in the page cache.
+                    tailHasher.catchUp(fileWriter, contiguousBytes);
+                }
+
+                Thread.sleep(SUPERVISOR_INTERVAL_MILLIS);
+            }
+
+            if (tailHasher != null && chunkManifest.getCommittedBytes() == totalBytes) {
+                tailHasher.catchUp(fileWriter, totalBytes);
             }
         } catch (Exception e) {
+            abortHook.set(true);
             throw new IOException("Failed to download a chunk: " + fileUrl + ": " + e.getMessage(), e);
+        } finally {
+            // The other workers are still writing when one fails, the file cannot be closed under them.
+            awaitWorkers(futures);
+
+            queueEntry.getPartialFile().set(null);
+            queueEntry.getPreviewableBytes().set(0);
+
+            try {
+                saveManifest(manifestFile, chunkManifest, fileWriter);
+            } finally {
+                fileWriter.close();
+            }
         }
 
-        if (downloadedBytes.get() != totalBytes) {
+        if (remoteChanged.get()) {
+            Files.deleteIfExists(manifestFile.toPath());
+            Files.deleteIfExists(targetFile.toPath());
+
+            throw new RemoteFileChangedException(fileUrl);
+        }
+
+        rememberConcurrency(host, concurrencyController.getTarget());
+
+        if (chunkManifest.getCommittedBytes() != totalBytes) {
             throw new IOException("Download incomplete: " + fileUrl);
         }
 
+        if (tailHasher != null) {
+            verifyIntegrity(tailHasher, fileUrl, targetFile, manifestFile);
+        }
+
+        Files.deleteIfExists(manifestFile.toPath());
+        probeCache.recordFileSize(fileUrl, totalBytes);
+
         log.info("Download complete: " + targetFile.getAbsolutePath());
+
+        if (log.isDebugEnabled()) {
+            log.debug("Buffer pool: {}", main.getBufferPool().getStats());
+        }
         return true;
     }
 
-    private boolean downloadChunk(ChunkData chunkData) throws IOException {
-        int attempt = 0;
-        boolean success = false;
-        int currentByteOffset = 0;
+    /**
+     * Returns the local addresses chunk connections are spread over, or null to use the default route.
+     * The set is rebuilt whenever the setting changes.
+     */
+    @Nullable
+    private synchronized LocalAddressSet getLocalAddresses(HttpTransport transport) {
+        List<String> entries = main.getConfig().getDirectHttpLocalAddresses();
+        if (entries.isEmpty()) {
+            return null;
+        }
 
-        Supplier<Boolean> alive = () -> isAlive(chunkData.getQueueEntry()) && !chunkData.getAbortHook().get();
+        if (!transport.supportsLocalAddress()) {
+            if (!localAddressWarningShown) {
+                log.warn("Local addresses are configured, but the current HTTP engine cannot bind connections to them");
+                localAddressWarningShown = true;
+            }
 
-        while (attempt < MAX_CHUNK_RETRIES && !success && alive.get()) {
-            HttpURLConnection connection = null;
-            try {
-                connection = (HttpURLConnection)chunkData.getFileUrl().openConnection(getProxySettings());
-                connection.setRequestMethod("GET");
-
-                long startOffset = chunkData.getStartByte() + currentByteOffset;
-
-                if (chunkData.isChunked()) {
-                    connection.setRequestProperty("Range", "bytes=" + startOffset + "-" + chunkData.getEndByte());
-                }
-
-                int responseCode = connection.getResponseCode();
-
-                if (responseCode == HttpURLConnection.HTTP_PARTIAL
-                    || responseCode == HttpURLConnection.HTTP_OK) {
-                    try (InputStream inputStream = connection.getInputStream();
-                         RandomAccessFile outputFile = new RandomAccessFile(chunkData.getFilePath(), "rw")) {
-                        if (responseCode == HttpURLConnection.HTTP_PARTIAL) {
-                            log.debug("Partial download accepted, resuming from {} <- offset {}", chunkData.getStartByte(), startOffset);
-                            outputFile.seek(startOffset); // Move to the start of this chunk
-                        } else if (chunkData.isChunked()) {
-                            if (chunkData.getStartByte() != 0 && chunkData.getEndByte() != chunkData.getTotalBytes() - 1) {
-                                throw new IOException("Partial download refused by server");
-                            } else {
-                                log.debug("Partial download refused, resetting progress");
-                                chunkData.getDownloadedBytes().set(0);
-                            }
-                        }
+            return null;
+        }
 
-                        long startTime = System.nanoTime();
-                        long totalDownloadedAtStart = chunkData.getDownloadedBytes().get();
-                        long lastCallbackTime = System.nanoTime();
+        if (localAddresses == null || !entries.equals(localAddressEntries)) {
+            localAddresses = LocalAddressSet.fromSettings(entries);
+            localAddressEntries = new ArrayList<>(entries);
 
-                        byte[] buffer = new byte[BUFFER_SIZE];
-                        int bytesRead;
+            log.info("Spreading chunk connections over local addresses {}", localAddresses.getAddresses());
+        }
 
-                        while ((bytesRead = inputStream.read(buffer)) != -1 && alive.get()) {
-                            outputFile.write(buffer, 0, bytesRead);
-                            currentByteOffset += bytesRead;
+        return localAddresses.isEmpty() ? null : localAddresses;
+    }
 
-                            long totalDownloaded = chunkData.getDownloadedBytes().addAndGet(bytesRead);
+    private int getLearnedConcurrency(String host) {
+        synchronized (learnedConcurrency) {
+            Integer learned = learnedConcurrency.get(host);
+            return learned != null ? learned : INITIAL_CONCURRENCY;
+        }
+    }
 
-                            long currentTime = System.nanoTime();
-                            if ((currentTime - lastCallbackTime) >= 1e9) {
-                                if (chunkData.getProgressCallback() == null) {
-                                    continue;
-                                }
+    private void rememberConcurrency(String host, int concurrency) {
+        synchronized (learnedConcurrency) {
+            learnedConcurrency.put(host, concurrency);
+        }
 
-                                double progress = ((double)totalDownloaded * 100) / chunkData.getTotalBytes();
+        log.debug("Remembering {} connections for {}", concurrency, host);
+    }
 
-                                // Speed
-                                long elapsedTimeNano = currentTime - startTime;
-                                double elapsedTimeSeconds = elapsedTimeNano / 1e9;
-                                long speed = (elapsedTimeSeconds > 0)
-                                    ? (long)((totalDownloaded - totalDownloadedAtStart) / elapsedTimeSeconds) : 0;
+    private ChunkManifest createManifest(URL fileUrl, long totalBytes,
+        @Nullable String entityTag, @Nullable String lastModified) {
+        int maxDownloadChunks = Math.clamp(manager.getMain()
+            .getConfig().getDirectHttpMaxDownloadChunks(), 1, 20);
 
-                                // ETA
-                                long remainingBytes = chunkData.getTotalBytes() - totalDownloaded;
-                                double remainingTimeSeconds = (speed > 0) ? (double)remainingBytes / speed : 0;
-                                long remainingTimeMillis = (long)(remainingTimeSeconds * 1000);
+        return createManifest(fileUrl, totalBytes, entityTag, lastModified, maxDownloadChunks);
+    }
 
-                                chunkData.getProgressCallback().accept(
-                                    progress,
-                                    chunkData.getTotalBytes(),
-                                    speed,
-                                    remainingTimeMillis,
-                                    chunkData.getActiveChunkCount().get()
-                                );
+    private ChunkManifest createManifest(URL fileUrl, long totalBytes,
+        @Nullable String entityTag, @Nullable String lastModified, int maxDownloadChunks) {
+        long chunkSize = totalBytes / maxDownloadChunks;
 
-                                lastCallbackTime = currentTime;
-                            }
+        ChunkManifest manifest = new ChunkManifest();
+        manifest.setUrl(fileUrl.toString());
+        manifest.setEntityTag(entityTag);
+        manifest.setLastModified(lastModified);
+        manifest.setTotalBytes(totalBytes);
+
+        for (int i = 0; i < maxDownloadChunks; i++) {
+            long startByte = i * chunkSize;
+            long endByte = (i == maxDownloadChunks - 1) ? totalBytes - 1 : (startByte + chunkSize - 1);
+
+            manifest.getChunks().add(new ChunkManifest.Chunk(startByte, endByte));
+        }
+
+        return manifest;
+    }
+
+    /**
+     * Downloads a body of unknown length over a single connection, until the server closes it. Without a length
+     * there is nothing to split into ranges or to resume from, so an interrupted stream starts over.
+     *
+     * Compressed bodies are asked for and decoded on the fly, as they cannot be resumed anyway.
+     */
+    private boolean streamFile(QueueEntry queueEntry, HttpTransport transport, URL fileUrl,
+        @Nullable IntegrityDigest expectedDigest, File targetFile, TransferProgress progress) throws Exception {
+        File manifestFile = getManifestFile(targetFile);
+        Files.deleteIfExists(manifestFile.toPath());
+        Files.deleteIfExists(targetFile.toPath());
+
+        try (HostConnectionLimiter.Permit permit = manager.getConnectionLimiter().acquire(
+            fileUrl.toString(), () -> isAlive(queueEntry))) {
+            if (permit == null) {
+                return false;
+            }
+
+            // Servers tend to label compressed archives as gzip-encoded, those are kept the way they were published.
+            String fileName = targetFile.getName().toLowerCase(Locale.ROOT);
+            boolean keepEncoded = fileName.endsWith(".gz") || fileName.endsWith(".tgz");
+
+            Map<String, String> headers = new HashMap<>();
+            if (!keepEncoded) {
+                headers.put("Accept-Encoding", ContentDecoding.ACCEPT_ENCODING);
+            }
+
+            try (HttpTransportResponse response = transport.send("GET", fileUrl, headers);
+                 CancellationToken.Registration cancelRegistration
+                 = queueEntry.getCancellationToken().onCancel(response::close)) {
+                int responseCode = response.getStatusCode();
+                if (responseCode != HttpURLConnection.HTTP_OK) {
+                    throw new HttpStatusException(responseCode,
+                        RetryScheduler.parseRetryAfter(response.getHeader("Retry-After"), System.currentTimeMillis()));
+                }
+
+                String contentEncoding = keepEncoded ? null : response.getHeader("Content-Encoding");
+
+                boolean encoded = ContentDecoding.isEncoded(contentEncoding);
+
+                // The length of an encoded body says nothing about the size of the file.
+                long totalBytes = encoded ? -1 : response.getContentLength();
+
+                // Digests describe the body as sent, which is not what ends up on disk once decoded.
+                TailHasher tailHasher = expectedDigest != null && !encoded ? new TailHasher(expectedDigest) : null;
+
+                BandwidthLimiter.Lease bandwidthLease = manager.getBandwidthLimiter().getLease(queueEntry);
+
+                progress.start(totalBytes, 0, () -> 1);
+
+                long position = 0;
+                boolean complete = false;
+
+                ByteBuffer buffer = main.getBufferPool().acquire(() -> isAlive(queueEntry));
+                if (buffer == null) {
+                    return false;
+                }
+
+                try (InputStream body = ContentDecoding.decode(response.getBody(), contentEncoding);
+                     ReadableByteChannel source = Channels.newChannel(body);
+                     ChunkFileWriter fileWriter = new ChunkFileWriter(targetFile, false)) {
+                    while (isAlive(queueEntry)) {
+                        buffer.clear();
+
+                        int bytesRead = source.read(buffer);
+                        if (bytesRead == -1) {
+                            complete = totalBytes <= 0 || position == totalBytes;
+                            break;
                         }
+
+                        if (!bandwidthLease.acquire(bytesRead, () -> isAlive(queueEntry))) {
+                            break;
+                        }
+
+                        buffer.flip();
+                        if (tailHasher != null) {
+                            tailHasher.update(buffer, position);
+                        }
+
+                        fileWriter.write(buffer, position);
+                        position += bytesRead;
+
+                        progress.add(bytesRead);
                     }
+                } finally {
+                    main.getBufferPool().release(buffer);
 
-                    log.debug("Chunk {} has quit", chunkData.getChunkId());
-                    success = alive.get();
-                } else {
-                    throw new IOException("Failed to connect with HTTP code: " + responseCode);
+                    if (!complete) {
+                        Files.deleteIfExists(targetFile.toPath());
+                    }
                 }
-            } catch (Exception e) {
-                attempt++;
-                log.error("Error on attempt {}: {}", attempt, e.getMessage());
 
-                if (attempt == MAX_CHUNK_RETRIES) {
-                    chunkData.getAbortHook().set(true);
-                    throw new IOException("Failed to download file after " + MAX_CHUNK_RETRIES + " attempts: " + e.getMessage(), e);
+                if (!complete) {
+                    if (!isAlive(queueEntry)) {
+                        return false;
+                    }
+
+                    throw new IOException("Connection closed before the end of the file: " + fileUrl);
                 }
-            } finally {
-                if (connection != null) {
-                    connection.disconnect();
+
+                if (tailHasher != null) {
+                    verifyIntegrity(tailHasher, fileUrl, targetFile, manifestFile);
                 }
+
+                log.info("Download complete: {} ({})", targetFile.getAbsolutePath(),
+                    StringUtils.getHumanReadableFileSize(position));
+                return true;
+            }
+        }
+    }
+
+    /**
+     * Returns where a download goes inside its temporary directory, mirroring the directories of its URL.
+     */
+    private File resolveTargetFile(QueueEntry queueEntry, URL fileUrl, String detectedFileName) throws IOException {
+        String suggestedUrlPath = URLUtils.getDirectoryPath(fileUrl.toString());
+
+        Path basePath = queueEntry.getTmpDirectory().toPath();
+        Path urlPath = Paths.get(suggestedUrlPath != null ? suggestedUrlPath : "");
+        Path targetPath = basePath.resolve(urlPath);
+
+        int pathLength = targetPath.resolve(detectedFileName).toString().length();
+
+        if (pathLength > 260 && GDownloader.isWindows()) { // Microsoft shenanigans
+            log.info("Long path detected, trimming {}", targetPath);
+            targetPath = DirectoryUtils.trimPathToFit(basePath, urlPath, detectedFileName, 260);
+            log.info("Trimmed to {}", targetPath);
+        }
+
+        Files.createDirectories(targetPath);
+
+        return new File(targetPath.toFile(), detectedFileName);
+    }
+
+    /**
+     * Returns the granularity at which completed parts of a file are tracked, which is also
+     * the size of the ranges handed out in sequential mode.
+     */
+    private static long getPieceSize(long totalBytes) {
+        return Math.max(PIECE_BYTES, (totalBytes + MAX_PIECES - 1) / MAX_PIECES);
+    }
+
+    /**
+     * Picks the validator sent in {@code If-Range}. Weak entity tags cannot be used there.
+     */
+    @Nullable
+    public static String getIfRangeValidator(@Nullable String entityTag, @Nullable String lastModified) {
+        if (entityTag != null && !entityTag.startsWith("W/")) {
+            return entityTag;
+        }
+
+        return lastModified;
+    }
+
+    /**
+     * Returns the sidecar file that tracks the progress of a download into the given file.
+     */
+    public static File getManifestFile(File targetFile) {
+        return new File(targetFile.getParentFile(), targetFile.getName() + MANIFEST_SUFFIX);
+    }
+
+    /**
+     * Loads the sidecar manifest of a previous attempt, discarding it if it no longer
+     * describes the remote file or if the partial file it refers to is gone.
+     */
+    @Nullable
+    public static ChunkManifest loadManifest(File manifestFile, File targetFile, long totalBytes,
+        @Nullable String entityTag, @Nullable String lastModified) {
+        if (!manifestFile.exists()) {
+            return null;
+        }
+
+        try {
+            ChunkManifest manifest = GDownloader.OBJECT_MAPPER.readValue(manifestFile, ChunkManifest.class);
+
+            if (targetFile.exists() && manifest.matches(totalBytes, entityTag, lastModified)) {
+                return manifest;
             }
+
+            log.info("Remote file has changed since the last attempt, discarding manifest {}", manifestFile);
+        } catch (IOException e) {
+            log.error("Failed to read download manifest {}", manifestFile, e);
         }
 
-        return success;
+        try {
+            Files.deleteIfExists(manifestFile.toPath());
+        } catch (IOException e) {
+            log.error("Failed to delete stale manifest {}", manifestFile, e);
+        }
+
+        return null;
     }
 
-    private Proxy getProxySettings() {
-        return main.getConfig().getProxySettings().createProxy();
+    private void trySaveManifest(File manifestFile, ChunkManifest manifest,
+        ChunkFileWriter fileWriter, AtomicLong lastSave) {
+        long currentTime = System.nanoTime();
+
+        long last = lastSave.get();
+        if (currentTime - last >= MANIFEST_SAVE_INTERVAL_NANOS && lastSave.compareAndSet(last, currentTime)) {
+            saveManifest(manifestFile, manifest, fileWriter);
+        }
+    }
+
+    /**
+     * Writes the manifest to disk. If a file writer is given, whatever it still holds in memory
+     * is flushed first, so that the manifest never claims bytes that were not written yet.
+     */
+    private void saveManifest(File manifestFile, ChunkManifest manifest, @Nullable ChunkFileWriter fileWriter) {
+        synchronized (manifest) {
+            if (fileWriter == null) {
+                writeManifest(manifestFile, manifest);
+                return;
+            }
+
+            // Holding the writer's lock keeps chunks from committing new writes until the manifest is out.
+            synchronized (fileWriter) {
+                try {
+                    fileWriter.flush();
+                } catch (IOException e) {
+                    log.error("Failed to flush pending writes, not saving manifest {}", manifestFile, e);
+                    return;
+                }
+
+                writeManifest(manifestFile, manifest);
+            }
+        }
+    }
+
+    private void writeManifest(File manifestFile, ChunkManifest manifest) {
+        Path tmpPath = manifestFile.toPath().resolveSibling(manifestFile.getName() + ".tmp");
+
+        try {
+            GDownloader.OBJECT_MAPPER.writeValue(tmpPath.toFile(), manifest);
+
+            Files.move(tmpPath, manifestFile.toPath(),
+                StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            log.error("Failed to save download manifest {}", manifestFile, e);
+        }
     }
 
     @Nullable
-    private String getFileNameFromHeaders(HttpURLConnection connection) {
+    private String getFileNameFromHeaders(HttpTransportResponse response) {
         if (log.isDebugEnabled()) {
-            log.info(connection.getContentType());
-            log.info("{}", connection.getHeaderFields());
+            log.info(response.getContentType());
+            log.info("{}", response.getHeaders());
         }
 
-        String contentDisposition = connection.getHeaderField("Content-Disposition");
+        String contentDisposition = response.getHeader("Content-Disposition");
         if (contentDisposition != null && contentDisposition.contains("filename=")) {
             String[] parts = contentDisposition.split(";");
             for (String part : parts) {
@@ -562,7 +1539,7 @@ public class DirectHttpDownloader extends AbstractDownloader {
             }
         }
 
-        return URLUtils.getFileName(connection.getURL());
+        return URLUtils.getFileName(response.getUrl());
     }
 
     @Override
@@ -570,29 +1547,4 @@ public class DirectHttpDownloader extends AbstractDownloader {
         chunkThreadPool.shutdownNow();
     }
 
-    @FunctionalInterface
-    private interface ProgressUpdater {
-
-        void accept(double progress, long size, long speed, long remainingTime, int chunkCount);
-
-    }
-
-    @Data
-    @Builder
-    private static class ChunkData {
-
-        private int chunkId;
-        private AtomicBoolean abortHook;
-        private boolean chunked;
-        private QueueEntry queueEntry;
-        private URL fileUrl;
-        private File filePath;
-        private long startByte;
-        private long endByte;
-        private long totalBytes;
-        private AtomicLong downloadedBytes;
-        private AtomicInteger activeChunkCount;
-        private ProgressUpdater progressCallback;
-    }
-
 }
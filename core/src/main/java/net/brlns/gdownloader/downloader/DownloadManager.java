@@ -17,6 +17,7 @@
 package net.brlns.gdownloader.downloader;
 
 import java.io.File;
+import java.time.Duration;
 import java.util.*;
 import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ConcurrentLinkedQueue;
@@ -33,10 +34,21 @@ import net.brlns.gdownloader.GDownloader;
 import net.brlns.gdownloader.downloader.enums.DownloadStatusEnum;
 import net.brlns.gdownloader.downloader.enums.DownloaderIdEnum;
 import net.brlns.gdownloader.downloader.enums.QueueCategoryEnum;
+import net.brlns.gdownloader.downloader.http.HttpClientTransport;
+import net.brlns.gdownloader.downloader.http.HttpTransport;
+import net.brlns.gdownloader.downloader.http.UrlConnectionTransport;
+import net.brlns.gdownloader.downloader.scheduling.FifoPolicy;
+import net.brlns.gdownloader.downloader.scheduling.InterleavingPolicy;
+import net.brlns.gdownloader.downloader.scheduling.LargestFirstPolicy;
+import net.brlns.gdownloader.downloader.scheduling.SchedulingPolicy;
+import net.brlns.gdownloader.downloader.scheduling.ShortestJobFirstPolicy;
 import net.brlns.gdownloader.downloader.structs.DownloadResult;
+import net.brlns.gdownloader.downloader.structs.ProcessStats;
 import net.brlns.gdownloader.event.EventDispatcher;
 import net.brlns.gdownloader.event.IEvent;
+import net.brlns.gdownloader.settings.enums.HttpEngineEnum;
 import net.brlns.gdownloader.settings.enums.PlayListOptionEnum;
+import net.brlns.gdownloader.settings.enums.SchedulingPolicyEnum;
 import net.brlns.gdownloader.settings.filters.AbstractUrlFilter;
 import net.brlns.gdownloader.settings.filters.GenericFilter;
 import net.brlns.gdownloader.settings.filters.YoutubeFilter;
@@ -47,7 +59,6 @@ import net.brlns.gdownloader.ui.menu.IMenuEntry;
 import net.brlns.gdownloader.util.Nullable;
 import net.brlns.gdownloader.util.collection.ConcurrentRearrangeableDeque;
 import net.brlns.gdownloader.util.collection.ExpiringSet;
-import net.brlns.gdownloader.util.collection.LinkedIterableBlockingQueue;
 
 import static net.brlns.gdownloader.downloader.enums.DownloadFlagsEnum.*;
 import static net.brlns.gdownloader.downloader.enums.QueueCategoryEnum.*;
@@ -63,10 +74,43 @@ import static net.brlns.gdownloader.util.URLUtils.*;
 @Slf4j
 public class DownloadManager implements IEvent {
 
+    private static final long JOB_RETRY_BASE_MILLIS = TimeUnit.SECONDS.toMillis(5);
+    private static final long JOB_RETRY_MAX_MILLIS = TimeUnit.MINUTES.toMillis(5);
+    private static final long RETRY_STAGGER_MILLIS = 1000;
+
     @Getter
     private final GDownloader main;
 
-    private final ExecutorService processMonitor;
+    @Getter
+    private final BandwidthLimiter bandwidthLimiter;
+
+    @Getter
+    private final RetryScheduler retryScheduler;
+
+    @Getter
+    private final ProgressTicker progressTicker;
+
+    /**
+     * Per-host connection caps, shared by every engine that talks HTTP from within the application.
+     */
+    @Getter
+    private final HostConnectionLimiter connectionLimiter;
+
+    // Shared as well, so that pooled connections are reused across engines and downloads.
+    private final HttpTransport urlConnectionTransport;
+    private final HttpTransport httpClientTransport;
+
+    private final QueueDispatcher queueDispatcher;
+
+    private final SitePacer sitePacer;
+
+    // Only touched by the queue dispatcher thread.
+    private SchedulingPolicyEnum schedulingPolicyType;
+    private SchedulingPolicy schedulingPolicy;
+    private long spacingWakeUpAt;
+
+    @Getter
+    private final ProcessSupervisor processSupervisor;
 
     private final List<AbstractDownloader> downloaders = new ArrayList<>();
     private final Set<String> capturedLinks = Collections.synchronizedSet(new HashSet<>());
@@ -75,9 +119,6 @@ public class DownloadManager implements IEvent {
     private final ConcurrentRearrangeableDeque<QueueEntry> downloadDeque
         = new ConcurrentRearrangeableDeque<>();
 
-    // This queue has a blocking iterator, it's exclusive for the process monitor
-    private final Queue<QueueEntry> inProgressDownloads = new LinkedIterableBlockingQueue<>();
-
     private final Queue<QueueEntry> runningDownloads = new ConcurrentLinkedQueue<>();
     private final Queue<QueueEntry> completedDownloads = new ConcurrentLinkedQueue<>();
     private final Queue<QueueEntry> failedDownloads = new ConcurrentLinkedQueue<>();
@@ -100,38 +141,18 @@ public class DownloadManager implements IEvent {
     public DownloadManager(GDownloader mainIn) {
         main = mainIn;
 
-        processMonitor = Executors.newSingleThreadExecutor();
-        processMonitor.submit(() -> {
-            while (!Thread.currentThread().isInterrupted()) {
-                for (QueueEntry entry : inProgressDownloads) {
-                    if (!downloadsRunning.get() || entry.getCancelHook().get()) {
-                        Process process = entry.getProcess();
-
-                        if (process != null && process.isAlive()) {
-                            if (main.getConfig().isDebugMode()) {
-                                log.debug("Process Monitor is stopping {}", entry.getUrl());
-                            }
-
-                            try {
-                                tryStopProcess(process);
-                            } catch (InterruptedException e) {
-                                log.error("Interrupted", e);
-                            } catch (Exception e) {
-                                log.error("Failed to stop process", e);
-                            }
-                        }
-                    }
-                }
-
-                try {
-                    Thread.sleep(300);
-                } catch (InterruptedException e) {
-                    Thread.currentThread().interrupt();
-                    break;
-                }
-            }
-        });
-
+        bandwidthLimiter = new BandwidthLimiter(main);
+        retryScheduler = new RetryScheduler();
+        progressTicker = new ProgressTicker();
+        connectionLimiter = new HostConnectionLimiter(main);
+        urlConnectionTransport = new UrlConnectionTransport(() -> main.getConfig().getProxySettings().createProxy());
+        httpClientTransport = new HttpClientTransport(() -> main.getConfig().getProxySettings());
+        queueDispatcher = new QueueDispatcher(this::processQueue);
+        sitePacer = new SitePacer();
+        processSupervisor = new ProcessSupervisor(this);
+
+        // Ahead of yt-dlp, which would otherwise claim every playlist; unsupported streams are handed on to it.
+        downloaders.add(new AdaptiveStreamDownloader(this));
         downloaders.add(new YtDlpDownloader(this));
         downloaders.add(new GalleryDlDownloader(this));
         downloaders.add(new DirectHttpDownloader(this));
@@ -386,6 +407,8 @@ public class DownloadManager implements IEvent {
                             try {
                                 downloadDeque.moveToPosition(queueEntry,
                                     Math.clamp(targetIndex, 0, downloadDeque.size() - 1));
+
+                                queueEntry.getPinned().set(true);
                             } catch (Exception e) {
                                 GDownloader.handleException(e, false);
                             }
@@ -467,11 +490,24 @@ public class DownloadManager implements IEvent {
         downloadsManuallyStarted.set(false);
         suggestedDownloaderId.set(null);
 
+        processSupervisor.stopAll();
+
         fireListeners();
     }
 
     private void fireListeners() {
         EventDispatcher.dispatch(this);
+
+        // Every change listeners hear about, from an enqueue to a finished download or an elapsed backoff,
+        // may also let the queue move on.
+        queueDispatcher.requestDispatch();
+    }
+
+    /**
+     * Has the queue looked at again, for changes that do not go through the listeners, such as new settings.
+     */
+    public void requestDispatch() {
+        queueDispatcher.requestDispatch();
     }
 
     public int getQueuedDownloads() {
@@ -491,31 +527,112 @@ public class DownloadManager implements IEvent {
     }
 
     public void retryFailedDownloads() {
+        long delayMillis = 0;
+
         QueueEntry entry;
         while ((entry = failedDownloads.poll()) != null) {
             resetDownload(entry, false);
+
+            if (delayMillis > 0) {
+                // Spread the restarts out instead of hitting every server at once.
+                entry.scheduleRetry(delayMillis);
+                retryScheduler.schedule(this::fireListeners, delayMillis);
+            }
+
+            delayMillis += RETRY_STAGGER_MILLIS;
         }
 
         startDownloads(suggestedDownloaderId.get());
         fireListeners();
     }
 
-    public void processQueue() {
+    private void processQueue() {
         while (downloadsRunning.get() && downloadsManuallyStarted.get() && !downloadDeque.isEmpty()) {
             if (runningDownloads.size() >= main.getConfig().getMaxSimultaneousDownloads()) {
                 break;
             }
 
-            QueueEntry entry = downloadDeque.peek();
+            long now = System.currentTimeMillis();
+            Map<String, Integer> runningPerSite = getRunningPerSite();
+
+            // Items of a site at capacity are passed over, so that the free slots go to other sites.
+            List<QueueEntry> candidates = downloadDeque.peekAll(queued -> queued.isReadyToStart(now)
+                && sitePacer.canStart(queued.getFilter(),
+                    runningPerSite.getOrDefault(SitePacer.getSiteKey(queued.getFilter()), 0), now));
+
+            QueueEntry entry = getSchedulingPolicy().next(candidates, runningDownloads);
+            if (entry == null) {
+                // Whatever is left is waiting out a retry backoff or a site limit.
+                // Backoffs and finished downloads fire the listeners, only the start spacing needs a wake-up of its own.
+                scheduleSpacingWakeUp(now);
+                break;
+            }
 
             submitDownloadTask(entry, false);
         }
 
-        if (downloadsRunning.get() && runningDownloads.isEmpty()) {
+        long now = System.currentTimeMillis();
+        if (downloadsRunning.get() && runningDownloads.isEmpty()
+            && downloadDeque.peekFirst(queued -> queued.isRetryScheduled()
+            || sitePacer.getStartDelay(queued.getFilter(), now) > 0) == null) {
             stopDownloads();
         }
     }
 
+    /**
+     * Has the queue looked at again once the shortest start interval still holding back an item has passed.
+     */
+    private void scheduleSpacingWakeUp(long nowMillis) {
+        long minStartDelay = Long.MAX_VALUE;
+        for (QueueEntry queued : downloadDeque.peekAll(entry -> entry.isReadyToStart(nowMillis))) {
+            long delay = sitePacer.getStartDelay(queued.getFilter(), nowMillis);
+            if (delay > 0) {
+                minStartDelay = Math.min(minStartDelay, delay);
+            }
+        }
+
+        if (minStartDelay == Long.MAX_VALUE) {
+            return;
+        }
+
+        long wakeUpAt = nowMillis + minStartDelay;
+        if (spacingWakeUpAt > nowMillis && spacingWakeUpAt <= wakeUpAt) {
+            return;// An earlier wake-up is already on its way.
+        }
+
+        spacingWakeUpAt = wakeUpAt;
+        retryScheduler.schedule(this::requestDispatch, minStartDelay);
+    }
+
+    private SchedulingPolicy getSchedulingPolicy() {
+        SchedulingPolicyEnum type = main.getConfig().getQueueSchedulingPolicy();
+        if (schedulingPolicy == null || type != schedulingPolicyType) {
+            switch (type) {
+                case SHORTEST_FIRST ->
+                    schedulingPolicy = new ShortestJobFirstPolicy();
+                case LARGEST_FIRST ->
+                    schedulingPolicy = new LargestFirstPolicy();
+                case INTERLEAVED ->
+                    schedulingPolicy = new InterleavingPolicy();
+                default ->
+                    schedulingPolicy = new FifoPolicy();
+            }
+
+            schedulingPolicyType = type;
+        }
+
+        return schedulingPolicy;
+    }
+
+    private Map<String, Integer> getRunningPerSite() {
+        Map<String, Integer> runningPerSite = new HashMap<>();
+        for (QueueEntry entry : runningDownloads) {
+            runningPerSite.merge(SitePacer.getSiteKey(entry.getFilter()), 1, Integer::sum);
+        }
+
+        return runningPerSite;
+    }
+
     public void clearQueue() {
         capturedLinks.clear();
         capturedPlaylists.clear();
@@ -639,7 +756,7 @@ public class DownloadManager implements IEvent {
 
     private void queryVideo(QueueEntry queueEntry) {
         main.getGlobalThreadPool().submitWithPriority(() -> {
-            if (queueEntry.getCancelHook().get()) {
+            if (queueEntry.getCancellationToken().isCancelled()) {
                 return;
             }
 
@@ -676,20 +793,12 @@ public class DownloadManager implements IEvent {
     }
 
     protected CompletableFuture<Void> stopDownload(QueueEntry entry, Runnable runAfter) {
-        entry.getCancelHook().set(true);
+        // Stops its processes and drops its connections right away, the run winds down from there.
+        entry.getCancellationToken().cancel();
 
-        return CompletableFuture.runAsync(() -> {
-            while (entry.isRunning()) {
-                try {
-                    TimeUnit.MILLISECONDS.sleep(100);
-                } catch (InterruptedException e) {
-                    Thread.currentThread().interrupt();
-                    return;
-                }
-            }
-        }).thenRun(() -> {
+        return entry.whenStopped().thenRunAsync(() -> {
             if (!entry.getMediaCard().isClosed()) {
-                entry.getCancelHook().set(false);
+                entry.getCancellationToken().reset();
                 runAfter.run();
             }
         });
@@ -704,6 +813,8 @@ public class DownloadManager implements IEvent {
         }
 
         entry.removeRightClick(_forceStartKey);
+        entry.getRetryNotBefore().set(0);
+        entry.getPinned().set(false);
 
         if (force) {
             downloadsRunning.set(true);
@@ -720,6 +831,9 @@ public class DownloadManager implements IEvent {
             submitDownloadTask(entry, true);
         }));
 
+        // Forced starts bypass the site limits, but still count towards the spacing of the ones after them.
+        sitePacer.onStart(entry.getFilter(), System.currentTimeMillis());
+
         offerTo(RUNNING, entry);
 
         Runnable downloadTask = () -> {
@@ -736,10 +850,10 @@ public class DownloadManager implements IEvent {
                     log.warn("Cookies are required for this website {}", entry.getOriginalUrl());
                 }
 
-                entry.getRunning().set(true);
+                entry.markRunning();
 
                 try {
-                    inProgressDownloads.offer(entry);
+                    bandwidthLimiter.register(entry);
 
                     DownloaderIdEnum forcedDownloader = entry.getForcedDownloader();
                     if (forcedDownloader == null) {
@@ -749,118 +863,120 @@ public class DownloadManager implements IEvent {
                     int maxRetries = main.getConfig().isAutoDownloadRetry() ? main.getConfig().getMaxDownloadRetries() : 1;
                     String lastOutput = "";
 
-                    while (entry.getRetryCounter().get() <= maxRetries) {
-                        boolean downloadAttempted = false;
-
-                        entry.resetForRestart();
+                    boolean downloadAttempted = false;
 
-                        for (AbstractDownloader downloader : entry.getDownloaders()) {
-                            DownloaderIdEnum downloaderId = downloader.getDownloaderId();
-                            if (log.isDebugEnabled()) {
-                                log.info("Trying to download with {}", downloaderId);
-                            }
-
-                            if (forcedDownloader != null && forcedDownloader != downloaderId) {
-                                continue;
-                            }
+                    entry.resetForRestart();
 
-                            if (entry.isDownloaderBlacklisted(downloaderId) && downloaderId != forcedDownloader) {
-                                continue;
-                            }
+                    for (AbstractDownloader downloader : entry.getDownloaders()) {
+                        DownloaderIdEnum downloaderId = downloader.getDownloaderId();
+                        if (log.isDebugEnabled()) {
+                            log.info("Trying to download with {}", downloaderId);
+                        }
 
-                            entry.setCurrentDownloader(downloaderId);
+                        if (forcedDownloader != null && forcedDownloader != downloaderId) {
+                            continue;
+                        }
 
-                            if (entry.getRetryCounter().get() > 0) {
-                                entry.updateStatus(DownloadStatusEnum.RETRYING, l10n("gui.download_status.retrying",
-                                    String.format("%d/%d", entry.getRetryCounter().get(), maxRetries)) + ": " + lastOutput);
-                            } else {
-                                entry.updateStatus(DownloadStatusEnum.STARTING, l10n("gui.download_status.starting"));
-                            }
+                        if (entry.isDownloaderBlacklisted(downloaderId) && downloaderId != forcedDownloader) {
+                            continue;
+                        }
 
-                            DownloadResult result = downloader.tryDownload(entry);
+                        entry.setCurrentDownloader(downloaderId);
 
-                            BitSet flags = result.getFlags();
-                            lastOutput = result.getLastOutput();
+                        if (entry.getRetryCounter().get() > 0) {
+                            entry.updateStatus(DownloadStatusEnum.RETRYING, l10n("gui.download_status.retrying",
+                                String.format("%d/%d", entry.getRetryCounter().get(), maxRetries))
+                                + (lastOutput.isEmpty() ? "" : ": " + lastOutput));
+                        } else {
+                            entry.updateStatus(DownloadStatusEnum.STARTING, l10n("gui.download_status.starting"));
+                        }
 
-                            boolean unsupported = FLAG_UNSUPPORTED.isSet(flags);
-                            boolean disabled = FLAG_DOWNLOADER_DISABLED.isSet(flags);
+                        DownloadResult result = downloader.tryDownload(entry);
 
-                            if (FLAG_MAIN_CATEGORY_FAILED.isSet(flags) || unsupported || disabled) {
-                                entry.logError(lastOutput);
+                        BitSet flags = result.getFlags();
+                        lastOutput = result.getLastOutput();
 
-                                if (disabled || unsupported || entry.getRetryCounter().get() >= maxRetries) {
-                                    entry.updateStatus(DownloadStatusEnum.FAILED, lastOutput);
-                                    log.error("Download of {} failed on {}: {} supported downloader: {}",
-                                        entry.getUrl(), downloaderId, lastOutput, !unsupported);
+                        boolean unsupported = FLAG_UNSUPPORTED.isSet(flags);
+                        boolean disabled = FLAG_DOWNLOADER_DISABLED.isSet(flags);
 
-                                    entry.blackListDownloader(downloaderId);
-                                } else {
-                                    entry.updateStatus(DownloadStatusEnum.RETRYING, lastOutput);
-                                    log.warn("Download of {} failed with {}, retrying ({}/{}): {}",
-                                        entry.getUrl(),
-                                        downloaderId,
-                                        entry.getRetryCounter().get() + 1,
-                                        maxRetries,
-                                        lastOutput);
+                        if (FLAG_MAIN_CATEGORY_FAILED.isSet(flags) || unsupported || disabled) {
+                            entry.logError(lastOutput);
 
-                                    downloadAttempted = true;
-                                }
+                            if (disabled || unsupported || entry.getRetryCounter().get() >= maxRetries) {
+                                entry.updateStatus(DownloadStatusEnum.FAILED, lastOutput);
+                                log.error("Download of {} failed on {}: {} supported downloader: {}",
+                                    entry.getUrl(), downloaderId, lastOutput, !unsupported);
 
-                                continue;
+                                entry.blackListDownloader(downloaderId);
+                            } else {
+                                entry.updateStatus(DownloadStatusEnum.RETRYING, lastOutput);
+                                log.warn("Download of {} failed with {}, retrying ({}/{}): {}",
+                                    entry.getUrl(),
+                                    downloaderId,
+                                    entry.getRetryCounter().get() + 1,
+                                    maxRetries,
+                                    lastOutput);
+
+                                downloadAttempted = true;
                             }
 
-                            if (FLAG_NO_METHOD.isSet(flags)) {
-                                entry.logError(lastOutput);
-
-                                if (FLAG_NO_METHOD_VIDEO.isSet(flags)) {
-                                    log.error("{} - No option to download.", filter);
-                                    entry.updateStatus(DownloadStatusEnum.NO_METHOD, l10n("enums.download_status.no_method.video_tip"));
-                                } else if (FLAG_NO_METHOD_AUDIO.isSet(flags)) {
-                                    log.error("{} - No audio quality selected, but was set to download audio only.", filter);
-                                    entry.updateStatus(DownloadStatusEnum.NO_METHOD, l10n("enums.download_status.no_method.audio_tip"));
-                                } else {
-                                    throw new IllegalStateException("Unhandled NO_METHOD");
-                                }
+                            continue;
+                        }
+
+                        if (FLAG_NO_METHOD.isSet(flags)) {
+                            entry.logError(lastOutput);
 
-                                offerTo(FAILED, entry);
-                                return;
+                            if (FLAG_NO_METHOD_VIDEO.isSet(flags)) {
+                                log.error("{} - No option to download.", filter);
+                                entry.updateStatus(DownloadStatusEnum.NO_METHOD, l10n("enums.download_status.no_method.video_tip"));
+                            } else if (FLAG_NO_METHOD_AUDIO.isSet(flags)) {
+                                log.error("{} - No audio quality selected, but was set to download audio only.", filter);
+                                entry.updateStatus(DownloadStatusEnum.NO_METHOD, l10n("enums.download_status.no_method.audio_tip"));
+                            } else {
+                                throw new IllegalStateException("Unhandled NO_METHOD");
                             }
 
-                            if (!downloadsRunning.get() || FLAG_STOPPED.isSet(flags)) {
-                                entry.updateStatus(DownloadStatusEnum.STOPPED, l10n("gui.download_status.not_started"));
-                                enqueueFirst(entry);
-                                return;
-                            } else if (!entry.getCancelHook().get() && FLAG_SUCCESS.isSet(flags)) {
-                                entry.updateStatus(DownloadStatusEnum.POST_PROCESSING, l10n("gui.download_status.processing_media_files"));
+                            offerTo(FAILED, entry);
+                            return;
+                        }
 
-                                Map<String, IMenuEntry> rightClickOptions = downloader.processMediaFiles(entry);
+                        if (!downloadsRunning.get() || FLAG_STOPPED.isSet(flags)) {
+                            entry.updateStatus(DownloadStatusEnum.STOPPED, l10n("gui.download_status.not_started"));
+                            enqueueFirst(entry);
+                            return;
+                        } else if (!entry.getCancellationToken().isCancelled() && FLAG_SUCCESS.isSet(flags)) {
+                            entry.updateStatus(DownloadStatusEnum.POST_PROCESSING, l10n("gui.download_status.processing_media_files"));
 
-                                entry.addRightClick(l10n("gui.delete_files"), () -> {
-                                    entry.deleteMediaFiles();
+                            Map<String, IMenuEntry> rightClickOptions = downloader.processMediaFiles(entry);
 
-                                    entry.removeRightClick(l10n("gui.delete_files"));
-                                    for (String key : rightClickOptions.keySet()) {
-                                        entry.removeRightClick(key);
-                                    }
-                                });
+                            entry.addRightClick(l10n("gui.delete_files"), () -> {
+                                entry.deleteMediaFiles();
 
-                                entry.addRightClick(rightClickOptions);
+                                entry.removeRightClick(l10n("gui.delete_files"));
+                                for (String key : rightClickOptions.keySet()) {
+                                    entry.removeRightClick(key);
+                                }
+                            });
 
-                                entry.updateStatus(DownloadStatusEnum.COMPLETE, l10n("gui.download_status.finished"));
-                                entry.cleanDirectories();
+                            entry.addRightClick(rightClickOptions);
 
-                                offerTo(COMPLETED, entry);
-                                return;
-                            } else {
-                                log.error("Unexpected download state");
-                            }
-                        }
+                            entry.updateStatus(DownloadStatusEnum.COMPLETE, l10n("gui.download_status.finished"));
+                            entry.cleanDirectories();
 
-                        if (!downloadAttempted) {
-                            break; // No more downloaders to try.
+                            offerTo(COMPLETED, entry);
+                            return;
+                        } else {
+                            log.error("Unexpected download state");
                         }
+                    }
 
+                    if (downloadAttempted) {
                         entry.getRetryCounter().incrementAndGet();
+
+                        if (entry.getRetryCounter().get() <= maxRetries) {
+                            scheduleRetry(entry, lastOutput);
+                            return;
+                        }
                     }
 
                     if (!lastOutput.isEmpty()) {
@@ -877,7 +993,7 @@ public class DownloadManager implements IEvent {
 
                     offerTo(FAILED, entry);
                 } finally {
-                    inProgressDownloads.remove(entry);
+                    bandwidthLimiter.unregister(entry);
                 }
             } catch (Exception e) {
                 log.error("Failed to download", e);
@@ -888,9 +1004,10 @@ public class DownloadManager implements IEvent {
 
                 GDownloader.handleException(e);
             } finally {
-                entry.getRunning().set(false);
-
                 dequeue(RUNNING, entry);
+
+                // Last, as whoever waits on it may put the entry right back in line.
+                entry.markStopped();
             }
         };
 
@@ -901,25 +1018,41 @@ public class DownloadManager implements IEvent {
         }
     }
 
-    private void tryStopProcess(Process process) throws InterruptedException {
-        if (process.isAlive()) {
-            long quitTimer = System.currentTimeMillis();
+    /**
+     * Puts the entry back in line, where it waits out its backoff without holding on to a worker thread.
+     */
+    private void scheduleRetry(QueueEntry entry, String lastOutput) {
+        long delayMillis = RetryScheduler.getBackoffMillis(entry.getRetryCounter().get(),
+            JOB_RETRY_BASE_MILLIS, JOB_RETRY_MAX_MILLIS);
 
-            // First try to politely ask the process to excuse itself.
-            process.destroy();
+        log.info("Retrying {} in {}ms", entry.getUrl(), delayMillis);
 
-            if (!process.waitFor(5, TimeUnit.SECONDS)) {
-                log.warn("Process did not terminate in time, forcefully stopping it.");
-                // Time's up. I guess asking nicely wasn't in the cards.
-                process.destroyForcibly();
-            }
+        entry.scheduleRetry(delayMillis);
+        entry.updateStatus(DownloadStatusEnum.RETRYING, lastOutput);
+
+        enqueueFirst(entry);
 
-            log.info("Took {}ms to stop the process.",
-                (System.currentTimeMillis() - quitTimer));
+        retryScheduler.schedule(this::fireListeners, delayMillis);
+    }
+
+    /**
+     * Returns the transport selected in the settings, falling back to {@link UrlConnectionTransport}
+     * when a proxy that {@link HttpClientTransport} cannot handle is configured.
+     */
+    public HttpTransport getHttpTransport() {
+        if (main.getConfig().getDirectHttpEngine() == HttpEngineEnum.HTTP_CLIENT
+            && HttpClientTransport.supports(main.getConfig().getProxySettings())) {
+            return httpClientTransport;
         }
+
+        return urlConnectionTransport;
     }
 
     public void close() {
+        if (log.isDebugEnabled()) {
+            logProcessStats();
+        }
+
         stopDownloads();
 
         clearQueue(RUNNING, false);
@@ -929,7 +1062,36 @@ public class DownloadManager implements IEvent {
             downloader.close();
         }
 
-        processMonitor.shutdownNow();
+        httpClientTransport.close();
+        urlConnectionTransport.close();
+
+        queueDispatcher.close();
         forcefulExecutor.shutdownNow();
+        retryScheduler.close();
+        progressTicker.close();
+    }
+
+    private void logProcessStats() {
+        List<ProcessStats> stats = processSupervisor.getStats();
+
+        Duration cpuTime = Duration.ZERO;
+        int alive = 0;
+        int killedForcibly = 0;
+
+        for (ProcessStats process : stats) {
+            cpuTime = cpuTime.plus(process.getCpuTime());
+
+            if (process.isAlive()) {
+                alive++;
+
+                log.debug("Process {} of download {} still running after {}ms: {}",
+                    process.getPid(), process.getDownloadId(), process.getLifetime().toMillis(), process.getCommand());
+            } else if (process.isKilledForcibly()) {
+                killedForcibly++;
+            }
+        }
+
+        log.debug("Latest {} processes: {} still running, {} killed forcibly, {}ms of CPU time",
+            stats.size(), alive, killedForcibly, cpuTime.toMillis());
     }
 }
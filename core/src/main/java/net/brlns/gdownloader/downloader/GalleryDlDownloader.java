@@ -19,6 +19,7 @@ package net.brlns.gdownloader.downloader;
 import java.io.BufferedReader;
 import java.io.File;
 import java.io.IOException;
+import java.io.InputStream;
 import java.io.InputStreamReader;
 import java.nio.file.FileAlreadyExistsException;
 import java.nio.file.Files;
@@ -124,6 +125,15 @@ public class GalleryDlDownloader extends AbstractDownloader {
             genericArguments.add("--config-ignore");
         }
 
+        // External processes cannot be throttled as they run, so they get a fixed share when they start
+        long rateLimit = manager.getBandwidthLimiter().getRateShare(entry);
+        if (rateLimit > 0) {
+            genericArguments.addAll(List.of(
+                "--limit-rate",
+                String.valueOf(rateLimit)
+            ));
+        }
+
         if (ffmpegPath.isPresent()) {// TODO: test
             genericArguments.addAll(List.of(
                 "-o",
@@ -164,7 +174,7 @@ public class GalleryDlDownloader extends AbstractDownloader {
 
             Pair<Integer, String> result = processDownload(entry, arguments);
 
-            if (result == null || entry.getCancelHook().get()) {
+            if (result == null || entry.getCancellationToken().isCancelled()) {
                 return new DownloadResult(FLAG_STOPPED);
             }
 
@@ -259,38 +269,29 @@ public class GalleryDlDownloader extends AbstractDownloader {
         ProcessBuilder processBuilder = new ProcessBuilder(finalArgs);
         processBuilder.redirectErrorStream(true);
         Process process = processBuilder.start();
-        entry.setProcess(process);
+        InputStream processOutput = manager.getProcessSupervisor().supervise(entry, process);
 
         String lastOutput = "";
 
         try (
-            BufferedReader reader = new BufferedReader(new InputStreamReader(process.getInputStream()))) {
+            BufferedReader reader = new BufferedReader(new InputStreamReader(processOutput))) {
             String line;
-            while (manager.isRunning() && !entry.getCancelHook().get() && process.isAlive()) {
+            // Blocks until there is output. A cancel stops the process tree and ends the supervised output.
+            while (manager.isRunning() && !entry.getCancellationToken().isCancelled()
+                && (line = reader.readLine()) != null) {
                 if (Thread.currentThread().isInterrupted()) {
                     process.destroyForcibly();
                     throw new InterruptedException("Download interrupted");
                 }
 
-                if (reader.ready()) {
-                    if ((line = reader.readLine()) != null) {
-                        lastOutput = line;
+                lastOutput = line;
 
-                        processProgress(entry, lastOutput);
-                    }
-                } else {
-                    try {
-                        Thread.sleep(100);
-                    } catch (InterruptedException e) {
-                        log.debug("Sleep interrupted, closing process");
-                        process.destroyForcibly();
-                    }
-                }
+                processProgress(entry, lastOutput);
             }
 
             long stopped = System.currentTimeMillis() - start;
 
-            if (!manager.isRunning() || entry.getCancelHook().get()) {
+            if (!manager.isRunning() || entry.getCancellationToken().isCancelled()) {
                 if (main.getConfig().isDebugMode()) {
                     log.debug("Download process halted after {}ms.", stopped);
                 }
@@ -311,7 +312,7 @@ public class GalleryDlDownloader extends AbstractDownloader {
         } finally {
             entry.getDownloadStarted().set(false);
 
-            // Our ProcessMonitor will take care of closing the underlying process.
+            // The process supervisor takes care of stopping the underlying process.
         }
     }
 
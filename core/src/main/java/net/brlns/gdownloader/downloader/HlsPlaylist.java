@@ -0,0 +1,335 @@
+/*
+ * Copyright (C) 2024 hstr0100
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package net.brlns.gdownloader.downloader;
+
+import java.net.MalformedURLException;
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.net.URL;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import net.brlns.gdownloader.downloader.AdaptiveStream.Rendition;
+import net.brlns.gdownloader.downloader.AdaptiveStream.Segment;
+import net.brlns.gdownloader.downloader.AdaptiveStream.SegmentKey;
+import net.brlns.gdownloader.downloader.AdaptiveStream.TrackType;
+import net.brlns.gdownloader.util.Nullable;
+
+/**
+ * Parses HLS playlists (RFC 8216). Only complete, video-on-demand playlists are supported,
+ * either unencrypted or encrypted with AES-128.
+ *
+ * @author Gabriel / hstr0100 / vertx010
+ */
+public class HlsPlaylist {
+
+    public static boolean isPlaylist(URL url, @Nullable String contentType) {
+        if (contentType != null && contentType.toLowerCase(Locale.ROOT).contains("mpegurl")) {
+            return true;
+        }
+
+        return url.getPath().toLowerCase(Locale.ROOT).endsWith(".m3u8");
+    }
+
+    public static boolean isMasterPlaylist(String text) {
+        return text.contains("#EXT-X-STREAM-INF");
+    }
+
+    /**
+     * Parses a master playlist. The segments of its renditions are fetched later, from their own playlists.
+     */
+    public static AdaptiveStream parseMaster(URL baseUrl, String text) throws UnsupportedStreamException {
+        checkHeader(text);
+
+        List<Rendition> renditions = new ArrayList<>();
+        List<Rendition> audioRenditions = new ArrayList<>();
+
+        Map<String, String> streamInfo = null;
+        for (String rawLine : text.split("\\R")) {
+            String line = rawLine.trim();
+            if (line.isEmpty()) {
+                continue;
+            }
+
+            if (line.startsWith("#EXT-X-STREAM-INF:")) {
+                streamInfo = parseAttributes(line.substring("#EXT-X-STREAM-INF:".length()));
+            } else if (line.startsWith("#EXT-X-MEDIA:")) {
+                Map<String, String> media = parseAttributes(line.substring("#EXT-X-MEDIA:".length()));
+
+                // Renditions without a URI are muxed into the variants themselves.
+                if ("AUDIO".equals(media.get("TYPE")) && media.containsKey("URI")) {
+                    audioRenditions.add(Rendition.builder()
+                        .id("audio-" + audioRenditions.size())
+                        .type(TrackType.AUDIO)
+                        .audioGroup(media.get("GROUP-ID"))
+                        .preferred("YES".equals(media.get("DEFAULT")))
+                        .playlistUrl(resolve(baseUrl, media.get("URI")))
+                        .build());
+                }
+            } else if (!line.startsWith("#") && streamInfo != null) {
+                int width = 0;
+                int height = 0;
+
+                String resolution = streamInfo.get("RESOLUTION");
+                if (resolution != null) {
+                    String[] parts = resolution.toLowerCase(Locale.ROOT).split("x");
+                    if (parts.length == 2) {
+                        width = parseInt(parts[0]);
+                        height = parseInt(parts[1]);
+                    }
+                }
+
+                renditions.add(Rendition.builder()
+                    .id("video-" + renditions.size())
+                    .type(TrackType.VIDEO)
+                    .bandwidth(parseLong(streamInfo.getOrDefault("BANDWIDTH", "0")))
+                    .width(width)
+                    .height(height)
+                    .frameRate(parseDouble(streamInfo.get("FRAME-RATE")))
+                    .codecs(streamInfo.get("CODECS"))
+                    .audioGroup(streamInfo.get("AUDIO"))
+                    .playlistUrl(resolve(baseUrl, line))
+                    .build());
+
+                streamInfo = null;
+            }
+        }
+
+        if (renditions.isEmpty()) {
+            throw new UnsupportedStreamException("Master playlist lists no variants");
+        }
+
+        return new AdaptiveStream(renditions, audioRenditions);
+    }
+
+    /**
+     * Parses a media playlist into the segments of the given rendition.
+     */
+    public static void parseMedia(URL baseUrl, String text, Rendition rendition) throws UnsupportedStreamException {
+        checkHeader(text);
+
+        if (!text.contains("#EXT-X-ENDLIST")) {
+            throw new UnsupportedStreamException("Live playlists are not supported");
+        }
+
+        List<Segment> segments = new ArrayList<>();
+        Segment initSegment = null;
+
+        long mediaSequence = 0;
+        URL keyUrl = null;
+        byte[] keyIv = null;
+
+        boolean inSegment = false;
+        long rangeLength = -1;
+        long rangeOffset = -1;
+        // Ranges without an offset carry on from the end of the previous one.
+        long nextOffset = 0;
+
+        for (String rawLine : text.split("\\R")) {
+            String line = rawLine.trim();
+            if (line.isEmpty()) {
+                continue;
+            }
+
+            if (line.startsWith("#EXT-X-MEDIA-SEQUENCE:")) {
+                mediaSequence = parseLong(line.substring("#EXT-X-MEDIA-SEQUENCE:".length()));
+            } else if (line.startsWith("#EXT-X-KEY:")) {
+                Map<String, String> attributes = parseAttributes(line.substring("#EXT-X-KEY:".length()));
+                String method = attributes.getOrDefault("METHOD", "NONE");
+
+                switch (method) {
+                    case "NONE" -> {
+                        keyUrl = null;
+                        keyIv = null;
+                    }
+                    case "AES-128" -> {
+                        keyUrl = resolve(baseUrl, attributes.get("URI"));
+                        keyIv = attributes.containsKey("IV") ? parseIv(attributes.get("IV")) : null;
+                    }
+                    default ->
+                        throw new UnsupportedStreamException("Unsupported encryption: " + method);
+                }
+            } else if (line.startsWith("#EXT-X-MAP:")) {
+                Map<String, String> attributes = parseAttributes(line.substring("#EXT-X-MAP:".length()));
+
+                if (initSegment != null) {
+                    throw new UnsupportedStreamException("Playlists with more than one initialization section are not supported");
+                }
+
+                URL mapUrl = resolve(baseUrl, attributes.get("URI"));
+                String byteRange = attributes.get("BYTERANGE");
+                if (byteRange != null) {
+                    long[] range = parseByteRange(byteRange, 0);
+                    initSegment = new Segment(mapUrl, range[1], range[0], null);
+                } else {
+                    initSegment = new Segment(mapUrl);
+                }
+            } else if (line.startsWith("#EXTINF:")) {
+                inSegment = true;
+            } else if (line.startsWith("#EXT-X-BYTERANGE:")) {
+                long[] range = parseByteRange(line.substring("#EXT-X-BYTERANGE:".length()), nextOffset);
+                rangeLength = range[0];
+                rangeOffset = range[1];
+            } else if (!line.startsWith("#") && inSegment) {
+                SegmentKey key = null;
+                if (keyUrl != null) {
+                    // Without an explicit IV, the media sequence number of the segment is used.
+                    byte[] iv = keyIv != null ? keyIv
+                        : ByteBuffer.allocate(16).putLong(8, mediaSequence + segments.size()).array();
+                    key = new SegmentKey(keyUrl, iv);
+                }
+
+                URL segmentUrl = resolve(baseUrl, line);
+                if (rangeLength > 0) {
+                    segments.add(new Segment(segmentUrl, rangeOffset, rangeLength, key));
+                    nextOffset = rangeOffset + rangeLength;
+                } else {
+                    segments.add(new Segment(segmentUrl, -1, -1, key));
+                }
+
+                inSegment = false;
+                rangeLength = -1;
+                rangeOffset = -1;
+            }
+        }
+
+        if (segments.isEmpty()) {
+            throw new UnsupportedStreamException("Media playlist lists no segments");
+        }
+
+        rendition.setInitSegment(initSegment);
+        rendition.setSegments(segments);
+    }
+
+    /**
+     * Parses an attribute list, in which quoted values may contain commas.
+     */
+    public static Map<String, String> parseAttributes(String list) {
+        Map<String, String> attributes = new HashMap<>();
+
+        int i = 0;
+        while (i < list.length()) {
+            int equals = list.indexOf('=', i);
+            if (equals < 0) {
+                break;
+            }
+
+            String name = list.substring(i, equals).trim();
+            String value;
+
+            int valueStart = equals + 1;
+            if (valueStart < list.length() && list.charAt(valueStart) == '"') {
+                int closing = list.indexOf('"', valueStart + 1);
+                if (closing < 0) {
+                    closing = list.length();
+                }
+
+                value = list.substring(valueStart + 1, closing);
+
+                int comma = list.indexOf(',', closing);
+                i = comma < 0 ? list.length() : comma + 1;
+            } else {
+                int comma = list.indexOf(',', valueStart);
+                int end = comma < 0 ? list.length() : comma;
+
+                value = list.substring(valueStart, end).trim();
+                i = end + 1;
+            }
+
+            attributes.put(name, value);
+        }
+
+        return attributes;
+    }
+
+    private static void checkHeader(String text) throws UnsupportedStreamException {
+        if (!text.stripLeading().startsWith("#EXTM3U")) {
+            throw new UnsupportedStreamException("Not an HLS playlist");
+        }
+    }
+
+    /**
+     * Returns the length and offset of a {@code <length>[@<offset>]} range.
+     */
+    private static long[] parseByteRange(String value, long defaultOffset) {
+        String[] parts = value.trim().split("@");
+
+        long length = parseLong(parts[0]);
+        long offset = parts.length > 1 ? parseLong(parts[1]) : defaultOffset;
+
+        return new long[]{length, offset};
+    }
+
+    private static byte[] parseIv(String value) throws UnsupportedStreamException {
+        String hex = value.startsWith("0x") || value.startsWith("0X") ? value.substring(2) : value;
+
+        try {
+            byte[] parsed = HexFormat.of().parseHex(hex);
+
+            byte[] iv = new byte[16];
+            System.arraycopy(parsed, Math.max(0, parsed.length - 16), iv,
+                Math.max(0, 16 - parsed.length), Math.min(16, parsed.length));
+            return iv;
+        } catch (IllegalArgumentException e) {
+            throw new UnsupportedStreamException("Malformed IV: " + value);
+        }
+    }
+
+    static URL resolve(URL baseUrl, @Nullable String reference) throws UnsupportedStreamException {
+        if (reference == null || reference.isBlank()) {
+            throw new UnsupportedStreamException("Missing URI in playlist");
+        }
+
+        try {
+            return baseUrl.toURI().resolve(new URI(reference.trim())).toURL();
+        } catch (URISyntaxException | MalformedURLException | IllegalArgumentException e) {
+            throw new UnsupportedStreamException("Malformed URI in playlist: " + reference);
+        }
+    }
+
+    private static int parseInt(String value) {
+        try {
+            return Integer.parseInt(value.trim());
+        } catch (NumberFormatException e) {
+            return 0;
+        }
+    }
+
+    private static long parseLong(String value) {
+        try {
+            return Long.parseLong(value.trim());
+        } catch (NumberFormatException e) {
+            return 0;
+        }
+    }
+
+    private static double parseDouble(@Nullable String value) {
+        if (value == null) {
+            return 0;
+        }
+
+        try {
+            return Double.parseDouble(value.trim());
+        } catch (NumberFormatException e) {
+            return 0;
+        }
+    }
+}
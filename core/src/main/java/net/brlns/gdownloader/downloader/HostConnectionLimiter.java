@@ -0,0 +1,158 @@
+/*
+ * Copyright (C) 2024 hstr0100
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package net.brlns.gdownloader.downloader;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.BooleanSupplier;
+import net.brlns.gdownloader.GDownloader;
+import net.brlns.gdownloader.settings.Settings;
+import net.brlns.gdownloader.util.Nullable;
+import net.brlns.gdownloader.util.URLUtils;
+
+/**
+ * Caps the number of concurrent direct HTTP connections to each host, across every download.
+ *
+ * Waiting requests are served strictly in arrival order. The cap of a host is taken from the first
+ * matching pattern in the per-host settings, or from the default cap if none match,
+ * and is re-read while waiting, so changes apply without a restart.
+ *
+ * @author Gabriel / hstr0100 / vertx010
+ */
+public class HostConnectionLimiter {
+
+    /**
+     * How often a waiter checks whether it is still wanted and whether the cap has changed.
+     */
+    private static final long POLL_INTERVAL_MILLIS = 250;
+
+    private final GDownloader main;
+
+    private final Map<String, HostSlots> hostSlots = new ConcurrentHashMap<>();
+
+    public HostConnectionLimiter(GDownloader mainIn) {
+        main = mainIn;
+    }
+
+    /**
+     * Waits for a free connection slot on the host of the given URL.
+     *
+     * @return the permit, which must be closed once the connection is done,
+     * or null if the caller stopped being alive before a slot became free.
+     */
+    @Nullable
+    public Permit acquire(String url, BooleanSupplier alive) throws InterruptedException {
+        String host = URLUtils.getHost(url);
+        HostSlots slots = hostSlots.computeIfAbsent(host, key -> new HostSlots());
+
+        Object ticket = new Object();
+
+        slots.lock.lock();
+        try {
+            slots.waiters.addLast(ticket);
+
+            while (true) {
+                int limit = getLimit(host);
+
+                if (slots.waiters.peekFirst() == ticket && slots.inUse < limit) {
+                    slots.waiters.pollFirst();
+                    slots.inUse++;
+
+                    // The next in line may fit as well.
+                    slots.changed.signalAll();
+                    return new Permit(slots);
+                }
+
+                if (!alive.getAsBoolean()) {
+                    return null;
+                }
+
+                slots.changed.await(POLL_INTERVAL_MILLIS, TimeUnit.MILLISECONDS);
+            }
+        } finally {
+            if (slots.waiters.remove(ticket)) {
+                slots.changed.signalAll();
+            }
+
+            slots.lock.unlock();
+        }
+    }
+
+    public int getInUseCount(String url) {
+        HostSlots slots = hostSlots.get(URLUtils.getHost(url));
+        if (slots == null) {
+            return 0;
+        }
+
+        slots.lock.lock();
+        try {
+            return slots.inUse;
+        } finally {
+            slots.lock.unlock();
+        }
+    }
+
+    private int getLimit(String host) {
+        Settings config = main.getConfig();
+
+        for (Map.Entry<String, Integer> entry : config.getDirectHttpHostConnectionLimits().entrySet()) {
+            if (entry.getValue() != null && URLUtils.matchesHostPattern(entry.getKey(), host)) {
+                return Math.max(1, entry.getValue());
+            }
+        }
+
+        return Math.max(1, config.getDirectHttpMaxConnectionsPerHost());
+    }
+
+    private static class HostSlots {
+
+        private final ReentrantLock lock = new ReentrantLock();
+        private final Condition changed = lock.newCondition();
+
+        private final Deque<Object> waiters = new ArrayDeque<>();
+        private int inUse;
+    }
+
+    public static class Permit implements AutoCloseable {
+
+        private final HostSlots slots;
+        private boolean released;
+
+        private Permit(HostSlots slotsIn) {
+            slots = slotsIn;
+        }
+
+        @Override
+        public void close() {
+            slots.lock.lock();
+            try {
+                if (!released) {
+                    released = true;
+                    slots.inUse--;
+                    slots.changed.signalAll();
+                }
+            } finally {
+                slots.lock.unlock();
+            }
+        }
+    }
+}
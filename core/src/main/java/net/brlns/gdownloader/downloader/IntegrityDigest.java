@@ -0,0 +1,216 @@
+/*
+ * Copyright (C) 2024 hstr0100
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package net.brlns.gdownloader.downloader;
+
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Base64;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.function.Function;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import lombok.Getter;
+import net.brlns.gdownloader.util.Nullable;
+
+/**
+ * A checksum announced by the server for a file or for the body of a single response.
+ *
+ * Understands {@code Repr-Digest} and {@code Content-Digest} (RFC 9530), the older {@code Digest}
+ * header (RFC 3230), {@code Content-MD5} and sha256sum-style sidecar files. When several algorithms
+ * are offered, the strongest one is used.
+ *
+ * @author Gabriel / hstr0100 / vertx010
+ */
+@Getter
+public class IntegrityDigest {
+
+    /**
+     * Supported algorithms by their HTTP token, strongest first.
+     */
+    private static final Map<String, String> ALGORITHMS = Map.of(
+        "sha-512", "SHA-512",
+        "sha-256", "SHA-256",
+        "sha", "SHA-1",
+        "md5", "MD5"
+    );
+
+    private static final List<String> PREFERENCE = List.of("sha-512", "sha-256", "sha", "md5");
+
+    private static final Pattern SHA256_HEX = Pattern.compile("\\b([0-9a-fA-F]{64})\\b");
+
+    private final String algorithm;
+    private final byte[] expected;
+    private final String source;
+
+    public IntegrityDigest(String algorithmIn, byte[] expectedIn, String sourceIn) {
+        algorithm = algorithmIn;
+        expected = expectedIn;
+        source = sourceIn;
+    }
+
+    public MessageDigest newMessageDigest() {
+        try {
+            return MessageDigest.getInstance(algorithm);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("Missing digest algorithm " + algorithm, e);
+        }
+    }
+
+    public boolean matches(byte[] actual) {
+        return MessageDigest.isEqual(expected, actual);
+    }
+
+    /**
+     * Returns the digest of the whole file, as described by the headers of a full (200) response.
+     */
+    @Nullable
+    public static IntegrityDigest fromRepresentationHeaders(Function<String, String> headers) {
+        IntegrityDigest digest = parseStructuredDigest(headers.apply("Repr-Digest"), "Repr-Digest");
+
+        if (digest == null) {
+            digest = parseLegacyDigest(headers.apply("Digest"));
+        }
+
+        if (digest == null) {
+            digest = parseContentMd5(headers.apply("Content-MD5"));
+        }
+
+        return digest;
+    }
+
+    /**
+     * Returns the digest of the body of this particular response, which for a 206 covers only the range sent.
+     */
+    @Nullable
+    public static IntegrityDigest fromContentHeaders(Function<String, String> headers) {
+        IntegrityDigest digest = parseStructuredDigest(headers.apply("Content-Digest"), "Content-Digest");
+
+        if (digest == null) {
+            digest = parseContentMd5(headers.apply("Content-MD5"));
+        }
+
+        return digest;
+    }
+
+    /**
+     * Parses an RFC 9530 dictionary, such as {@code sha-256=:base64:, sha-512=:base64:}.
+     */
+    @Nullable
+    public static IntegrityDigest parseStructuredDigest(@Nullable String value, String source) {
+        return parseDictionary(value, source, true);
+    }
+
+    /**
+     * Parses an RFC 3230 list, such as {@code SHA-256=base64,MD5=base64}.
+     */
+    @Nullable
+    public static IntegrityDigest parseLegacyDigest(@Nullable String value) {
+        return parseDictionary(value, "Digest", false);
+    }
+
+    @Nullable
+    public static IntegrityDigest parseContentMd5(@Nullable String value) {
+        if (value == null || value.isBlank()) {
+            return null;
+        }
+
+        byte[] expected = decodeBase64(value.trim());
+        if (expected == null || expected.length != 16) {
+            return null;
+        }
+
+        return new IntegrityDigest("MD5", expected, "Content-MD5");
+    }
+
+    /**
+     * Parses the contents of a {@code .sha256} sidecar file, as produced by {@code sha256sum}.
+     */
+    @Nullable
+    public static IntegrityDigest parseSha256Sidecar(@Nullable String content) {
+        if (content == null) {
+            return null;
+        }
+
+        Matcher matcher = SHA256_HEX.matcher(content);
+        if (!matcher.find()) {
+            return null;
+        }
+
+        return new IntegrityDigest("SHA-256", HexFormat.of().parseHex(matcher.group(1)), "sidecar");
+    }
+
+    @Nullable
+    private static IntegrityDigest parseDictionary(@Nullable String value, String source, boolean structured) {
+        if (value == null || value.isBlank()) {
+            return null;
+        }
+
+        IntegrityDigest best = null;
+        int bestRank = Integer.MAX_VALUE;
+
+        for (String member : value.split(",")) {
+            int separator = member.indexOf('=');
+            if (separator <= 0) {
+                continue;
+            }
+
+            String key = member.substring(0, separator).trim().toLowerCase(Locale.ROOT);
+            String encoded = member.substring(separator + 1).trim();
+
+            if (structured) {
+                // Byte sequences are wrapped in colons.
+                if (encoded.length() < 2 || !encoded.startsWith(":") || !encoded.endsWith(":")) {
+                    continue;
+                }
+
+                encoded = encoded.substring(1, encoded.length() - 1);
+            }
+
+            int rank = PREFERENCE.indexOf(key);
+            if (rank < 0 || rank >= bestRank) {
+                continue;
+            }
+
+            byte[] expected = decodeBase64(encoded);
+            if (expected == null) {
+                continue;
+            }
+
+            best = new IntegrityDigest(ALGORITHMS.get(key), expected, source);
+            bestRank = rank;
+        }
+
+        return best;
+    }
+
+    @Nullable
+    private static byte[] decodeBase64(String value) {
+        try {
+            return Base64.getDecoder().decode(value);
+        } catch (IllegalArgumentException e) {
+            return null;
+        }
+    }
+
+    @Override
+    public String toString() {
+        return source + " " + algorithm + " " + HexFormat.of().formatHex(expected);
+    }
+}
@@ -0,0 +1,304 @@
+/*
+ * Copyright (C) 2024 hstr0100
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package net.brlns.gdownloader.downloader;
+
+import java.net.Inet4Address;
+import java.net.InetAddress;
+import java.net.NetworkInterface;
+import java.net.SocketException;
+import java.net.UnknownHostException;
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import lombok.Getter;
+import lombok.extern.slf4j.Slf4j;
+import net.brlns.gdownloader.util.Nullable;
+
+/**
+ * Local addresses that chunk connections can be bound to, so that downloads are spread over several uplinks.
+ *
+ * Each connection goes to the address expected to give it the largest share of bandwidth, judging by how
+ * much each address delivered per connection so far. An address that keeps failing to connect or read is
+ * taken out of rotation for a while, then tried again.
+ *
+ * @author Gabriel / hstr0100 / vertx010
+ */
+@Slf4j
+public class LocalAddressSet {
+
+    public static final long SAMPLE_INTERVAL_NANOS = TimeUnit.SECONDS.toNanos(1);
+
+    /**
+     * Consecutive failed requests after which an address is taken out of rotation.
+     */
+    private static final int MAX_CONSECUTIVE_FAILURES = 3;
+
+    private static final long DOWN_INTERVAL_NANOS = TimeUnit.MINUTES.toNanos(1);
+
+    private static final double SMOOTHING = 0.5;
+
+    private final List<LocalAddress> addresses = new ArrayList<>();
+
+    public LocalAddressSet(List<InetAddress> addressesIn) {
+        for (InetAddress address : addressesIn) {
+            addresses.add(new LocalAddress(address));
+        }
+    }
+
+    /**
+     * Resolves the configured entries, each being either an IP address or the name of a network interface.
+     * Entries that cannot be resolved are skipped.
+     */
+    public static LocalAddressSet fromSettings(List<String> entries) {
+        Set<InetAddress> resolved = new LinkedHashSet<>();
+
+        for (String entry : entries) {
+            String name = entry.trim();
+            if (name.isEmpty()) {
+                continue;
+            }
+
+            InetAddress address = resolve(name);
+            if (address != null) {
+                resolved.add(address);
+            } else {
+                log.warn("Ignoring local address {}, it is neither an address nor an interface that is up", name);
+            }
+        }
+
+        return new LocalAddressSet(new ArrayList<>(resolved));
+    }
+
+    @Nullable
+    private static InetAddress resolve(String name) {
+        try {
+            NetworkInterface networkInterface = NetworkInterface.getByName(name);
+            if (networkInterface != null) {
+                if (!networkInterface.isUp()) {
+                    return null;
+                }
+
+                // IPv4 first, as a v6 source cannot reach a v4-only destination.
+                InetAddress fallback = null;
+                for (InetAddress address : Collections.list(networkInterface.getInetAddresses())) {
+                    if (address.isLinkLocalAddress()) {
+                        continue;
+                    }
+
+                    if (address instanceof Inet4Address) {
+                        return address;
+                    }
+
+                    if (fallback == null) {
+                        fallback = address;
+                    }
+                }
+
+                return fallback;
+            }
+        } catch (SocketException e) {
+            log.debug("Cannot look up interface {}: {}", name, e.getMessage());
+        }
+
+        // Only literals are accepted, a host name would have to be looked up first.
+        if (!Character.isDigit(name.charAt(0)) && !name.contains(":")) {
+            return null;
+        }
+
+        try {
+            InetAddress address = InetAddress.getByName(name);
+            // The whole loopback range is local, whether or not an alias was set up for it.
+            if (!address.isLoopbackAddress() && NetworkInterface.getByInetAddress(address) == null) {
+                return null;
+            }
+
+            return address;
+        } catch (UnknownHostException | SocketException e) {
+            return null;
+        }
+    }
+
+    public synchronized boolean isEmpty() {
+        return addresses.isEmpty();
+    }
+
+    public synchronized List<LocalAddress> getAddresses() {
+        return new ArrayList<>(addresses);
+    }
+
+    /**
+     * Returns the address the next connection should be bound to, or null to leave it to the default route,
+     * which happens when no address is configured or every one of them is out of rotation.
+     */
+    @Nullable
+    public synchronized LocalAddress pick(long now) {
+        LocalAddress best = null;
+
+        for (LocalAddress address : addresses) {
+            if (address.isDown(now)) {
+                continue;
+            }
+
+            if (best == null || compare(address, best) > 0) {
+                best = address;
+            }
+        }
+
+        if (best != null) {
+            best.activeConnections.incrementAndGet();
+        }
+
+        return best;
+    }
+
+    /**
+     * Must be called once the connection bound to an address from {@link #pick(long)} is done with.
+     */
+    public void release(LocalAddress address) {
+        address.activeConnections.decrementAndGet();
+    }
+
+    public void onSuccess(LocalAddress address) {
+        address.consecutiveFailures.set(0);
+    }
+
+    /**
+     * Counts a failed connection against an address. Returns true if that takes it out of rotation.
+     */
+    public synchronized boolean onFailure(LocalAddress address, long now) {
+        if (address.consecutiveFailures.incrementAndGet() < MAX_CONSECUTIVE_FAILURES) {
+            return false;
+        }
+
+        address.consecutiveFailures.set(0);
+        address.downUntilNanos = now + DOWN_INTERVAL_NANOS;
+        // Whatever it measured before failing no longer says much about it.
+        address.throughput = -1;
+
+        log.warn("Taking local address {} out of rotation after {} consecutive failures",
+            address.getAddress().getHostAddress(), MAX_CONSECUTIVE_FAILURES);
+        return true;
+    }
+
+    /**
+     * Updates the per-connection throughput of every address. Meant to be called periodically,
+     * calls closer together than {@link #SAMPLE_INTERVAL_NANOS} are ignored.
+     */
+    public synchronized void sample(long now) {
+        for (LocalAddress address : addresses) {
+            address.sample(now);
+        }
+    }
+
+    private static int compare(LocalAddress a, LocalAddress b) {
+        boolean aMeasured = a.throughput >= 0;
+        boolean bMeasured = b.throughput >= 0;
+
+        if (aMeasured != bMeasured) {
+            return aMeasured ? -1 : 1;
+        }
+
+        if (aMeasured) {
+            int result = Double.compare(a.getExpectedShare(), b.getExpectedShare());
+            if (result != 0) {
+                return result;
+            }
+        }
+
+        return Integer.compare(b.activeConnections.get(), a.activeConnections.get());
+    }
+
+    public static class LocalAddress {
+
+        @Getter
+        private final InetAddress address;
+
+        private final AtomicLong transferredBytes = new AtomicLong();
+        private final AtomicInteger activeConnections = new AtomicInteger();
+        private final AtomicInteger consecutiveFailures = new AtomicInteger();
+
+        private long downUntilNanos;
+
+        private long lastSampleNanos = -1;
+        private long lastSampleBytes;
+
+        /**
+         * Smoothed bytes per second per connection, negative until first measured.
+         */
+        private double throughput = -1;
+
+        private LocalAddress(InetAddress addressIn) {
+            address = addressIn;
+        }
+
+        public void addBytes(long bytes) {
+            transferredBytes.addAndGet(bytes);
+        }
+
+        private boolean isDown(long now) {
+            if (downUntilNanos == 0) {
+                return false;
+            }
+
+            if (now - downUntilNanos < 0) {
+                return true;
+            }
+
+            downUntilNanos = 0;
+            log.info("Putting local address {} back into rotation", address.getHostAddress());
+            return false;
+        }
+
+        /**
+         * The bandwidth one more connection could expect, taking the uplink as saturated by those already on it.
+         */
+        private double getExpectedShare() {
+            int connections = activeConnections.get();
+            return throughput * Math.max(1, connections) / (connections + 1);
+        }
+
+        private void sample(long now) {
+            if (lastSampleNanos == -1) {
+                lastSampleNanos = now;
+                lastSampleBytes = transferredBytes.get();
+                return;
+            }
+
+            long elapsed = now - lastSampleNanos;
+            if (elapsed < SAMPLE_INTERVAL_NANOS) {
+                return;
+            }
+
+            long bytes = transferredBytes.get();
+            int connections = activeConnections.get();
+
+            if (connections > 0 || bytes > lastSampleBytes) {
+                double rate = (bytes - lastSampleBytes) / (elapsed / 1e9) / Math.max(1, connections);
+                throughput = throughput < 0 ? rate : throughput * (1 - SMOOTHING) + rate * SMOOTHING;
+            }
+
+            lastSampleNanos = now;
+            lastSampleBytes = bytes;
+        }
+
+        @Override
+        public String toString() {
+            return address.getHostAddress();
+        }
+    }
+}
@@ -0,0 +1,189 @@
+/*
+ * Copyright (C) 2024 hstr0100
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package net.brlns.gdownloader.downloader;
+
+import java.net.URI;
+import java.net.URL;
+import java.util.*;
+import lombok.Getter;
+import net.brlns.gdownloader.util.Nullable;
+import org.jsoup.Jsoup;
+import org.jsoup.nodes.Document;
+import org.jsoup.nodes.Element;
+import org.jsoup.parser.Parser;
+
+/**
+ * The first file described by a Metalink document (RFC 5854, or the older 3.0 format),
+ * along with the HTTP sources it can be downloaded from, best first.
+ *
+ * @author Gabriel / hstr0100 / vertx010
+ */
+@Getter
+public class Metalink {
+
+    private static final Map<String, String> HASH_TYPES = Map.of(
+        "sha-512", "SHA-512",
+        "sha512", "SHA-512",
+        "sha-256", "SHA-256",
+        "sha256", "SHA-256",
+        "sha-1", "SHA-1",
+        "sha1", "SHA-1",
+        "md5", "MD5"
+    );
+
+    @Nullable
+    private final String fileName;
+
+    private final long size;
+
+    @Nullable
+    private final IntegrityDigest digest;
+
+    private final List<URL> urls;
+
+    private Metalink(@Nullable String fileNameIn, long sizeIn,
+        @Nullable IntegrityDigest digestIn, List<URL> urlsIn) {
+        fileName = fileNameIn;
+        size = sizeIn;
+        digest = digestIn;
+        urls = urlsIn;
+    }
+
+    public static boolean isMetalink(URL url, @Nullable String contentType) {
+        if (contentType != null && contentType.contains("metalink")) {
+            return true;
+        }
+
+        String path = url.getPath().toLowerCase(Locale.ROOT);
+        return path.endsWith(".meta4") || path.endsWith(".metalink");
+    }
+
+    /**
+     * Returns null if the document lists no usable HTTP source.
+     */
+    @Nullable
+    public static Metalink parse(String xml) {
+        Document document = Jsoup.parse(xml, "", Parser.xmlParser());
+
+        Element file = document.selectFirst("file");
+        if (file == null) {
+            return null;
+        }
+
+        List<Map.Entry<URL, Integer>> sources = new ArrayList<>();
+        for (Element element : file.select("url")) {
+            URL url = toHttpUrl(element.text().trim());
+            if (url == null) {
+                continue;
+            }
+
+            // 4.0 ranks by ascending priority, 3.0 by descending preference.
+            int rank;
+            if (element.hasAttr("priority")) {
+                rank = parseInt(element.attr("priority"), 999999);
+            } else if (element.hasAttr("preference")) {
+                rank = 100 - parseInt(element.attr("preference"), 0);
+            } else {
+                rank = 999999;
+            }
+
+            sources.add(Map.entry(url, rank));
+        }
+
+        if (sources.isEmpty()) {
+            return null;
+        }
+
+        // The sort is stable, so sources of equal rank keep their document order.
+        sources.sort(Map.Entry.comparingByValue());
+
+        List<URL> urls = new ArrayList<>();
+        for (Map.Entry<URL, Integer> source : sources) {
+            urls.add(source.getKey());
+        }
+
+        Element sizeElement = file.selectFirst("size");
+        long size = sizeElement != null ? parseLong(sizeElement.text().trim()) : -1;
+
+        // Names may carry a relative path, only the last segment is of use here.
+        String fileName = file.attr("name");
+        fileName = fileName.substring(Math.max(fileName.lastIndexOf('/'), fileName.lastIndexOf('\\')) + 1);
+
+        return new Metalink(fileName.isBlank() ? null : fileName,
+            size, parseDigest(file), urls);
+    }
+
+    @Nullable
+    private static IntegrityDigest parseDigest(Element file) {
+        IntegrityDigest best = null;
+        int bestRank = Integer.MAX_VALUE;
+
+        List<String> preference = List.of("SHA-512", "SHA-256", "SHA-1", "MD5");
+
+        for (Element element : file.select("hash")) {
+            // Piece hashes of the 4.0 format are nested under <pieces>.
+            if (element.parent() != null && "pieces".equals(element.parent().tagName())) {
+                continue;
+            }
+
+            String algorithm = HASH_TYPES.get(element.attr("type").trim().toLowerCase(Locale.ROOT));
+            if (algorithm == null || preference.indexOf(algorithm) >= bestRank) {
+                continue;
+            }
+
+            try {
+                byte[] expected = HexFormat.of().parseHex(element.text().trim());
+                best = new IntegrityDigest(algorithm, expected, "Metalink");
+                bestRank = preference.indexOf(algorithm);
+            } catch (IllegalArgumentException e) {
+                // Not hex, skip it
+            }
+        }
+
+        return best;
+    }
+
+    @Nullable
+    private static URL toHttpUrl(String value) {
+        try {
+            URI uri = new URI(value);
+            if (!"http".equalsIgnoreCase(uri.getScheme()) && !"https".equalsIgnoreCase(uri.getScheme())) {
+                return null;
+            }
+
+            return uri.toURL();
+        } catch (Exception e) {
+            return null;
+        }
+    }
+
+    private static int parseInt(String value, int fallback) {
+        try {
+            return Integer.parseInt(value.trim());
+        } catch (NumberFormatException e) {
+            return fallback;
+        }
+    }
+
+    private static long parseLong(String value) {
+        try {
+            return Long.parseLong(value);
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+}
@@ -0,0 +1,248 @@
+/*
+ * Copyright (C) 2024 hstr0100
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package net.brlns.gdownloader.downloader;
+
+import java.net.URI;
+import java.net.URL;
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import lombok.Getter;
+import lombok.extern.slf4j.Slf4j;
+import net.brlns.gdownloader.util.Nullable;
+
+/**
+ * Equivalent sources of the same file. Each range goes to the source currently delivering
+ * the most bytes per connection, and sources that keep failing are dropped.
+ *
+ * A source nothing is known about yet is always tried before a measured one,
+ * so that every mirror gets a chance to show what it can do.
+ *
+ * @author Gabriel / hstr0100 / vertx010
+ */
+@Slf4j
+public class MirrorSet {
+
+    public static final long SAMPLE_INTERVAL_NANOS = TimeUnit.SECONDS.toNanos(1);
+
+    /**
+     * Consecutive failed requests after which a source is given up on.
+     */
+    private static final int MAX_CONSECUTIVE_FAILURES = 3;
+
+    private static final double SMOOTHING = 0.5;
+
+    private static final Pattern LINK_PATTERN = Pattern.compile("<([^>]*)>([^,<]*)");
+    private static final Pattern REL_PATTERN = Pattern.compile(
+        "(?i);\\s*rel\\s*=\\s*\"?([^\";]*)\"?");
+
+    private final List<Mirror> mirrors = new ArrayList<>();
+
+    public MirrorSet(List<URL> urlsIn) {
+        for (URL url : urlsIn) {
+            mirrors.add(new Mirror(url));
+        }
+    }
+
+    public synchronized int size() {
+        return mirrors.size();
+    }
+
+    public synchronized List<Mirror> getMirrors() {
+        return new ArrayList<>(mirrors);
+    }
+
+    /**
+     * Returns the source the next range should be requested from.
+     */
+    public synchronized Mirror pick() {
+        Mirror best = null;
+
+        for (Mirror mirror : mirrors) {
+            if (best == null || compare(mirror, best) > 0) {
+                best = mirror;
+            }
+        }
+
+        assert best != null;
+        best.activeConnections.incrementAndGet();
+
+        return best;
+    }
+
+    /**
+     * Must be called once the range obtained from {@link #pick()} is no longer being transferred.
+     */
+    public void release(Mirror mirror) {
+        mirror.activeConnections.decrementAndGet();
+    }
+
+    public void onSuccess(Mirror mirror) {
+        mirror.consecutiveFailures.set(0);
+    }
+
+    /**
+     * Returns true if the source has been dropped, in which case whatever it was serving
+     * should be handed to another one. The last remaining source is never dropped.
+     */
+    public synchronized boolean onFailure(Mirror mirror) {
+        if (mirror.consecutiveFailures.incrementAndGet() < MAX_CONSECUTIVE_FAILURES
+            || mirrors.size() <= 1 || !mirrors.remove(mirror)) {
+            return false;
+        }
+
+        log.warn("Dropping source {} after {} consecutive failures", mirror.getUrl(), MAX_CONSECUTIVE_FAILURES);
+        return true;
+    }
+
+    /**
+     * Updates the per-connection throughput of every source. Meant to be called periodically,
+     * calls closer together than {@link #SAMPLE_INTERVAL_NANOS} are ignored.
+     */
+    public synchronized void sample(long now) {
+        for (Mirror mirror : mirrors) {
+            mirror.sample(now);
+        }
+    }
+
+    private static int compare(Mirror a, Mirror b) {
+        boolean aMeasured = a.throughput >= 0;
+        boolean bMeasured = b.throughput >= 0;
+
+        if (aMeasured != bMeasured) {
+            return aMeasured ? -1 : 1;
+        }
+
+        if (aMeasured && a.throughput != b.throughput) {
+            return Double.compare(a.throughput, b.throughput);
+        }
+
+        // Otherwise spread the load.
+        return Integer.compare(b.activeConnections.get(), a.activeConnections.get());
+    }
+
+    /**
+     * Extracts the targets of {@code Link: <url>; rel=duplicate} headers (RFC 6249), resolved against the given URL.
+     */
+    public static List<URL> parseDuplicateLinks(List<String> headerValues, URL base) {
+        List<URL> urls = new ArrayList<>();
+
+        for (String value : headerValues) {
+            Matcher matcher = LINK_PATTERN.matcher(value);
+            while (matcher.find()) {
+                Matcher rel = REL_PATTERN.matcher(matcher.group(2));
+                if (!rel.find() || !Arrays.asList(rel.group(1).trim().toLowerCase(Locale.ROOT)
+                    .split("\\s+")).contains("duplicate")) {
+                    continue;
+                }
+
+                try {
+                    URL url = base.toURI().resolve(new URI(matcher.group(1).trim())).toURL();
+                    if (url.getProtocol().startsWith("http")) {
+                        urls.add(url);
+                    }
+                } catch (Exception e) {
+                    log.debug("Ignoring malformed duplicate link {}", matcher.group(1));
+                }
+            }
+        }
+
+        return urls;
+    }
+
+    /**
+     * Applies user-configured mirrors, each mapping a URL prefix to the prefixes the same files are also found under.
+     */
+    public static List<URL> fromPrefixes(String url, Map<String, List<String>> prefixes) {
+        List<URL> urls = new ArrayList<>();
+
+        for (Map.Entry<String, List<String>> entry : prefixes.entrySet()) {
+            if (entry.getKey().isEmpty() || !url.startsWith(entry.getKey())) {
+                continue;
+            }
+
+            String suffix = url.substring(entry.getKey().length());
+            for (String prefix : entry.getValue()) {
+                try {
+                    urls.add(new URI(prefix + suffix).toURL());
+                } catch (Exception e) {
+                    log.debug("Ignoring malformed mirror {}", prefix);
+                }
+            }
+        }
+
+        return urls;
+    }
+
+    public static class Mirror {
+
+        @Getter
+        private final URL url;
+
+        private final AtomicLong transferredBytes = new AtomicLong();
+        private final AtomicInteger activeConnections = new AtomicInteger();
+        private final AtomicInteger consecutiveFailures = new AtomicInteger();
+
+        private long lastSampleNanos = -1;
+        private long lastSampleBytes;
+
+        /**
+         * Smoothed bytes per second per connection, negative until first measured.
+         */
+        private double throughput = -1;
+
+        private Mirror(URL urlIn) {
+            url = urlIn;
+        }
+
+        public void addBytes(long bytes) {
+            transferredBytes.addAndGet(bytes);
+        }
+
+        private void sample(long now) {
+            if (lastSampleNanos == -1) {
+                lastSampleNanos = now;
+                lastSampleBytes = transferredBytes.get();
+                return;
+            }
+
+            long elapsed = now - lastSampleNanos;
+            if (elapsed < SAMPLE_INTERVAL_NANOS) {
+                return;
+            }
+
+            long bytes = transferredBytes.get();
+            int connections = activeConnections.get();
+
+            if (connections > 0 || bytes > lastSampleBytes) {
+                double rate = (bytes - lastSampleBytes) / (elapsed / 1e9) / Math.max(1, connections);
+                throughput = throughput < 0 ? rate : throughput * (1 - SMOOTHING) + rate * SMOOTHING;
+            }
+
+            lastSampleNanos = now;
+            lastSampleBytes = bytes;
+        }
+
+        @Override
+        public String toString() {
+            return url.toString();
+        }
+    }
+}
@@ -0,0 +1,119 @@
+/*
+ * Copyright (C) 2024 hstr0100
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package net.brlns.gdownloader.downloader;
+
+import java.util.BitSet;
+import java.util.Map;
+import java.util.TreeMap;
+import lombok.Getter;
+import net.brlns.gdownloader.downloader.structs.ChunkManifest;
+
+/**
+ * Tracks which fixed-size pieces of a file are fully on disk, however the ranges that filled them were cut.
+ *
+ * The length of the gap-free prefix is what a player can safely read from a file that is still downloading.
+ *
+ * @author Gabriel / hstr0100 / vertx010
+ */
+public class PieceBitmap {
+
+    @Getter
+    private final long totalBytes;
+    @Getter
+    private final long pieceSize;
+
+    private final int pieceCount;
+    private final BitSet committed;
+
+    // Committed spans, merged as they grow, so that a piece straddling two ranges is still recognized.
+    private final TreeMap<Long, Long> spans = new TreeMap<>();
+
+    public PieceBitmap(long totalBytesIn, long pieceSizeIn) {
+        totalBytes = totalBytesIn;
+        pieceSize = pieceSizeIn;
+
+        pieceCount = (int)((totalBytes + pieceSize - 1) / pieceSize);
+        committed = new BitSet(pieceCount);
+    }
+
+    /**
+     * Builds a bitmap out of what a manifest says is already committed.
+     */
+    public static PieceBitmap fromManifest(ChunkManifest manifest, long pieceSize) {
+        PieceBitmap bitmap = new PieceBitmap(manifest.getTotalBytes(), pieceSize);
+
+        synchronized (manifest) {
+            for (ChunkManifest.Chunk chunk : manifest.getChunks()) {
+                long committedBytes = Math.min(chunk.getCommittedBytes(), chunk.getLength());
+                bitmap.markCommitted(chunk.getStartByte(), chunk.getStartByte() + committedBytes);
+            }
+        }
+
+        return bitmap;
+    }
+
+    /**
+     * Records that the bytes from {@code fromByte} up to, but excluding, {@code toByte} are on disk.
+     * Spans may overlap previously recorded ones. A piece is marked once it is entirely covered.
+     */
+    public synchronized void markCommitted(long fromByte, long toByte) {
+        if (fromByte >= toByte) {
+            return;
+        }
+
+        Map.Entry<Long, Long> previous = spans.floorEntry(fromByte);
+        if (previous != null && previous.getValue() >= fromByte) {
+            fromByte = previous.getKey();
+            toByte = Math.max(toByte, previous.getValue());
+        }
+
+        Map.Entry<Long, Long> next;
+        while ((next = spans.ceilingEntry(fromByte)) != null && next.getKey() <= toByte) {
+            toByte = Math.max(toByte, next.getValue());
+            spans.remove(next.getKey());
+        }
+
+        spans.put(fromByte, toByte);
+
+        int first = (int)((fromByte + pieceSize - 1) / pieceSize);
+        // The last piece is usually shorter, it is complete once the end of the file is reached.
+        int end = toByte >= totalBytes ? pieceCount : (int)(toByte / pieceSize);
+
+        if (first < end) {
+            committed.set(first, end);
+        }
+    }
+
+    public synchronized boolean isCommitted(int piece) {
+        return committed.get(piece);
+    }
+
+    public synchronized int getCommittedCount() {
+        return committed.cardinality();
+    }
+
+    public int getPieceCount() {
+        return pieceCount;
+    }
+
+    /**
+     * Returns how many bytes, counted from the start of the file, are on disk without gaps.
+     */
+    public synchronized long getContiguousBytes() {
+        return Math.min(totalBytes, committed.nextClearBit(0) * pieceSize);
+    }
+}
@@ -0,0 +1,129 @@
+/*
+ * Copyright (C) 2024 hstr0100
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package net.brlns.gdownloader.downloader;
+
+import java.net.URL;
+import java.util.concurrent.TimeUnit;
+import lombok.AllArgsConstructor;
+import net.brlns.gdownloader.downloader.http.HttpTransportResponse;
+import net.brlns.gdownloader.util.Nullable;
+import net.brlns.gdownloader.util.URLUtils;
+import net.brlns.gdownloader.util.collection.LRUCache;
+
+/**
+ * Remembers what probing a URL revealed, so that the same file is not probed again shortly after,
+ * and which hosts keep serving small files, so that those can skip probing altogether.
+ *
+ * Only headers are kept. Entries expire after a while, and validators sent along with later
+ * range requests catch whatever changed on the server in the meantime.
+ *
+ * @author Gabriel / hstr0100 / vertx010
+ */
+public class ProbeCache {
+
+    /**
+     * Files up to this size are fetched with a single request.
+     */
+    public static final long SMALL_FILE_BYTES = 2 * 1024 * 1024;
+
+    /**
+     * How many small files in a row a host has to serve before its files are assumed to be small.
+     */
+    private static final int SMALL_FILE_STREAK = 3;
+
+    private static final long TTL_MILLIS = TimeUnit.MINUTES.toMillis(5);
+
+    private final LRUCache<String, CachedProbe> probes = new LRUCache<>(1024);
+    private final LRUCache<String, Integer> smallFileStreaks = new LRUCache<>(256);
+
+    @Nullable
+    public HttpTransportResponse get(URL url) {
+        synchronized (probes) {
+            CachedProbe cached = probes.get(url.toString());
+            if (cached == null) {
+                return null;
+            }
+
+            if (System.currentTimeMillis() - cached.timestamp >= TTL_MILLIS) {
+                probes.remove(url.toString());
+                return null;
+            }
+
+            return cached.response;
+        }
+    }
+
+    public void put(URL url, HttpTransportResponse response) {
+        synchronized (probes) {
+            probes.put(url.toString(), new CachedProbe(response, System.currentTimeMillis()));
+        }
+    }
+
+    public void invalidate(URL url) {
+        synchronized (probes) {
+            probes.remove(url.toString());
+        }
+    }
+
+    /**
+     * Records the size of a completed download.
+     */
+    public void recordFileSize(URL url, long size) {
+        String host = URLUtils.getHost(url.toString());
+        if (host.isEmpty()) {
+            return;
+        }
+
+        synchronized (smallFileStreaks) {
+            if (size <= SMALL_FILE_BYTES) {
+                Integer streak = smallFileStreaks.get(host);
+                smallFileStreaks.put(host, streak != null ? streak + 1 : 1);
+            } else {
+                smallFileStreaks.remove(host);
+            }
+        }
+    }
+
+    /**
+     * Checks whether a file is expected to be small, either because it was probed recently
+     * or because its host has only been serving small files lately.
+     */
+    public boolean isSmallFile(URL url) {
+        HttpTransportResponse cached = get(url);
+        if (cached != null) {
+            long contentLength = cached.getContentLength();
+            return contentLength > 0 && contentLength <= SMALL_FILE_BYTES;
+        }
+
+        String host = URLUtils.getHost(url.toString());
+        if (host.isEmpty()) {
+            return false;
+        }
+
+        synchronized (smallFileStreaks) {
+            Integer streak = smallFileStreaks.get(host);
+            return streak != null && streak >= SMALL_FILE_STREAK;
+        }
+    }
+
+    @AllArgsConstructor
+    private static class CachedProbe {
+
+        private final HttpTransportResponse response;
+        private final long timestamp;
+    }
+}
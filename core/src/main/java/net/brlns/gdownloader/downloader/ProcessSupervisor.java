@@ -0,0 +1,311 @@
+/*
+ * Copyright (C) 2024 hstr0100
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package net.brlns.gdownloader.downloader;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.PipedInputStream;
+import java.io.PipedOutputStream;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import lombok.extern.slf4j.Slf4j;
+import net.brlns.gdownloader.downloader.structs.ProcessStats;
+import net.brlns.gdownloader.util.Nullable;
+
+/**
+ * Keeps track of the processes started by downloaders, and stops them along with everything they started.
+ *
+ * Nothing is polled: exits are observed through {@link Process#onExit()}, and stopping is driven by the download
+ * being cancelled or downloads being stopped. A stop first asks every process in the tree to terminate, waits for
+ * them to exit, and only then kills whatever is left, including children spawned in the meantime.
+ *
+ * The output of a process is handed to downloaders through a pipe of our own, which a stop closes right away,
+ * and an exit closes once what the process wrote has had time to drain. A read blocked on the pipe of the process
+ * itself would otherwise go on for as long as any process that inherited it is alive, including ones that have left
+ * the tree, and it cannot be woken up by closing the stream.
+ *
+ * @author Gabriel / hstr0100 / vertx010
+ */
+@Slf4j
+public class ProcessSupervisor {
+
+    private static final long GRACE_PERIOD_MILLIS = TimeUnit.SECONDS.toMillis(5);
+
+    /**
+     * How long the output of a process that exited is still read from, before giving up on its descendants.
+     */
+    private static final long OUTPUT_DRAIN_MILLIS = TimeUnit.SECONDS.toMillis(2);
+
+    /**
+     * How many exited processes are kept around for their stats.
+     */
+    private static final int MAX_EXITED_STATS = 64;
+
+    private static final int OUTPUT_BUFFER_BYTES = 8192;
+
+    private final DownloadManager manager;
+
+    private final Map<Long, SupervisedProcess> processes = new ConcurrentHashMap<>();
+    private final Deque<ProcessStats> exitedStats = new ArrayDeque<>();
+
+    public ProcessSupervisor(DownloadManager managerIn) {
+        manager = managerIn;
+    }
+
+    /**
+     * Starts supervising a process started for the given entry, and makes it the process of that entry.
+     * If the entry was cancelled or downloads were stopped in the meantime, the process is stopped right away.
+     *
+     * @return the output of the process, to be read instead of {@link Process#getInputStream()}.
+     * It ends once the process is done writing, or as soon as the process is stopped.
+     */
+    public InputStream supervise(QueueEntry entry, Process process) throws IOException {
+        entry.setProcess(process);
+
+        SupervisedProcess supervised = new SupervisedProcess(entry, process);
+        processes.put(process.pid(), supervised);
+
+        Thread pump = new Thread(supervised::pumpOutput, "Process-Output-" + process.pid());
+        pump.setDaemon(true);
+        pump.start();
+
+        // Runs right away if the entry was already cancelled.
+        CancellationToken.Registration registration = entry.getCancellationToken().onCancel(() -> stop(supervised));
+
+        process.onExit().whenComplete((exited, e) -> {
+            registration.close();
+            onExit(supervised);
+        });
+
+        // Checked after registering, so that a stop racing with us either finds the process or is seen here.
+        if (!manager.isRunning()) {
+            stop(supervised);
+        }
+
+        return supervised.output;
+    }
+
+    /**
+     * Stops every supervised process, along with their descendants.
+     */
+    public CompletableFuture<Void> stopAll() {
+        List<CompletableFuture<Void>> stops = new ArrayList<>();
+
+        for (SupervisedProcess supervised : processes.values()) {
+            stops.add(stop(supervised));
+        }
+
+        return CompletableFuture.allOf(stops.toArray(CompletableFuture[]::new));
+    }
+
+    /**
+     * Returns the stats of the processes still running, followed by those of the latest to have exited.
+     */
+    public List<ProcessStats> getStats() {
+        List<ProcessStats> stats = new ArrayList<>();
+        for (SupervisedProcess supervised : processes.values()) {
+            stats.add(supervised.toStats(null, 0));
+        }
+
+        synchronized (exitedStats) {
+            stats.addAll(exitedStats);
+        }
+
+        return stats;
+    }
+
+    private CompletableFuture<Void> stop(SupervisedProcess supervised) {
+        if (!supervised.stopRequested.compareAndSet(false, true)) {
+            return supervised.process.onExit().thenApply(process -> null);
+        }
+
+        supervised.closeOutput();
+
+        ProcessHandle root = supervised.process.toHandle();
+        supervised.updateFromTree(getTree(root));
+
+        return terminateTree(root, GRACE_PERIOD_MILLIS).thenAccept(forced -> {
+            if (forced) {
+                supervised.killedForcibly = true;
+            }
+        });
+    }
+
+    /**
+     * Terminates a process and all of its descendants, gracefully at first, then forcibly once the grace period
+     * is over. Completes with whether anything had to be killed forcibly, without blocking any thread meanwhile.
+     */
+    public static CompletableFuture<Boolean> terminateTree(ProcessHandle root, long graceMillis) {
+        // Taken before anything is signalled, as descendants are no longer ours to find once their parent is gone.
+        List<ProcessHandle> tree = getTree(root);
+
+        if (log.isDebugEnabled()) {
+            log.debug("Stopping process {} and {} descendants", root.pid(), tree.size() - 1);
+        }
+
+        for (ProcessHandle handle : tree) {
+            handle.destroy();
+        }
+
+        return allExited(tree)
+            .completeOnTimeout(null, graceMillis, TimeUnit.MILLISECONDS)
+            .thenApply(unused -> {
+                // Whatever outlived the grace period goes now, along with anything it started since.
+                Set<ProcessHandle> survivors = new LinkedHashSet<>();
+                for (ProcessHandle handle : tree) {
+                    if (handle.isAlive()) {
+                        survivors.addAll(getTree(handle));
+                    }
+                }
+
+                if (survivors.isEmpty()) {
+                    return false;
+                }
+
+                log.warn("{} processes did not terminate in time, forcefully stopping them", survivors.size());
+
+                for (ProcessHandle handle : survivors) {
+                    handle.destroyForcibly();
+                }
+
+                return true;
+            });
+    }
+
+    private void onExit(SupervisedProcess supervised) {
+        processes.remove(supervised.process.pid(), supervised);
+
+        // Ends the output even if a detached descendant still holds it open.
+        CompletableFuture.delayedExecutor(OUTPUT_DRAIN_MILLIS, TimeUnit.MILLISECONDS)
+            .execute(supervised::closeOutput);
+
+        int exitCode = supervised.process.exitValue();
+        ProcessStats stats = supervised.toStats(Instant.now(), exitCode);
+
+        synchronized (exitedStats) {
+            exitedStats.addFirst(stats);
+
+            while (exitedStats.size() > MAX_EXITED_STATS) {
+                exitedStats.removeLast();
+            }
+        }
+
+        if (log.isDebugEnabled()) {
+            log.debug("Process {} exited with {} after {}ms, {}ms of CPU time{}",
+                stats.getPid(), exitCode, stats.getLifetime().toMillis(), stats.getCpuTime().toMillis(),
+                stats.isKilledForcibly() ? ", killed forcibly" : "");
+        }
+    }
+
+    /**
+     * Returns the process followed by all of its live descendants.
+     */
+    private static List<ProcessHandle> getTree(ProcessHandle root) {
+        List<ProcessHandle> tree = new ArrayList<>();
+        tree.add(root);
+
+        root.descendants().forEach(tree::add);
+        return tree;
+    }
+
+    private static CompletableFuture<Void> allExited(List<ProcessHandle> handles) {
+        return CompletableFuture.allOf(handles.stream()
+            .map(ProcessHandle::onExit)
+            .toArray(CompletableFuture[]::new));
+    }
+
+    private static class SupervisedProcess {
+
+        private final QueueEntry entry;
+        private final Process process;
+        private final String command;
+        private final Instant startedAt;
+
+        private final AtomicBoolean stopRequested = new AtomicBoolean();
+        private volatile boolean killedForcibly;
+
+        private volatile Duration cpuTime = Duration.ZERO;
+        private volatile int peakDescendants;
+
+        private final PipedInputStream output = new PipedInputStream(OUTPUT_BUFFER_BYTES);
+        private final PipedOutputStream outputSink;
+
+        private SupervisedProcess(QueueEntry entryIn, Process processIn) throws IOException {
+            entry = entryIn;
+            process = processIn;
+            outputSink = new PipedOutputStream(output);
+
+            ProcessHandle.Info info = processIn.info();
+            command = info.command().orElse("");
+            startedAt = info.startInstant().orElse(Instant.now());
+        }
+
+        private void pumpOutput() {
+            byte[] buffer = new byte[OUTPUT_BUFFER_BYTES];
+
+            try (InputStream input = process.getInputStream()) {
+                int bytesRead;
+                while ((bytesRead = input.read(buffer)) != -1) {
+                    outputSink.write(buffer, 0, bytesRead);
+
+                    // Wakes the reader up, which would otherwise only look at the pipe again once a second.
+                    outputSink.flush();
+                }
+            } catch (IOException e) {
+                // Our end was closed by a stop, what is left of the output is of no interest.
+            } finally {
+                closeOutput();
+            }
+        }
+
+        /**
+         * Ends the output for its reader. Anything still in the pipe can be read before the end is reached.
+         */
+        private void closeOutput() {
+            try {
+                outputSink.close();
+            } catch (IOException e) {
+                log.debug("Failed to close the output of process {}: {}", process.pid(), e.getMessage());
+            }
+        }
+
+        private void updateFromTree(List<ProcessHandle> tree) {
+            peakDescendants = Math.max(peakDescendants, tree.size() - 1);
+            updateCpuTime();
+        }
+
+        private void updateCpuTime() {
+            // Only reported while the process is alive, so it is sampled whenever it is looked at.
+            process.info().totalCpuDuration().ifPresent(duration -> cpuTime = duration);
+        }
+
+        private ProcessStats toStats(@Nullable Instant exitedAt, int exitCode) {
+            if (exitedAt == null) {
+                updateCpuTime();
+                peakDescendants = Math.max(peakDescendants, (int)process.descendants().count());
+            }
+
+            return new ProcessStats(process.pid(), entry.getDownloadId(), command, startedAt, exitedAt,
+                exitCode, cpuTime, peakDescendants, stopRequested.get(), killedForcibly);
+        }
+    }
+}
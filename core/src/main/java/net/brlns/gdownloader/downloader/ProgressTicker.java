@@ -0,0 +1,72 @@
+/*
+ * Copyright (C) 2024 hstr0100
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package net.brlns.gdownloader.downloader;
+
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * A single thread that samples every running transfer at a fixed interval, so that the number of
+ * status updates does not grow with the number of connections each transfer has open.
+ *
+ * @author Gabriel / hstr0100 / vertx010
+ */
+@Slf4j
+public class ProgressTicker {
+
+    public static final long INTERVAL_MILLIS = 1000;
+
+    private final Set<TransferProgress> transfers = ConcurrentHashMap.newKeySet();
+
+    private final ScheduledExecutorService executor = Executors.newSingleThreadScheduledExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "Progress-Ticker");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    public ProgressTicker() {
+        executor.scheduleAtFixedRate(this::tick, INTERVAL_MILLIS, INTERVAL_MILLIS, TimeUnit.MILLISECONDS);
+    }
+
+    public void register(TransferProgress progress) {
+        transfers.add(progress);
+    }
+
+    public void unregister(TransferProgress progress) {
+        transfers.remove(progress);
+    }
+
+    public void close() {
+        executor.shutdownNow();
+    }
+
+    private void tick() {
+        long now = System.nanoTime();
+
+        for (TransferProgress progress : transfers) {
+            try {
+                progress.tick(now);
+            } catch (Exception e) {
+                log.error("Failed to publish progress", e);
+            }
+        }
+    }
+}
@@ -0,0 +1,80 @@
+/*
+ * Copyright (C) 2024 hstr0100
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package net.brlns.gdownloader.downloader;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Runs the queue processing task on a thread of its own, only when something may have changed.
+ *
+ * Requests arriving while a run is already pending are folded into it, so a burst of events costs a single run.
+ * A request made while the task is running schedules one more run, so that no change goes unnoticed.
+ *
+ * @author Gabriel / hstr0100 / vertx010
+ */
+@Slf4j
+public class QueueDispatcher {
+
+    private final Runnable task;
+
+    private final AtomicBoolean pending = new AtomicBoolean();
+
+    private final ExecutorService executor = Executors.newSingleThreadExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "Queue-Dispatcher");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    public QueueDispatcher(Runnable taskIn) {
+        task = taskIn;
+    }
+
+    /**
+     * Asks for the task to be run soon. Never blocks, and can be called from any thread.
+     */
+    public void requestDispatch() {
+        // Only the first request since the last run starts got to schedule one.
+        if (!pending.compareAndSet(false, true)) {
+            return;
+        }
+
+        try {
+            executor.execute(this::dispatch);
+        } catch (RejectedExecutionException e) {
+            // Shutting down.
+        }
+    }
+
+    private void dispatch() {
+        // Cleared ahead of the run, so that whatever changes during it asks for another.
+        pending.set(false);
+
+        try {
+            task.run();
+        } catch (Exception e) {
+            log.error("Queue dispatch failed", e);
+        }
+    }
+
+    public void close() {
+        executor.shutdownNow();
+    }
+}
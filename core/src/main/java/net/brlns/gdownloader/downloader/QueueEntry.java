@@ -28,9 +28,11 @@ import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.CopyOnWriteArrayList;
 import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.concurrent.atomic.AtomicReference;
 import java.util.stream.Collectors;
 import javax.imageio.ImageIO;
@@ -43,6 +45,7 @@ import lombok.extern.slf4j.Slf4j;
 import net.brlns.gdownloader.GDownloader;
 import net.brlns.gdownloader.downloader.enums.DownloadStatusEnum;
 import net.brlns.gdownloader.downloader.enums.DownloaderIdEnum;
+import net.brlns.gdownloader.downloader.scheduling.SchedulableJob;
 import net.brlns.gdownloader.downloader.structs.MediaInfo;
 import net.brlns.gdownloader.settings.enums.IContainerEnum;
 import net.brlns.gdownloader.settings.filters.AbstractUrlFilter;
@@ -69,7 +72,7 @@ import static net.brlns.gdownloader.lang.Language.*;
 @EqualsAndHashCode
 @ToString
 @RequiredArgsConstructor
-public class QueueEntry {
+public class QueueEntry implements SchedulableJob {
 
     private final GDownloader main;
 
@@ -91,14 +94,38 @@ public class QueueEntry {
     private DownloadStatusEnum downloadStatus;
 
     private final AtomicBoolean downloadStarted = new AtomicBoolean(false);
-    private final AtomicBoolean cancelHook = new AtomicBoolean(false);
+
+    /**
+     * Set once the user drags this entry to a position of its own, which scheduling policies then leave alone.
+     */
+    private final AtomicBoolean pinned = new AtomicBoolean(false);
+    private final CancellationToken cancellationToken = new CancellationToken();
     private final AtomicBoolean running = new AtomicBoolean(false);
+
+    /**
+     * Completes once the current run of this entry is over. Already complete while it is not running.
+     */
+    private final AtomicReference<CompletableFuture<Void>> runCompletion
+        = new AtomicReference<>(CompletableFuture.completedFuture(null));
+
     private final AtomicInteger retryCounter = new AtomicInteger();
 
+    /**
+     * Wall-clock time before which this entry must not be started, or 0 if it is not waiting for a retry.
+     */
+    private final AtomicLong retryNotBefore = new AtomicLong();
+
     private MediaInfo mediaInfo;
 
     @Setter
     private File tmpDirectory;
+
+    /**
+     * The file a direct download is being written to, and how many bytes from its start are already in it,
+     * for a player to open while the rest arrives.
+     */
+    private final AtomicReference<File> partialFile = new AtomicReference<>();
+    private final AtomicLong previewableBytes = new AtomicLong();
     private final List<File> finalMediaFiles = new ArrayList<>();
 
     private final ConcurrentLinkedHashSet<String> errorLog = new ConcurrentLinkedHashSet<>();
@@ -183,6 +210,20 @@ public class QueueEntry {
         return running.get();
     }
 
+    public void markRunning() {
+        runCompletion.set(new CompletableFuture<>());
+        running.set(true);
+    }
+
+    public void markStopped() {
+        running.set(false);
+        runCompletion.get().complete(null);
+    }
+
+    public CompletableFuture<Void> whenStopped() {
+        return runCompletion.get();
+    }
+
     public void cleanDirectories() {
         if (tmpDirectory != null && tmpDirectory.exists()) {
             DirectoryUtils.deleteRecursively(tmpDirectory.toPath());
@@ -190,23 +231,46 @@ public class QueueEntry {
     }
 
     public void close() {
-        cancelHook.set(true);
-
-        if (process != null) {
-            process.destroy();
-        }
+        cancellationToken.cancel();
 
         cleanDirectories();
     }
 
     public void resetForRestart() {
         downloadStarted.set(false);
-        cancelHook.set(false);
+        cancellationToken.reset();
         process = null;
     }
 
     public void resetRetryCounter() {
         retryCounter.set(0);
+        retryNotBefore.set(0);
+    }
+
+    public void scheduleRetry(long delayMillis) {
+        retryNotBefore.set(System.currentTimeMillis() + delayMillis);
+    }
+
+    public boolean isRetryScheduled() {
+        return retryNotBefore.get() != 0;
+    }
+
+    public boolean isReadyToStart(long nowMillis) {
+        return retryNotBefore.get() <= nowMillis;
+    }
+
+    @Override
+    public boolean isPinned() {
+        return pinned.get();
+    }
+
+    @Override
+    public long getEstimatedSize() {
+        if (mediaInfo == null || mediaInfo.getFilesizeApprox() <= 0) {
+            return -1;
+        }
+
+        return mediaInfo.getFilesizeApprox();
     }
 
     public void setMediaInfo(MediaInfo mediaInfoIn) {
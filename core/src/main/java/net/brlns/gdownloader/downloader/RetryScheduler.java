@@ -0,0 +1,120 @@
+/*
+ * Copyright (C) 2024 hstr0100
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package net.brlns.gdownloader.downloader;
+
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.function.DoubleSupplier;
+import lombok.extern.slf4j.Slf4j;
+import net.brlns.gdownloader.util.Nullable;
+
+/**
+ * Decides how long to wait before trying again and runs the re-arming callbacks once the wait is over,
+ * so that nothing holds on to a worker thread in the meantime.
+ *
+ * Delays grow exponentially with the attempt number, up to a cap, with half of each delay randomized
+ * so that downloads failing together do not all come back at the same instant.
+ * A server-provided {@code Retry-After} is treated as a lower bound.
+ *
+ * @author Gabriel / hstr0100 / vertx010
+ */
+@Slf4j
+public class RetryScheduler {
+
+    /**
+     * Servers asking for longer than this are not taken at their word.
+     */
+    public static final long MAX_RETRY_AFTER_MILLIS = TimeUnit.MINUTES.toMillis(10);
+
+    private final ScheduledExecutorService executor = Executors.newSingleThreadScheduledExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "Retry-Scheduler");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    public ScheduledFuture<?> schedule(Runnable task, long delayMillis) {
+        return executor.schedule(() -> {
+            try {
+                task.run();
+            } catch (Exception e) {
+                log.error("Scheduled retry failed", e);
+            }
+        }, delayMillis, TimeUnit.MILLISECONDS);
+    }
+
+    public void close() {
+        executor.shutdownNow();
+    }
+
+    public static long getBackoffMillis(int attempt, long baseMillis, long maxMillis) {
+        return getBackoffMillis(attempt, baseMillis, maxMillis, -1);
+    }
+
+    /**
+     * @param attempt          The number of attempts that failed so far, starting at 1.
+     * @param retryAfterMillis The delay requested by the server, or a negative value if none.
+     */
+    public static long getBackoffMillis(int attempt, long baseMillis, long maxMillis, long retryAfterMillis) {
+        return getBackoffMillis(attempt, baseMillis, maxMillis, retryAfterMillis,
+            () -> ThreadLocalRandom.current().nextDouble());
+    }
+
+    public static long getBackoffMillis(int attempt, long baseMillis, long maxMillis,
+        long retryAfterMillis, DoubleSupplier random) {
+        int exponent = Math.clamp(attempt - 1, 0, 30);
+        long ceiling = Math.min(maxMillis, baseMillis << exponent);
+
+        long delay = ceiling / 2 + (long)(random.getAsDouble() * (ceiling - ceiling / 2));
+
+        if (retryAfterMillis >= 0) {
+            delay = Math.max(delay, Math.min(retryAfterMillis, MAX_RETRY_AFTER_MILLIS));
+        }
+
+        return delay;
+    }
+
+    /**
+     * Parses a {@code Retry-After} header, given either as a number of seconds or as an HTTP date.
+     * Returns -1 if absent or malformed.
+     */
+    public static long parseRetryAfter(@Nullable String value, long nowMillis) {
+        if (value == null || value.isBlank()) {
+            return -1;
+        }
+
+        String trimmed = value.trim();
+
+        try {
+            return Math.max(0, TimeUnit.SECONDS.toMillis(Long.parseLong(trimmed)));
+        } catch (NumberFormatException e) {
+            // Not a delay, try a date
+        }
+
+        try {
+            ZonedDateTime date = ZonedDateTime.parse(trimmed, DateTimeFormatter.RFC_1123_DATE_TIME);
+            return Math.max(0, date.toInstant().toEpochMilli() - nowMillis);
+        } catch (DateTimeParseException e) {
+            return -1;
+        }
+    }
+}
@@ -0,0 +1,72 @@
+/*
+ * Copyright (C) 2024 hstr0100
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package net.brlns.gdownloader.downloader;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import net.brlns.gdownloader.settings.filters.AbstractUrlFilter;
+
+/**
+ * Applies the per-site concurrency limit and minimum interval between starts that url filters can carry,
+ * so that the queue can hand a free slot to another site instead of waiting on a busy one.
+ *
+ * Sites are told apart by their filter, downloads matched by the same filter count against the same limits.
+ *
+ * @author Gabriel / hstr0100 / vertx010
+ */
+public class SitePacer {
+
+    private final Map<String, Long> lastStarts = new ConcurrentHashMap<>();
+
+    /**
+     * @param running the number of downloads of this site that are currently running.
+     */
+    public boolean canStart(AbstractUrlFilter filter, int running, long nowMillis) {
+        int maxConcurrent = filter.getMaxConcurrentDownloads();
+        if (maxConcurrent > 0 && running >= maxConcurrent) {
+            return false;
+        }
+
+        return getStartDelay(filter, nowMillis) == 0;
+    }
+
+    /**
+     * How long until the minimum interval since the last start of this site has passed, 0 if it has.
+     */
+    public long getStartDelay(AbstractUrlFilter filter, long nowMillis) {
+        long interval = filter.getMinStartIntervalSeconds() * 1000L;
+        if (interval <= 0) {
+            return 0;
+        }
+
+        Long lastStart = lastStarts.get(getSiteKey(filter));
+        if (lastStart == null) {
+            return 0;
+        }
+
+        return Math.max(0, lastStart + interval - nowMillis);
+    }
+
+    public void onStart(AbstractUrlFilter filter, long nowMillis) {
+        lastStarts.put(getSiteKey(filter), nowMillis);
+    }
+
+    public static String getSiteKey(AbstractUrlFilter filter) {
+        // Custom filters share the generic id, their names are what sets them apart.
+        return filter.getId() + ":" + filter.getFilterName();
+    }
+}
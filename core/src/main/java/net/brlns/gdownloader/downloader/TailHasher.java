@@ -0,0 +1,118 @@
+/*
+ * Copyright (C) 2024 hstr0100
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package net.brlns.gdownloader.downloader;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.security.MessageDigest;
+
+/**
+ * Hashes a file front to back while it is being downloaded, so that verifying it
+ * once complete does not require reading it all over again.
+ *
+ * Bytes written right at the hashed frontier are fed straight from the download buffers.
+ * Anything else, such as ranges that completed ahead of the frontier or the part of a file
+ * left over from a previous session, is read back from the file once it is contiguous,
+ * while it is still likely to be in the page cache.
+ *
+ * @author Gabriel / hstr0100 / vertx010
+ */
+public class TailHasher {
+
+    private static final int READ_BUFFER_SIZE = 1024 * 1024;
+
+    private final IntegrityDigest expectedDigest;
+
+    private MessageDigest digest;
+    private long hashedBytes;
+
+    private ByteBuffer readBuffer;
+
+    public TailHasher(IntegrityDigest expectedDigestIn) {
+        expectedDigest = expectedDigestIn;
+        digest = expectedDigest.newMessageDigest();
+    }
+
+    public IntegrityDigest getExpectedDigest() {
+        return expectedDigest;
+    }
+
+    public synchronized long getHashedBytes() {
+        return hashedBytes;
+    }
+
+    /**
+     * Offers bytes that are about to be written at the given position. They are hashed only if they
+     * extend the hashed frontier. The buffer itself is left untouched.
+     */
+    public synchronized void update(ByteBuffer src, long position) {
+        long end = position + src.remaining();
+        if (position > hashedBytes || end <= hashedBytes) {
+            return;
+        }
+
+        ByteBuffer slice = src.duplicate();
+        slice.position(slice.position() + (int)(hashedBytes - position));
+
+        digest.update(slice);
+        hashedBytes = end;
+    }
+
+    /**
+     * Reads and hashes the file up to the given offset. Every byte below it must already be written.
+     */
+    public synchronized void catchUp(ChunkFileWriter fileWriter, long upTo) throws IOException {
+        if (hashedBytes >= upTo) {
+            return;
+        }
+
+        if (readBuffer == null) {
+            readBuffer = ByteBuffer.allocateDirect(READ_BUFFER_SIZE);
+        }
+
+        while (hashedBytes < upTo) {
+            readBuffer.clear();
+            readBuffer.limit((int)Math.min(readBuffer.capacity(), upTo - hashedBytes));
+
+            int read = fileWriter.read(readBuffer, hashedBytes);
+            if (read <= 0) {
+                throw new EOFException("File ended at " + hashedBytes + " while hashing up to " + upTo);
+            }
+
+            readBuffer.flip();
+            digest.update(readBuffer);
+            hashedBytes += read;
+        }
+    }
+
+    /**
+     * Starts over from the beginning of the file.
+     */
+    public synchronized void reset() {
+        digest = expectedDigest.newMessageDigest();
+        hashedBytes = 0;
+    }
+
+    /**
+     * Checks the hash of everything fed so far against the expected digest.
+     * The hasher cannot be used afterwards.
+     */
+    public synchronized boolean verify() {
+        return expectedDigest.matches(digest.digest());
+    }
+}
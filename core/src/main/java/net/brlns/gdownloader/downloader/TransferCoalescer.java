@@ -0,0 +1,191 @@
+/*
+ * Copyright (C) 2024 hstr0100
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package net.brlns.gdownloader.downloader;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.function.BooleanSupplier;
+import lombok.extern.slf4j.Slf4j;
+import net.brlns.gdownloader.downloader.http.HttpTransportResponse;
+import net.brlns.gdownloader.util.Nullable;
+import net.brlns.gdownloader.util.URLUtils;
+
+/**
+ * Keeps track of the transfers in flight, so that a download of a file that is already being fetched
+ * waits for that transfer instead of fetching the same bytes again.
+ *
+ * Transfers are keyed on the final URL, after redirects and without tracking parameters, together with
+ * the length and validator of the file. The first download of a key does the transfer; any download that
+ * joins while it runs gets a hard link to the result, or a copy where links are not supported.
+ *
+ * @author Gabriel / hstr0100 / vertx010
+ */
+@Slf4j
+public class TransferCoalescer {
+
+    private static final long POLL_INTERVAL_MILLIS = 250;
+
+    private final Map<String, Transfer> transfers = new HashMap<>();
+
+    /**
+     * Joins the transfer of the given key, starting it if there is none.
+     *
+     * @param targetFile Where the caller wants the file to end up.
+     */
+    public Handle join(String key, File targetFile) {
+        synchronized (transfers) {
+            Transfer transfer = transfers.get(key);
+            if (transfer == null) {
+                transfer = new Transfer(key, targetFile);
+                transfers.put(key, transfer);
+
+                return new Handle(transfer, null);
+            }
+
+            Subscriber subscriber = new Subscriber(targetFile);
+            transfer.subscribers.add(subscriber);
+
+            return new Handle(transfer, subscriber);
+        }
+    }
+
+    public static String getKey(HttpTransportResponse probeResponse) {
+        String validator = probeResponse.getHeader("ETag");
+        if (validator == null) {
+            validator = probeResponse.getHeader("Last-Modified");
+        }
+
+        return URLUtils.getCanonicalUrl(probeResponse.getUrl())
+            + "|" + probeResponse.getContentLength()
+            + "|" + (validator != null ? validator : "");
+    }
+
+    private static void materialize(File source, File target) throws IOException {
+        Files.createDirectories(target.getParentFile().toPath());
+        Files.deleteIfExists(target.toPath());
+
+        try {
+            Files.createLink(target.toPath(), source.toPath());
+        } catch (IOException | UnsupportedOperationException e) {
+            log.debug("Cannot link {}, copying instead: {}", target, e.getMessage());
+            Files.copy(source.toPath(), target.toPath(), StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
+
+    public class Handle {
+
+        private final Transfer transfer;
+
+        @Nullable
+        private final Subscriber subscriber;
+
+        private Handle(Transfer transferIn, @Nullable Subscriber subscriberIn) {
+            transfer = transferIn;
+            subscriber = subscriberIn;
+        }
+
+        /**
+         * Whether this handle does the transfer, as opposed to waiting for it.
+         */
+        public boolean isLeader() {
+            return subscriber == null;
+        }
+
+        /**
+         * Called by the leader once done. On success, the result is handed to every subscriber before this returns,
+         * so the leader is free to move or delete its own file afterwards.
+         */
+        public void finish(boolean success) {
+            List<Subscriber> subscribers;
+            synchronized (transfers) {
+                transfers.remove(transfer.key, transfer);
+
+                subscribers = new ArrayList<>(transfer.subscribers);
+                transfer.subscribers.clear();
+            }
+
+            for (Subscriber waiting : subscribers) {
+                if (!success) {
+                    waiting.result.complete(false);
+                    continue;
+                }
+
+                try {
+                    materialize(transfer.targetFile, waiting.targetFile);
+                    waiting.result.complete(true);
+                } catch (IOException e) {
+                    log.error("Cannot hand {} over to {}", transfer.targetFile, waiting.targetFile, e);
+                    waiting.result.complete(false);
+                }
+            }
+        }
+
+        /**
+         * Called by a subscriber to wait for the leader. Returns true once the file is in place, or false if the
+         * transfer failed or the caller stopped being alive, in which case it is up to the caller to fetch the file.
+         */
+        public boolean await(BooleanSupplier alive) throws InterruptedException {
+            while (alive.getAsBoolean()) {
+                try {
+                    return subscriber.result.get(POLL_INTERVAL_MILLIS, TimeUnit.MILLISECONDS);
+                } catch (TimeoutException e) {
+                    // Keep waiting
+                } catch (ExecutionException e) {
+                    return false;
+                }
+            }
+
+            synchronized (transfers) {
+                transfer.subscribers.remove(subscriber);
+            }
+
+            return false;
+        }
+    }
+
+    private static class Transfer {
+
+        private final String key;
+        private final File targetFile;
+        private final List<Subscriber> subscribers = new ArrayList<>();
+
+        private Transfer(String keyIn, File targetFileIn) {
+            key = keyIn;
+            targetFile = targetFileIn;
+        }
+    }
+
+    private static class Subscriber {
+
+        private final File targetFile;
+        private final CompletableFuture<Boolean> result = new CompletableFuture<>();
+
+        private Subscriber(File targetFileIn) {
+            targetFile = targetFileIn;
+        }
+    }
+}
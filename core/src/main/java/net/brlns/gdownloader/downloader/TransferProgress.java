@@ -0,0 +1,138 @@
+/*
+ * Copyright (C) 2024 hstr0100
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package net.brlns.gdownloader.downloader;
+
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.IntSupplier;
+import lombok.Getter;
+
+/**
+ * Byte counters of a single transfer, which any number of connections add to without contention.
+ *
+ * Nothing is reported from the connections themselves. A {@link ProgressTicker} samples the counters
+ * at a fixed interval and publishes one progress event per transfer, with a speed that is smoothed
+ * exponentially so that it follows changes quickly without jumping around on every sample.
+ *
+ * @author Gabriel / hstr0100 / vertx010
+ */
+public class TransferProgress {
+
+    /**
+     * Weight given to the latest sample. Higher values react faster but are noisier.
+     */
+    private static final double SMOOTHING = 0.3;
+
+    private final LongAdder bytes = new LongAdder();
+
+    private final Listener listener;
+
+    private volatile boolean started;
+    private volatile long totalBytes;
+    private volatile IntSupplier connections = () -> 0;
+
+    private long lastBytes;
+    private long lastSampleNanos;
+
+    /**
+     * Bytes per second, or -1 until the first sample was taken.
+     */
+    @Getter
+    private double speed = -1;
+
+    public TransferProgress(Listener listenerIn) {
+        listener = listenerIn;
+    }
+
+    /**
+     * Called once the transfer is about to begin. Nothing is published before that.
+     *
+     * @param totalBytesIn The size of the transfer, or a negative value if it is not known.
+     * @param initialBytes Bytes already on disk, which do not count towards the speed.
+     */
+    public synchronized void start(long totalBytesIn, long initialBytes, IntSupplier connectionsIn) {
+        totalBytes = totalBytesIn;
+        connections = connectionsIn;
+
+        bytes.reset();
+        bytes.add(initialBytes);
+
+        lastBytes = initialBytes;
+        lastSampleNanos = System.nanoTime();
+        started = true;
+    }
+
+    public void add(long count) {
+        bytes.add(count);
+    }
+
+    public long getBytes() {
+        return bytes.sum();
+    }
+
+    /**
+     * Drops everything counted so far, for when the transfer starts over from the beginning.
+     */
+    public synchronized void reset() {
+        bytes.reset();
+        lastBytes = 0;
+    }
+
+    /**
+     * Takes a sample and publishes it. Called by the ticker.
+     */
+    public synchronized void tick(long nowNanos) {
+        if (!started) {
+            return;
+        }
+
+        long current = bytes.sum();
+        long elapsedNanos = nowNanos - lastSampleNanos;
+        if (elapsedNanos <= 0) {
+            return;
+        }
+
+        // Bytes taken back by a failed range are not negative speed.
+        double rate = Math.max(0, current - lastBytes) * 1e9 / elapsedNanos;
+        speed = speed < 0 ? rate : SMOOTHING * rate + (1 - SMOOTHING) * speed;
+
+        lastBytes = current;
+        lastSampleNanos = nowNanos;
+
+        long total = totalBytes;
+        if (total <= 0) {
+            listener.accept(-1, current, total, (long)speed, -1, connections.getAsInt());
+            return;
+        }
+
+        double progress = (double)current * 100 / total;
+
+        long remainingBytes = Math.max(0, total - current);
+        long remainingMillis = speed > 0 ? (long)(remainingBytes * 1000 / speed) : 0;
+
+        listener.accept(progress, current, total, (long)speed, remainingMillis, connections.getAsInt());
+    }
+
+    @FunctionalInterface
+    public interface Listener {
+
+        /**
+         * Progress and remaining time are -1 while the size of the transfer is unknown.
+         */
+        void accept(double progress, long downloaded, long size, long speed, long remainingTime, int chunkCount);
+
+    }
+}
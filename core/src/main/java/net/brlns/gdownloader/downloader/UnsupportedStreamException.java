@@ -0,0 +1,32 @@
+/*
+ * Copyright (C) 2024 hstr0100
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package net.brlns.gdownloader.downloader;
+
+import java.io.IOException;
+
+/**
+ * Thrown for streams the native engine cannot handle, such as live or DRM-protected ones,
+ * which are left to the next downloader in line.
+ *
+ * @author Gabriel / hstr0100 / vertx010
+ */
+public class UnsupportedStreamException extends IOException {
+
+    public UnsupportedStreamException(String message) {
+        super(message);
+    }
+}
@@ -18,6 +18,7 @@ package net.brlns.gdownloader.downloader;
 
 import java.io.File;
 import java.io.IOException;
+import java.io.InputStream;
 import java.nio.ByteBuffer;
 import java.nio.channels.Channels;
 import java.nio.channels.ReadableByteChannel;
@@ -192,6 +193,15 @@ public class YtDlpDownloader extends AbstractDownloader {
             genericArguments.add("--ignore-config");
         }
 
+        // External processes cannot be throttled as they run, so they get a fixed share when they start
+        long rateLimit = manager.getBandwidthLimiter().getRateShare(entry);
+        if (rateLimit > 0) {
+            genericArguments.addAll(List.of(
+                "--limit-rate",
+                String.valueOf(rateLimit)
+            ));
+        }
+
         genericArguments.addAll(filter.getArguments(this, ALL, manager, tmpPath, entry.getUrl()));
 
         boolean success = false;
@@ -227,7 +237,7 @@ public class YtDlpDownloader extends AbstractDownloader {
 
             Pair<Integer, String> result = processDownload(entry, arguments);
 
-            if (result == null || entry.getCancelHook().get()) {
+            if (result == null || entry.getCancellationToken().isCancelled()) {
                 return new DownloadResult(FLAG_STOPPED);
             }
 
@@ -349,17 +359,17 @@ public class YtDlpDownloader extends AbstractDownloader {
         ProcessBuilder processBuilder = new ProcessBuilder(finalArgs);
         processBuilder.redirectErrorStream(true);
         Process process = processBuilder.start();
-        entry.setProcess(process);
+        InputStream processOutput = manager.getProcessSupervisor().supervise(entry, process);
 
         String lastOutput = "";
 
         try (
-            ReadableByteChannel stdInput = Channels.newChannel(process.getInputStream())) {
+            ReadableByteChannel stdInput = Channels.newChannel(processOutput)) {
             ByteBuffer buffer = ByteBuffer.allocate(4096);
             StringBuilder output = new StringBuilder();
             char prevChar = '\0';
 
-            while (manager.isRunning() && !entry.getCancelHook().get() && process.isAlive()) {
+            while (manager.isRunning() && !entry.getCancellationToken().isCancelled()) {
                 if (Thread.currentThread().isInterrupted()) {
                     log.debug("Process is closing");
                     process.destroyForcibly();
@@ -367,7 +377,12 @@ public class YtDlpDownloader extends AbstractDownloader {
                 }
 
                 buffer.clear();
+                // Blocks until there is output. A cancel stops the process tree and ends the supervised output.
                 int bytesRead = stdInput.read(buffer);
+                if (bytesRead == -1) {
+                    break;
+                }
+
                 if (bytesRead > 0) {
                     buffer.flip();
 
@@ -385,18 +400,11 @@ public class YtDlpDownloader extends AbstractDownloader {
 
                     processProgress(entry, lastOutput);
                 }
-
-                try {
-                    Thread.sleep(100);
-                } catch (InterruptedException e) {
-                    log.debug("Sleep interrupted, closing process");
-                    process.destroyForcibly();
-                }
             }
 
             long stopped = System.currentTimeMillis() - start;
 
-            if (!manager.isRunning() || entry.getCancelHook().get()) {
+            if (!manager.isRunning() || entry.getCancellationToken().isCancelled()) {
                 if (main.getConfig().isDebugMode()) {
                     log.debug("Download process halted after {}ms.", stopped);
                 }
@@ -417,7 +425,7 @@ public class YtDlpDownloader extends AbstractDownloader {
         } finally {
             entry.getDownloadStarted().set(false);
 
-            // Our ProcessMonitor will take care of closing the underlying process.
+            // The process supervisor takes care of stopping the underlying process.
         }
     }
 
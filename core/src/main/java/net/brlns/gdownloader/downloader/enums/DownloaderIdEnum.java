@@ -26,7 +26,8 @@ import net.brlns.gdownloader.settings.enums.ISettingsEnum;
 public enum DownloaderIdEnum implements ISettingsEnum {
     YT_DLP("yt-dlp"),
     GALLERY_DL("gallery-dl"),
-    DIRECT_HTTP("http");
+    DIRECT_HTTP("http"),
+    ADAPTIVE_STREAM("hls/dash");
 
     private final String displayName;
 
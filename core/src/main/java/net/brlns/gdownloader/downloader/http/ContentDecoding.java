@@ -0,0 +1,82 @@
+/*
+ * Copyright (C) 2024 hstr0100
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package net.brlns.gdownloader.downloader.http;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.InflaterInputStream;
+import net.brlns.gdownloader.util.Nullable;
+
+/**
+ * Undoes the {@code Content-Encoding} of a response body while it is being read.
+ *
+ * Only the encodings the JDK can decode are supported, and only those are advertised in {@link #ACCEPT_ENCODING}.
+ *
+ * @author Gabriel / hstr0100 / vertx010
+ */
+public final class ContentDecoding {
+
+    public static final String ACCEPT_ENCODING = "gzip, deflate";
+
+    /**
+     * Checks whether a body sent with the given encoding differs from the file it describes.
+     */
+    public static boolean isEncoded(@Nullable String contentEncoding) {
+        return !getCodings(contentEncoding).isEmpty();
+    }
+
+    public static InputStream decode(InputStream body, @Nullable String contentEncoding) throws IOException {
+        List<String> codings = getCodings(contentEncoding);
+
+        InputStream decoded = body;
+        // Codings are listed in the order they were applied, so they are undone from last to first.
+        for (int i = codings.size() - 1; i >= 0; i--) {
+            switch (codings.get(i)) {
+                case "gzip", "x-gzip" -> {
+                    decoded = new GZIPInputStream(decoded);
+                }
+                case "deflate" -> {
+                    decoded = new InflaterInputStream(decoded);
+                }
+                default ->
+                    throw new IOException("Unsupported content encoding: " + codings.get(i));
+            }
+        }
+
+        return decoded;
+    }
+
+    private static List<String> getCodings(@Nullable String contentEncoding) {
+        List<String> codings = new ArrayList<>();
+        if (contentEncoding == null) {
+            return codings;
+        }
+
+        for (String coding : contentEncoding.split(",")) {
+            String trimmed = coding.trim().toLowerCase(Locale.ROOT);
+            if (!trimmed.isEmpty() && !trimmed.equals("identity")) {
+                codings.add(trimmed);
+            }
+        }
+
+        return codings;
+    }
+}
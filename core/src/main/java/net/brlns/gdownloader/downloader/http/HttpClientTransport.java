@@ -0,0 +1,285 @@
+/*
+ * Copyright (C) 2024 hstr0100
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package net.brlns.gdownloader.downloader.http;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.net.Authenticator;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.PasswordAuthentication;
+import java.net.Proxy;
+import java.net.ProxySelector;
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.net.URL;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+import lombok.extern.slf4j.Slf4j;
+import net.brlns.gdownloader.settings.ProxySettings;
+import net.brlns.gdownloader.util.Nullable;
+import net.brlns.gdownloader.util.collection.ExpiringSet;
+
+/**
+ * Transport based on a single shared {@link HttpClient}.
+ *
+ * Connections are pooled by the client: requests to an HTTP/2 origin are multiplexed as streams
+ * over one connection, while HTTP/1.1 connections are kept alive and reused once a response
+ * has been fully read. Either way, chunks and retries skip the TCP and TLS handshakes.
+ *
+ * The client is rebuilt whenever the proxy settings change. Only HTTP proxies are supported.
+ *
+ * Requests bound to a local address go through a client of their own per address, as the address
+ * is fixed when a client is built.
+ *
+ * @author Gabriel / hstr0100 / vertx010
+ */
+@Slf4j
+public class HttpClientTransport implements HttpTransport {
+
+    private static final Duration CONNECT_TIMEOUT = Duration.ofSeconds(10);
+
+    private final Supplier<ProxySettings> proxySettingsSupplier;
+
+    private final ExpiringSet<String> warmOrigins = new ExpiringSet<>(TimeUnit.SECONDS, 30);
+
+    private HttpClient client;
+    private String clientProxyKey;
+
+    private final Map<InetAddress, HttpClient> boundClients = new HashMap<>();
+
+    public HttpClientTransport(Supplier<ProxySettings> proxySettingsSupplierIn) {
+        proxySettingsSupplier = proxySettingsSupplierIn;
+    }
+
+    /**
+     * Checks whether the given proxy settings can be honored by this transport.
+     */
+    public static boolean supports(ProxySettings proxySettings) {
+        return !isProxyActive(proxySettings)
+            || proxySettings.getProxyType().getType() == Proxy.Type.HTTP;
+    }
+
+    @Override
+    public HttpTransportResponse send(String method, URL url, Map<String, String> headers) throws IOException {
+        return send(method, url, headers, null);
+    }
+
+    @Override
+    public HttpTransportResponse send(String method, URL url, Map<String, String> headers,
+        @Nullable InetAddress localAddress) throws IOException {
+        HttpRequest.Builder builder = HttpRequest.newBuilder(toUri(url))
+            .method(method, HttpRequest.BodyPublishers.noBody());
+
+        for (Map.Entry<String, String> header : headers.entrySet()) {
+            builder.header(header.getKey(), header.getValue());
+        }
+
+        try {
+            HttpResponse<InputStream> response = getClient(localAddress).send(builder.build(),
+                HttpResponse.BodyHandlers.ofInputStream());
+
+            if (log.isDebugEnabled()) {
+                log.debug("{} {} -> {} {}{}", method, url, response.version(), response.statusCode(),
+                    localAddress != null ? " from " + localAddress.getHostAddress() : "");
+            }
+
+            return new HttpClientResponse(response);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while waiting for " + url);
+        }
+    }
+
+    @Override
+    public boolean supportsLocalAddress() {
+        return true;
+    }
+
+    @Override
+    public void prewarm(URL url) {
+        URI uri;
+        try {
+            uri = toUri(url);
+        } catch (IOException e) {
+            return;
+        }
+
+        String origin = uri.getScheme() + "://" + uri.getAuthority();
+        if (warmOrigins.contains(origin)) {
+            return;
+        }
+
+        warmOrigins.add(origin);
+
+        HttpRequest request = HttpRequest.newBuilder(uri)
+            .method("HEAD", HttpRequest.BodyPublishers.noBody())
+            .build();
+
+        // The response is irrelevant, we only want the connection to be sitting in the pool.
+        getClient(null).sendAsync(request, HttpResponse.BodyHandlers.discarding())
+            .whenComplete((response, e) -> {
+                if (e != null) {
+                    log.debug("Failed to pre-warm connection to {}: {}", origin, e.getMessage());
+                } else if (log.isDebugEnabled()) {
+                    log.debug("Pre-warmed connection to {} over {}", origin, response.version());
+                }
+            });
+    }
+
+    @Override
+    public synchronized void close() {
+        if (client != null) {
+            client.shutdown();
+            client = null;
+        }
+
+        shutdownBoundClients();
+    }
+
+    private synchronized HttpClient getClient(@Nullable InetAddress localAddress) {
+        ProxySettings proxySettings = proxySettingsSupplier.get();
+
+        String proxyKey = isProxyActive(proxySettings)
+            ? Objects.toString(proxySettings.createProxyUrl(), "") : "";
+
+        if (client == null || !proxyKey.equals(clientProxyKey)) {
+            if (client != null) {
+                // In-flight requests are allowed to finish on the old client.
+                client.shutdown();
+            }
+
+            shutdownBoundClients();
+
+            client = createClient(proxySettings, null);
+            clientProxyKey = proxyKey;
+        }
+
+        if (localAddress == null) {
+            return client;
+        }
+
+        return boundClients.computeIfAbsent(localAddress, address -> createClient(proxySettings, address));
+    }
+
+    private void shutdownBoundClients() {
+        for (HttpClient boundClient : boundClients.values()) {
+            boundClient.shutdown();
+        }
+
+        boundClients.clear();
+    }
+
+    private static HttpClient createClient(ProxySettings proxySettings, @Nullable InetAddress localAddress) {
+        HttpClient.Builder builder = HttpClient.newBuilder()
+            .version(HttpClient.Version.HTTP_2)
+            .followRedirects(HttpClient.Redirect.NORMAL)
+            .connectTimeout(CONNECT_TIMEOUT);
+
+        if (localAddress != null) {
+            builder.localAddress(localAddress);
+        }
+
+        if (isProxyActive(proxySettings)) {
+            builder.proxy(ProxySelector.of(
+                new InetSocketAddress(proxySettings.getHost(), proxySettings.getPort())));
+
+            String username = proxySettings.getUsername();
+            String password = proxySettings.getPassword();
+
+            if (username != null && !username.isBlank() && password != null && !password.isBlank()) {
+                builder.authenticator(new Authenticator() {
+                    @Override
+                    protected PasswordAuthentication getPasswordAuthentication() {
+                        return new PasswordAuthentication(username, password.toCharArray());
+                    }
+                });
+            }
+        }
+
+        return builder.build();
+    }
+
+    private static boolean isProxyActive(ProxySettings proxySettings) {
+        return proxySettings.isEnabled() && proxySettings.isValid();
+    }
+
+    private static URI toUri(URL url) throws IOException {
+        try {
+            return url.toURI();
+        } catch (URISyntaxException e) {
+            throw new IOException("Invalid URL: " + url, e);
+        }
+    }
+
+    private static class HttpClientResponse implements HttpTransportResponse {
+
+        private final HttpResponse<InputStream> response;
+
+        private HttpClientResponse(HttpResponse<InputStream> responseIn) {
+            response = responseIn;
+        }
+
+        @Override
+        public int getStatusCode() {
+            return response.statusCode();
+        }
+
+        @Override
+        public URL getUrl() {
+            try {
+                return response.uri().toURL();
+            } catch (Exception e) {
+                throw new IllegalStateException("Response has an invalid URI: " + response.uri(), e);
+            }
+        }
+
+        @Nullable
+        @Override
+        public String getHeader(String name) {
+            return response.headers().firstValue(name).orElse(null);
+        }
+
+        @Override
+        public Map<String, List<String>> getHeaders() {
+            return response.headers().map();
+        }
+
+        @Override
+        public InputStream getBody() {
+            return response.body();
+        }
+
+        @Override
+        public void close() {
+            try {
+                response.body().close();
+            } catch (IOException e) {
+                log.debug("Failed to close response body", e);
+            }
+        }
+    }
+}
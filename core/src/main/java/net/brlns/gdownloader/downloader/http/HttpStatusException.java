@@ -0,0 +1,43 @@
+/*
+ * Copyright (C) 2024 hstr0100
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package net.brlns.gdownloader.downloader.http;
+
+import java.io.IOException;
+import lombok.Getter;
+
+/**
+ * Thrown when a server answers with a status that cannot be handled.
+ *
+ * @author Gabriel / hstr0100 / vertx010
+ */
+@Getter
+public class HttpStatusException extends IOException {
+
+    private final int statusCode;
+
+    /**
+     * How long the server asked to wait before trying again, or -1 if it did not say.
+     */
+    private final long retryAfterMillis;
+
+    public HttpStatusException(int statusCodeIn, long retryAfterMillisIn) {
+        super("Failed to connect with HTTP code: " + statusCodeIn);
+
+        statusCode = statusCodeIn;
+        retryAfterMillis = retryAfterMillisIn;
+    }
+}
@@ -0,0 +1,64 @@
+/*
+ * Copyright (C) 2024 hstr0100
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package net.brlns.gdownloader.downloader.http;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.URL;
+import java.util.Map;
+import net.brlns.gdownloader.util.Nullable;
+
+/**
+ * The connection layer of the direct HTTP downloader.
+ *
+ * @author Gabriel / hstr0100 / vertx010
+ */
+public interface HttpTransport extends Closeable {
+
+    /**
+     * Sends a request without a body and returns once the response headers have arrived.
+     * Redirects are followed. The returned response must always be closed.
+     */
+    HttpTransportResponse send(String method, URL url, Map<String, String> headers) throws IOException;
+
+    /**
+     * Same as {@link #send(String, URL, Map)}, with the connection leaving from the given local address.
+     * Transports that cannot bind connections ignore the address.
+     */
+    default HttpTransportResponse send(String method, URL url, Map<String, String> headers,
+        @Nullable InetAddress localAddress) throws IOException {
+        return send(method, url, headers);
+    }
+
+    default boolean supportsLocalAddress() {
+        return false;
+    }
+
+    /**
+     * Hints that requests to the origin of this URL are about to be made,
+     * so that a connection can be established ahead of time.
+     */
+    default void prewarm(URL url) {
+
+    }
+
+    @Override
+    default void close() {
+
+    }
+}
@@ -0,0 +1,88 @@
+/*
+ * Copyright (C) 2024 hstr0100
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package net.brlns.gdownloader.downloader.http;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URL;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import net.brlns.gdownloader.util.Nullable;
+
+/**
+ * Headers remain readable after the response has been closed.
+ *
+ * @author Gabriel / hstr0100 / vertx010
+ */
+public interface HttpTransportResponse extends Closeable {
+
+    int getStatusCode();
+
+    /**
+     * The final URL, after redirects.
+     */
+    URL getUrl();
+
+    /**
+     * Returns the first value of a header, looked up case-insensitively.
+     */
+    @Nullable
+    String getHeader(String name);
+
+    Map<String, List<String>> getHeaders();
+
+    /**
+     * Returns every value of a header, looked up case-insensitively.
+     */
+    default List<String> getHeaderValues(String name) {
+        for (Map.Entry<String, List<String>> entry : getHeaders().entrySet()) {
+            if (name.equalsIgnoreCase(entry.getKey())) {
+                return entry.getValue();
+            }
+        }
+
+        return Collections.emptyList();
+    }
+
+    InputStream getBody() throws IOException;
+
+    default long getContentLength() {
+        String contentLength = getHeader("Content-Length");
+        if (contentLength == null) {
+            return -1;
+        }
+
+        try {
+            return Long.parseLong(contentLength.trim());
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+
+    @Nullable
+    default String getContentType() {
+        return getHeader("Content-Type");
+    }
+
+    /**
+     * Releases the connection. Any unread part of the body is discarded.
+     */
+    @Override
+    void close();
+}
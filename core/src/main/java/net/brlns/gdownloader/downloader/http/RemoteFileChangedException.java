@@ -0,0 +1,39 @@
+/*
+ * Copyright (C) 2024 hstr0100
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package net.brlns.gdownloader.downloader.http;
+
+import java.io.IOException;
+import java.net.URL;
+import lombok.Getter;
+
+/**
+ * Thrown when a resumed transfer finds out that the remote file is no longer the one its partial data came from.
+ * Retrying the request that found out cannot help, the transfer has to be started over from a fresh probe.
+ *
+ * @author Gabriel / hstr0100 / vertx010
+ */
+@Getter
+public class RemoteFileChangedException extends IOException {
+
+    private final URL fileUrl;
+
+    public RemoteFileChangedException(URL fileUrlIn) {
+        super("Remote file has changed since the download started: " + fileUrlIn);
+
+        fileUrl = fileUrlIn;
+    }
+}
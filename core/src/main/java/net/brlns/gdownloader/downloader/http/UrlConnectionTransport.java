@@ -0,0 +1,108 @@
+/*
+ * Copyright (C) 2024 hstr0100
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package net.brlns.gdownloader.downloader.http;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.HttpURLConnection;
+import java.net.Proxy;
+import java.net.URL;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Supplier;
+import net.brlns.gdownloader.util.Nullable;
+
+/**
+ * Transport based on {@link HttpURLConnection}, opening a new connection for every request.
+ *
+ * Unlike {@link HttpClientTransport}, it supports SOCKS proxies.
+ *
+ * @author Gabriel / hstr0100 / vertx010
+ */
+public class UrlConnectionTransport implements HttpTransport {
+
+    private final Supplier<Proxy> proxySupplier;
+
+    public UrlConnectionTransport(Supplier<Proxy> proxySupplierIn) {
+        proxySupplier = proxySupplierIn;
+    }
+
+    @Override
+    public HttpTransportResponse send(String method, URL url, Map<String, String> headers) throws IOException {
+        HttpURLConnection connection = (HttpURLConnection)url.openConnection(proxySupplier.get());
+
+        try {
+            connection.setRequestMethod(method);
+
+            for (Map.Entry<String, String> header : headers.entrySet()) {
+                connection.setRequestProperty(header.getKey(), header.getValue());
+            }
+
+            return new UrlConnectionResponse(connection, connection.getResponseCode());
+        } catch (IOException e) {
+            connection.disconnect();
+            throw e;
+        }
+    }
+
+    private static class UrlConnectionResponse implements HttpTransportResponse {
+
+        private final HttpURLConnection connection;
+        private final int statusCode;
+
+        private UrlConnectionResponse(HttpURLConnection connectionIn, int statusCodeIn) {
+            connection = connectionIn;
+            statusCode = statusCodeIn;
+        }
+
+        @Override
+        public int getStatusCode() {
+            return statusCode;
+        }
+
+        @Override
+        public URL getUrl() {
+            return connection.getURL();
+        }
+
+        @Nullable
+        @Override
+        public String getHeader(String name) {
+            return connection.getHeaderField(name);
+        }
+
+        @Override
+        public Map<String, List<String>> getHeaders() {
+            return connection.getHeaderFields();
+        }
+
+        @Override
+        public InputStream getBody() throws IOException {
+            return connection.getInputStream();
+        }
+
+        @Override
+        public long getContentLength() {
+            return connection.getContentLengthLong();
+        }
+
+        @Override
+        public void close() {
+            connection.disconnect();
+        }
+    }
+}
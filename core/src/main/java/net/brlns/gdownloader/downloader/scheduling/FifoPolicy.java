@@ -0,0 +1,33 @@
+/*
+ * Copyright (C) 2024 hstr0100
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package net.brlns.gdownloader.downloader.scheduling;
+
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * Starts downloads in the order they were queued.
+ *
+ * @author Gabriel / hstr0100 / vertx010
+ */
+public class FifoPolicy implements SchedulingPolicy {
+
+    @Override
+    public <T extends SchedulableJob> T select(List<T> candidates, Collection<? extends SchedulableJob> running) {
+        return candidates.get(0);
+    }
+}
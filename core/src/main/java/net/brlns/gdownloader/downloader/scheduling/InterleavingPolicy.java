@@ -0,0 +1,79 @@
+/*
+ * Copyright (C) 2024 hstr0100
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package net.brlns.gdownloader.downloader.scheduling;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * Keeps one large download going to saturate the link, and spends the other slots on the smallest ones,
+ * which then finish quickly instead of queueing up behind the large ones.
+ *
+ * Whatever is at least the median of all known sizes, queued or running, counts as large.
+ * With a single slot, large and small downloads take turns.
+ *
+ * Not thread-safe, meant to be called from the queue dispatcher only.
+ *
+ * @author Gabriel / hstr0100 / vertx010
+ */
+public class InterleavingPolicy implements SchedulingPolicy {
+
+    private boolean lastPickLarge;
+
+    @Override
+    public <T extends SchedulableJob> T select(List<T> candidates, Collection<? extends SchedulableJob> running) {
+        T largest = SchedulingPolicy.findLargest(candidates);
+        if (largest == null) {
+            return candidates.get(0);
+        }
+
+        long threshold = getMedianSize(candidates, running);
+
+        boolean largeRunning = false;
+        for (SchedulableJob job : running) {
+            if (job.getEstimatedSize() >= 0 && job.getEstimatedSize() >= threshold) {
+                largeRunning = true;
+                break;
+            }
+        }
+
+        lastPickLarge = !largeRunning && !lastPickLarge;
+
+        return lastPickLarge ? largest : SchedulingPolicy.findSmallest(candidates);
+    }
+
+    private static long getMedianSize(List<? extends SchedulableJob> candidates,
+        Collection<? extends SchedulableJob> running) {
+        List<Long> sizes = new ArrayList<>();
+        for (SchedulableJob job : candidates) {
+            if (job.getEstimatedSize() >= 0) {
+                sizes.add(job.getEstimatedSize());
+            }
+        }
+
+        for (SchedulableJob job : running) {
+            if (job.getEstimatedSize() >= 0) {
+                sizes.add(job.getEstimatedSize());
+            }
+        }
+
+        sizes.sort(null);
+
+        return sizes.get(sizes.size() / 2);
+    }
+}
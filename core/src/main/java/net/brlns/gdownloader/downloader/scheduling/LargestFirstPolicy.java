@@ -0,0 +1,36 @@
+/*
+ * Copyright (C) 2024 hstr0100
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package net.brlns.gdownloader.downloader.scheduling;
+
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * Starts the largest download first, so that the long transfers are not the ones left running at the end.
+ * Downloads of unknown size wait until no known size is left, in queue order.
+ *
+ * @author Gabriel / hstr0100 / vertx010
+ */
+public class LargestFirstPolicy implements SchedulingPolicy {
+
+    @Override
+    public <T extends SchedulableJob> T select(List<T> candidates, Collection<? extends SchedulableJob> running) {
+        T largest = SchedulingPolicy.findLargest(candidates);
+
+        return largest != null ? largest : candidates.get(0);
+    }
+}
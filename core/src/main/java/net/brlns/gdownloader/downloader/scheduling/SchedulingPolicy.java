@@ -0,0 +1,96 @@
+/*
+ * Copyright (C) 2024 hstr0100
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package net.brlns.gdownloader.downloader.scheduling;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import net.brlns.gdownloader.util.Nullable;
+
+/**
+ * Decides which of the queued downloads that could start right now goes next.
+ *
+ * @author Gabriel / hstr0100 / vertx010
+ */
+public interface SchedulingPolicy {
+
+    /**
+     * @param candidates The unpinned jobs that may start, in queue order. Never empty.
+     * @param running    The jobs currently running.
+     */
+    <T extends SchedulableJob> T select(List<T> candidates, Collection<? extends SchedulableJob> running);
+
+    /**
+     * Picks the next job, keeping jobs the user moved by hand at their position:
+     * a pinned job at the head of the candidates goes first, whatever the policy would prefer.
+     *
+     * @param candidates The jobs that may start, in queue order.
+     * @return null if there are no candidates.
+     */
+    @Nullable
+    default <T extends SchedulableJob> T next(List<T> candidates, Collection<? extends SchedulableJob> running) {
+        if (candidates.isEmpty()) {
+            return null;
+        }
+
+        T first = candidates.get(0);
+        if (first.isPinned()) {
+            return first;
+        }
+
+        List<T> unpinned = new ArrayList<>(candidates.size());
+        for (T candidate : candidates) {
+            if (!candidate.isPinned()) {
+                unpinned.add(candidate);
+            }
+        }
+
+        return select(unpinned, running);
+    }
+
+    /**
+     * Returns the smallest job of a known size, the earliest one on ties, or null if no size is known.
+     */
+    @Nullable
+    static <T extends SchedulableJob> T findSmallest(List<T> jobs) {
+        T smallest = null;
+        for (T job : jobs) {
+            long size = job.getEstimatedSize();
+            if (size >= 0 && (smallest == null || size < smallest.getEstimatedSize())) {
+                smallest = job;
+            }
+        }
+
+        return smallest;
+    }
+
+    /**
+     * Returns the largest job of a known size, the earliest one on ties, or null if no size is known.
+     */
+    @Nullable
+    static <T extends SchedulableJob> T findLargest(List<T> jobs) {
+        T largest = null;
+        for (T job : jobs) {
+            long size = job.getEstimatedSize();
+            if (size >= 0 && (largest == null || size > largest.getEstimatedSize())) {
+                largest = job;
+            }
+        }
+
+        return largest;
+    }
+}
@@ -0,0 +1,140 @@
+/*
+ * Copyright (C) 2024 hstr0100
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package net.brlns.gdownloader.downloader.structs;
+
+import com.fasterxml.jackson.annotation.JsonIgnore;
+import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
+import com.fasterxml.jackson.annotation.JsonProperty;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Objects;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import net.brlns.gdownloader.util.Nullable;
+
+/**
+ * Sidecar state of a ranged direct download, persisted next to the partial file
+ * so that an interrupted transfer can pick up from the last committed offset of each chunk.
+ *
+ * @author Gabriel / hstr0100 / vertx010
+ */
+@Data
+@NoArgsConstructor
+@JsonIgnoreProperties(ignoreUnknown = true)
+public class ChunkManifest {
+
+    @JsonProperty("Url")
+    private String url;
+
+    @Nullable
+    @JsonProperty("ETag")
+    private String entityTag;
+
+    @Nullable
+    @JsonProperty("LastModified")
+    private String lastModified;
+
+    @JsonProperty("TotalBytes")
+    private long totalBytes;
+
+    @JsonProperty("Chunks")
+    private List<Chunk> chunks = new ArrayList<>();
+
+    /**
+     * Checks whether this manifest still describes the same remote file.
+     */
+    @JsonIgnore
+    public boolean matches(long totalBytesIn, @Nullable String entityTagIn, @Nullable String lastModifiedIn) {
+        return totalBytes == totalBytesIn
+            && Objects.equals(entityTag, entityTagIn)
+            && Objects.equals(lastModified, lastModifiedIn);
+    }
+
+    @JsonIgnore
+    public long getCommittedBytes() {
+        // Ranges may be appended concurrently by the chunk scheduler, which also locks on the manifest.
+        synchronized (this) {
+            long committed = 0;
+            for (Chunk chunk : chunks) {
+                // A range that was split while in flight may have briefly written past its new end.
+                committed += Math.min(chunk.getCommittedBytes(), chunk.getLength());
+            }
+
+            return committed;
+        }
+    }
+
+    /**
+     * Returns how many bytes, counted from the start of the file, have been written without gaps.
+     */
+    @JsonIgnore
+    public long getContiguousBytes() {
+        synchronized (this) {
+            List<Chunk> sorted = new ArrayList<>(chunks);
+            sorted.sort(Comparator.comparingLong(Chunk::getStartByte));
+
+            long contiguous = 0;
+            for (Chunk chunk : sorted) {
+                if (chunk.getStartByte() > contiguous) {
+                    break;
+                }
+
+                long committed = Math.min(chunk.getCommittedBytes(), chunk.getLength());
+                contiguous = Math.max(contiguous, chunk.getStartByte() + committed);
+            }
+
+            return contiguous;
+        }
+    }
+
+    @Data
+    @NoArgsConstructor
+    @JsonIgnoreProperties(ignoreUnknown = true)
+    public static class Chunk {
+
+        @JsonProperty("StartByte")
+        private long startByte;
+
+        /**
+         * Inclusive. May shrink while the range is in flight, when its tail is handed to another worker.
+         */
+        @JsonProperty("EndByte")
+        private volatile long endByte;
+
+        /**
+         * Number of bytes, counted from startByte, that have already been written to disk.
+         */
+        @JsonProperty("CommittedBytes")
+        private volatile long committedBytes;
+
+        public Chunk(long startByteIn, long endByteIn) {
+            startByte = startByteIn;
+            endByte = endByteIn;
+        }
+
+        @JsonIgnore
+        public long getLength() {
+            return endByte - startByte + 1;
+        }
+
+        @JsonIgnore
+        public boolean isComplete() {
+            return committedBytes >= getLength();
+        }
+    }
+}
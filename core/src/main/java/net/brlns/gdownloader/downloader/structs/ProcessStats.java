@@ -0,0 +1,72 @@
+/*
+ * Copyright (C) 2024 hstr0100
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package net.brlns.gdownloader.downloader.structs;
+
+import java.time.Duration;
+import java.time.Instant;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import net.brlns.gdownloader.util.Nullable;
+
+/**
+ * What is known about a process started for a download, over its lifetime.
+ *
+ * @author Gabriel / hstr0100 / vertx010
+ */
+@Data
+@AllArgsConstructor
+public class ProcessStats {
+
+    private final long pid;
+    private final int downloadId;
+    private final String command;
+
+    private final Instant startedAt;
+    /**
+     * Null while the process is alive.
+     */
+    @Nullable
+    private final Instant exitedAt;
+    /**
+     * Meaningless while the process is alive.
+     */
+    private final int exitCode;
+
+    /**
+     * CPU time of the process itself, as last seen while it was alive. Zero if the platform does not report it.
+     */
+    private final Duration cpuTime;
+
+    /**
+     * The most descendants the process was seen with, such as the ffmpeg instances started by yt-dlp.
+     */
+    private final int peakDescendants;
+
+    /**
+     * Set once the process has been asked to stop, and whether it had to be killed forcibly.
+     */
+    private final boolean stopRequested;
+    private final boolean killedForcibly;
+
+    public boolean isAlive() {
+        return exitedAt == null;
+    }
+
+    public Duration getLifetime() {
+        return Duration.between(startedAt, exitedAt != null ? exitedAt : Instant.now());
+    }
+}
@@ -0,0 +1,89 @@
+/*
+ * Copyright (C) 2024 hstr0100
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package net.brlns.gdownloader.downloader.structs;
+
+import com.fasterxml.jackson.annotation.JsonIgnore;
+import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
+import com.fasterxml.jackson.annotation.JsonProperty;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.List;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * Sidecar state of a segmented download, persisted next to the track files so that an interrupted
+ * transfer only fetches the segments that are not already on disk.
+ *
+ * @author Gabriel / hstr0100 / vertx010
+ */
+@Data
+@NoArgsConstructor
+@JsonIgnoreProperties(ignoreUnknown = true)
+public class SegmentManifest {
+
+    @JsonProperty("Url")
+    private String url;
+
+    @JsonProperty("Tracks")
+    private List<Track> tracks = new ArrayList<>();
+
+    @Data
+    @NoArgsConstructor
+    @JsonIgnoreProperties(ignoreUnknown = true)
+    public static class Track {
+
+        /**
+         * Identifies the rendition, so that a manifest is not applied to another one picked by changed settings.
+         */
+        @JsonProperty("RenditionId")
+        private String renditionId;
+
+        @JsonProperty("SegmentCount")
+        private int segmentCount;
+
+        /**
+         * Segments that were fetched in full, whether already appended to the track file or still waiting their turn.
+         */
+        @JsonProperty("Completed")
+        private long[] completed = new long[0];
+
+        /**
+         * Number of segments, counted from the first, that were appended to the track file.
+         */
+        @JsonProperty("AppendedSegments")
+        private int appendedSegments;
+
+        @JsonProperty("AppendedBytes")
+        private long appendedBytes;
+
+        public Track(String renditionIdIn, int segmentCountIn) {
+            renditionId = renditionIdIn;
+            segmentCount = segmentCountIn;
+        }
+
+        @JsonIgnore
+        public BitSet getCompletedSet() {
+            return BitSet.valueOf(completed);
+        }
+
+        @JsonIgnore
+        public void setCompletedSet(BitSet completedSet) {
+            completed = completedSet.toLongArray();
+        }
+    }
+}
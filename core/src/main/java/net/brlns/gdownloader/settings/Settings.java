@@ -16,10 +16,12 @@
  */
 package net.brlns.gdownloader.settings;
 
+import com.fasterxml.jackson.annotation.JsonAlias;
 import com.fasterxml.jackson.annotation.JsonIgnore;
 import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
 import com.fasterxml.jackson.annotation.JsonProperty;
 import java.util.ArrayList;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.TreeMap;
@@ -27,8 +29,13 @@ import lombok.Data;
 import lombok.extern.slf4j.Slf4j;
 import net.brlns.gdownloader.GDownloader;
 import net.brlns.gdownloader.settings.enums.BrowserEnum;
+import net.brlns.gdownloader.settings.enums.BufferSizeEnum;
+import net.brlns.gdownloader.settings.enums.HttpEngineEnum;
 import net.brlns.gdownloader.settings.enums.LanguageEnum;
+import net.brlns.gdownloader.settings.enums.MemoryBudgetEnum;
 import net.brlns.gdownloader.settings.enums.PlayListOptionEnum;
+import net.brlns.gdownloader.settings.enums.RateLimitEnum;
+import net.brlns.gdownloader.settings.enums.SchedulingPolicyEnum;
 import net.brlns.gdownloader.settings.enums.ThemeEnum;
 import net.brlns.gdownloader.settings.enums.WebFilterEnum;
 import net.brlns.gdownloader.settings.filters.AbstractUrlFilter;
@@ -89,6 +96,69 @@ public class Settings {
     @JsonProperty("DirectHttpMaxDownloadChunks")
     private int directHttpMaxDownloadChunks = 5;
 
+    @JsonProperty("DirectHttpMaxConnectionsPerHost")
+    private int directHttpMaxConnectionsPerHost = 8;
+
+    /**
+     * Overrides the connection cap for hosts matching a pattern, such as {@code *.example.com}.
+     * The first matching pattern wins.
+     */
+    @JsonProperty("DirectHttpHostConnectionLimits")
+    private Map<String, Integer> directHttpHostConnectionLimits = new LinkedHashMap<>();
+
+    @JsonProperty("DirectHttpEngine")
+    private HttpEngineEnum directHttpEngine = HttpEngineEnum.HTTP_CLIENT;
+
+    @JsonProperty("DirectHttpBufferSize")
+    private BufferSizeEnum directHttpBufferSize = BufferSizeEnum.BUFFER_256_KB;
+
+    @JsonProperty("DirectHttpMemoryBudget")
+    private MemoryBudgetEnum directHttpMemoryBudget = MemoryBudgetEnum.BUDGET_128_MB;
+
+    @JsonProperty("DirectHttpSequentialWrites")
+    private boolean directHttpSequentialWrites = false;
+
+    /**
+     * Fetches files from their start, so that they can be played while downloading.
+     */
+    @JsonProperty("DirectHttpPlayWhileDownloading")
+    @JsonAlias({"DirectHttpSequentialDownload"})
+    private boolean directHttpPlayWhileDownloading = false;
+
+    /**
+     * Fetches HLS and DASH streams natively instead of handing them to yt-dlp.
+     */
+    @JsonProperty("DirectHttpAdaptiveStreams")
+    private boolean directHttpAdaptiveStreams = true;
+
+    @JsonProperty("DirectHttpVerifyIntegrity")
+    private boolean directHttpVerifyIntegrity = true;
+
+    @JsonProperty("DirectHttpUseMirrors")
+    private boolean directHttpUseMirrors = true;
+
+    /**
+     * Maps a URL prefix to other prefixes under which the same files can be found.
+     */
+    @JsonProperty("DirectHttpMirrors")
+    private Map<String, List<String>> directHttpMirrors = new LinkedHashMap<>();
+
+    /**
+     * Local addresses or network interface names that chunk connections are spread over.
+     * Left empty, connections leave through the default route.
+     */
+    @JsonProperty("DirectHttpLocalAddresses")
+    private List<String> directHttpLocalAddresses = new ArrayList<>();
+
+    @JsonProperty("GlobalRateLimit")
+    private RateLimitEnum globalRateLimit = RateLimitEnum.UNLIMITED;
+
+    @JsonProperty("PerHostRateLimit")
+    private RateLimitEnum perHostRateLimit = RateLimitEnum.UNLIMITED;
+
+    @JsonProperty("PerDownloadRateLimit")
+    private RateLimitEnum perDownloadRateLimit = RateLimitEnum.UNLIMITED;
+
     @JsonProperty("RespectGalleryDlConfigFile")
     private boolean respectGalleryDlConfigFile = true;
 
@@ -157,6 +227,9 @@ public class Settings {
     @JsonProperty("MaximumSimultaneousDownloads")
     private int maxSimultaneousDownloads = 3;
 
+    @JsonProperty("QueueSchedulingPolicy")
+    private SchedulingPolicyEnum queueSchedulingPolicy = SchedulingPolicyEnum.FIFO;
+
     @JsonProperty("PlaylistDownloadOption")
     private PlayListOptionEnum playlistDownloadOption = PlayListOptionEnum.ALWAYS_ASK;
 
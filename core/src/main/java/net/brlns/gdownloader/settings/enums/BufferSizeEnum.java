@@ -0,0 +1,49 @@
+/*
+ * Copyright (C) 2024 hstr0100
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package net.brlns.gdownloader.settings.enums;
+
+import lombok.Getter;
+import net.brlns.gdownloader.util.StringUtils;
+
+/**
+ * @author Gabriel / hstr0100 / vertx010
+ */
+@Getter
+public enum BufferSizeEnum implements ISettingsEnum {
+    BUFFER_64_KB(64 * 1024),
+    BUFFER_128_KB(128 * 1024),
+    BUFFER_256_KB(256 * 1024),
+    BUFFER_512_KB(512 * 1024),
+    BUFFER_1_MB(1024 * 1024),
+    BUFFER_4_MB(4 * 1024 * 1024);
+
+    private final int bytes;
+
+    private BufferSizeEnum(int bytesIn) {
+        bytes = bytesIn;
+    }
+
+    @Override
+    public String getDisplayName() {
+        return StringUtils.getHumanReadableFileSize(bytes);
+    }
+
+    @Override
+    public String getTranslationKey() {
+        return "";
+    }
+}
@@ -31,7 +31,7 @@ import net.brlns.gdownloader.downloader.enums.DownloaderIdEnum;
 public enum DownloadTypeEnum implements ISettingsEnum {
     ALL((DownloaderIdEnum)null),
     // Downloads will also follow this specific order
-    VIDEO(DownloaderIdEnum.YT_DLP),
+    VIDEO(DownloaderIdEnum.YT_DLP, DownloaderIdEnum.ADAPTIVE_STREAM),
     AUDIO(DownloaderIdEnum.YT_DLP),
     SUBTITLES(DownloaderIdEnum.YT_DLP),
     THUMBNAILS(DownloaderIdEnum.YT_DLP),
@@ -0,0 +1,34 @@
+/*
+ * Copyright (C) 2024 hstr0100
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package net.brlns.gdownloader.settings.enums;
+
+import lombok.Getter;
+
+/**
+ * @author Gabriel / hstr0100 / vertx010
+ */
+@Getter
+public enum HttpEngineEnum implements ISettingsEnum {
+    HTTP_CLIENT("enums.http_engine.http_client"),
+    URL_CONNECTION("enums.http_engine.url_connection");
+
+    private final String translationKey;
+
+    private HttpEngineEnum(String translationKeyIn) {
+        translationKey = translationKeyIn;
+    }
+}
@@ -0,0 +1,49 @@
+/*
+ * Copyright (C) 2024 hstr0100
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package net.brlns.gdownloader.settings.enums;
+
+import lombok.Getter;
+import net.brlns.gdownloader.util.StringUtils;
+
+/**
+ * @author Gabriel / hstr0100 / vertx010
+ */
+@Getter
+public enum MemoryBudgetEnum implements ISettingsEnum {
+    BUDGET_32_MB(32L * 1024 * 1024),
+    BUDGET_64_MB(64L * 1024 * 1024),
+    BUDGET_128_MB(128L * 1024 * 1024),
+    BUDGET_256_MB(256L * 1024 * 1024),
+    BUDGET_512_MB(512L * 1024 * 1024),
+    BUDGET_1_GB(1024L * 1024 * 1024);
+
+    private final long bytes;
+
+    private MemoryBudgetEnum(long bytesIn) {
+        bytes = bytesIn;
+    }
+
+    @Override
+    public String getDisplayName() {
+        return StringUtils.getHumanReadableFileSize(bytes);
+    }
+
+    @Override
+    public String getTranslationKey() {
+        return "";
+    }
+}
@@ -0,0 +1,60 @@
+/*
+ * Copyright (C) 2024 hstr0100
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package net.brlns.gdownloader.settings.enums;
+
+import lombok.Getter;
+import net.brlns.gdownloader.util.StringUtils;
+
+import static net.brlns.gdownloader.lang.Language.*;
+
+/**
+ * @author Gabriel / hstr0100 / vertx010
+ */
+@Getter
+public enum RateLimitEnum implements ISettingsEnum {
+    UNLIMITED(0),
+    RATE_128_KB(128 * 1024L),
+    RATE_256_KB(256 * 1024L),
+    RATE_512_KB(512 * 1024L),
+    RATE_1_MB(1024 * 1024L),
+    RATE_2_MB(2 * 1024 * 1024L),
+    RATE_5_MB(5 * 1024 * 1024L),
+    RATE_10_MB(10 * 1024 * 1024L),
+    RATE_20_MB(20 * 1024 * 1024L),
+    RATE_50_MB(50 * 1024 * 1024L),
+    RATE_100_MB(100 * 1024 * 1024L);
+
+    /**
+     * Bytes per second, zero meaning no limit.
+     */
+    private final long bytesPerSecond;
+
+    private RateLimitEnum(long bytesPerSecondIn) {
+        bytesPerSecond = bytesPerSecondIn;
+    }
+
+    @Override
+    public String getDisplayName() {
+        return this == UNLIMITED ? l10n("enums.rate_limit.unlimited")
+            : l10n("enums.rate_limit", StringUtils.getHumanReadableFileSize(bytesPerSecond));
+    }
+
+    @Override
+    public String getTranslationKey() {
+        return "";
+    }
+}
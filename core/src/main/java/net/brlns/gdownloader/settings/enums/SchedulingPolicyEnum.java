@@ -0,0 +1,36 @@
+/*
+ * Copyright (C) 2024 hstr0100
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package net.brlns.gdownloader.settings.enums;
+
+import lombok.Getter;
+
+/**
+ * @author Gabriel / hstr0100 / vertx010
+ */
+@Getter
+public enum SchedulingPolicyEnum implements ISettingsEnum {
+    FIFO("enums.scheduling_policy.fifo"),
+    SHORTEST_FIRST("enums.scheduling_policy.shortest_first"),
+    LARGEST_FIRST("enums.scheduling_policy.largest_first"),
+    INTERLEAVED("enums.scheduling_policy.interleaved");
+
+    private final String translationKey;
+
+    private SchedulingPolicyEnum(String translationKeyIn) {
+        translationKey = translationKeyIn;
+    }
+}
@@ -173,6 +173,21 @@ public abstract class AbstractUrlFilter {
     @JsonProperty("QualitySettings")
     private QualitySettings qualitySettings = QualitySettings.builder().build();
 
+    /**
+     * How many downloads matched by this filter may run at once, on top of the global limit. 0 means no limit.
+     */
+    @JsonProperty("MaxConcurrentDownloads")
+    private int maxConcurrentDownloads = 0;
+
+    /**
+     * The minimum number of seconds between two downloads matched by this filter being started. 0 means no spacing.
+     *
+     * Unlike the random interval between downloads, which has yt-dlp sleep inside a running download,
+     * the queue keeps starting downloads for other sites in the meantime.
+     */
+    @JsonProperty("MinStartIntervalSeconds")
+    private int minStartIntervalSeconds = 0;
+
     public AbstractUrlFilter() {
         extraYtDlpArguments.put(DownloadTypeEnum.ALL, new ArrayList<>());
         for (DownloadTypeEnum downloadType : DownloadTypeEnum.getForDownloaderId(DownloaderIdEnum.YT_DLP)) {
@@ -790,6 +790,38 @@ public class SettingsPanel {
             settings::setMaxSimultaneousDownloads
         );
 
+        addComboBox(panel, gbcPanel,
+            "settings.queue_scheduling_policy",
+            SchedulingPolicyEnum.class,
+            settings::getQueueSchedulingPolicy,
+            settings::setQueueSchedulingPolicy,
+            false
+        );
+
+        addComboBox(panel, gbcPanel,
+            "settings.global_rate_limit",
+            RateLimitEnum.class,
+            settings::getGlobalRateLimit,
+            settings::setGlobalRateLimit,
+            false
+        );
+
+        addComboBox(panel, gbcPanel,
+            "settings.per_host_rate_limit",
+            RateLimitEnum.class,
+            settings::getPerHostRateLimit,
+            settings::setPerHostRateLimit,
+            false
+        );
+
+        addComboBox(panel, gbcPanel,
+            "settings.per_download_rate_limit",
+            RateLimitEnum.class,
+            settings::getPerDownloadRateLimit,
+            settings::setPerDownloadRateLimit,
+            false
+        );
+
         addComboBox(panel, gbcPanel,
             "settings.playlist_download_option",
             PlayListOptionEnum.class,
@@ -897,6 +929,72 @@ public class SettingsPanel {
             settings::setDirectHttpMaxDownloadChunks
         );
 
+        addSlider(panel, gbcPanel,
+            "settings.downloader.direct_http.max_connections_per_host",
+            1, 16,
+            settings::getDirectHttpMaxConnectionsPerHost,
+            settings::setDirectHttpMaxConnectionsPerHost
+        );
+
+        addComboBox(panel, gbcPanel,
+            "settings.downloader.direct_http.engine",
+            HttpEngineEnum.class,
+            settings::getDirectHttpEngine,
+            settings::setDirectHttpEngine,
+            false
+        );
+
+        addComboBox(panel, gbcPanel,
+            "settings.downloader.direct_http.buffer_size",
+            BufferSizeEnum.class,
+            settings::getDirectHttpBufferSize,
+            settings::setDirectHttpBufferSize,
+            false
+        );
+
+        addComboBox(panel, gbcPanel,
+            "settings.downloader.direct_http.memory_budget",
+            MemoryBudgetEnum.class,
+            settings::getDirectHttpMemoryBudget,
+            settings::setDirectHttpMemoryBudget,
+            false
+        );
+
+        addCheckBox(panel, gbcPanel,
+            "settings.downloader.direct_http.sequential_writes",
+            settings::isDirectHttpSequentialWrites,
+            settings::setDirectHttpSequentialWrites,
+            false
+        );
+
+        addCheckBox(panel, gbcPanel,
+            "settings.downloader.direct_http.play_while_downloading",
+            settings::isDirectHttpPlayWhileDownloading,
+            settings::setDirectHttpPlayWhileDownloading,
+            false
+        );
+
+        addCheckBox(panel, gbcPanel,
+            "settings.downloader.direct_http.adaptive_streams",
+            settings::isDirectHttpAdaptiveStreams,
+            settings::setDirectHttpAdaptiveStreams,
+            false
+        );
+
+        addCheckBox(panel, gbcPanel,
+            "settings.downloader.direct_http.verify_integrity",
+            settings::isDirectHttpVerifyIntegrity,
+            settings::setDirectHttpVerifyIntegrity,
+            false
+        );
+
+        addCheckBox(panel, gbcPanel,
+            "settings.downloader.direct_http.use_mirrors",
+            settings::isDirectHttpUseMirrors,
+            settings::setDirectHttpUseMirrors,
+            false
+        );
+
         gbcPanel.gridx = 0;
         gbcPanel.gridy++;
         gbcPanel.weightx = 1;
@@ -1079,6 +1177,21 @@ public class SettingsPanel {
                 false
             );
 
+            // Larger values can still be set in the config file, the sliders only cover the common range.
+            addSlider(itemPanel, gbcItem,
+                "settings.site_max_concurrent_downloads",
+                0, 10,
+                () -> Math.clamp(filter.getMaxConcurrentDownloads(), 0, 10),
+                filter::setMaxConcurrentDownloads
+            );
+
+            addSlider(itemPanel, gbcItem,
+                "settings.site_min_start_interval_seconds",
+                0, 15,
+                () -> Math.clamp(filter.getMinStartIntervalSeconds(), 0, 15),
+                filter::setMinStartIntervalSeconds
+            );
+
             panel.add(itemPanel);
         }
 
@@ -17,7 +17,6 @@
 package net.brlns.gdownloader.updater;
 
 import com.fasterxml.jackson.databind.JsonNode;
-import java.io.BufferedOutputStream;
 import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
@@ -26,11 +25,16 @@ import java.net.http.HttpClient;
 import java.net.http.HttpRequest;
 import java.net.http.HttpResponse;
 import java.net.http.HttpResponse.BodyHandlers;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
 import java.nio.file.DirectoryStream;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
 import java.nio.file.attribute.PosixFilePermission;
 import java.nio.file.attribute.PosixFilePermissions;
 import java.time.Duration;
@@ -325,18 +329,24 @@ public abstract class AbstractGitUpdater {
         HttpResponse<InputStream> response = client.send(request, BodyHandlers.ofInputStream());
 
         if (response.statusCode() == 200) {
-            int bufferSize = 8192;
             long totalBytes = response.headers().firstValueAsLong("Content-Length").orElse(-1L);
             long downloadedBytes = 0;
 
+            ByteBuffer buffer = main.getBufferPool().acquire();
+
             try (InputStream inputStream = response.body();
-                 BufferedOutputStream bos = new BufferedOutputStream(Files.newOutputStream(outputFile.toPath()), bufferSize)) {
+                 ReadableByteChannel source = Channels.newChannel(inputStream);
+                 FileChannel target = FileChannel.open(outputFile.toPath(),
+                     StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
 
-                byte[] buffer = new byte[bufferSize];
                 int bytesRead;
+                while ((bytesRead = source.read(buffer)) != -1) {
+                    buffer.flip();
+                    while (buffer.hasRemaining()) {
+                        target.write(buffer);
+                    }
 
-                while ((bytesRead = inputStream.read(buffer)) != -1) {
-                    bos.write(buffer, 0, bytesRead);
+                    buffer.clear();
                     downloadedBytes += bytesRead;
 
                     if (totalBytes > 0) {
@@ -346,6 +356,8 @@ public abstract class AbstractGitUpdater {
                 }
 
                 notifyProgress(UpdateStatus.DOWNLOADING, 100);
+            } finally {
+                main.getBufferPool().release(buffer);
             }
         } else {
             throw new IOException("Failed to download file: " + urlIn + ": " + response.statusCode());
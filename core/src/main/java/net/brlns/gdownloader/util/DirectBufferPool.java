@@ -0,0 +1,312 @@
+/*
+ * Copyright (C) 2024 hstr0100
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package net.brlns.gdownloader.util;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.BooleanSupplier;
+import java.util.function.IntSupplier;
+import java.util.function.LongSupplier;
+import lombok.Data;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * A shared arena of direct byte buffers, which are expensive to allocate and are only
+ * reclaimed by the garbage collector long after they are no longer referenced.
+ *
+ * Buffers are carved out of larger slabs, so that the number of native allocations stays low.
+ * The buffer size is read from a supplier on every acquisition. Buffers of a size that is
+ * no longer current are dropped when released, so a size change takes effect gradually.
+ *
+ * Checked out buffers count against a byte budget. Once it is spent, {@link #acquire()} blocks until
+ * another buffer is released, which in turn stalls the network read that wanted it.
+ *
+ * Buffers holding data on its way to disk are taken with {@link #acquireHeld()} instead, which never blocks:
+ * their holder is usually also sitting on a read buffer, and waiting on the budget while doing so could leave
+ * every reader waiting on every other. Held buffers still count against the budget as seen by readers,
+ * and their holders register a {@link Reclaimer} to be asked to hand them back whenever a reader is waiting.
+ * All held buffers together are kept to half of the budget: a held buffer that would go past that first has
+ * every holder hand back what it holds. Holders racing each other can each still go one buffer beyond it.
+ *
+ * @author Gabriel / hstr0100 / vertx010
+ */
+@Slf4j
+public class DirectBufferPool {
+
+    private static final int SLAB_SIZE = 4 * 1024 * 1024;
+
+    private static final long RECLAIM_INTERVAL_MILLIS = 250;
+
+    private final IntSupplier bufferSizeSupplier;
+    private final LongSupplier budgetSupplier;
+
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition released = lock.newCondition();
+
+    private final Deque<ByteBuffer> idleBuffers = new ArrayDeque<>();
+    private final List<Reclaimer> reclaimers = new CopyOnWriteArrayList<>();
+
+    private long inUseBytes;
+    private long heldBytes;
+    private long idleBytes;
+    private long peakInUseBytes;
+    private long slabAllocations;
+    private long acquisitions;
+    private long reuses;
+    private long waits;
+    private long waitNanos;
+
+    public DirectBufferPool(IntSupplier bufferSizeSupplierIn, LongSupplier budgetSupplierIn) {
+        bufferSizeSupplier = bufferSizeSupplierIn;
+        budgetSupplier = budgetSupplierIn;
+    }
+
+    public void registerReclaimer(Reclaimer reclaimer) {
+        reclaimers.add(reclaimer);
+    }
+
+    public void unregisterReclaimer(Reclaimer reclaimer) {
+        reclaimers.remove(reclaimer);
+    }
+
+    /**
+     * Returns a cleared buffer, which must be handed back through {@link #release(ByteBuffer)} once done.
+     * Blocks while the budget is spent.
+     */
+    public ByteBuffer acquire() throws InterruptedException {
+        return acquire(() -> true);
+    }
+
+    /**
+     * Returns a cleared buffer, which must be handed back through {@link #release(ByteBuffer)} once done.
+     * Blocks while the budget is spent.
+     *
+     * @return the buffer, or null if the caller stopped being alive before one could be granted.
+     */
+    @Nullable
+    public ByteBuffer acquire(BooleanSupplier alive) throws InterruptedException {
+        int bufferSize = bufferSizeSupplier.getAsInt();
+
+        lock.lock();
+        try {
+            long waitStart = 0;
+
+            try {
+                // A single buffer is always granted, however small the budget, so that nothing can starve.
+                while (isOverBudget(bufferSize)) {
+                    if (waitStart == 0) {
+                        waitStart = System.nanoTime();
+                        waits++;
+                    }
+
+                    if (!alive.getAsBoolean()) {
+                        return null;
+                    }
+
+                    lock.unlock();
+                    try {
+                        reclaim();
+                    } finally {
+                        lock.lock();
+                    }
+
+                    if (isOverBudget(bufferSize)) {
+                        released.await(RECLAIM_INTERVAL_MILLIS, TimeUnit.MILLISECONDS);
+                    }
+                }
+            } finally {
+                if (waitStart != 0) {
+                    waitNanos += System.nanoTime() - waitStart;
+                }
+            }
+
+            inUseBytes += bufferSize;
+
+            return take(bufferSize);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Returns a cleared buffer to hold data until it can be written out, which must be handed back through
+     * {@link #releaseHeld(ByteBuffer)}. Never blocks, holders are expected to hand back what they hold when
+     * asked to through a {@link Reclaimer}, which happens here whenever held buffers reach their share of the budget.
+     */
+    public ByteBuffer acquireHeld() {
+        int bufferSize = bufferSizeSupplier.getAsInt();
+
+        if (isOverHeldLimit(bufferSize)) {
+            // Held data is written out rather than waited on, so this cannot stall on a reader.
+            reclaim();
+        }
+
+        lock.lock();
+        try {
+            heldBytes += bufferSize;
+
+            return take(bufferSize);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public long getBudgetBytes() {
+        return budgetSupplier.getAsLong();
+    }
+
+    /**
+     * Returns how much of the budget held buffers may take together, leaving the rest to the reads feeding them.
+     */
+    public long getHeldLimitBytes() {
+        return budgetSupplier.getAsLong() / 2;
+    }
+
+    private boolean isOverBudget(int bufferSize) {
+        long checkedOut = inUseBytes + heldBytes;
+
+        return checkedOut > 0 && checkedOut + bufferSize > budgetSupplier.getAsLong();
+    }
+
+    private boolean isOverHeldLimit(int bufferSize) {
+        lock.lock();
+        try {
+            return heldBytes > 0 && heldBytes + bufferSize > getHeldLimitBytes();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private ByteBuffer take(int bufferSize) {
+        acquisitions++;
+        peakInUseBytes = Math.max(peakInUseBytes, inUseBytes + heldBytes);
+
+        ByteBuffer buffer;
+        while ((buffer = idleBuffers.pollFirst()) != null) {
+            idleBytes -= buffer.capacity();
+
+            if (buffer.capacity() == bufferSize) {
+                reuses++;
+                return buffer.clear();
+            }
+        }
+
+        carveSlab(bufferSize);
+
+        buffer = idleBuffers.pollFirst();
+        idleBytes -= buffer.capacity();
+
+        return buffer.clear();
+    }
+
+    public void release(ByteBuffer buffer) {
+        lock.lock();
+        try {
+            inUseBytes -= buffer.capacity();
+
+            recycle(buffer);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public void releaseHeld(ByteBuffer buffer) {
+        lock.lock();
+        try {
+            heldBytes -= buffer.capacity();
+
+            recycle(buffer);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void recycle(ByteBuffer buffer) {
+        // Idle buffers do not count against the budget, but are not kept beyond it either.
+        if (buffer.capacity() == bufferSizeSupplier.getAsInt()
+            && idleBytes + buffer.capacity() <= budgetSupplier.getAsLong()) {
+            idleBuffers.offerFirst(buffer);
+            idleBytes += buffer.capacity();
+        }
+
+        released.signalAll();
+    }
+
+    public Stats getStats() {
+        lock.lock();
+        try {
+            return new Stats(budgetSupplier.getAsLong(), inUseBytes, heldBytes, peakInUseBytes, idleBytes,
+                slabAllocations, acquisitions, reuses, waits, TimeUnit.NANOSECONDS.toMillis(waitNanos));
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void carveSlab(int bufferSize) {
+        // Slabs never exceed the budget, or most of their buffers could not be kept once released.
+        long slabSize = Math.min(SLAB_SIZE, budgetSupplier.getAsLong());
+        int count = (int)Math.max(1, slabSize / bufferSize);
+
+        ByteBuffer slab = ByteBuffer.allocateDirect(count * bufferSize);
+        slabAllocations++;
+
+        for (int i = 0; i < count; i++) {
+            idleBuffers.offerLast(slab.slice(i * bufferSize, bufferSize));
+            idleBytes += bufferSize;
+        }
+    }
+
+    private void reclaim() {
+        for (Reclaimer reclaimer : reclaimers) {
+            try {
+                reclaimer.reclaim();
+            } catch (Exception e) {
+                log.error("Failed to reclaim buffers", e);
+            }
+        }
+    }
+
+    @FunctionalInterface
+    public interface Reclaimer {
+
+        /**
+         * Hands back whatever buffers can be released early.
+         */
+        void reclaim() throws Exception;
+    }
+
+    @Data
+    public static class Stats {
+
+        private final long budgetBytes;
+        private final long inUseBytes;
+        private final long heldBytes;
+        private final long peakInUseBytes;
+        private final long idleBytes;
+        private final long slabAllocations;
+        private final long acquisitions;
+        private final long reuses;
+        private final long waits;
+        private final long waitMillis;
+    }
+}
@@ -0,0 +1,116 @@
+/*
+ * Copyright (C) 2024 hstr0100
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package net.brlns.gdownloader.util;
+
+import java.util.concurrent.TimeUnit;
+import java.util.function.BooleanSupplier;
+import java.util.function.LongSupplier;
+
+/**
+ * A token bucket whose rate is read from a supplier on every refill, so that limits
+ * can be changed while transfers are running.
+ *
+ * Callers may take more tokens than are available; the bucket goes into debt and the caller
+ * sleeps until the debt is paid, which keeps large reads from starving behind small ones.
+ * Large requests are taken one second worth of tokens at a time, so the debt stays around one burst,
+ * and waits are slept in short slices that pick up rate changes and let a stopped caller bail out.
+ *
+ * @author Gabriel / hstr0100 / vertx010
+ */
+public class TokenBucket {
+
+    private static final long MAX_SLEEP_NANOS = TimeUnit.MILLISECONDS.toNanos(100);
+
+    private final LongSupplier rateSupplier;
+
+    private double tokens;
+    private long lastRefill = System.nanoTime();
+    private long lastRate;
+
+    /**
+     * @param rateSupplierIn tokens per second, zero or less meaning unlimited.
+     * The bucket holds at most one second worth of tokens.
+     */
+    public TokenBucket(LongSupplier rateSupplierIn) {
+        rateSupplier = rateSupplierIn;
+    }
+
+    public boolean isUnlimited() {
+        return rateSupplier.getAsLong() <= 0;
+    }
+
+    /**
+     * Takes the requested tokens, sleeping until they are paid for.
+     *
+     * @return false if the caller stopped being alive before all of them were paid for.
+     */
+    public boolean acquire(long permits, BooleanSupplier alive) throws InterruptedException {
+        long remaining = permits;
+        while (remaining > 0) {
+            long rate = rateSupplier.getAsLong();
+            long slice = rate > 0 ? Math.min(remaining, rate) : remaining;
+            remaining -= slice;
+
+            long waitNanos = reserve(slice);
+            while (waitNanos > 0) {
+                if (!alive.getAsBoolean()) {
+                    return false;
+                }
+
+                TimeUnit.NANOSECONDS.sleep(Math.min(waitNanos, MAX_SLEEP_NANOS));
+
+                // Refilled at the current rate, which may have changed or been lifted in the meantime.
+                waitNanos = reserve(0);
+            }
+        }
+
+        return true;
+    }
+
+    /**
+     * Takes the requested tokens and returns how long the caller should wait before using them.
+     */
+    public synchronized long reserve(long permits) {
+        long now = System.nanoTime();
+        long rate = rateSupplier.getAsLong();
+
+        if (rate <= 0) {
+            tokens = 0;
+            lastRefill = now;
+            lastRate = rate;
+            return 0;
+        }
+
+        if (rate != lastRate) {
+            if (lastRate <= 0) {
+                tokens = rate;// Start with a full bucket
+            }
+
+            lastRate = rate;
+        }
+
+        tokens = Math.min(rate, tokens + (now - lastRefill) * rate / 1e9);
+        lastRefill = now;
+
+        tokens -= permits;
+        if (tokens >= 0) {
+            return 0;
+        }
+
+        return (long)(-tokens * 1e9 / rate);
+    }
+}
@@ -21,8 +21,12 @@ import java.io.UnsupportedEncodingException;
 import java.net.*;
 import java.nio.charset.StandardCharsets;
 import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.Set;
 import lombok.NonNull;
 import lombok.extern.slf4j.Slf4j;
 
@@ -32,6 +36,9 @@ import lombok.extern.slf4j.Slf4j;
 @Slf4j
 public final class URLUtils {
 
+    private static final Set<String> TRACKING_PARAMETERS = Set.of(
+        "fbclid", "gclid", "dclid", "msclkid", "yclid", "igshid", "mc_cid", "mc_eid", "_hsenc", "_hsmi");
+
     @Nullable
     public static String getVideoId(String youtubeUrl) {
         try {
@@ -147,6 +154,80 @@ public final class URLUtils {
         return queryString.toString();
     }
 
+    /**
+     * Normalizes a URL so that two URLs pointing at the same resource compare equal: lowercase scheme and host,
+     * no default port, no fragment, no tracking parameters, and the remaining parameters in a stable order.
+     * Parameters are kept as sent, without decoding, so that signed URLs keep their meaning.
+     */
+    public static String getCanonicalUrl(URL url) {
+        List<String> params = new ArrayList<>();
+
+        String query = url.getQuery();
+        if (query != null) {
+            for (String param : query.split("&")) {
+                String name = param.split("=", 2)[0].toLowerCase();
+                if (name.isEmpty() || name.startsWith("utm_") || TRACKING_PARAMETERS.contains(name)) {
+                    continue;
+                }
+
+                params.add(param);
+            }
+        }
+
+        Collections.sort(params);
+
+        StringBuilder canonical = new StringBuilder();
+        canonical.append(url.getProtocol().toLowerCase()).append("://").append(url.getHost().toLowerCase());
+
+        if (url.getPort() != -1 && url.getPort() != url.getDefaultPort()) {
+            canonical.append(':').append(url.getPort());
+        }
+
+        canonical.append(url.getPath().isEmpty() ? "/" : url.getPath());
+
+        if (!params.isEmpty()) {
+            canonical.append('?').append(String.join("&", params));
+        }
+
+        return canonical.toString();
+    }
+
+    /**
+     * Returns the lowercase host of a URL, or an empty string if it has none.
+     */
+    public static String getHost(String urlString) {
+        try {
+            String host = new URI(urlString).getHost();
+            if (host != null) {
+                return host.toLowerCase();
+            }
+        } catch (Exception e) {
+            log.debug("Cannot parse host of {}", urlString, e);
+        }
+
+        return "";
+    }
+
+    /**
+     * Matches a host against a pattern such as {@code cdn.example.com} or {@code *.example.com}.
+     * A leading wildcard also matches the bare domain.
+     */
+    public static boolean matchesHostPattern(String pattern, String host) {
+        pattern = pattern.trim().toLowerCase();
+        host = host.toLowerCase();
+
+        if (pattern.equals("*")) {
+            return true;
+        }
+
+        if (pattern.startsWith("*.")) {
+            String domain = pattern.substring(2);
+            return host.equals(domain) || host.endsWith("." + domain);
+        }
+
+        return host.equals(pattern);
+    }
+
     /**
      * Extracts the file or folder name from a given URL.
      *
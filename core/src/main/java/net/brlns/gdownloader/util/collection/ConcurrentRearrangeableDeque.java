@@ -17,8 +17,12 @@
 package net.brlns.gdownloader.util.collection;
 
 import java.util.ArrayDeque;
+import java.util.ArrayList;
 import java.util.Iterator;
+import java.util.List;
 import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Predicate;
+import net.brlns.gdownloader.util.Nullable;
 
 /**
  * @author Gabriel / hstr0100 / vertx010
@@ -103,6 +107,17 @@ public class ConcurrentRearrangeableDeque<T> extends ArrayDeque<T> {
         }
     }
 
+    @Override
+    public boolean offerFirst(T item) {
+        lock.writeLock().lock();
+
+        try {
+            return super.offerFirst(item);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
     @Override
     public boolean offerLast(T item) {
         lock.writeLock().lock();
@@ -125,6 +140,46 @@ public class ConcurrentRearrangeableDeque<T> extends ArrayDeque<T> {
         }
     }
 
+    /**
+     * Returns the first item matching the predicate, without removing it.
+     */
+    @Nullable
+    public T peekFirst(Predicate<T> predicate) {
+        lock.readLock().lock();
+
+        try {
+            for (T item : this) {
+                if (predicate.test(item)) {
+                    return item;
+                }
+            }
+
+            return null;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Returns every item matching the predicate, in order, without removing them.
+     */
+    public List<T> peekAll(Predicate<T> predicate) {
+        lock.readLock().lock();
+
+        try {
+            List<T> items = new ArrayList<>();
+            for (T item : this) {
+                if (predicate.test(item)) {
+                    items.add(item);
+                }
+            }
+
+            return items;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
     @Override
     public T poll() {
         lock.writeLock().lock();
@@ -46,6 +46,10 @@ public class LRUCache<K, V> {
         backingMap.put(key, value);
     }
 
+    public V remove(K key) {
+        return backingMap.remove(key);
+    }
+
     @Override
     public String toString() {
         return backingMap.toString();
@@ -0,0 +1,156 @@
+package net.brlns.gdownloader;
+
+import java.net.URI;
+import java.net.URL;
+import java.util.List;
+import net.brlns.gdownloader.downloader.AdaptiveStream;
+import net.brlns.gdownloader.downloader.AdaptiveStream.Rendition;
+import net.brlns.gdownloader.downloader.AdaptiveStream.Segment;
+import net.brlns.gdownloader.downloader.AdaptiveStream.TrackType;
+import net.brlns.gdownloader.downloader.DashManifest;
+import net.brlns.gdownloader.downloader.HlsPlaylist;
+import net.brlns.gdownloader.downloader.UnsupportedStreamException;
+import net.brlns.gdownloader.settings.QualitySettings;
+import net.brlns.gdownloader.settings.enums.QualitySelectorEnum;
+import net.brlns.gdownloader.settings.enums.ResolutionEnum;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class AdaptiveStreamTest {
+
+    private static final String MASTER_PLAYLIST = """
+        #EXTM3U
+        #EXT-X-MEDIA:TYPE=AUDIO,GROUP-ID="aac",NAME="English",DEFAULT=YES,URI="audio/en.m3u8"
+        #EXT-X-MEDIA:TYPE=AUDIO,GROUP-ID="aac",NAME="Commentary",DEFAULT=NO,URI="audio/commentary.m3u8"
+        #EXT-X-STREAM-INF:BANDWIDTH=800000,RESOLUTION=640x360,CODECS="avc1.4d401e,mp4a.40.2",AUDIO="aac"
+        360/index.m3u8
+        #EXT-X-STREAM-INF:BANDWIDTH=2800000,RESOLUTION=1280x720,FRAME-RATE=30.000,AUDIO="aac"
+        720/index.m3u8
+        #EXT-X-STREAM-INF:BANDWIDTH=9000000,RESOLUTION=3840x2160,FRAME-RATE=30.000,AUDIO="aac"
+        2160/index.m3u8
+        """;
+
+    @Test
+    void testHlsRenditionSelection() throws Exception {
+        AdaptiveStream stream = HlsPlaylist.parseMaster(url("https://example.com/live/master.m3u8"), MASTER_PLAYLIST);
+        assertEquals(3, stream.getRenditions().size());
+        assertEquals(2, stream.getAudioRenditions().size());
+
+        QualitySettings quality = QualitySettings.builder()
+            .maxHeight(ResolutionEnum.RES_1080)
+            .build();
+
+        Rendition video = stream.selectVideo(quality);
+        assertEquals(720, video.getHeight());
+        assertEquals(url("https://example.com/live/720/index.m3u8"), video.getPlaylistUrl());
+
+        Rendition audio = stream.selectAudio(quality, video);
+        assertEquals(TrackType.AUDIO, audio.getType());
+        assertEquals(url("https://example.com/live/audio/en.m3u8"), audio.getPlaylistUrl());
+
+        quality.setSelector(QualitySelectorEnum.WORST);
+        assertEquals(360, stream.selectVideo(quality).getHeight());
+    }
+
+    @Test
+    void testHlsMediaPlaylist() throws Exception {
+        String playlist = """
+            #EXTM3U
+            #EXT-X-TARGETDURATION:6
+            #EXT-X-MEDIA-SEQUENCE:7
+            #EXT-X-MAP:URI="init.mp4",BYTERANGE="720@0"
+            #EXT-X-KEY:METHOD=AES-128,URI="https://keys.example.com/k1"
+            #EXTINF:6.0,
+            #EXT-X-BYTERANGE:1000@720
+            media.mp4
+            #EXTINF:6.0,
+            #EXT-X-BYTERANGE:500
+            media.mp4
+            #EXT-X-ENDLIST
+            """;
+
+        Rendition rendition = Rendition.builder().id("main").type(TrackType.VIDEO).build();
+        HlsPlaylist.parseMedia(url("https://example.com/v/index.m3u8"), playlist, rendition);
+
+        List<Segment> segments = rendition.getAllSegments();
+        assertEquals(3, segments.size());
+
+        Segment init = segments.get(0);
+        assertEquals(0, init.getOffset());
+        assertEquals(720, init.getLength());
+        assertNull(init.getKey());
+
+        // A range without an offset continues from where the last one ended.
+        assertEquals(720, segments.get(1).getOffset());
+        assertEquals(1720, segments.get(2).getOffset());
+        assertEquals(500, segments.get(2).getLength());
+
+        // The IV defaults to the media sequence number of the segment.
+        byte[] iv = segments.get(2).getKey().getIv();
+        assertEquals(16, iv.length);
+        assertEquals(8, iv[15]);
+        assertEquals("mp4", rendition.getExtension());
+    }
+
+    @Test
+    void testHlsLivePlaylistIsUnsupported() {
+        String playlist = """
+            #EXTM3U
+            #EXT-X-TARGETDURATION:6
+            #EXTINF:6.0,
+            segment0.ts
+            """;
+
+        Rendition rendition = Rendition.builder().id("main").type(TrackType.VIDEO).build();
+        assertThrows(UnsupportedStreamException.class,
+            () -> HlsPlaylist.parseMedia(url("https://example.com/index.m3u8"), playlist, rendition));
+    }
+
+    @Test
+    void testDashSegmentTemplate() throws Exception {
+        String manifest = """
+            <?xml version="1.0" encoding="UTF-8"?>
+            <MPD xmlns="urn:mpeg:dash:schema:mpd:2011" type="static" mediaPresentationDuration="PT10S">
+              <Period>
+                <BaseURL>media/</BaseURL>
+                <AdaptationSet contentType="video" mimeType="video/mp4">
+                  <SegmentTemplate initialization="$RepresentationID$/init.mp4"
+                      media="$RepresentationID$/$Number%05d$.m4s" startNumber="1" timescale="1000" duration="4000"/>
+                  <Representation id="v480" bandwidth="1000000" width="854" height="480"/>
+                  <Representation id="v1080" bandwidth="5000000" width="1920" height="1080"/>
+                </AdaptationSet>
+                <AdaptationSet mimeType="audio/mp4">
+                  <Representation id="a1" bandwidth="128000">
+                    <SegmentTemplate initialization="a1/init.mp4" media="a1/$Time$.m4s" timescale="1000">
+                      <SegmentTimeline>
+                        <S t="0" d="5000" r="1"/>
+                      </SegmentTimeline>
+                    </SegmentTemplate>
+                  </Representation>
+                </AdaptationSet>
+              </Period>
+            </MPD>
+            """;
+
+        AdaptiveStream stream = DashManifest.parse(url("https://cdn.example.com/show/manifest.mpd"), manifest);
+
+        Rendition video = stream.selectVideo(new QualitySettings());
+        assertEquals("v1080", video.getId());
+
+        List<Segment> videoSegments = video.getAllSegments();
+        // Ten seconds in four second segments, behind the initialization segment.
+        assertEquals(4, videoSegments.size());
+        assertEquals(url("https://cdn.example.com/show/media/v1080/init.mp4"), videoSegments.get(0).getUrl());
+        assertEquals(url("https://cdn.example.com/show/media/v1080/00003.m4s"), videoSegments.get(3).getUrl());
+
+        Rendition audio = stream.selectAudio(new QualitySettings(), video);
+        List<Segment> audioSegments = audio.getAllSegments();
+        assertEquals(3, audioSegments.size());
+        assertEquals(url("https://cdn.example.com/show/media/a1/5000.m4s"), audioSegments.get(2).getUrl());
+    }
+
+    private static URL url(String url) throws Exception {
+        return URI.create(url).toURL();
+    }
+}
@@ -0,0 +1,220 @@
+package net.brlns.gdownloader;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.net.URL;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * An in-process HTTP server for the direct download benchmarks.
+ *
+ * Serves {@code /file/<size>} with content derived from the byte offset, so that no file has to be kept around,
+ * and can be told to add latency, throttle each connection, ignore ranges, drop connections and answer with 429s.
+ * The entity tag of a file is its quoted size, and a range sent with any other {@code If-Range} gets the whole file.
+ */
+class BenchmarkHttpServer implements AutoCloseable {
+
+    private static final Pattern RANGE_PATTERN = Pattern.compile("bytes=(\\d+)-(\\d*)");
+
+    private static final int BLOCK_SIZE = 16 * 1024;
+
+    private final HttpServer server;
+    // Platform threads, so that the allocations of the server are accounted for as well.
+    private final ExecutorService executor = Executors.newCachedThreadPool();
+
+    private volatile long latencyMillis;
+    private volatile long bytesPerSecondPerConnection;
+    private volatile boolean rangeSupport = true;
+    private volatile double failureRate;
+    private volatile double tooManyRequestsRate;
+
+    private final AtomicLong requests = new AtomicLong();
+    private final AtomicLong failures = new AtomicLong();
+    private final AtomicLong tooManyRequests = new AtomicLong();
+
+    BenchmarkHttpServer() throws IOException {
+        server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 128);
+        server.setExecutor(executor);
+        server.createContext("/file/", this::handle);
+        server.start();
+    }
+
+    BenchmarkHttpServer latencyMillis(long latencyMillisIn) {
+        latencyMillis = latencyMillisIn;
+        return this;
+    }
+
+    /**
+     * A value of 0 leaves connections unthrottled.
+     */
+    BenchmarkHttpServer bytesPerSecondPerConnection(long bytesPerSecondIn) {
+        bytesPerSecondPerConnection = bytesPerSecondIn;
+        return this;
+    }
+
+    BenchmarkHttpServer rangeSupport(boolean rangeSupportIn) {
+        rangeSupport = rangeSupportIn;
+        return this;
+    }
+
+    /**
+     * The share of responses whose connection is dropped halfway through the body.
+     */
+    BenchmarkHttpServer failureRate(double failureRateIn) {
+        failureRate = failureRateIn;
+        return this;
+    }
+
+    BenchmarkHttpServer tooManyRequestsRate(double tooManyRequestsRateIn) {
+        tooManyRequestsRate = tooManyRequestsRateIn;
+        return this;
+    }
+
+    URL getFileUrl(long size) throws IOException {
+        return URI.create("http://" + server.getAddress().getHostString() + ":"
+            + server.getAddress().getPort() + "/file/" + size).toURL();
+    }
+
+    long getRequests() {
+        return requests.get();
+    }
+
+    long getFailures() {
+        return failures.get();
+    }
+
+    long getTooManyRequests() {
+        return tooManyRequests.get();
+    }
+
+    void resetCounters() {
+        requests.set(0);
+        failures.set(0);
+        tooManyRequests.set(0);
+    }
+
+    /**
+     * The byte every served file holds at the given offset.
+     */
+    static byte getByteAt(long position) {
+        return (byte)(position * 31 + (position >>> 11));
+    }
+
+    private void handle(HttpExchange exchange) throws IOException {
+        try (exchange) {
+            requests.incrementAndGet();
+
+            if (latencyMillis > 0) {
+                TimeUnit.MILLISECONDS.sleep(latencyMillis);
+            }
+
+            long size = Long.parseLong(exchange.getRequestURI().getPath().substring("/file/".length()));
+
+            if (rangeSupport) {
+                exchange.getResponseHeaders().set("Accept-Ranges", "bytes");
+            }
+
+            exchange.getResponseHeaders().set("Content-Type", "application/octet-stream");
+            String entityTag = "\"" + size + "\"";
+            exchange.getResponseHeaders().set("ETag", entityTag);
+
+            ThreadLocalRandom random = ThreadLocalRandom.current();
+            if (random.nextDouble() < tooManyRequestsRate) {
+                tooManyRequests.incrementAndGet();
+                exchange.getResponseHeaders().set("Retry-After", "0");
+                exchange.sendResponseHeaders(429, -1);
+                return;
+            }
+
+            long start = 0;
+            long end = size - 1;
+            int status = 200;
+
+            String range = exchange.getRequestHeaders().getFirst("Range");
+            String ifRange = exchange.getRequestHeaders().getFirst("If-Range");
+            if (rangeSupport && range != null && (ifRange == null || ifRange.equals(entityTag))) {
+                Matcher matcher = RANGE_PATTERN.matcher(range.trim());
+                if (!matcher.matches() || Long.parseLong(matcher.group(1)) >= size) {
+                    exchange.getResponseHeaders().set("Content-Range", "bytes */" + size);
+                    exchange.sendResponseHeaders(416, -1);
+                    return;
+                }
+
+                start = Long.parseLong(matcher.group(1));
+                if (!matcher.group(2).isEmpty()) {
+                    end = Math.min(end, Long.parseLong(matcher.group(2)));
+                }
+
+                status = 206;
+                exchange.getResponseHeaders().set("Content-Range", "bytes " + start + "-" + end + "/" + size);
+            }
+
+            long length = end - start + 1;
+
+            if (exchange.getRequestMethod().equals("HEAD")) {
+                exchange.getResponseHeaders().set("Content-Length", String.valueOf(length));
+                exchange.sendResponseHeaders(status, -1);
+                return;
+            }
+
+            exchange.sendResponseHeaders(status, length);
+
+            // Dropping the connection before the declared length is reached looks like a reset to the client.
+            long failAfter = random.nextDouble() < failureRate ? length / 2 : Long.MAX_VALUE;
+
+            writeBody(exchange.getResponseBody(), start, length, failAfter);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (IOException e) {
+            // The client went away, nothing to do.
+        }
+    }
+
+    private void writeBody(OutputStream output, long start, long length, long failAfter)
+        throws IOException, InterruptedException {
+        byte[] block = new byte[BLOCK_SIZE];
+        long rate = bytesPerSecondPerConnection;
+        long startNanos = System.nanoTime();
+
+        long written = 0;
+        while (written < length) {
+            if (written >= failAfter) {
+                failures.incrementAndGet();
+                throw new IOException("Simulated connection drop");
+            }
+
+            int count = (int)Math.min(block.length, length - written);
+            for (int i = 0; i < count; i++) {
+                block[i] = getByteAt(start + written + i);
+            }
+
+            output.write(block, 0, count);
+            written += count;
+
+            if (rate > 0) {
+                long dueNanos = written * TimeUnit.SECONDS.toNanos(1) / rate;
+                long aheadNanos = dueNanos - (System.nanoTime() - startNanos);
+                if (aheadNanos > 0) {
+                    TimeUnit.NANOSECONDS.sleep(aheadNanos);
+                }
+            }
+        }
+    }
+
+    @Override
+    public void close() {
+        server.stop(0);
+        executor.shutdownNow();
+    }
+}
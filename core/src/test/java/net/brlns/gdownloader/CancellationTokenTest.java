@@ -0,0 +1,82 @@
+package net.brlns.gdownloader;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import net.brlns.gdownloader.downloader.CancellationToken;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class CancellationTokenTest {
+
+    @Test
+    void testCallbacksRunOnceOnCancel() {
+        CancellationToken token = new CancellationToken();
+        AtomicInteger runs = new AtomicInteger();
+
+        token.onCancel(runs::incrementAndGet);
+        token.onCancel(runs::incrementAndGet);
+
+        assertFalse(token.isCancelled());
+        assertTrue(token.cancel());
+        assertTrue(token.isCancelled());
+        assertEquals(2, runs.get());
+
+        assertFalse(token.cancel());
+        assertEquals(2, runs.get());
+    }
+
+    @Test
+    void testLateRegistrationRunsRightAway() {
+        CancellationToken token = new CancellationToken();
+        token.cancel();
+
+        AtomicInteger runs = new AtomicInteger();
+        token.onCancel(runs::incrementAndGet);
+
+        assertEquals(1, runs.get());
+    }
+
+    @Test
+    void testClosedRegistrationIsNotRun() {
+        CancellationToken token = new CancellationToken();
+        AtomicInteger runs = new AtomicInteger();
+
+        try (CancellationToken.Registration registration = token.onCancel(runs::incrementAndGet)) {
+            assertNotNull(registration);
+        }
+
+        token.cancel();
+
+        assertEquals(0, runs.get());
+    }
+
+    @Test
+    void testFailingCallbackDoesNotStopTheOthers() {
+        CancellationToken token = new CancellationToken();
+        AtomicInteger runs = new AtomicInteger();
+
+        token.onCancel(() -> {
+            throw new IllegalStateException("Test");
+        });
+        token.onCancel(runs::incrementAndGet);
+
+        assertTrue(token.cancel());
+        assertEquals(1, runs.get());
+    }
+
+    @Test
+    void testResetAllowsReuse() {
+        CancellationToken token = new CancellationToken();
+        AtomicInteger runs = new AtomicInteger();
+
+        token.onCancel(runs::incrementAndGet);
+        token.cancel();
+        token.reset();
+
+        assertFalse(token.isCancelled());
+
+        token.onCancel(runs::incrementAndGet);
+        assertTrue(token.cancel());
+        assertEquals(2, runs.get());
+    }
+}
@@ -0,0 +1,78 @@
+package net.brlns.gdownloader;
+
+import net.brlns.gdownloader.downloader.ChunkConcurrencyController;
+import org.junit.jupiter.api.Test;
+
+import static net.brlns.gdownloader.downloader.ChunkConcurrencyController.SAMPLE_INTERVAL_NANOS;
+import static org.junit.jupiter.api.Assertions.*;
+
+class ChunkConcurrencyControllerTest {
+
+    private static final long MB = 1024 * 1024;
+
+    @Test
+    void testIncreasesWhileThroughputScales() {
+        ChunkConcurrencyController controller = new ChunkConcurrencyController(2, 10);
+
+        long now = 0;
+        long bytes = 0;
+        controller.sample(bytes, 2, now);
+
+        for (int i = 0; i < 4; i++) {
+            int target = controller.getTarget();
+            now += SAMPLE_INTERVAL_NANOS;
+            bytes += target * MB;// Every connection adds 1 MB per interval
+            controller.sample(bytes, target, now);
+        }
+
+        assertEquals(6, controller.getTarget());
+    }
+
+    @Test
+    void testConvergesWhenThroughputPlateaus() {
+        ChunkConcurrencyController controller = new ChunkConcurrencyController(2, 10);
+
+        long now = 0;
+        long bytes = 0;
+        controller.sample(bytes, 2, now);
+
+        for (int i = 0; i < 6; i++) {
+            int target = controller.getTarget();
+            now += SAMPLE_INTERVAL_NANOS;
+            bytes += Math.min(target, 4) * MB;// The link saturates at 4 connections
+            controller.sample(bytes, target, now);
+        }
+
+        assertEquals(4, controller.getTarget());
+    }
+
+    @Test
+    void testErrorsHalveConnections() {
+        ChunkConcurrencyController controller = new ChunkConcurrencyController(8, 10);
+
+        controller.onError(0);
+        assertEquals(4, controller.getTarget());
+
+        controller.onError(1);
+        assertEquals(4, controller.getTarget(), "Errors within the same interval should count once");
+
+        controller.onError(SAMPLE_INTERVAL_NANOS);
+        assertEquals(2, controller.getTarget());
+    }
+
+    @Test
+    void testIgnoresSamplesBelowTarget() {
+        ChunkConcurrencyController controller = new ChunkConcurrencyController(4, 10);
+
+        controller.sample(0, 4, 0);
+        controller.sample(MB, 1, SAMPLE_INTERVAL_NANOS);
+
+        assertEquals(4, controller.getTarget());
+    }
+
+    @Test
+    void testNeverExceedsMaximum() {
+        ChunkConcurrencyController controller = new ChunkConcurrencyController(20, 3);
+        assertEquals(3, controller.getTarget());
+    }
+}
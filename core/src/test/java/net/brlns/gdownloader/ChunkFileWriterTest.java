@@ -0,0 +1,109 @@
+package net.brlns.gdownloader;
+
+import java.io.File;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import net.brlns.gdownloader.downloader.ChunkFileWriter;
+import net.brlns.gdownloader.util.DirectBufferPool;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ChunkFileWriterTest {
+
+    @TempDir
+    Path tempDir;
+
+    @Test
+    void testPositionalWrites() throws Exception {
+        File file = tempDir.resolve("direct.bin").toFile();
+
+        try (ChunkFileWriter writer = new ChunkFileWriter(file, false)) {
+            writer.preallocate(8);
+            writer.write(ByteBuffer.wrap(new byte[]{5, 6, 7, 8}), 4);
+            writer.write(ByteBuffer.wrap(new byte[]{1, 2, 3, 4}), 0);
+        }
+
+        assertArrayEquals(new byte[]{1, 2, 3, 4, 5, 6, 7, 8}, Files.readAllBytes(file.toPath()));
+    }
+
+    @Test
+    void testSequentialWritesAreHeldUntilFlush() throws Exception {
+        File file = tempDir.resolve("sequential.bin").toFile();
+
+        try (ChunkFileWriter writer = new ChunkFileWriter(file, true)) {
+            writer.write(ByteBuffer.wrap(new byte[]{3, 4}), 2);
+            writer.write(ByteBuffer.wrap(new byte[]{1, 2}), 0);
+
+            assertEquals(0, file.length(), "Writes should be buffered");
+
+            writer.flush();
+
+            assertArrayEquals(new byte[]{1, 2, 3, 4}, Files.readAllBytes(file.toPath()));
+        }
+    }
+
+    @Test
+    void testSequentialWritesWithinASmallBudgetDoNotDeadlock() throws Exception {
+        File file = tempDir.resolve("budget.bin").toFile();
+
+        int bufferSize = 1024;
+        int workers = 8;
+        int blocksPerWorker = 64;
+
+        // Less than one read buffer per worker, let alone room for the copies held by the writer.
+        DirectBufferPool pool = new DirectBufferPool(() -> bufferSize, () -> 4 * bufferSize);
+
+        ExecutorService executor = Executors.newFixedThreadPool(workers);
+        try (ChunkFileWriter writer = new ChunkFileWriter(file, true, pool)) {
+            List<Future<?>> futures = new ArrayList<>();
+            for (int worker = 0; worker < workers; worker++) {
+                long start = (long)worker * blocksPerWorker * bufferSize;
+
+                futures.add(executor.submit(() -> {
+                    for (int block = 0; block < blocksPerWorker; block++) {
+                        long position = start + (long)block * bufferSize;
+
+                        ByteBuffer buffer = pool.acquire();
+                        try {
+                            for (int i = 0; i < bufferSize; i++) {
+                                buffer.put((byte)(position + i));
+                            }
+
+                            buffer.flip();
+                            writer.write(buffer, position);
+                        } finally {
+                            pool.release(buffer);
+                        }
+                    }
+
+                    return null;
+                }));
+            }
+
+            for (Future<?> future : futures) {
+                future.get(30, TimeUnit.SECONDS);
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+
+        byte[] content = Files.readAllBytes(file.toPath());
+        assertEquals(workers * blocksPerWorker * bufferSize, content.length);
+
+        for (int i = 0; i < content.length; i++) {
+            assertEquals((byte)i, content[i]);
+        }
+
+        assertEquals(0, pool.getStats().getInUseBytes());
+        assertEquals(0, pool.getStats().getHeldBytes());
+    }
+}
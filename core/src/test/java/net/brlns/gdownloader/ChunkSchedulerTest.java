@@ -0,0 +1,249 @@
+package net.brlns.gdownloader;
+
+import java.util.concurrent.TimeUnit;
+import net.brlns.gdownloader.downloader.ChunkScheduler;
+import net.brlns.gdownloader.downloader.structs.ChunkManifest;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ChunkSchedulerTest {
+
+    private static final long MB = 1024 * 1024;
+
+    @Test
+    void testUnassignedRangesComeFirst() {
+        ChunkManifest manifest = createManifest(64 * MB, 4);
+        ChunkScheduler scheduler = new ChunkScheduler(manifest);
+
+        for (int i = 0; i < 4; i++) {
+            assertSame(manifest.getChunks().get(i), scheduler.next());
+        }
+
+        assertEquals(4, manifest.getChunks().size());
+        assertEquals(4, scheduler.getInFlightCount());
+    }
+
+    @Test
+    void testCompletedRangesAreSkipped() {
+        ChunkManifest manifest = createManifest(64 * MB, 4);
+        manifest.getChunks().get(0).setCommittedBytes(16 * MB);
+
+        ChunkScheduler scheduler = new ChunkScheduler(manifest);
+
+        assertSame(manifest.getChunks().get(1), scheduler.next());
+    }
+
+    @Test
+    void testStealsSecondHalfOfSlowestRange() throws Exception {
+        ChunkManifest manifest = createManifest(32 * MB, 2);
+        ChunkScheduler scheduler = new ChunkScheduler(manifest);
+
+        ChunkManifest.Chunk fast = scheduler.next();
+        ChunkManifest.Chunk slow = scheduler.next();
+
+        TimeUnit.MILLISECONDS.sleep(20);
+
+        // Same time in flight, the slow range has received far less and has far more left.
+        fast.setCommittedBytes(8 * MB);
+        slow.setCommittedBytes(MB);
+
+        long slowEnd = slow.getEndByte();
+        long splitByte = slow.getStartByte() + MB + (slow.getLength() - MB) / 2;
+
+        ChunkManifest.Chunk stolen = scheduler.next();
+
+        assertNotNull(stolen);
+        assertEquals(splitByte, stolen.getStartByte());
+        assertEquals(slowEnd, stolen.getEndByte());
+        assertEquals(0, stolen.getCommittedBytes());
+
+        // The victim now ends right before the stolen range.
+        assertEquals(splitByte - 1, slow.getEndByte());
+        assertEquals(16 * MB - 1, fast.getEndByte());
+
+        assertEquals(3, manifest.getChunks().size());
+        assertEquals(3, scheduler.getInFlightCount());
+    }
+
+    @Test
+    void testRangeWithoutProgressIsStolenFrom() throws Exception {
+        ChunkManifest manifest = createManifest(32 * MB, 2);
+        ChunkScheduler scheduler = new ChunkScheduler(manifest);
+
+        ChunkManifest.Chunk moving = scheduler.next();
+        ChunkManifest.Chunk stalled = scheduler.next();
+
+        TimeUnit.MILLISECONDS.sleep(20);
+        moving.setCommittedBytes(MB);
+
+        ChunkManifest.Chunk stolen = scheduler.next();
+
+        assertNotNull(stolen);
+        assertEquals(stalled.getEndByte() + 1, stolen.getStartByte());
+        assertEquals(16 * MB - 1, moving.getEndByte());
+    }
+
+    @Test
+    void testMinStealBytesFloor() {
+        long size = ChunkScheduler.MIN_STEAL_BYTES * 2;
+
+        ChunkManifest manifest = createManifest(size, 1);
+        ChunkScheduler scheduler = new ChunkScheduler(manifest);
+
+        ChunkManifest.Chunk chunk = scheduler.next();
+        assertNotNull(chunk);
+
+        // Exactly two minimal halves left, which may still be split.
+        assertTrue(scheduler.hasAssignableWork());
+
+        // One byte less and neither half would be large enough.
+        chunk.setCommittedBytes(1);
+
+        assertFalse(scheduler.hasAssignableWork());
+        assertNull(scheduler.next());
+        assertEquals(size - 1, chunk.getEndByte());
+        assertEquals(1, manifest.getChunks().size());
+    }
+
+    @Test
+    void testStolenHalvesRespectTheFloor() {
+        long size = ChunkScheduler.MIN_STEAL_BYTES * 2;
+
+        ChunkManifest manifest = createManifest(size, 1);
+        ChunkScheduler scheduler = new ChunkScheduler(manifest);
+
+        ChunkManifest.Chunk victim = scheduler.next();
+        ChunkManifest.Chunk stolen = scheduler.next();
+
+        assertNotNull(stolen);
+        assertEquals(ChunkScheduler.MIN_STEAL_BYTES, victim.getLength());
+        assertEquals(ChunkScheduler.MIN_STEAL_BYTES, stolen.getLength());
+
+        // Neither half can be split any further.
+        assertNull(scheduler.next());
+    }
+
+    @Test
+    void testDeferredRangeWaitsOutItsBackoff() throws Exception {
+        ChunkManifest manifest = createManifest(MB, 1);
+        ChunkScheduler scheduler = new ChunkScheduler(manifest);
+
+        ChunkManifest.Chunk chunk = scheduler.next();
+
+        assertEquals(1, scheduler.defer(chunk, TimeUnit.MILLISECONDS.toNanos(100)));
+        scheduler.release(chunk);
+
+        assertTrue(scheduler.hasDeferredWork());
+        assertFalse(scheduler.hasAssignableWork());
+        assertNull(scheduler.next());
+
+        TimeUnit.MILLISECONDS.sleep(150);
+
+        assertFalse(scheduler.hasDeferredWork());
+        assertTrue(scheduler.hasAssignableWork());
+        assertSame(chunk, scheduler.next());
+    }
+
+    @Test
+    void testFailuresAccumulateAcrossDeferrals() {
+        ChunkManifest manifest = createManifest(MB, 1);
+        ChunkScheduler scheduler = new ChunkScheduler(manifest);
+
+        ChunkManifest.Chunk chunk = scheduler.next();
+        assertEquals(0, scheduler.getFailureCount(chunk));
+
+        assertEquals(1, scheduler.defer(chunk, 0));
+        assertEquals(2, scheduler.defer(chunk, 0));
+        assertEquals(2, scheduler.getFailureCount(chunk));
+    }
+
+    @Test
+    void testCompletedRangeIsNotDeferredWork() {
+        ChunkManifest manifest = createManifest(MB, 1);
+        ChunkScheduler scheduler = new ChunkScheduler(manifest);
+
+        ChunkManifest.Chunk chunk = scheduler.next();
+        scheduler.defer(chunk, TimeUnit.MINUTES.toNanos(1));
+        scheduler.release(chunk);
+
+        chunk.setCommittedBytes(chunk.getLength());
+
+        assertFalse(scheduler.hasDeferredWork());
+    }
+
+    @Test
+    void testSequentialModeHandsOutTailAfterHead() {
+        ChunkManifest manifest = createManifest(64 * MB, 8);
+        ChunkScheduler scheduler = new ChunkScheduler(manifest, true, 8 * MB);
+
+        assertSame(manifest.getChunks().get(0), scheduler.next());
+        assertSame(manifest.getChunks().get(7), scheduler.next());
+        assertSame(manifest.getChunks().get(1), scheduler.next());
+        assertSame(manifest.getChunks().get(2), scheduler.next());
+    }
+
+    @Test
+    void testSequentialModeStealsNextToTheFirstMissingByte() throws Exception {
+        ChunkManifest manifest = createManifest(64 * MB, 4);
+        ChunkScheduler scheduler = new ChunkScheduler(manifest, true, 0);
+
+        ChunkManifest.Chunk head = scheduler.next();
+        ChunkManifest.Chunk second = scheduler.next();
+        scheduler.next();
+        ChunkManifest.Chunk last = scheduler.next();
+
+        TimeUnit.MILLISECONDS.sleep(20);
+
+        // The last range is the slowest, which is what would be split outside of sequential mode.
+        head.setCommittedBytes(2 * MB);
+        second.setCommittedBytes(8 * MB);
+        manifest.getChunks().get(2).setCommittedBytes(8 * MB);
+
+        ChunkManifest.Chunk stolen = scheduler.next();
+
+        assertNotNull(stolen);
+        assertEquals(2 * MB + 7 * MB, stolen.getStartByte());
+        assertEquals(16 * MB - 1, stolen.getEndByte());
+        assertEquals(9 * MB - 1, head.getEndByte());
+        assertEquals(64 * MB - 1, last.getEndByte());
+    }
+
+    @Test
+    void testSequentialModeFollowsTheFirstMissingByte() {
+        ChunkManifest manifest = createManifest(64 * MB, 4);
+        ChunkScheduler scheduler = new ChunkScheduler(manifest, true, 0);
+
+        ChunkManifest.Chunk head = scheduler.next();
+        ChunkManifest.Chunk second = scheduler.next();
+        ChunkManifest.Chunk third = scheduler.next();
+
+        head.setCommittedBytes(head.getLength());
+        scheduler.release(head);
+
+        second.setCommittedBytes(4 * MB);
+        third.setCommittedBytes(2 * MB);
+
+        // Unassigned ranges still come first. After that, the split goes to the range holding the first gap.
+        assertSame(manifest.getChunks().get(3), scheduler.next());
+
+        ChunkManifest.Chunk stolen = scheduler.next();
+
+        assertNotNull(stolen);
+        assertEquals(16 * MB + 4 * MB + 6 * MB, stolen.getStartByte());
+        assertEquals(26 * MB - 1, second.getEndByte());
+        assertEquals(48 * MB - 1, third.getEndByte());
+    }
+
+    private static ChunkManifest createManifest(long size, int chunks) {
+        ChunkManifest manifest = new ChunkManifest();
+        manifest.setTotalBytes(size);
+
+        long chunkSize = (size + chunks - 1) / chunks;
+        for (long start = 0; start < size; start += chunkSize) {
+            manifest.getChunks().add(new ChunkManifest.Chunk(start, Math.min(size, start + chunkSize) - 1));
+        }
+
+        return manifest;
+    }
+}
@@ -0,0 +1,76 @@
+package net.brlns.gdownloader;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Locale;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.GZIPOutputStream;
+import net.brlns.gdownloader.downloader.http.ContentDecoding;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ContentDecodingTest {
+
+    private static final byte[] PAYLOAD = "streamed payload".repeat(64).getBytes(StandardCharsets.UTF_8);
+
+    @Test
+    void testGzip() throws IOException {
+        ByteArrayOutputStream compressed = new ByteArrayOutputStream();
+        try (GZIPOutputStream out = new GZIPOutputStream(compressed)) {
+            out.write(PAYLOAD);
+        }
+
+        assertArrayEquals(PAYLOAD, decode(compressed.toByteArray(), "gzip"));
+    }
+
+    @Test
+    void testCodingsIgnoreTheDefaultLocale() throws IOException {
+        ByteArrayOutputStream compressed = new ByteArrayOutputStream();
+        try (GZIPOutputStream out = new GZIPOutputStream(compressed)) {
+            out.write(PAYLOAD);
+        }
+
+        // Lowercasing GZIP the Turkish way gives a dotless i.
+        Locale defaultLocale = Locale.getDefault();
+        Locale.setDefault(Locale.forLanguageTag("tr-TR"));
+        try {
+            assertArrayEquals(PAYLOAD, decode(compressed.toByteArray(), "GZIP"));
+        } finally {
+            Locale.setDefault(defaultLocale);
+        }
+    }
+
+    @Test
+    void testStackedCodings() throws IOException {
+        ByteArrayOutputStream gzipped = new ByteArrayOutputStream();
+        try (GZIPOutputStream out = new GZIPOutputStream(gzipped)) {
+            out.write(PAYLOAD);
+        }
+
+        ByteArrayOutputStream deflated = new ByteArrayOutputStream();
+        try (DeflaterOutputStream out = new DeflaterOutputStream(deflated)) {
+            out.write(gzipped.toByteArray());
+        }
+
+        assertArrayEquals(PAYLOAD, decode(deflated.toByteArray(), "gzip, deflate"));
+    }
+
+    @Test
+    void testIdentityAndUnsupported() throws IOException {
+        assertFalse(ContentDecoding.isEncoded(null));
+        assertFalse(ContentDecoding.isEncoded("identity"));
+        assertArrayEquals(PAYLOAD, decode(PAYLOAD, "identity"));
+
+        assertThrows(IOException.class, () -> decode(PAYLOAD, "br"));
+    }
+
+    private static byte[] decode(byte[] body, String contentEncoding) throws IOException {
+        try (InputStream in = ContentDecoding.decode(new ByteArrayInputStream(body), contentEncoding)) {
+            return in.readAllBytes();
+        }
+    }
+}
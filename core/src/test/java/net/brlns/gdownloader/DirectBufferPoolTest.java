@@ -0,0 +1,130 @@
+package net.brlns.gdownloader;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import net.brlns.gdownloader.util.DirectBufferPool;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class DirectBufferPoolTest {
+
+    @Test
+    void testBuffersAreReused() throws Exception {
+        DirectBufferPool pool = new DirectBufferPool(() -> 1024, () -> 1024 * 1024);
+
+        ByteBuffer buffer = pool.acquire();
+        assertTrue(buffer.isDirect());
+        assertEquals(1024, buffer.capacity());
+
+        pool.release(buffer);
+        assertSame(buffer, pool.acquire());
+
+        DirectBufferPool.Stats stats = pool.getStats();
+        assertEquals(1, stats.getSlabAllocations());
+        assertEquals(2, stats.getAcquisitions());
+        assertEquals(1, stats.getReuses());
+    }
+
+    @Test
+    void testAcquireBlocksWhileBudgetIsSpent() throws Exception {
+        DirectBufferPool pool = new DirectBufferPool(() -> 1024, () -> 2048);
+
+        ByteBuffer first = pool.acquire();
+        pool.acquire();
+
+        AtomicInteger reclaims = new AtomicInteger();
+        pool.registerReclaimer(reclaims::incrementAndGet);
+
+        CompletableFuture<ByteBuffer> blocked = CompletableFuture.supplyAsync(() -> {
+            try {
+                return pool.acquire();
+            } catch (InterruptedException e) {
+                throw new RuntimeException(e);
+            }
+        });
+
+        assertThrows(TimeoutException.class, () -> blocked.get(300, TimeUnit.MILLISECONDS));
+        assertTrue(reclaims.get() > 0);
+
+        pool.release(first);
+
+        assertNotNull(blocked.get(5, TimeUnit.SECONDS));
+        assertEquals(1, pool.getStats().getWaits());
+        assertEquals(2048, pool.getStats().getPeakInUseBytes());
+    }
+
+    @Test
+    void testAcquireGivesUpOnceNoLongerAlive() throws Exception {
+        DirectBufferPool pool = new DirectBufferPool(() -> 1024, () -> 1024);
+        pool.acquire();
+
+        AtomicBoolean alive = new AtomicBoolean(true);
+        CompletableFuture<ByteBuffer> blocked = CompletableFuture.supplyAsync(() -> {
+            try {
+                return pool.acquire(alive::get);
+            } catch (InterruptedException e) {
+                throw new RuntimeException(e);
+            }
+        });
+
+        assertThrows(TimeoutException.class, () -> blocked.get(300, TimeUnit.MILLISECONDS));
+
+        alive.set(false);
+
+        assertNull(blocked.get(5, TimeUnit.SECONDS));
+        assertEquals(1024, pool.getStats().getInUseBytes());
+    }
+
+    @Test
+    void testHeldBuffersNeverBlockButHoldOffReaders() throws Exception {
+        DirectBufferPool pool = new DirectBufferPool(() -> 1024, () -> 2048);
+
+        ByteBuffer read = pool.acquire();
+        ByteBuffer first = pool.acquireHeld();
+        ByteBuffer second = pool.acquireHeld();
+
+        assertEquals(2048, pool.getStats().getHeldBytes());
+
+        // Asking a reader to wait has the holders hand their buffers back.
+        pool.registerReclaimer(() -> {
+            pool.releaseHeld(first);
+            pool.releaseHeld(second);
+        });
+
+        pool.release(read);
+        assertNotNull(pool.acquire());
+        assertEquals(0, pool.getStats().getHeldBytes());
+    }
+
+    @Test
+    void testHeldBuffersAreCappedAcrossHolders() throws Exception {
+        DirectBufferPool pool = new DirectBufferPool(() -> 1024, () -> 4096);
+
+        // Two holders, neither of which holds half of the budget on its own.
+        ByteBuffer first = pool.acquireHeld();
+        ByteBuffer second = pool.acquireHeld();
+
+        AtomicInteger reclaims = new AtomicInteger();
+        pool.registerReclaimer(() -> {
+            reclaims.incrementAndGet();
+            pool.releaseHeld(first);
+        });
+        pool.registerReclaimer(() -> pool.releaseHeld(second));
+
+        assertNotNull(pool.acquireHeld());
+        assertEquals(1, reclaims.get());
+        assertEquals(1024, pool.getStats().getHeldBytes());
+    }
+
+    @Test
+    void testSingleBufferIsAlwaysGranted() throws Exception {
+        DirectBufferPool pool = new DirectBufferPool(() -> 4096, () -> 1024);
+
+        assertEquals(4096, pool.acquire().capacity());
+    }
+}
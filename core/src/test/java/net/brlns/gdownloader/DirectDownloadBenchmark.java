@@ -0,0 +1,365 @@
+package net.brlns.gdownloader;
+
+import java.io.File;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.net.Proxy;
+import java.net.URL;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import net.brlns.gdownloader.downloader.ChunkFileWriter;
+import net.brlns.gdownloader.downloader.ChunkScheduler;
+import net.brlns.gdownloader.downloader.ChunkTransfer;
+import net.brlns.gdownloader.downloader.TransferProgress;
+import net.brlns.gdownloader.downloader.http.HttpClientTransport;
+import net.brlns.gdownloader.downloader.http.HttpTransport;
+import net.brlns.gdownloader.downloader.http.UrlConnectionTransport;
+import net.brlns.gdownloader.downloader.structs.ChunkManifest;
+import net.brlns.gdownloader.settings.ProxySettings;
+import net.brlns.gdownloader.util.DirectBufferPool;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Throughput benchmarks for the direct download data path, run against {@link BenchmarkHttpServer}.
+ *
+ * Excluded from the regular test run, use {@code ./gradlew benchmark}. Results are written as CSV to
+ * {@code benchmark.output}. If {@code benchmark.baseline} points to the CSV of an earlier run, any scenario
+ * that lost more than {@code benchmark.tolerance} (20% by default) of its throughput fails the run.
+ */
+@Tag("benchmark")
+class DirectDownloadBenchmark {
+
+    private static final long MB = 1024 * 1024;
+
+    private static final int BUFFER_SIZE = 64 * 1024;
+    private static final long BUFFER_BUDGET = 64 * MB;
+
+    private static BenchmarkHttpServer server;
+    private static final List<Result> results = new ArrayList<>();
+
+    @TempDir
+    Path tempDir;
+
+    @BeforeAll
+    static void startServer() throws IOException {
+        server = new BenchmarkHttpServer();
+    }
+
+    @AfterAll
+    static void report() throws IOException {
+        server.close();
+
+        StringBuilder csv = new StringBuilder(Result.CSV_HEADER).append('\n');
+        for (Result result : results) {
+            System.out.println(result);
+            csv.append(result.toCsv()).append('\n');
+        }
+
+        Path output = Path.of(System.getProperty("benchmark.output", "build/reports/benchmark/direct-download.csv"));
+        Files.createDirectories(output.toAbsolutePath().getParent());
+        Files.writeString(output, csv);
+
+        String baseline = System.getProperty("benchmark.baseline");
+        if (baseline != null && !baseline.isBlank()) {
+            double tolerance = Double.parseDouble(System.getProperty("benchmark.tolerance", "0.2"));
+            checkRegressions(Path.of(baseline), tolerance);
+        }
+    }
+
+    @Test
+    void benchmarkLoopback() throws Exception {
+        server.latencyMillis(0).bytesPerSecondPerConnection(0).rangeSupport(true)
+            .failureRate(0).tooManyRequestsRate(0);
+
+        for (long size : new long[]{MB, 32 * MB, 256 * MB}) {
+            for (int chunks : new int[]{1, 4, 16}) {
+                runBothTransports("loopback", size, chunks, Math.min(chunks, 8));
+            }
+        }
+    }
+
+    @Test
+    void benchmarkThrottledConnections() throws Exception {
+        // A slow origin, where throughput should scale with the number of connections.
+        server.latencyMillis(20).bytesPerSecondPerConnection(8 * MB).rangeSupport(true)
+            .failureRate(0).tooManyRequestsRate(0);
+
+        for (int concurrency : new int[]{1, 2, 4, 8}) {
+            runBothTransports("throttled", 32 * MB, 16, concurrency);
+        }
+    }
+
+    @Test
+    void benchmarkUnreliableServer() throws Exception {
+        server.latencyMillis(5).bytesPerSecondPerConnection(0).rangeSupport(true)
+            .failureRate(0.05).tooManyRequestsRate(0.05);
+
+        runBothTransports("unreliable", 64 * MB, 16, 8);
+    }
+
+    @Test
+    void benchmarkWithoutRanges() throws Exception {
+        server.latencyMillis(5).bytesPerSecondPerConnection(0).rangeSupport(false)
+            .failureRate(0).tooManyRequestsRate(0);
+
+        runBothTransports("no-ranges", 64 * MB, 1, 1);
+    }
+
+    private void runBothTransports(String scenario, long size, int chunks, int concurrency) throws Exception {
+        try (HttpTransport transport = new HttpClientTransport(ProxySettings::new)) {
+            results.add(run(scenario, "http-client", transport, size, chunks, concurrency));
+        }
+
+        try (HttpTransport transport = new UrlConnectionTransport(() -> Proxy.NO_PROXY)) {
+            results.add(run(scenario, "url-connection", transport, size, chunks, concurrency));
+        }
+    }
+
+    private Result run(String scenario, String transportName, HttpTransport transport,
+        long size, int chunks, int concurrency) throws Exception {
+        server.resetCounters();
+
+        URL url = server.getFileUrl(size);
+        File target = tempDir.resolve(scenario + "-" + transportName + "-" + size + ".bin").toFile();
+
+        ChunkManifest manifest = new ChunkManifest();
+        manifest.setTotalBytes(size);
+
+        long chunkSize = (size + chunks - 1) / chunks;
+        for (long start = 0; start < size; start += chunkSize) {
+            manifest.getChunks().add(new ChunkManifest.Chunk(start, Math.min(size, start + chunkSize) - 1));
+        }
+
+        ChunkScheduler scheduler = new ChunkScheduler(manifest);
+        DirectBufferPool bufferPool = new DirectBufferPool(() -> BUFFER_SIZE, () -> BUFFER_BUDGET);
+
+        com.sun.management.OperatingSystemMXBean os
+            = (com.sun.management.OperatingSystemMXBean)ManagementFactory.getOperatingSystemMXBean();
+        com.sun.management.ThreadMXBean threads
+            = (com.sun.management.ThreadMXBean)ManagementFactory.getThreadMXBean();
+
+        // Both include the server, which runs in this very process.
+        long cpuBefore = os.getProcessCpuTime();
+        long allocatedBefore = threads.getTotalThreadAllocatedBytes();
+
+        AtomicLong firstByteNanos = new AtomicLong();
+        AtomicBoolean abortHook = new AtomicBoolean();
+        TransferProgress progress = new TransferProgress((percent, downloaded, total, speed, remaining, chunkCount) -> {
+        });
+        long startNanos = System.nanoTime();
+
+        // Platform threads, as allocations made on virtual threads are not accounted for per thread.
+        ExecutorService workers = Executors.newFixedThreadPool(concurrency);
+        try (ChunkFileWriter writer = new ChunkFileWriter(target, false, bufferPool)) {
+            writer.preallocate(size);
+
+            List<Future<?>> futures = new ArrayList<>();
+            for (int i = 0; i < concurrency; i++) {
+                futures.add(workers.submit(() -> {
+                    work(transport, url, size, chunks > 1, scheduler, writer, bufferPool, progress, abortHook,
+                        () -> firstByteNanos.compareAndSet(0, System.nanoTime()));
+                    return null;
+                }));
+            }
+
+            for (Future<?> future : futures) {
+                future.get(10, TimeUnit.MINUTES);
+            }
+        } finally {
+            workers.shutdownNow();
+        }
+
+        long elapsedNanos = System.nanoTime() - startNanos;
+
+        long cpuNanos = os.getProcessCpuTime() - cpuBefore;
+        long allocatedBytes = threads.getTotalThreadAllocatedBytes() - allocatedBefore;
+
+        for (ChunkManifest.Chunk chunk : manifest.getChunks()) {
+            assertTrue(chunk.isComplete(), "Incomplete range " + chunk.getStartByte() + "-" + chunk.getEndByte());
+        }
+
+        verify(target, size);
+
+        Result result = new Result(scenario, transportName, size, chunks, concurrency,
+            elapsedNanos, firstByteNanos.get() - startNanos, cpuNanos, allocatedBytes,
+            server.getRequests(), server.getFailures() + server.getTooManyRequests());
+
+        Files.delete(target.toPath());
+
+        return result;
+    }
+
+    /**
+     * The worker loop of the direct downloader: take a range and hand it to the engine's {@link ChunkTransfer},
+     * which backs off through the scheduler when the transfer fails.
+     */
+    private void work(HttpTransport transport, URL url, long size, boolean ranged, ChunkScheduler scheduler,
+        ChunkFileWriter writer, DirectBufferPool bufferPool, TransferProgress progress,
+        AtomicBoolean abortHook, Runnable onFirstByte) throws Exception {
+        while (!abortHook.get()) {
+            ChunkManifest.Chunk chunk = scheduler.next();
+            if (chunk == null) {
+                if (!scheduler.hasDeferredWork()) {
+                    return;
+                }
+
+                TimeUnit.MILLISECONDS.sleep(10);
+                continue;
+            }
+
+            try {
+                ChunkTransfer.builder()
+                    .abortHook(abortHook)
+                    .chunked(ranged)
+                    .fileUrl(url)
+                    .transport(transport)
+                    .fileWriter(writer)
+                    .chunk(chunk)
+                    .totalBytes(size)
+                    .progress(progress)
+                    .bufferPool(bufferPool)
+                    .alive(() -> !abortHook.get())
+                    .scheduler(scheduler)
+                    .onCommit(onFirstByte)
+                    .build()
+                    .transfer();
+            } finally {
+                scheduler.release(chunk);
+            }
+        }
+    }
+
+    private static void verify(File file, long size) throws IOException {
+        assertEquals(size, file.length());
+
+        ByteBuffer buffer = ByteBuffer.allocate(1024 * 1024);
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            long position = 0;
+            while (position < size) {
+                buffer.clear();
+
+                int read = channel.read(buffer, position);
+                assertTrue(read > 0);
+
+                for (int i = 0; i < read; i++) {
+                    if (buffer.get(i) != BenchmarkHttpServer.getByteAt(position + i)) {
+                        fail("Corrupt byte at " + (position + i));
+                    }
+                }
+
+                position += read;
+            }
+        }
+    }
+
+    private static void checkRegressions(Path baselineFile, double tolerance) throws IOException {
+        Map<String, Double> baseline = new HashMap<>();
+        for (String line : Files.readAllLines(baselineFile)) {
+            if (line.isBlank() || line.startsWith(Result.CSV_HEADER)) {
+                continue;
+            }
+
+            String[] fields = line.split(",");
+            baseline.put(Result.getKey(fields), Double.parseDouble(fields[Result.THROUGHPUT_COLUMN]));
+        }
+
+        List<String> regressions = new ArrayList<>();
+        for (Result result : results) {
+            Double previous = baseline.get(result.getKey());
+            if (previous != null && result.getMegabytesPerSecond() < previous * (1 - tolerance)) {
+                regressions.add(String.format(Locale.ROOT, "%s: %.1f MB/s, was %.1f MB/s",
+                    result.getKey(), result.getMegabytesPerSecond(), previous));
+            }
+        }
+
+        assertTrue(regressions.isEmpty(), "Throughput regressed:\n" + String.join("\n", regressions));
+    }
+
+    private static class Result {
+
+        private static final String CSV_HEADER = "scenario,transport,size,chunks,concurrency,"
+            + "mb_per_second,ttfb_ms,cpu_ms,alloc_mb_per_second,requests,errors";
+        private static final int THROUGHPUT_COLUMN = 5;
+
+        private final String scenario;
+        private final String transport;
+        private final long size;
+        private final int chunks;
+        private final int concurrency;
+        private final long elapsedNanos;
+        private final long firstByteNanos;
+        private final long cpuNanos;
+        private final long allocatedBytes;
+        private final long requests;
+        private final long errors;
+
+        private Result(String scenarioIn, String transportIn, long sizeIn, int chunksIn, int concurrencyIn,
+            long elapsedNanosIn, long firstByteNanosIn, long cpuNanosIn, long allocatedBytesIn,
+            long requestsIn, long errorsIn) {
+            scenario = scenarioIn;
+            transport = transportIn;
+            size = sizeIn;
+            chunks = chunksIn;
+            concurrency = concurrencyIn;
+            elapsedNanos = elapsedNanosIn;
+            firstByteNanos = firstByteNanosIn;
+            cpuNanos = cpuNanosIn;
+            allocatedBytes = allocatedBytesIn;
+            requests = requestsIn;
+            errors = errorsIn;
+        }
+
+        private static String getKey(String[] fields) {
+            return String.join("/", fields[0], fields[1], fields[2], fields[3], fields[4]);
+        }
+
+        private String getKey() {
+            return String.join("/", scenario, transport, String.valueOf(size),
+                String.valueOf(chunks), String.valueOf(concurrency));
+        }
+
+        private double getSeconds() {
+            return elapsedNanos / (double)TimeUnit.SECONDS.toNanos(1);
+        }
+
+        private double getMegabytesPerSecond() {
+            return size / (double)MB / getSeconds();
+        }
+
+        private String toCsv() {
+            return String.format(Locale.ROOT, "%s,%s,%d,%d,%d,%.2f,%d,%d,%.2f,%d,%d",
+                scenario, transport, size, chunks, concurrency, getMegabytesPerSecond(),
+                TimeUnit.NANOSECONDS.toMillis(firstByteNanos), TimeUnit.NANOSECONDS.toMillis(cpuNanos),
+                allocatedBytes / (double)MB / getSeconds(), requests, errors);
+        }
+
+        @Override
+        public String toString() {
+            return String.format(Locale.ROOT,
+                "%-10s %-14s %6d MB %3d chunks %2d conns: %8.1f MB/s, TTFB %5d ms, CPU %6d ms, alloc %8.1f MB/s, %d requests, %d errors",
+                scenario, transport, size / MB, chunks, concurrency, getMegabytesPerSecond(),
+                TimeUnit.NANOSECONDS.toMillis(firstByteNanos), TimeUnit.NANOSECONDS.toMillis(cpuNanos),
+                allocatedBytes / (double)MB / getSeconds(), requests, errors);
+        }
+    }
+}
@@ -0,0 +1,31 @@
+package net.brlns.gdownloader;
+
+import net.brlns.gdownloader.util.URLUtils;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class HostPatternTest {
+
+    @Test
+    void testExactHost() {
+        assertTrue(URLUtils.matchesHostPattern("cdn.example.com", "cdn.example.com"));
+        assertTrue(URLUtils.matchesHostPattern("CDN.example.com", "cdn.EXAMPLE.com"));
+        assertFalse(URLUtils.matchesHostPattern("cdn.example.com", "example.com"));
+    }
+
+    @Test
+    void testWildcardHost() {
+        assertTrue(URLUtils.matchesHostPattern("*.example.com", "cdn.example.com"));
+        assertTrue(URLUtils.matchesHostPattern("*.example.com", "a.b.example.com"));
+        assertTrue(URLUtils.matchesHostPattern("*.example.com", "example.com"));
+        assertFalse(URLUtils.matchesHostPattern("*.example.com", "badexample.com"));
+        assertTrue(URLUtils.matchesHostPattern("*", "anything.org"));
+    }
+
+    @Test
+    void testGetHost() {
+        assertEquals("cdn.example.com", URLUtils.getHost("https://CDN.example.com:8443/file.zip"));
+        assertEquals("", URLUtils.getHost("not a url"));
+    }
+}
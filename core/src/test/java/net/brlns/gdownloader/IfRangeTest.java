@@ -0,0 +1,168 @@
+package net.brlns.gdownloader;
+
+import java.io.File;
+import java.net.Proxy;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.atomic.AtomicBoolean;
+import net.brlns.gdownloader.downloader.ChunkFileWriter;
+import net.brlns.gdownloader.downloader.ChunkTransfer;
+import net.brlns.gdownloader.downloader.DirectHttpDownloader;
+import net.brlns.gdownloader.downloader.TransferProgress;
+import net.brlns.gdownloader.downloader.http.HttpTransport;
+import net.brlns.gdownloader.downloader.http.UrlConnectionTransport;
+import net.brlns.gdownloader.downloader.structs.ChunkManifest;
+import net.brlns.gdownloader.util.DirectBufferPool;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class IfRangeTest {
+
+    private static final long SIZE = 128 * 1024;
+    private static final String CURRENT_TAG = "\"" + SIZE + "\"";
+
+    @TempDir
+    Path tempDir;
+
+    private BenchmarkHttpServer server;
+    private HttpTransport transport;
+
+    private final DirectBufferPool bufferPool = new DirectBufferPool(() -> 16 * 1024, () -> 1024 * 1024);
+    private final TransferProgress progress = new TransferProgress((percent, downloaded, total, speed, remaining, chunkCount) -> {
+    });
+
+    @BeforeEach
+    void start() throws Exception {
+        server = new BenchmarkHttpServer();
+        transport = new UrlConnectionTransport(() -> Proxy.NO_PROXY);
+    }
+
+    @AfterEach
+    void stop() throws Exception {
+        transport.close();
+        server.close();
+    }
+
+    @Test
+    void testMatchingValidatorResumesTheRange() throws Exception {
+        File target = tempDir.resolve("match.bin").toFile();
+        ChunkManifest.Chunk chunk = new ChunkManifest.Chunk(SIZE / 2, SIZE - 1);
+        AtomicBoolean remoteChanged = new AtomicBoolean();
+
+        try (ChunkFileWriter writer = new ChunkFileWriter(target, false)) {
+            assertTrue(createTransfer(writer, chunk, true, CURRENT_TAG, remoteChanged, null).transfer());
+        }
+
+        assertFalse(remoteChanged.get());
+        assertTrue(chunk.isComplete());
+    }
+
+    @Test
+    void testFullReplyToIfRangeFlagsTheRemoteChange() throws Exception {
+        File target = tempDir.resolve("changed.bin").toFile();
+        ChunkManifest.Chunk chunk = new ChunkManifest.Chunk(SIZE / 2, SIZE - 1);
+        AtomicBoolean remoteChanged = new AtomicBoolean();
+        AtomicBoolean abortHook = new AtomicBoolean();
+
+        try (ChunkFileWriter writer = new ChunkFileWriter(target, false)) {
+            ChunkTransfer transfer = ChunkTransfer.builder()
+                .abortHook(abortHook)
+                .chunked(true)
+                .fileUrl(server.getFileUrl(SIZE))
+                .transport(transport)
+                .fileWriter(writer)
+                .chunk(chunk)
+                .totalBytes(SIZE)
+                .progress(progress)
+                .bufferPool(bufferPool)
+                .alive(() -> !abortHook.get())
+                .ifRange("\"old\"")
+                .remoteChanged(remoteChanged)
+                .build();
+
+            assertFalse(transfer.transfer());
+        }
+
+        // The other ranges are stopped as well, and nothing of the new version ends up in the old partial file.
+        assertTrue(remoteChanged.get());
+        assertTrue(abortHook.get());
+        assertEquals(0, chunk.getCommittedBytes());
+        assertEquals(0, progress.getBytes());
+    }
+
+    @Test
+    void testFullReplyToIfRangeRestartsASingleStream() throws Exception {
+        File target = tempDir.resolve("restart.bin").toFile();
+
+        ChunkManifest manifest = new ChunkManifest();
+        manifest.setEntityTag("\"old\"");
+        manifest.setTotalBytes(SIZE);
+
+        ChunkManifest.Chunk chunk = new ChunkManifest.Chunk(0, SIZE - 1);
+        chunk.setCommittedBytes(SIZE / 2);
+        manifest.getChunks().add(chunk);
+
+        progress.start(SIZE, SIZE / 2, () -> 1);
+
+        AtomicBoolean remoteChanged = new AtomicBoolean();
+        try (ChunkFileWriter writer = new ChunkFileWriter(target, false)) {
+            assertTrue(createTransfer(writer, chunk, false, "\"old\"", remoteChanged, manifest).transfer());
+        }
+
+        // Without ranges, the stream starts over with the current version and adopts its validator.
+        assertFalse(remoteChanged.get());
+        assertTrue(chunk.isComplete());
+        assertEquals(SIZE, progress.getBytes());
+        assertEquals(CURRENT_TAG, manifest.getEntityTag());
+
+        byte[] data = Files.readAllBytes(target.toPath());
+        for (int position = 0; position < SIZE; position++) {
+            assertEquals(BenchmarkHttpServer.getByteAt(position), data[position], "Wrong byte at " + position);
+        }
+    }
+
+    @Test
+    void testStrongEntityTagIsPreferred() {
+        assertEquals("\"abc\"", DirectHttpDownloader.getIfRangeValidator("\"abc\"", "Mon, 05 Oct 2026 10:00:00 GMT"));
+        assertEquals("\"abc\"", DirectHttpDownloader.getIfRangeValidator("\"abc\"", null));
+    }
+
+    @Test
+    void testWeakEntityTagFallsBackToLastModified() {
+        assertEquals("Mon, 05 Oct 2026 10:00:00 GMT",
+            DirectHttpDownloader.getIfRangeValidator("W/\"abc\"", "Mon, 05 Oct 2026 10:00:00 GMT"));
+        assertNull(DirectHttpDownloader.getIfRangeValidator("W/\"abc\"", null));
+    }
+
+    @Test
+    void testLastModifiedIsUsedWithoutEntityTag() {
+        assertEquals("Mon, 05 Oct 2026 10:00:00 GMT",
+            DirectHttpDownloader.getIfRangeValidator(null, "Mon, 05 Oct 2026 10:00:00 GMT"));
+        assertNull(DirectHttpDownloader.getIfRangeValidator(null, null));
+    }
+
+    private ChunkTransfer createTransfer(ChunkFileWriter writer, ChunkManifest.Chunk chunk, boolean chunked,
+        String ifRange, AtomicBoolean remoteChanged, ChunkManifest manifest) throws Exception {
+        AtomicBoolean abortHook = new AtomicBoolean();
+
+        return ChunkTransfer.builder()
+            .abortHook(abortHook)
+            .chunked(chunked)
+            .fileUrl(server.getFileUrl(SIZE))
+            .transport(transport)
+            .fileWriter(writer)
+            .chunk(chunk)
+            .totalBytes(SIZE)
+            .progress(progress)
+            .bufferPool(bufferPool)
+            .alive(() -> !abortHook.get())
+            .ifRange(ifRange)
+            .remoteChanged(remoteChanged)
+            .manifest(manifest)
+            .build();
+    }
+}
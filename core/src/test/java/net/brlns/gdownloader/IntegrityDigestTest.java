@@ -0,0 +1,122 @@
+package net.brlns.gdownloader;
+
+import java.io.File;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.security.MessageDigest;
+import java.util.Base64;
+import java.util.HexFormat;
+import java.util.Map;
+import net.brlns.gdownloader.downloader.ChunkFileWriter;
+import net.brlns.gdownloader.downloader.IntegrityDigest;
+import net.brlns.gdownloader.downloader.TailHasher;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class IntegrityDigestTest {
+
+    private static final byte[] CONTENT = "The quick brown fox jumps over the lazy dog".getBytes(StandardCharsets.US_ASCII);
+
+    @TempDir
+    Path tempDir;
+
+    @Test
+    void testStructuredDigestPrefersStrongestAlgorithm() throws Exception {
+        String sha256 = Base64.getEncoder().encodeToString(hash("SHA-256"));
+        String md5 = Base64.getEncoder().encodeToString(hash("MD5"));
+
+        IntegrityDigest digest = IntegrityDigest.parseStructuredDigest(
+            "md5=:" + md5 + ":, sha-256=:" + sha256 + ":, unknown=:AAAA:", "Repr-Digest");
+
+        assertNotNull(digest);
+        assertEquals("SHA-256", digest.getAlgorithm());
+        assertTrue(digest.matches(hash("SHA-256")));
+    }
+
+    @Test
+    void testStructuredDigestRequiresByteSequence() {
+        assertNull(IntegrityDigest.parseStructuredDigest("sha-256=abc", "Repr-Digest"));
+        assertNull(IntegrityDigest.parseStructuredDigest(null, "Repr-Digest"));
+    }
+
+    @Test
+    void testLegacyDigest() throws Exception {
+        String sha1 = Base64.getEncoder().encodeToString(hash("SHA-1"));
+
+        IntegrityDigest digest = IntegrityDigest.parseLegacyDigest("SHA=" + sha1);
+
+        assertNotNull(digest);
+        assertTrue(digest.matches(hash("SHA-1")));
+    }
+
+    @Test
+    void testContentMd5() throws Exception {
+        IntegrityDigest digest = IntegrityDigest.parseContentMd5(Base64.getEncoder().encodeToString(hash("MD5")));
+
+        assertNotNull(digest);
+        assertTrue(digest.matches(hash("MD5")));
+
+        assertNull(IntegrityDigest.parseContentMd5("not base64!"));
+    }
+
+    @Test
+    void testHeaderPrecedence() throws Exception {
+        Map<String, String> headers = Map.of(
+            "Content-MD5", Base64.getEncoder().encodeToString(hash("MD5")),
+            "Repr-Digest", "sha-256=:" + Base64.getEncoder().encodeToString(hash("SHA-256")) + ":"
+        );
+
+        IntegrityDigest digest = IntegrityDigest.fromRepresentationHeaders(headers::get);
+
+        assertNotNull(digest);
+        assertEquals("Repr-Digest", digest.getSource());
+    }
+
+    @Test
+    void testSha256Sidecar() throws Exception {
+        String hex = HexFormat.of().formatHex(hash("SHA-256"));
+
+        IntegrityDigest digest = IntegrityDigest.parseSha256Sidecar(hex + "  file.iso\n");
+
+        assertNotNull(digest);
+        assertTrue(digest.matches(hash("SHA-256")));
+
+        assertNull(IntegrityDigest.parseSha256Sidecar("<html>Not Found</html>"));
+    }
+
+    @Test
+    void testTailHasherOutOfOrder() throws Exception {
+        IntegrityDigest digest = new IntegrityDigest("SHA-256", hash("SHA-256"), "test");
+        TailHasher hasher = new TailHasher(digest);
+
+        File file = tempDir.resolve("tail.bin").toFile();
+
+        try (ChunkFileWriter writer = new ChunkFileWriter(file, false)) {
+            int half = CONTENT.length / 2;
+
+            // The second half lands first and cannot be hashed yet.
+            ByteBuffer tail = ByteBuffer.wrap(CONTENT, half, CONTENT.length - half);
+            hasher.update(tail, half);
+            writer.write(tail, half);
+
+            assertEquals(0, hasher.getHashedBytes());
+
+            ByteBuffer head = ByteBuffer.wrap(CONTENT, 0, half);
+            hasher.update(head, 0);
+            writer.write(head, 0);
+
+            assertEquals(half, hasher.getHashedBytes());
+
+            hasher.catchUp(writer, CONTENT.length);
+        }
+
+        assertTrue(hasher.verify());
+    }
+
+    private static byte[] hash(String algorithm) throws Exception {
+        return MessageDigest.getInstance(algorithm).digest(CONTENT);
+    }
+}
@@ -0,0 +1,113 @@
+package net.brlns.gdownloader;
+
+import com.sun.net.httpserver.HttpServer;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.net.URI;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import net.brlns.gdownloader.downloader.LocalAddressSet;
+import net.brlns.gdownloader.downloader.http.HttpClientTransport;
+import net.brlns.gdownloader.downloader.http.HttpTransportResponse;
+import net.brlns.gdownloader.settings.ProxySettings;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
+
+class LocalAddressSetTest {
+
+    private static final long SECOND = TimeUnit.SECONDS.toNanos(1);
+
+    @Test
+    void testFromSettings() {
+        LocalAddressSet addresses = LocalAddressSet.fromSettings(
+            List.of("127.0.0.1", " 127.0.0.1 ", "no-such-interface0", "example.com", ""));
+
+        assertEquals(1, addresses.getAddresses().size());
+        assertEquals("127.0.0.1", addresses.getAddresses().get(0).toString());
+    }
+
+    @Test
+    void testConnectionsFollowThroughput() throws Exception {
+        LocalAddressSet addresses = new LocalAddressSet(List.of(
+            InetAddress.getByName("127.0.0.1"), InetAddress.getByName("127.0.0.2")));
+
+        LocalAddressSet.LocalAddress fast = addresses.getAddresses().get(0);
+        LocalAddressSet.LocalAddress slow = addresses.getAddresses().get(1);
+
+        // Unmeasured addresses are spread out first.
+        LocalAddressSet.LocalAddress first = addresses.pick(0);
+        LocalAddressSet.LocalAddress second = addresses.pick(0);
+        assertNotSame(first, second);
+
+        addresses.sample(0);
+        fast.addBytes(2_000_000);
+        slow.addBytes(1_000_000);
+        addresses.sample(SECOND);
+
+        addresses.release(first);
+        addresses.release(second);
+
+        int fastCount = 0;
+        for (int i = 0; i < 3; i++) {
+            if (addresses.pick(SECOND) == fast) {
+                fastCount++;
+            }
+        }
+
+        assertEquals(2, fastCount);
+    }
+
+    @Test
+    void testFailingAddressIsTakenOutOfRotation() throws Exception {
+        LocalAddressSet addresses = new LocalAddressSet(List.of(InetAddress.getByName("127.0.0.1")));
+        LocalAddressSet.LocalAddress address = addresses.getAddresses().get(0);
+
+        assertFalse(addresses.onFailure(address, SECOND));
+        assertFalse(addresses.onFailure(address, SECOND));
+        assertTrue(addresses.onFailure(address, SECOND));
+
+        // Left to the default route while it is out.
+        assertNull(addresses.pick(2 * SECOND));
+
+        assertSame(address, addresses.pick(SECOND + TimeUnit.MINUTES.toNanos(1)));
+    }
+
+    @Test
+    void testConnectionLeavesFromBoundAddress() throws Exception {
+        InetAddress alias = InetAddress.getByName("127.0.0.2");
+        assumeTrue(canBind(alias), "No loopback alias for 127.0.0.2");
+
+        HttpServer server = HttpServer.create(new InetSocketAddress(InetAddress.getByName("127.0.0.1"), 0), 0);
+        server.createContext("/", exchange -> {
+            byte[] body = exchange.getRemoteAddress().getAddress().getHostAddress().getBytes();
+            exchange.sendResponseHeaders(200, body.length);
+            exchange.getResponseBody().write(body);
+            exchange.close();
+        });
+        server.start();
+
+        try (HttpClientTransport transport = new HttpClientTransport(ProxySettings::new)) {
+            URI uri = URI.create("http://127.0.0.1:" + server.getAddress().getPort() + "/");
+
+            try (HttpTransportResponse response = transport.send("GET", uri.toURL(), Collections.emptyMap(), alias)) {
+                assertEquals("127.0.0.2", new String(response.getBody().readAllBytes()));
+            }
+        } finally {
+            server.stop(0);
+        }
+    }
+
+    private static boolean canBind(InetAddress address) {
+        try (Socket socket = new Socket()) {
+            socket.bind(new InetSocketAddress(address, 0));
+            return true;
+        } catch (IOException e) {
+            return false;
+        }
+    }
+}
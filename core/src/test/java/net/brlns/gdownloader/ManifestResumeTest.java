@@ -0,0 +1,219 @@
+package net.brlns.gdownloader;
+
+import java.io.File;
+import java.io.RandomAccessFile;
+import java.net.Proxy;
+import java.net.URL;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.atomic.AtomicBoolean;
+import net.brlns.gdownloader.downloader.ChunkFileWriter;
+import net.brlns.gdownloader.downloader.ChunkScheduler;
+import net.brlns.gdownloader.downloader.ChunkTransfer;
+import net.brlns.gdownloader.downloader.DirectHttpDownloader;
+import net.brlns.gdownloader.downloader.TransferProgress;
+import net.brlns.gdownloader.downloader.http.HttpTransport;
+import net.brlns.gdownloader.downloader.http.UrlConnectionTransport;
+import net.brlns.gdownloader.downloader.structs.ChunkManifest;
+import net.brlns.gdownloader.util.DirectBufferPool;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ManifestResumeTest {
+
+    private static final long SIZE = 256 * 1024;
+    private static final long CHUNK_SIZE = SIZE / 4;
+
+    @TempDir
+    Path tempDir;
+
+    private BenchmarkHttpServer server;
+
+    @BeforeEach
+    void startServer() throws Exception {
+        server = new BenchmarkHttpServer();
+    }
+
+    @AfterEach
+    void stopServer() {
+        server.close();
+    }
+
+    @Test
+    void testMatchingManifestIsResumed() throws Exception {
+        File target = createPartialFile();
+        File manifestFile = DirectHttpDownloader.getManifestFile(target);
+
+        ChunkManifest saved = createManifest("\"v1\"", "Mon, 05 Oct 2026 10:00:00 GMT");
+        saved.getChunks().get(0).setCommittedBytes(CHUNK_SIZE);
+        saved.getChunks().get(1).setCommittedBytes(CHUNK_SIZE / 2);
+        GDownloader.OBJECT_MAPPER.writeValue(manifestFile, saved);
+
+        ChunkManifest loaded = DirectHttpDownloader.loadManifest(manifestFile, target,
+            SIZE, "\"v1\"", "Mon, 05 Oct 2026 10:00:00 GMT");
+
+        assertNotNull(loaded);
+        assertEquals(4, loaded.getChunks().size());
+        assertEquals(CHUNK_SIZE, loaded.getChunks().get(0).getCommittedBytes());
+        assertEquals(CHUNK_SIZE / 2, loaded.getChunks().get(1).getCommittedBytes());
+        assertEquals(0, loaded.getChunks().get(2).getCommittedBytes());
+        assertEquals(CHUNK_SIZE + CHUNK_SIZE / 2, loaded.getCommittedBytes());
+        assertTrue(manifestFile.exists());
+    }
+
+    @Test
+    void testManifestOfAnotherVersionIsDiscarded() throws Exception {
+        File target = createPartialFile();
+        File manifestFile = DirectHttpDownloader.getManifestFile(target);
+
+        GDownloader.OBJECT_MAPPER.writeValue(manifestFile, createManifest("\"v1\"", null));
+        assertNull(DirectHttpDownloader.loadManifest(manifestFile, target, SIZE, "\"v2\"", null));
+        assertFalse(manifestFile.exists());
+
+        GDownloader.OBJECT_MAPPER.writeValue(manifestFile, createManifest("\"v1\"", null));
+        assertNull(DirectHttpDownloader.loadManifest(manifestFile, target, SIZE + 1, "\"v1\"", null));
+        assertFalse(manifestFile.exists());
+
+        GDownloader.OBJECT_MAPPER.writeValue(manifestFile, createManifest(null, "Mon, 05 Oct 2026 10:00:00 GMT"));
+        assertNull(DirectHttpDownloader.loadManifest(manifestFile, target, SIZE, null, "Tue, 06 Oct 2026 10:00:00 GMT"));
+        assertFalse(manifestFile.exists());
+    }
+
+    @Test
+    void testManifestWithoutPartialFileIsDiscarded() throws Exception {
+        File target = tempDir.resolve("missing.bin").toFile();
+        File manifestFile = DirectHttpDownloader.getManifestFile(target);
+
+        GDownloader.OBJECT_MAPPER.writeValue(manifestFile, createManifest("\"v1\"", null));
+
+        assertNull(DirectHttpDownloader.loadManifest(manifestFile, target, SIZE, "\"v1\"", null));
+        assertFalse(manifestFile.exists());
+    }
+
+    @Test
+    void testCorruptManifestIsDiscarded() throws Exception {
+        File target = createPartialFile();
+        File manifestFile = DirectHttpDownloader.getManifestFile(target);
+
+        Files.writeString(manifestFile.toPath(), "{\"TotalBytes\": ");
+
+        assertNull(DirectHttpDownloader.loadManifest(manifestFile, target, SIZE, "\"v1\"", null));
+        assertFalse(manifestFile.exists());
+    }
+
+    @Test
+    void testPartiallyCommittedRangesContinueWhereTheyStopped() throws Exception {
+        File target = createPartialFile();
+
+        ChunkManifest manifest = createManifest(null, null);
+        manifest.getChunks().get(0).setCommittedBytes(CHUNK_SIZE);
+        manifest.getChunks().get(1).setCommittedBytes(CHUNK_SIZE / 2);
+        manifest.getChunks().get(3).setCommittedBytes(1);
+
+        long committedBefore = manifest.getCommittedBytes();
+
+        TransferProgress progress = new TransferProgress((percent, downloaded, total, speed, remaining, chunkCount) -> {
+        });
+        progress.start(SIZE, committedBefore, () -> 1);
+
+        download(manifest, progress);
+
+        assertEquals(SIZE, manifest.getCommittedBytes());
+        assertEquals(SIZE, progress.getBytes());
+
+        byte[] data = Files.readAllBytes(target.toPath());
+        assertEquals(SIZE, data.length);
+
+        for (int position = 0; position < SIZE; position++) {
+            if (isCommittedBefore(position)) {
+                // Bytes a previous attempt had committed must not be fetched again.
+                assertEquals(0, data[position], "Committed byte was overwritten at " + position);
+            } else {
+                assertEquals(BenchmarkHttpServer.getByteAt(position), data[position], "Wrong byte at " + position);
+            }
+        }
+    }
+
+    @Test
+    void testSingleStreamResumesFromTheFirstGap() {
+        ChunkManifest manifest = createManifest(null, null);
+        manifest.getChunks().get(0).setCommittedBytes(CHUNK_SIZE);
+        manifest.getChunks().get(1).setCommittedBytes(CHUNK_SIZE / 2);
+        manifest.getChunks().get(2).setCommittedBytes(CHUNK_SIZE);
+
+        assertEquals(CHUNK_SIZE + CHUNK_SIZE / 2, manifest.getContiguousBytes());
+        assertEquals(CHUNK_SIZE * 2 + CHUNK_SIZE / 2, manifest.getCommittedBytes());
+    }
+
+    private void download(ChunkManifest manifest, TransferProgress progress) throws Exception {
+        URL url = server.getFileUrl(SIZE);
+        File target = tempDir.resolve("partial.bin").toFile();
+
+        ChunkScheduler scheduler = new ChunkScheduler(manifest);
+        DirectBufferPool bufferPool = new DirectBufferPool(() -> 16 * 1024, () -> 1024 * 1024);
+        AtomicBoolean abortHook = new AtomicBoolean();
+
+        try (HttpTransport transport = new UrlConnectionTransport(() -> Proxy.NO_PROXY);
+             ChunkFileWriter writer = new ChunkFileWriter(target, false)) {
+            ChunkManifest.Chunk chunk;
+            while ((chunk = scheduler.next()) != null) {
+                try {
+                    boolean complete = ChunkTransfer.builder()
+                        .abortHook(abortHook)
+                        .chunked(true)
+                        .fileUrl(url)
+                        .transport(transport)
+                        .fileWriter(writer)
+                        .chunk(chunk)
+                        .totalBytes(SIZE)
+                        .progress(progress)
+                        .bufferPool(bufferPool)
+                        .alive(() -> !abortHook.get())
+                        .scheduler(scheduler)
+                        .build()
+                        .transfer();
+
+                    assertTrue(complete);
+                } finally {
+                    scheduler.release(chunk);
+                }
+            }
+        }
+    }
+
+    private static boolean isCommittedBefore(long position) {
+        return position < CHUNK_SIZE + CHUNK_SIZE / 2 || position == CHUNK_SIZE * 3;
+    }
+
+    /**
+     * A partial file of the full size. It holds zeroes instead of the served content,
+     * so that bytes which were fetched again stand out.
+     */
+    private File createPartialFile() throws Exception {
+        File target = tempDir.resolve("partial.bin").toFile();
+
+        try (RandomAccessFile file = new RandomAccessFile(target, "rw")) {
+            file.setLength(SIZE);
+        }
+
+        return target;
+    }
+
+    private static ChunkManifest createManifest(String entityTag, String lastModified) {
+        ChunkManifest manifest = new ChunkManifest();
+        manifest.setUrl("http://localhost/file/" + SIZE);
+        manifest.setEntityTag(entityTag);
+        manifest.setLastModified(lastModified);
+        manifest.setTotalBytes(SIZE);
+
+        for (long start = 0; start < SIZE; start += CHUNK_SIZE) {
+            manifest.getChunks().add(new ChunkManifest.Chunk(start, start + CHUNK_SIZE - 1));
+        }
+
+        return manifest;
+    }
+}
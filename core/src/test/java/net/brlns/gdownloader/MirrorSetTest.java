@@ -0,0 +1,102 @@
+package net.brlns.gdownloader;
+
+import java.net.URI;
+import java.net.URL;
+import java.util.List;
+import java.util.Map;
+import net.brlns.gdownloader.downloader.Metalink;
+import net.brlns.gdownloader.downloader.MirrorSet;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class MirrorSetTest {
+
+    @Test
+    void testDuplicateLinks() throws Exception {
+        URL base = new URI("https://example.com/pub/file.iso").toURL();
+
+        List<URL> urls = MirrorSet.parseDuplicateLinks(List.of(
+            "<https://mirror.example.org/file.iso>; rel=duplicate; pri=1, <file.iso.sig>; rel=describedby",
+            "</alt/file.iso>; rel=\"duplicate\""
+        ), base);
+
+        assertEquals(2, urls.size());
+        assertEquals("https://mirror.example.org/file.iso", urls.get(0).toString());
+        assertEquals("https://example.com/alt/file.iso", urls.get(1).toString());
+    }
+
+    @Test
+    void testPrefixes() {
+        List<URL> urls = MirrorSet.fromPrefixes("https://ftp.example.org/pub/iso/file.iso",
+            Map.of("https://ftp.example.org/pub/", List.of("https://mirror.example.net/example/")));
+
+        assertEquals(1, urls.size());
+        assertEquals("https://mirror.example.net/example/iso/file.iso", urls.get(0).toString());
+
+        assertTrue(MirrorSet.fromPrefixes("https://other.example.org/file.iso",
+            Map.of("https://ftp.example.org/pub/", List.of("https://mirror.example.net/"))).isEmpty());
+    }
+
+    @Test
+    void testUnmeasuredMirrorsAreSpreadOut() throws Exception {
+        MirrorSet mirrors = new MirrorSet(List.of(
+            new URI("https://a.example.com/file").toURL(),
+            new URI("https://b.example.com/file").toURL()
+        ));
+
+        MirrorSet.Mirror first = mirrors.pick();
+        MirrorSet.Mirror second = mirrors.pick();
+
+        assertNotSame(first, second);
+    }
+
+    @Test
+    void testFailingMirrorIsDropped() throws Exception {
+        MirrorSet mirrors = new MirrorSet(List.of(
+            new URI("https://a.example.com/file").toURL(),
+            new URI("https://b.example.com/file").toURL()
+        ));
+
+        MirrorSet.Mirror mirror = mirrors.getMirrors().get(0);
+
+        assertFalse(mirrors.onFailure(mirror));
+        assertFalse(mirrors.onFailure(mirror));
+        assertTrue(mirrors.onFailure(mirror));
+        assertEquals(1, mirrors.size());
+
+        MirrorSet.Mirror last = mirrors.getMirrors().get(0);
+        for (int i = 0; i < 5; i++) {
+            assertFalse(mirrors.onFailure(last), "The last source must never be dropped");
+        }
+    }
+
+    @Test
+    void testMetalink() {
+        String xml = """
+            <?xml version="1.0" encoding="UTF-8"?>
+            <metalink xmlns="urn:ietf:params:xml:ns:metalink">
+              <file name="dir/example.iso">
+                <size>1048576</size>
+                <hash type="sha-256">e3b0c44298fc1c149afbf4c8996fb92427ae41e4649b934ca495991b7852b855</hash>
+                <pieces length="262144" type="sha-1">
+                  <hash>da39a3ee5e6b4b0d3255bfef95601890afd80709</hash>
+                </pieces>
+                <url priority="2">https://slow.example.com/example.iso</url>
+                <url priority="1">https://fast.example.com/example.iso</url>
+                <url priority="1">ftp://ftp.example.com/example.iso</url>
+              </file>
+            </metalink>
+            """;
+
+        Metalink metalink = Metalink.parse(xml);
+
+        assertNotNull(metalink);
+        assertEquals("example.iso", metalink.getFileName());
+        assertEquals(1048576, metalink.getSize());
+        assertEquals(2, metalink.getUrls().size());
+        assertEquals("https://fast.example.com/example.iso", metalink.getUrls().get(0).toString());
+        assertNotNull(metalink.getDigest());
+        assertEquals("SHA-256", metalink.getDigest().getAlgorithm());
+    }
+}
@@ -0,0 +1,52 @@
+package net.brlns.gdownloader;
+
+import net.brlns.gdownloader.downloader.ChunkScheduler;
+import net.brlns.gdownloader.downloader.PieceBitmap;
+import net.brlns.gdownloader.downloader.structs.ChunkManifest;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class PieceBitmapTest {
+
+    @Test
+    void testContiguousPrefix() {
+        PieceBitmap pieces = new PieceBitmap(1000, 100);
+        assertEquals(10, pieces.getPieceCount());
+
+        // Partially covered pieces do not count.
+        pieces.markCommitted(0, 250);
+        assertEquals(200, pieces.getContiguousBytes());
+
+        pieces.markCommitted(400, 1000);
+        assertEquals(200, pieces.getContiguousBytes());
+        assertEquals(8, pieces.getCommittedCount());
+
+        pieces.markCommitted(250, 400);
+        assertEquals(1000, pieces.getContiguousBytes());
+    }
+
+    @Test
+    void testShortLastPiece() {
+        PieceBitmap pieces = new PieceBitmap(950, 100);
+
+        pieces.markCommitted(0, 950);
+        assertEquals(950, pieces.getContiguousBytes());
+    }
+
+    @Test
+    void testSequentialSchedulerFetchesHeadThenTail() {
+        ChunkManifest manifest = new ChunkManifest();
+        manifest.setTotalBytes(1000);
+        for (int i = 0; i < 10; i++) {
+            manifest.getChunks().add(new ChunkManifest.Chunk(i * 100, i * 100 + 99));
+        }
+
+        ChunkScheduler scheduler = new ChunkScheduler(manifest, true, 100);
+
+        assertEquals(0, scheduler.next().getStartByte());
+        assertEquals(900, scheduler.next().getStartByte());
+        assertEquals(100, scheduler.next().getStartByte());
+        assertEquals(200, scheduler.next().getStartByte());
+    }
+}
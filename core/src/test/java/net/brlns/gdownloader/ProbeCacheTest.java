@@ -0,0 +1,82 @@
+package net.brlns.gdownloader;
+
+import java.io.InputStream;
+import java.net.URI;
+import java.net.URL;
+import java.util.List;
+import java.util.Map;
+import net.brlns.gdownloader.downloader.ProbeCache;
+import net.brlns.gdownloader.downloader.http.HttpTransportResponse;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ProbeCacheTest {
+
+    @Test
+    void testHostLearnsToServeSmallFiles() throws Exception {
+        ProbeCache cache = new ProbeCache();
+        URL url = new URI("https://img.example.com/a.jpg").toURL();
+
+        for (int i = 0; i < 2; i++) {
+            cache.recordFileSize(url, 1024);
+        }
+
+        assertFalse(cache.isSmallFile(url));
+
+        cache.recordFileSize(url, 1024);
+        assertTrue(cache.isSmallFile(new URI("https://img.example.com/b.jpg").toURL()));
+
+        cache.recordFileSize(url, ProbeCache.SMALL_FILE_BYTES + 1);
+        assertFalse(cache.isSmallFile(url));
+    }
+
+    @Test
+    void testCachedProbeDecides() throws Exception {
+        ProbeCache cache = new ProbeCache();
+        URL url = new URI("https://example.com/file.bin").toURL();
+
+        cache.put(url, response(url, 512));
+        assertNotNull(cache.get(url));
+        assertTrue(cache.isSmallFile(url));
+
+        cache.put(url, response(url, ProbeCache.SMALL_FILE_BYTES * 4));
+        assertFalse(cache.isSmallFile(url));
+
+        cache.invalidate(url);
+        assertNull(cache.get(url));
+    }
+
+    private static HttpTransportResponse response(URL url, long contentLength) {
+        return new HttpTransportResponse() {
+            @Override
+            public int getStatusCode() {
+                return 200;
+            }
+
+            @Override
+            public URL getUrl() {
+                return url;
+            }
+
+            @Override
+            public String getHeader(String name) {
+                return "Content-Length".equalsIgnoreCase(name) ? String.valueOf(contentLength) : null;
+            }
+
+            @Override
+            public Map<String, List<String>> getHeaders() {
+                return Map.of("Content-Length", List.of(String.valueOf(contentLength)));
+            }
+
+            @Override
+            public InputStream getBody() {
+                return InputStream.nullInputStream();
+            }
+
+            @Override
+            public void close() {
+            }
+        };
+    }
+}
@@ -0,0 +1,64 @@
+package net.brlns.gdownloader;
+
+import java.io.File;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import net.brlns.gdownloader.downloader.ProcessSupervisor;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
+
+class ProcessSupervisorTest {
+
+    @Test
+    void testGrandchildrenAreTerminated() throws Exception {
+        Process process = startShell("sleep 60 & sleep 60 & wait");
+        List<ProcessHandle> children = awaitDescendants(process, 2);
+
+        boolean forced = ProcessSupervisor.terminateTree(process.toHandle(), 5000).get(10, TimeUnit.SECONDS);
+        assertFalse(forced);
+
+        assertTrue(process.waitFor(5, TimeUnit.SECONDS));
+        for (ProcessHandle child : children) {
+            child.onExit().get(5, TimeUnit.SECONDS);
+            assertFalse(child.isAlive());
+        }
+    }
+
+    @Test
+    void testStubbornProcessesAreKilled() throws Exception {
+        // Ignored signals carry over to the child, so neither of them goes away on a polite request.
+        Process process = startShell("trap '' TERM; sleep 60");
+        List<ProcessHandle> children = awaitDescendants(process, 1);
+
+        boolean forced = ProcessSupervisor.terminateTree(process.toHandle(), 200).get(10, TimeUnit.SECONDS);
+        assertTrue(forced);
+
+        assertTrue(process.waitFor(5, TimeUnit.SECONDS));
+        children.get(0).onExit().get(5, TimeUnit.SECONDS);
+    }
+
+    private static Process startShell(String script) throws Exception {
+        assumeTrue(new File("/bin/sh").canExecute(), "Needs a POSIX shell");
+
+        return new ProcessBuilder("/bin/sh", "-c", script).start();
+    }
+
+    private static List<ProcessHandle> awaitDescendants(Process process, int count) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+
+        List<ProcessHandle> descendants;
+        do {
+            descendants = process.descendants().toList();
+            if (descendants.size() >= count) {
+                return descendants;
+            }
+
+            Thread.sleep(20);
+        } while (System.nanoTime() < deadline);
+
+        fail("Expected " + count + " descendants, found " + descendants.size());
+        return descendants;
+    }
+}
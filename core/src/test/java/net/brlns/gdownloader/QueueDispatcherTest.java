@@ -0,0 +1,66 @@
+package net.brlns.gdownloader;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import net.brlns.gdownloader.downloader.QueueDispatcher;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class QueueDispatcherTest {
+
+    @Test
+    void testRequestsDuringARunAreCoalesced() throws Exception {
+        AtomicInteger runs = new AtomicInteger();
+        CountDownLatch firstRunStarted = new CountDownLatch(1);
+        CountDownLatch releaseFirstRun = new CountDownLatch(1);
+        Semaphore finishedRuns = new Semaphore(0);
+
+        QueueDispatcher dispatcher = new QueueDispatcher(() -> {
+            if (runs.incrementAndGet() == 1) {
+                firstRunStarted.countDown();
+
+                try {
+                    releaseFirstRun.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+
+            finishedRuns.release();
+        });
+
+        try {
+            dispatcher.requestDispatch();
+            assertTrue(firstRunStarted.await(5, TimeUnit.SECONDS));
+
+            // All of these arrive while the first run is busy, and must amount to exactly one more run.
+            for (int i = 0; i < 1000; i++) {
+                dispatcher.requestDispatch();
+            }
+
+            releaseFirstRun.countDown();
+
+            assertTrue(finishedRuns.tryAcquire(2, 5, TimeUnit.SECONDS));
+            assertFalse(finishedRuns.tryAcquire(200, TimeUnit.MILLISECONDS));
+            assertEquals(2, runs.get());
+        } finally {
+            dispatcher.close();
+        }
+    }
+
+    @Test
+    void testNoRunWithoutRequest() throws Exception {
+        AtomicInteger runs = new AtomicInteger();
+        QueueDispatcher dispatcher = new QueueDispatcher(runs::incrementAndGet);
+
+        try {
+            Thread.sleep(100);
+            assertEquals(0, runs.get());
+        } finally {
+            dispatcher.close();
+        }
+    }
+}
@@ -0,0 +1,47 @@
+package net.brlns.gdownloader;
+
+import java.time.ZoneOffset;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+import net.brlns.gdownloader.downloader.RetryScheduler;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class RetrySchedulerTest {
+
+    @Test
+    void testBackoffGrowsWithinJitterBounds() {
+        assertEquals(500, RetryScheduler.getBackoffMillis(1, 1000, 60000, -1, () -> 0.0));
+        assertEquals(1000, RetryScheduler.getBackoffMillis(1, 1000, 60000, -1, () -> 1.0));
+
+        assertEquals(4000, RetryScheduler.getBackoffMillis(4, 1000, 60000, -1, () -> 0.0));
+        assertEquals(8000, RetryScheduler.getBackoffMillis(4, 1000, 60000, -1, () -> 1.0));
+    }
+
+    @Test
+    void testBackoffIsCapped() {
+        assertEquals(60000, RetryScheduler.getBackoffMillis(50, 1000, 60000, -1, () -> 1.0));
+    }
+
+    @Test
+    void testRetryAfterIsALowerBound() {
+        assertEquals(30000, RetryScheduler.getBackoffMillis(1, 1000, 60000, 30000, () -> 1.0));
+        assertEquals(1000, RetryScheduler.getBackoffMillis(1, 1000, 60000, 10, () -> 1.0));
+
+        assertEquals(RetryScheduler.MAX_RETRY_AFTER_MILLIS,
+            RetryScheduler.getBackoffMillis(1, 1000, 60000, Long.MAX_VALUE, () -> 1.0));
+    }
+
+    @Test
+    void testParseRetryAfter() {
+        assertEquals(120000, RetryScheduler.parseRetryAfter("120", 0));
+        assertEquals(-1, RetryScheduler.parseRetryAfter(null, 0));
+        assertEquals(-1, RetryScheduler.parseRetryAfter("soon", 0));
+
+        ZonedDateTime now = ZonedDateTime.of(2024, 1, 1, 12, 0, 0, 0, ZoneOffset.UTC);
+        String date = now.plusSeconds(90).format(DateTimeFormatter.RFC_1123_DATE_TIME);
+
+        assertEquals(90000, RetryScheduler.parseRetryAfter(date, now.toInstant().toEpochMilli()));
+    }
+}
@@ -0,0 +1,123 @@
+package net.brlns.gdownloader;
+
+import java.util.ArrayList;
+import java.util.List;
+import net.brlns.gdownloader.downloader.scheduling.*;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class SchedulingPolicyTest {
+
+    private static class Job implements SchedulableJob {
+
+        private final String name;
+        private final long size;
+        private final boolean pinned;
+
+        Job(String nameIn, long sizeIn) {
+            this(nameIn, sizeIn, false);
+        }
+
+        Job(String nameIn, long sizeIn, boolean pinnedIn) {
+            name = nameIn;
+            size = sizeIn;
+            pinned = pinnedIn;
+        }
+
+        @Override
+        public long getEstimatedSize() {
+            return size;
+        }
+
+        @Override
+        public boolean isPinned() {
+            return pinned;
+        }
+
+        @Override
+        public String toString() {
+            return name;
+        }
+    }
+
+    private static final Job SMALL = new Job("small", 10);
+    private static final Job MEDIUM = new Job("medium", 500);
+    private static final Job LARGE = new Job("large", 4000);
+    private static final Job UNKNOWN = new Job("unknown", -1);
+
+    @Test
+    void testFifo() {
+        SchedulingPolicy policy = new FifoPolicy();
+
+        assertSame(MEDIUM, policy.next(List.of(MEDIUM, LARGE, SMALL), List.of()));
+        assertNull(policy.next(List.of(), List.of()));
+    }
+
+    @Test
+    void testShortestJobFirst() {
+        SchedulingPolicy policy = new ShortestJobFirstPolicy();
+
+        assertSame(SMALL, policy.next(List.of(UNKNOWN, MEDIUM, LARGE, SMALL), List.of()));
+        assertSame(UNKNOWN, policy.next(List.of(UNKNOWN), List.of()));
+    }
+
+    @Test
+    void testLargestFirst() {
+        SchedulingPolicy policy = new LargestFirstPolicy();
+
+        assertSame(LARGE, policy.next(List.of(UNKNOWN, MEDIUM, LARGE, SMALL), List.of()));
+    }
+
+    @Test
+    void testPinnedJobKeepsItsPosition() {
+        Job pinned = new Job("pinned", 9000, true);
+
+        SchedulingPolicy policy = new ShortestJobFirstPolicy();
+
+        // Not at the head yet, the policy fills the position ahead of it.
+        assertSame(SMALL, policy.next(List.of(MEDIUM, pinned, SMALL), List.of()));
+        assertSame(MEDIUM, policy.next(List.of(MEDIUM, pinned), List.of()));
+        assertSame(pinned, policy.next(List.of(pinned, SMALL), List.of()));
+    }
+
+    @Test
+    void testInterleavingKeepsOneLargeJobRunning() {
+        SchedulingPolicy policy = new InterleavingPolicy();
+
+        List<Job> queued = new ArrayList<>(List.of(
+            new Job("a", 10), new Job("b", 4000), new Job("c", 20), new Job("d", 3000), new Job("e", 30)));
+        List<Job> running = new ArrayList<>();
+
+        List<String> started = new ArrayList<>();
+        for (int i = 0; i < 3; i++) {
+            Job job = policy.next(queued, running);
+            queued.remove(job);
+            running.add(job);
+            started.add(job.toString());
+        }
+
+        assertEquals(List.of("b", "a", "c"), started);
+
+        // The large job finished, another one takes its place.
+        running.remove(0);
+        assertEquals("d", policy.next(queued, running).toString());
+    }
+
+    @Test
+    void testInterleavingAlternatesOnASingleSlot() {
+        SchedulingPolicy policy = new InterleavingPolicy();
+
+        List<Job> queued = new ArrayList<>(List.of(
+            new Job("a", 10), new Job("b", 4000), new Job("c", 20), new Job("d", 3000)));
+
+        List<String> started = new ArrayList<>();
+        while (!queued.isEmpty()) {
+            Job job = policy.next(queued, List.of());
+            queued.remove(job);
+            started.add(job.toString());
+        }
+
+        assertEquals(List.of("b", "a", "d", "c"), started);
+    }
+}
@@ -0,0 +1,70 @@
+package net.brlns.gdownloader;
+
+import net.brlns.gdownloader.downloader.SitePacer;
+import net.brlns.gdownloader.settings.filters.GenericFilter;
+import net.brlns.gdownloader.settings.filters.YoutubeFilter;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class SitePacerTest {
+
+    @Test
+    void testUnlimitedByDefault() {
+        SitePacer pacer = new SitePacer();
+        GenericFilter filter = new GenericFilter();
+
+        pacer.onStart(filter, 1000);
+
+        assertTrue(pacer.canStart(filter, 50, 1000));
+        assertEquals(0, pacer.getStartDelay(filter, 1000));
+    }
+
+    @Test
+    void testConcurrencyLimit() {
+        SitePacer pacer = new SitePacer();
+        YoutubeFilter filter = new YoutubeFilter();
+        filter.setMaxConcurrentDownloads(2);
+
+        assertTrue(pacer.canStart(filter, 0, 0));
+        assertTrue(pacer.canStart(filter, 1, 0));
+        assertFalse(pacer.canStart(filter, 2, 0));
+    }
+
+    @Test
+    void testMinStartInterval() {
+        SitePacer pacer = new SitePacer();
+        YoutubeFilter filter = new YoutubeFilter();
+        filter.setMinStartIntervalSeconds(20);
+
+        assertTrue(pacer.canStart(filter, 0, 1000));
+
+        pacer.onStart(filter, 1000);
+
+        assertFalse(pacer.canStart(filter, 0, 1000));
+        assertEquals(15_000, pacer.getStartDelay(filter, 6000));
+        assertTrue(pacer.canStart(filter, 0, 21_000));
+    }
+
+    @Test
+    void testSitesArePacedIndependently() {
+        SitePacer pacer = new SitePacer();
+
+        YoutubeFilter youtube = new YoutubeFilter();
+        youtube.setMinStartIntervalSeconds(20);
+
+        GenericFilter custom = new GenericFilter();
+        custom.setFilterName("Custom");
+        custom.setMinStartIntervalSeconds(20);
+
+        pacer.onStart(youtube, 1000);
+
+        assertFalse(pacer.canStart(youtube, 0, 2000));
+        assertTrue(pacer.canStart(custom, 0, 2000));
+
+        // A filter loaded again from the settings still counts as the same site.
+        YoutubeFilter reloaded = new YoutubeFilter();
+        reloaded.setMinStartIntervalSeconds(20);
+        assertFalse(pacer.canStart(reloaded, 0, 2000));
+    }
+}
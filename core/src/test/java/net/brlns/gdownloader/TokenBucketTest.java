@@ -0,0 +1,96 @@
+package net.brlns.gdownloader;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import net.brlns.gdownloader.util.TokenBucket;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class TokenBucketTest {
+
+    @Test
+    void testUnlimitedNeverWaits() {
+        TokenBucket bucket = new TokenBucket(() -> 0);
+
+        assertTrue(bucket.isUnlimited());
+        assertEquals(0, bucket.reserve(Long.MAX_VALUE / 2), "Unlimited bucket should not wait");
+    }
+
+    @Test
+    void testBurstUpToCapacity() {
+        TokenBucket bucket = new TokenBucket(() -> 1000);
+
+        assertEquals(0, bucket.reserve(1000), "A full bucket should allow one second worth of tokens");
+        assertTrue(bucket.reserve(500) > 0, "An empty bucket should make the caller wait");
+    }
+
+    @Test
+    void testDebtIsProportionalToRate() {
+        TokenBucket bucket = new TokenBucket(() -> 1000);
+
+        bucket.reserve(1000);
+        long waitNanos = bucket.reserve(500);
+
+        assertTrue(waitNanos > TimeUnit.MILLISECONDS.toNanos(400), "Wait should be about half a second: " + waitNanos);
+        assertTrue(waitNanos <= TimeUnit.MILLISECONDS.toNanos(500), "Wait should be about half a second: " + waitNanos);
+    }
+
+    @Test
+    void testRateChangeApplies() {
+        AtomicLong rate = new AtomicLong(0);
+        TokenBucket bucket = new TokenBucket(rate::get);
+
+        assertEquals(0, bucket.reserve(1_000_000));
+
+        rate.set(100);
+        assertEquals(0, bucket.reserve(100), "Bucket should start full once a limit is set");
+        assertTrue(bucket.reserve(100) > 0, "New limit should be enforced");
+    }
+
+    @Test
+    void testStoppedCallerStopsWaiting() throws Exception {
+        TokenBucket bucket = new TokenBucket(() -> 1000);
+        bucket.reserve(1000);
+
+        AtomicBoolean alive = new AtomicBoolean(true);
+        CompletableFuture<Boolean> acquired = CompletableFuture.supplyAsync(() -> {
+            try {
+                // A minute worth of tokens.
+                return bucket.acquire(60_000, alive::get);
+            } catch (InterruptedException e) {
+                throw new RuntimeException(e);
+            }
+        });
+
+        Thread.sleep(200);
+        alive.set(false);
+
+        assertFalse(acquired.get(1, TimeUnit.SECONDS));
+
+        // Only about one burst was taken on before giving up.
+        assertTrue(bucket.reserve(0) <= TimeUnit.SECONDS.toNanos(2), "Debt should stay around one burst");
+    }
+
+    @Test
+    void testLiftedLimitEndsTheWait() throws Exception {
+        AtomicLong rate = new AtomicLong(1000);
+        TokenBucket bucket = new TokenBucket(rate::get);
+        bucket.reserve(1000);
+
+        CompletableFuture<Boolean> acquired = CompletableFuture.supplyAsync(() -> {
+            try {
+                return bucket.acquire(60_000, () -> true);
+            } catch (InterruptedException e) {
+                throw new RuntimeException(e);
+            }
+        });
+
+        Thread.sleep(200);
+        rate.set(0);
+
+        assertTrue(acquired.get(1, TimeUnit.SECONDS));
+    }
+}
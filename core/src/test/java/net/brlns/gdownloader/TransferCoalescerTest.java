@@ -0,0 +1,73 @@
+package net.brlns.gdownloader;
+
+import java.io.File;
+import java.net.URI;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import net.brlns.gdownloader.downloader.TransferCoalescer;
+import net.brlns.gdownloader.util.URLUtils;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class TransferCoalescerTest {
+
+    @TempDir
+    Path tempDir;
+
+    @Test
+    void testCanonicalUrl() throws Exception {
+        assertEquals("https://example.com/file.zip?a=1&b=2",
+            URLUtils.getCanonicalUrl(new URI("HTTPS://Example.com:443/file.zip?b=2&utm_source=x&a=1&fbclid=y#top").toURL()));
+
+        assertEquals("http://example.com:8080/",
+            URLUtils.getCanonicalUrl(new URI("http://example.com:8080").toURL()));
+    }
+
+    @Test
+    void testSubscriberReceivesResult() throws Exception {
+        TransferCoalescer coalescer = new TransferCoalescer();
+
+        File leaderFile = tempDir.resolve("leader/file.bin").toFile();
+        File followerFile = tempDir.resolve("follower/file.bin").toFile();
+
+        TransferCoalescer.Handle leader = coalescer.join("key", leaderFile);
+        TransferCoalescer.Handle follower = coalescer.join("key", followerFile);
+
+        assertTrue(leader.isLeader());
+        assertFalse(follower.isLeader());
+
+        CompletableFuture<Boolean> received = CompletableFuture.supplyAsync(() -> {
+            try {
+                return follower.await(() -> true);
+            } catch (InterruptedException e) {
+                throw new RuntimeException(e);
+            }
+        });
+
+        Files.createDirectories(leaderFile.getParentFile().toPath());
+        Files.writeString(leaderFile.toPath(), "payload");
+        leader.finish(true);
+
+        assertTrue(received.get(5, TimeUnit.SECONDS));
+        assertEquals("payload", Files.readString(followerFile.toPath()));
+
+        // The key is free again once the leader is done.
+        assertTrue(coalescer.join("key", leaderFile).isLeader());
+    }
+
+    @Test
+    void testSubscriberFallsBackOnFailure() throws Exception {
+        TransferCoalescer coalescer = new TransferCoalescer();
+
+        TransferCoalescer.Handle leader = coalescer.join("key", tempDir.resolve("a").toFile());
+        TransferCoalescer.Handle follower = coalescer.join("key", tempDir.resolve("b").toFile());
+
+        leader.finish(false);
+
+        assertFalse(follower.await(() -> true));
+    }
+}
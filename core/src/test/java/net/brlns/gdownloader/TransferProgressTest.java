@@ -0,0 +1,68 @@
+package net.brlns.gdownloader;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import net.brlns.gdownloader.downloader.TransferProgress;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class TransferProgressTest {
+
+    @Test
+    void testNothingIsPublishedBeforeStart() {
+        AtomicLong events = new AtomicLong();
+        TransferProgress progress = new TransferProgress((percent, downloaded, size, speed, eta, chunks) -> events.incrementAndGet());
+
+        progress.tick(System.nanoTime());
+
+        assertEquals(0, events.get());
+    }
+
+    @Test
+    void testSpeedIsSmoothed() {
+        AtomicReference<Long> lastSpeed = new AtomicReference<>();
+        AtomicReference<Long> lastEta = new AtomicReference<>();
+
+        TransferProgress progress = new TransferProgress((percent, downloaded, size, speed, eta, chunks) -> {
+            lastSpeed.set(speed);
+            lastEta.set(eta);
+        });
+
+        progress.start(10_000, 1_000, () -> 2);
+        long now = System.nanoTime();
+
+        // Bytes that were already on disk do not count towards the speed.
+        progress.add(1_000);
+        progress.tick(now + 1_000_000_000L);
+        assertEquals(1_000, lastSpeed.get(), 1);
+        assertEquals(8_000, lastEta.get(), 10);
+
+        // A stall pulls the speed down gradually instead of dropping it to zero.
+        progress.tick(now + 2_000_000_000L);
+        assertEquals(700, lastSpeed.get(), 1);
+
+        // Rolled back bytes are not negative speed.
+        progress.add(-500);
+        progress.tick(now + 3_000_000_000L);
+        assertEquals(490, lastSpeed.get(), 1);
+    }
+
+    @Test
+    void testUnknownLengthHasNoPercentage() {
+        AtomicReference<Double> lastPercent = new AtomicReference<>();
+        AtomicLong lastDownloaded = new AtomicLong();
+
+        TransferProgress progress = new TransferProgress((percent, downloaded, size, speed, eta, chunks) -> {
+            lastPercent.set(percent);
+            lastDownloaded.set(downloaded);
+        });
+
+        progress.start(-1, 0, () -> 1);
+        progress.add(4096);
+        progress.tick(System.nanoTime() + 1_000_000_000L);
+
+        assertEquals(-1, lastPercent.get().doubleValue());
+        assertEquals(4096, lastDownloaded.get());
+    }
+}